@@ -0,0 +1,38 @@
+#!/usr/bin/env bash
+
+#
+# starts several weather nodes on loopback, queries them and aggregates their request statistics
+#
+
+NODES=${NODES:-3}
+PIDS=""
+
+function cleanup() {
+    kill ${PIDS} 2> /dev/null
+    rm -f cp.txt
+}
+
+trap cleanup EXIT
+
+mvn -q compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+CLASSPATH=$(cat cp.txt):target/classes
+
+URLS=""
+for i in $(seq 1 ${NODES}); do
+    PORT=$((9090 + i))
+    java -Dweather.port=${PORT} -classpath ${CLASSPATH} com.crossover.trial.weather.WeatherServer > /dev/null &
+    PIDS="${PIDS} $!"
+    URLS="${URLS} http://localhost:${PORT}"
+done
+
+for url in ${URLS}; do
+    while ! curl -s ${url}/collect/ping > /dev/null; do
+        echo "$(date) - waiting for ${url}..."
+        sleep 1
+    done
+    # some skewed traffic per node
+    for r in 0 0 0 50 200; do curl -s ${url}/query/weather/BOS/${r} > /dev/null; done
+    curl -s ${url}/query/weather/JFK/100 > /dev/null
+done
+
+java -classpath ${CLASSPATH} com.crossover.trial.weather.utils.StatsAggregator ${URLS}
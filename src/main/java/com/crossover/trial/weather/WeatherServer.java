@@ -1,14 +1,37 @@
 package com.crossover.trial.weather;
 
+import com.crossover.trial.weather.codec.CompressionInterceptor;
+import com.crossover.trial.weather.codec.JsonCodecProvider;
 import com.crossover.trial.weather.endpoint.WeatherCollectorEndpointImpl;
 import com.crossover.trial.weather.endpoint.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.ingest.IngestionPipeline;
+import com.crossover.trial.weather.ingest.UdpIngestionListener;
+import com.crossover.trial.weather.replication.BootstrapFilter;
+import com.crossover.trial.weather.replication.ReplicationPrimary;
+import com.crossover.trial.weather.replication.ReplicationReplica;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import com.crossover.trial.weather.service.StartupTracker;
+import com.crossover.trial.weather.tenant.TenantFilter;
+import com.crossover.trial.weather.tenant.TenantQuotas;
 import org.glassfish.grizzly.Connection;
 import org.glassfish.grizzly.http.server.*;
+import org.glassfish.grizzly.threadpool.ThreadPoolConfig;
 import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -23,23 +46,159 @@ import static java.lang.String.*;
  */
 public class WeatherServer {
 
-    private static final String BASE_URL = "http://localhost:9090/";
+    private static final String BASE_URL = "http://localhost:" + Integer.getInteger("weather.port", 9090) + "/";
+
+    /**
+     * replication role of this node: "primary", "replica" or unset for a standalone node
+     */
+    private static final String REPLICATION_ROLE = System.getProperty("weather.replication.role", "");
+
+    /**
+     * port the primary streams its update log on
+     */
+    private static final int REPLICATION_PORT = Integer.getInteger("weather.replication.port", 9190);
+
+    /**
+     * host:port of the primary a replica tails
+     */
+    private static final String REPLICATION_PRIMARY = System.getProperty("weather.replication.primary",
+            "localhost:" + REPLICATION_PORT);
+
+    /**
+     * number of top queries kept warm in the query cache, 0 disables the cache
+     */
+    private static final int CACHE_HOT_QUERIES = Integer.getInteger("weather.cache.hot", 32);
+
+    /**
+     * udp port for binary data point messages, unset to disable
+     */
+    private static final Integer INGEST_UDP_PORT = Integer.getInteger("weather.ingest.udp.port");
+
+    /**
+     * apply collected data points on dedicated threads instead of the request threads
+     */
+    private static final boolean INGEST_ASYNC = Boolean.getBoolean("weather.ingest.async");
+
+    /**
+     * number of data points the asynchronous ingestion queues hold before refusing with 429
+     */
+    private static final int INGEST_CAPACITY = Integer.getInteger("weather.ingest.capacity", 65536);
+
+    /**
+     * number of asynchronous ingestion queues and applier threads
+     */
+    private static final int INGEST_THREADS = Integer.getInteger("weather.ingest.threads", 2);
+
+    /**
+     * minimum number of candidate airports for a radius search to run in parallel, learned at startup if unset
+     */
+    private static final Integer PARALLEL_THRESHOLD = Integer.getInteger("weather.parallel.threshold");
+
+    /**
+     * interval between compactions of the airport registry in milliseconds
+     */
+    private static final int COMPACTION_PERIOD = Integer.getInteger("weather.compaction.period", 10000);
+
+    /**
+     * milliseconds the slot of a deleted airport stays reserved, longer than any query runs
+     */
+    private static final int COMPACTION_GRACE = Integer.getInteger("weather.compaction.grace", 60000);
+
+    /**
+     * requests served on a kept alive connection before it is closed, -1 for unlimited
+     */
+    private static final int KEEP_ALIVE_REQUESTS = Integer.getInteger("weather.http.keepalive.requests", 256);
+
+    /**
+     * seconds an idle kept alive connection stays open
+     */
+    private static final int KEEP_ALIVE_IDLE_SECONDS = Integer.getInteger("weather.http.keepalive.idle", 30);
+
+    /**
+     * bytes of responses a connection may have queued for writing, which bounds the pipelined requests served
+     * ahead of a slow reader; -1 for unlimited
+     */
+    private static final int MAX_PENDING_BYTES = Integer.getInteger("weather.http.pending.bytes", 4 * 1024 * 1024);
+
+    /**
+     * threads serving requests; a request waiting for a deferred query holds one, see
+     * {@link com.crossover.trial.weather.admission.QueryAdmission#fromSystemProperties()}
+     */
+    private static final int HTTP_WORKERS = Integer.getInteger("weather.http.workers", 32);
+
+    /**
+     * enforce the per tenant query and ingestion quotas of {@link TenantQuotas}
+     */
+    private static final boolean TENANT_QUOTAS = Boolean.parseBoolean(System.getProperty("weather.tenant.quotas",
+            "true"));
+
+    /**
+     * "lazy" to open the server before loading the dataset, calibrating and warming the caches, which then run in
+     * the background until the node reports ready in the ping output; "eager" to run them first
+     */
+    private static final boolean LAZY_STARTUP = "lazy".equals(System.getProperty("weather.startup", "eager"));
+
+    /**
+     * file in the airports.dat format loaded at startup, unset for the built in airports only
+     */
+    private static final String AIRPORTS_FILE = System.getProperty("weather.airports.file");
+
+    /**
+     * run a few requests once ready and exit, for recording a class data sharing archive, see the appcds profile
+     */
+    private static final boolean TRAINING_RUN = Boolean.getBoolean("weather.startup.training");
 
     public static void main(String[] args) {
         try {
             System.out.println("Starting Weather App local testing server: " + BASE_URL);
+            StartupTracker startup = new StartupTracker(LAZY_STARTUP);
+            AirportWeatherService.registerPingSection("startup", startup::status);
 
             final ResourceConfig resourceConfig = new ResourceConfig();
-            resourceConfig.register(WeatherCollectorEndpointImpl.class);
+            resourceConfig.register(JsonCodecProvider.class);
+            resourceConfig.register(SseFeature.class);
+            resourceConfig.register(CompressionInterceptor.class);
+            TenantQuotas quotas = TENANT_QUOTAS ? TenantQuotas.fromSystemProperties() : null;
+            if (quotas != null) {
+                resourceConfig.register(new TenantFilter(quotas));
+            }
+            if ("replica".equals(REPLICATION_ROLE)) {
+                // replicas are fed by the primary and serve queries only, once they loaded its snapshot
+                ReplicationReplica replica = new ReplicationReplica(REPLICATION_PRIMARY);
+                resourceConfig.register(new BootstrapFilter(replica));
+                replica.start();
+            } else {
+                resourceConfig.register(WeatherCollectorEndpointImpl.class);
+                if (INGEST_ASYNC) {
+                    IngestionPipeline.start(INGEST_CAPACITY, INGEST_THREADS);
+                }
+                if ("primary".equals(REPLICATION_ROLE)) {
+                    new ReplicationPrimary(REPLICATION_PORT).start();
+                }
+                if (INGEST_UDP_PORT != null) {
+                    new UdpIngestionListener(INGEST_UDP_PORT, quotas).start();
+                }
+            }
             resourceConfig.register(WeatherQueryEndpointImpl.class);
+            if (!LAZY_STARTUP) {
+                initialize(startup);
+            }
 
             HttpServer server = GrizzlyHttpServerFactory.createHttpServer(URI.create(BASE_URL), resourceConfig, false);
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 server.shutdownNow();
             }));
+            for (NetworkListener listener : server.getListeners()) {
+                listener.getKeepAlive().setMaxRequestsCount(KEEP_ALIVE_REQUESTS);
+                listener.getKeepAlive().setIdleTimeoutInSeconds(KEEP_ALIVE_IDLE_SECONDS);
+                listener.setMaxPendingBytes(MAX_PENDING_BYTES);
+                listener.getTransport().setWorkerThreadPoolConfig(ThreadPoolConfig.defaultConfig()
+                        .setPoolName("weather-http").setCorePoolSize(HTTP_WORKERS).setMaxPoolSize(HTTP_WORKERS));
+            }
 
             HttpServerProbe probe = new HttpServerProbe.Adapter() {
                 public void onRequestReceiveEvent(HttpServerFilter filter, Connection connection, Request request) {
+                    startup.requestReceived();
                     System.out.println(request.getRequestURI());
                 }
             };
@@ -48,7 +207,17 @@ public class WeatherServer {
 
             // the autograder waits for this output before running automated tests, please don't remove it
             server.start();
+            startup.listening();
             System.out.println(format("Weather Server started.\n url=%s\n", BASE_URL));
+            if (LAZY_STARTUP) {
+                Thread initializer = new Thread(() -> initialize(startup), "startup");
+                initializer.setDaemon(true);
+                initializer.start();
+            }
+            if (TRAINING_RUN) {
+                train(startup);
+                System.exit(0);
+            }
 
             // blocks until the process is terminated
             Thread.currentThread().join();
@@ -57,4 +226,65 @@ public class WeatherServer {
             Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, null, ex);
         }
     }
+
+    /**
+     * The heavy part of the startup: the dataset, the search calibration and the background maintenance. Marks the
+     * node ready when done, also if a phase failed, which is logged.
+     */
+    private static void initialize(StartupTracker startup) {
+        try {
+            if (AIRPORTS_FILE != null) {
+                startup.phase("dataset", () -> {
+                    try (BufferedReader reader = Files.newBufferedReader(Paths.get(AIRPORTS_FILE),
+                            StandardCharsets.UTF_8)) {
+                        System.out.println("Loaded airports: " + AirportWeatherService.loadAirports(reader));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+            startup.phase("calibration", () -> {
+                if (PARALLEL_THRESHOLD != null) {
+                    AirportGridIndex.setParallelThreshold(PARALLEL_THRESHOLD);
+                } else {
+                    System.out.println("Parallel radius search threshold: "
+                            + AirportGridIndex.calibrateParallelThreshold());
+                }
+            });
+            startup.phase("maintenance", () -> {
+                AirportWeatherService.startCompaction(COMPACTION_PERIOD, COMPACTION_GRACE);
+                if (CACHE_HOT_QUERIES > 0) {
+                    AirportWeatherService.startCachePrewarming(CACHE_HOT_QUERIES, 1000);
+                }
+            });
+        } catch (RuntimeException e) {
+            Logger.getLogger(WeatherServer.class.getName()).log(Level.SEVERE, "startup failed", e);
+        } finally {
+            startup.ready();
+        }
+    }
+
+    /**
+     * Waits until ready and sends the requests of a typical session, so their classes are loaded and end up in a
+     * class data sharing archive written at exit.
+     */
+    private static void train(StartupTracker startup) throws InterruptedException {
+        startup.awaitReady(5, TimeUnit.MINUTES);
+        for (String path : new String[]{"collect/ping", "collect/airports", "collect/airports/BOS",
+                "query/ping", "query/weather/BOS/0", "query/weather/JFK/500?types=wind",
+                "query/nearest/BOS/3", "query/aggregate/BOS/500"}) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URL + path).openConnection();
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+                try (InputStream in = connection.getResponseCode() < 400
+                        ? connection.getInputStream() : connection.getErrorStream()) {
+                    while (in != null && in.read() >= 0) {
+                        // drains the response
+                    }
+                }
+            } catch (IOException e) {
+                Logger.getLogger(WeatherServer.class.getName()).log(Level.WARNING, "training request " + path, e);
+            }
+        }
+    }
 }
@@ -0,0 +1,253 @@
+package com.crossover.trial.weather.admission;
+
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.utils.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Admission control of queries by their {@link QueryCostModel predicted cost}.
+ * <p>
+ * Queries predicted to examine no more airports than the budget are cheap and run on the request thread. Expensive
+ * ones are handled by the policy:
+ * <ul>
+ * <li>reject - refused with a {@link RejectedExecutionException}</li>
+ * <li>sample - run on every n-th airport the search would examine only, see {@link #sampleStride(long)}, so it
+ * costs about the budget</li>
+ * <li>defer - run one at a time, by default, on a low priority thread, with a bounded queue of waiting queries
+ * beyond which they are refused. Their radius searches run on that thread alone, never on the common fork-join
+ * pool. A burst of expensive queries then queues up behind each other instead of competing with the cheap ones for
+ * the cpu.</li>
+ * </ul>
+ * The request thread of a deferred query blocks until its query ran, as the query api answers synchronously. The
+ * running and queued deferred queries are therefore kept to a quarter of the http worker threads, so a burst of
+ * expensive queries is refused before it holds the workers the cheap ones need.
+ * The queueing and run times of both classes are published in the ping output.
+ */
+public class QueryAdmission {
+
+    public enum Policy {
+        REJECT, SAMPLE, DEFER
+    }
+
+    private final long budget;
+
+    private final Policy policy;
+
+    private final ThreadPoolExecutor lowPriority;
+
+    private final QueryClass cheap = new QueryClass();
+
+    private final QueryClass expensive = new QueryClass();
+
+    /**
+     * @param budget  airports a cheap query examines at most
+     * @param policy  what happens to expensive queries
+     * @param threads threads running deferred queries
+     * @param queue   deferred queries waiting at most
+     */
+    public QueryAdmission(long budget, Policy policy, int threads, int queue) {
+        this.budget = budget;
+        this.policy = policy;
+        AtomicInteger count = new AtomicInteger();
+        this.lowPriority = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queue), runnable -> {
+                    Thread thread = new Thread(runnable, "query-low-priority-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    /**
+     * Reads the budget from {@code weather.admission.budget}, default 20000 airports, the policy from
+     * {@code weather.admission.policy}, default defer, and the threads and queue length of deferred queries from
+     * {@code weather.admission.threads} and {@code weather.admission.queue}, default 1 and 16. The queue is
+     * shortened to the {@link #queueLength(int, int, int) share} of the {@code weather.http.workers} threads,
+     * default 32, that deferred queries may hold.
+     */
+    public static QueryAdmission fromSystemProperties() {
+        int threads = Integer.getInteger("weather.admission.threads", 1);
+        return new QueryAdmission(Long.getLong("weather.admission.budget", 20000),
+                Policy.valueOf(System.getProperty("weather.admission.policy", "defer").toUpperCase(Locale.ROOT)),
+                threads,
+                queueLength(Integer.getInteger("weather.http.workers", 32), threads,
+                        Integer.getInteger("weather.admission.queue", 16)));
+    }
+
+    /**
+     * @param workers http worker threads
+     * @param threads threads running deferred queries
+     * @param queue   configured queue length
+     * @return the queue length which keeps the request threads waiting for deferred queries, running or queued, to
+     * a quarter of the workers, at least 1
+     */
+    static int queueLength(int workers, int threads, int queue) {
+        return Math.max(1, Math.min(queue, workers / 4 - threads));
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return true if a query of the predicted cost is beyond the budget
+     */
+    public boolean isExpensive(long predicted) {
+        return predicted > budget;
+    }
+
+    /**
+     * Runs a query as the policy says for its predicted cost.
+     *
+     * @param predicted the predicted number of airports the query examines
+     * @param query     the query
+     * @param <T>       the result type
+     * @return the result
+     * @throws RejectedExecutionException if the query was refused
+     */
+    public <T> T execute(long predicted, Supplier<T> query) {
+        if (!isExpensive(predicted)) {
+            return cheap.run(query);
+        }
+        switch (policy) {
+            case REJECT:
+                expensive.rejected.increment();
+                throw new RejectedExecutionException("query cost " + predicted + " exceeds the budget of " + budget);
+            case SAMPLE:
+                expensive.sampled.increment();
+                return expensive.run(query);
+            default:
+                return defer(query);
+        }
+    }
+
+    /**
+     * @return n if a query of the predicted cost should only examine every n-th airport, 1 for all
+     */
+    public int sampleStride(long predicted) {
+        if (policy != Policy.SAMPLE || !isExpensive(predicted)) {
+            return 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, (predicted + budget - 1) / budget);
+    }
+
+    /**
+     * @return every stride-th element of the list, starting with the first
+     */
+    public static <T> List<T> sample(List<T> list, int stride) {
+        if (stride <= 1) {
+            return list;
+        }
+        List<T> sample = new ArrayList<>(list.size() / stride + 1);
+        for (int i = 0; i < list.size(); i += stride) {
+            sample.add(list.get(i));
+        }
+        return sample;
+    }
+
+    private <T> T defer(Supplier<T> query) {
+        long queuedAt = System.nanoTime();
+        long[] examined = new long[1];
+        Future<T> future;
+        expensive.queued.incrementAndGet();
+        try {
+            future = lowPriority.submit(() -> {
+                expensive.queued.decrementAndGet();
+                expensive.waits.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - queuedAt));
+                AirportGridIndex.resetCandidatesExamined();
+                T result = expensive.run(() -> AirportGridIndex.sequentially(query));
+                examined[0] = AirportGridIndex.candidatesExamined();
+                return result;
+            });
+        } catch (RejectedExecutionException e) {
+            expensive.queued.decrementAndGet();
+            expensive.rejected.increment();
+            throw e;
+        }
+        expensive.deferred.increment();
+        try {
+            T result = future.get();
+            // the examined airports count towards the tenant of the request thread
+            AirportGridIndex.addCandidatesExamined(examined[0]);
+            return result;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted while waiting for a deferred query", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return counters and percentiles of both classes for the ping output
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("budget", budget);
+        status.put("policy", policy.name().toLowerCase(Locale.ROOT));
+        status.put("cheap", cheap.status());
+        status.put("expensive", expensive.status());
+        return status;
+    }
+
+    /**
+     * Counters of the queries of one cost class; times in microseconds.
+     */
+    private static final class QueryClass {
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder sampled = new LongAdder();
+        private final LongAdder deferred = new LongAdder();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final LatencyHistogram waits = new LatencyHistogram();
+        private final LatencyHistogram times = new LatencyHistogram();
+
+        <T> T run(Supplier<T> query) {
+            long start = System.nanoTime();
+            try {
+                return query.get();
+            } finally {
+                times.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
+        }
+
+        Map<String, Object> status() {
+            Map<String, Object> status = new HashMap<>();
+            status.put("executed", times.getCount());
+            status.put("rejected", rejected.sum());
+            status.put("sampled", sampled.sum());
+            status.put("deferred", deferred.sum());
+            status.put("queued", queued.get());
+            status.put("wait_p50_us", waits.percentile(50));
+            status.put("wait_p99_us", waits.percentile(99));
+            status.put("time_p50_us", times.percentile(50));
+            status.put("time_p99_us", times.percentile(99));
+            status.put("time_p999_us", times.percentile(99.9));
+            return status;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.crossover.trial.weather.admission;
+
+import com.crossover.trial.weather.geo.AirportGridIndex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Predicts the cost of a radius query, in airports examined, before running it.
+ * <p>
+ * The prediction starts from {@link AirportGridIndex#estimateCandidates(double, double, double)}, an upper bound
+ * read off the airport counts of blocks of cells, and scales it by how many of the estimated candidates queries of
+ * a similar radius actually examined. That ratio is learned from the executed queries as a moving average per
+ * power of two of the radius, since small radii overestimate by whole blocks while large ones are nearly exact.
+ */
+public class QueryCostModel {
+
+    /**
+     * radius classes by the position of the highest bit of the radius in km, up to 32768 km
+     */
+    private static final int RADIUS_CLASSES = 16;
+
+    /**
+     * weight of a new observation in the moving averages
+     */
+    private static final double SMOOTHING = 0.05;
+
+    private static final double MIN_RATIO = 0.01;
+
+    private final AirportGridIndex index;
+
+    /**
+     * learned ratio of examined to estimated candidates by radius class, as double bits
+     */
+    private final AtomicLongArray ratios = new AtomicLongArray(RADIUS_CLASSES);
+
+    /**
+     * moving average of the query time per airport examined in nanoseconds, as double bits
+     */
+    private final AtomicLong nanosPerCandidate = new AtomicLong(Double.doubleToLongBits(0));
+
+    public QueryCostModel(AirportGridIndex index) {
+        this.index = index;
+        for (int i = 0; i < RADIUS_CLASSES; i++) {
+            ratios.set(i, Double.doubleToLongBits(1));
+        }
+    }
+
+    /**
+     * @return the predicted number of airports a search of the radius examines
+     */
+    public long predict(double latitude, double longitude, double radiusKm) {
+        long estimate = index.estimateCandidates(latitude, longitude, radiusKm);
+        return (long) Math.ceil(estimate * Double.longBitsToDouble(ratios.get(radiusClass(radiusKm))));
+    }
+
+    /**
+     * Learns from an executed search.
+     *
+     * @param examined airports the search examined
+     * @param nanos    time the search took
+     */
+    public void observe(double latitude, double longitude, double radiusKm, long examined, long nanos) {
+        long estimate = index.estimateCandidates(latitude, longitude, radiusKm);
+        if (estimate > 0) {
+            double ratio = Math.max(MIN_RATIO, Math.min(1, (double) examined / estimate));
+            ratios.getAndUpdate(radiusClass(radiusKm), bits -> average(bits, ratio));
+        }
+        if (examined > 0) {
+            double observed = (double) nanos / examined;
+            nanosPerCandidate.getAndUpdate(bits -> Double.longBitsToDouble(bits) == 0
+                    ? Double.doubleToLongBits(observed) : average(bits, observed));
+        }
+    }
+
+    /**
+     * @return the predicted time of a search examining the given number of airports, 0 until one was observed
+     */
+    public long predictNanos(long candidates) {
+        return (long) (candidates * Double.longBitsToDouble(nanosPerCandidate.get()));
+    }
+
+    private static long average(long bits, double observed) {
+        return Double.doubleToLongBits((1 - SMOOTHING) * Double.longBitsToDouble(bits) + SMOOTHING * observed);
+    }
+
+    private static int radiusClass(double radiusKm) {
+        return Math.min(RADIUS_CLASSES - 1, 64 - Long.numberOfLeadingZeros((long) radiusKm));
+    }
+
+    /**
+     * @return the learned ratios by radius class and the time per candidate for the ping output
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        Map<String, Double> byRadius = new LinkedHashMap<>();
+        for (int i = 0; i < RADIUS_CLASSES; i++) {
+            byRadius.put("<" + (1L << i), Double.longBitsToDouble(ratios.get(i)));
+        }
+        status.put("examined_per_estimated", byRadius);
+        status.put("nanos_per_candidate", Double.longBitsToDouble(nanosPerCandidate.get()));
+        return status;
+    }
+}
@@ -0,0 +1,65 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.geo.AirportGridIndex;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Streams the result of a spatial query as a json list of {"airport", "weather"} objects while the query runs,
+ * instead of collecting it into a list first. Output is flushed in chunks of {@link #CHUNK_SIZE} bytes, so memory
+ * use does not depend on the size of the result.
+ */
+public class AirportWeatherStreamingOutput implements StreamingOutput {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final byte[] AIRPORT_KEY = "{\"airport\":".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] WEATHER_KEY = ",\"weather\":".getBytes(StandardCharsets.US_ASCII);
+
+    private final Consumer<Consumer<AirportGridIndex.Entry>> query;
+
+    /**
+     * @param query runs the query, passing each result to the given visitor
+     */
+    public AirportWeatherStreamingOutput(Consumer<Consumer<AirportGridIndex.Entry>> query) {
+        this.query = query;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        JsonBuffer out = JsonCodec.buffer();
+        out.raw('[');
+        boolean[] first = {true};
+        try {
+            query.accept(entry -> {
+                if (!first[0]) {
+                    out.raw(',');
+                }
+                first[0] = false;
+                out.raw(AIRPORT_KEY);
+                JsonCodec.write(out, entry.getAirport());
+                out.raw(WEATHER_KEY);
+                JsonCodec.write(out, entry.getWeather());
+                out.raw('}');
+                if (out.length() >= CHUNK_SIZE) {
+                    try {
+                        out.writeTo(output);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    out.reset();
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.raw(']');
+        out.writeTo(output);
+    }
+}
@@ -0,0 +1,92 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary ingestion format for collectors. A message is a sequence of fixed width, big endian records:
+ * <pre>
+ *   offset size field
+ *        0    3 iata code, US-ASCII
+ *        3    1 {@link DataPointType} ordinal
+ *        4    8 mean, IEEE 754 double
+ *       12    4 first quartile
+ *       16    4 second quartile
+ *       20    4 third quartile
+ *       24    4 count
+ * </pre>
+ * Decoding reads into a caller supplied scratch {@link DataPoint} and allocates nothing per record.
+ */
+public final class BinaryDataPointCodec {
+
+    /**
+     * media type of binary data point messages
+     */
+    public static final String MEDIA_TYPE = "application/x-weather-datapoints";
+
+    /**
+     * size of a single record in bytes
+     */
+    public static final int RECORD_SIZE = 28;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private BinaryDataPointCodec() {
+    }
+
+    /**
+     * Appends a record to the buffer.
+     *
+     * @param out  the target buffer, needs {@link #RECORD_SIZE} bytes remaining
+     * @param iata the three letter airport code
+     * @param type the data point type
+     * @param dp   the data point
+     */
+    public static void encode(ByteBuffer out, String iata, DataPointType type, DataPoint dp) {
+        if (iata.length() != 3) {
+            throw new IllegalArgumentException("not a three letter code: " + iata);
+        }
+        out.put(iata.getBytes(StandardCharsets.US_ASCII));
+        out.put((byte) type.ordinal());
+        out.putDouble(dp.getMean());
+        out.putInt(dp.getFirst());
+        out.putInt(dp.getSecond());
+        out.putInt(dp.getThird());
+        out.putInt(dp.getCount());
+    }
+
+    /**
+     * Decodes the record at the buffer's position and advances it by {@link #RECORD_SIZE}.
+     *
+     * @param in      buffer with at least one record remaining
+     * @param iata    receives the three bytes of the airport code
+     * @param scratch receives the data point fields
+     * @return the data point type, or null if the ordinal is unknown
+     */
+    public static DataPointType decode(ByteBuffer in, byte[] iata, DataPoint scratch) {
+        in.get(iata, 0, 3);
+        int ordinal = in.get() & 0xff;
+        scratch.setMean(in.getDouble());
+        scratch.setFirst(in.getInt());
+        scratch.setSecond(in.getInt());
+        scratch.setThird(in.getInt());
+        scratch.setCount(in.getInt());
+        return ordinal < TYPES.length ? TYPES[ordinal] : null;
+    }
+
+    /**
+     * @return a stored copy of a decoded scratch data point
+     */
+    public static DataPoint copyOf(DataPoint scratch) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(scratch.getMean());
+        dp.setFirst(scratch.getFirst());
+        dp.setSecond(scratch.getSecond());
+        dp.setThird(scratch.getThird());
+        dp.setCount(scratch.getCount());
+        return dp;
+    }
+}
@@ -0,0 +1,259 @@
+package com.crossover.trial.weather.codec;
+
+import org.glassfish.jersey.media.sse.SseFeature;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the responses of the query api with gzip or deflate, whichever the client accepts first in the
+ * order of {@code weather.compression.encodings}.
+ * <p>
+ * Responses are buffered and sent as they are if they are smaller than {@code weather.compression.threshold} bytes,
+ * where compression costs more than it saves. The compressed forms of responses with an ETag are kept in a small
+ * LRU cache, so the hot cached queries are compressed once per change rather than once per request. Streamed
+ * responses are compressed on the fly, except server-sent events which must reach the client as they are written.
+ * <p>
+ * A compressed response's ETag gets the encoding appended, {@code "<tag>-gzip"}, so caches never serve one encoding's
+ * body for the other's; the suffix is stripped from If-None-Match before the endpoints compare it.
+ */
+@Provider
+public class CompressionInterceptor implements ContainerRequestFilter, WriterInterceptor {
+
+    private static final String[] ENCODINGS = System.getProperty("weather.compression.encodings", "gzip,deflate")
+            .toLowerCase(Locale.ROOT).split("\\s*,\\s*");
+
+    private static final int THRESHOLD = Integer.getInteger("weather.compression.threshold", 1024);
+
+    /**
+     * deflate level; the fastest level costs a third of the default's time for about 1.5 times the size
+     */
+    private static final int LEVEL = Integer.getInteger("weather.compression.level", Deflater.BEST_SPEED);
+
+    private static final int CACHE_SIZE = Integer.getInteger("weather.compression.cache", 256);
+
+    /**
+     * compressed responses by encoding and ETag, in access order
+     */
+    private static final Map<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    @Context
+    private HttpHeaders requestHeaders;
+
+    @Context
+    private UriInfo uriInfo;
+
+    /**
+     * Strips the encoding from the tags of If-None-Match, so the endpoints compare them with the tags of their
+     * uncompressed responses.
+     */
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        List<String> tags = request.getHeaders().get(HttpHeaders.IF_NONE_MATCH);
+        if (tags == null) {
+            return;
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            tags.set(i, stripEncoding(tags.get(i)));
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String encoding = uriInfo != null && uriInfo.getPath().startsWith("query")
+                && !isEventStream(context.getMediaType())
+                ? negotiate(requestHeaders.getHeaderString(HttpHeaders.ACCEPT_ENCODING)) : null;
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+        encode(context, encoding);
+    }
+
+    /**
+     * Writes the response with the encoding, or as it is if it is below the threshold. The ETag of a compressed
+     * response gets the encoding as suffix, as its body differs from the uncompressed one's.
+     */
+    static void encode(WriterInterceptorContext context, String encoding) throws IOException {
+        MultivaluedMap<String, Object> headers = context.getHeaders();
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        OutputStream out = context.getOutputStream();
+        Object tag = headers.getFirst(HttpHeaders.ETAG);
+
+        if (context.getEntity() instanceof StreamingOutput) {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+            if (tag != null) {
+                headers.putSingle(HttpHeaders.ETAG, withEncoding(tag, encoding));
+            }
+            // closing the compressed stream finishes it and ends its deflater, the response stream stays open
+            try (DeflaterOutputStream compressed = compress(encoding, new Unclosed(out))) {
+                context.setOutputStream(compressed);
+                context.proceed();
+            }
+            return;
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(THRESHOLD * 2);
+        context.setOutputStream(buffer);
+        context.proceed();
+        if (buffer.size() < THRESHOLD) {
+            buffer.writeTo(out);
+            return;
+        }
+        String key = tag == null ? null : encoding + tag + buffer.size();
+        byte[] bytes = key == null ? null : cached(key);
+        if (bytes == null) {
+            ByteArrayOutputStream compressedBuffer = new ByteArrayOutputStream(buffer.size() / 4);
+            DeflaterOutputStream compressed = compress(encoding, compressedBuffer);
+            buffer.writeTo(compressed);
+            compressed.close();
+            bytes = compressedBuffer.toByteArray();
+            if (key != null) {
+                synchronized (cache) {
+                    cache.put(key, bytes);
+                }
+            }
+        }
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+        if (tag != null) {
+            headers.putSingle(HttpHeaders.ETAG, withEncoding(tag, encoding));
+        }
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        out.write(bytes);
+    }
+
+    private static byte[] cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static boolean isEventStream(MediaType mediaType) {
+        return mediaType != null
+                && SseFeature.SERVER_SENT_EVENTS.equals(mediaType.getType() + "/" + mediaType.getSubtype());
+    }
+
+    /**
+     * @return the entity tag with the encoding appended to its value
+     */
+    static Object withEncoding(Object tag, String encoding) {
+        if (tag instanceof EntityTag) {
+            EntityTag entityTag = (EntityTag) tag;
+            return new EntityTag(entityTag.getValue() + "-" + encoding, entityTag.isWeak());
+        }
+        String value = tag.toString();
+        int end = value.lastIndexOf('"');
+        return end <= 0 ? value + "-" + encoding : value.substring(0, end) + "-" + encoding + value.substring(end);
+    }
+
+    /**
+     * @param tags entity tags of an If-None-Match header
+     * @return the tags without the encoding suffixes {@link #withEncoding(Object, String)} appended
+     */
+    static String stripEncoding(String tags) {
+        for (String encoding : ENCODINGS) {
+            tags = tags.replace("-" + encoding + "\"", "\"");
+        }
+        return tags;
+    }
+
+    /**
+     * @param acceptEncoding the Accept-Encoding request header
+     * @return the first configured encoding the client accepts, null for none
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        String[] accepted = acceptEncoding.toLowerCase(Locale.ROOT).split("\\s*,\\s*");
+        for (String encoding : ENCODINGS) {
+            for (String candidate : accepted) {
+                String[] parts = candidate.trim().split("\\s*;\\s*");
+                if (parts[0].equals(encoding) && quality(parts) > 0) {
+                    return encoding;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the q parameter of an Accept-Encoding entry split at its semicolons, 1 if absent, 0 if malformed
+     */
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parts[i].substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return a stream compressing into out with the http content coding, gzip or deflate (zlib)
+     */
+    public static DeflaterOutputStream compress(String encoding, OutputStream out) throws IOException {
+        if ("gzip".equals(encoding)) {
+            return new GZIPOutputStream(out, 8192) {
+                {
+                    def.setLevel(LEVEL);
+                }
+            };
+        }
+        return new DeflaterOutputStream(out, false) {
+            {
+                def.setLevel(LEVEL);
+            }
+        };
+    }
+
+    /**
+     * The response stream, flushed rather than closed by the compressing stream it is wrapped in.
+     */
+    private static final class Unclosed extends FilterOutputStream {
+
+        Unclosed(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
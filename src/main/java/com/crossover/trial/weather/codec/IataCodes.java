@@ -0,0 +1,47 @@
+package com.crossover.trial.weather.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Canonical strings for three letter IATA codes read from binary input, so decoding a known code allocates nothing.
+ * Codes made of the letters A-Z are packed into a base 26 index of a fixed table; anything else falls back to a
+ * freshly allocated string.
+ */
+public final class IataCodes {
+
+    private static final int SIZE = 26 * 26 * 26;
+
+    /**
+     * canonical instances, filled on first use. Racing writers store equal immutable strings, so no locking is needed
+     */
+    private static final String[] CODES = new String[SIZE];
+
+    private IataCodes() {
+    }
+
+    /**
+     * @return the code formed by the three bytes at the given position
+     */
+    public static String of(byte[] bytes, int offset) {
+        int packed = pack(bytes[offset], bytes[offset + 1], bytes[offset + 2]);
+        if (packed < 0) {
+            return new String(bytes, offset, 3, StandardCharsets.US_ASCII);
+        }
+        String code = CODES[packed];
+        if (code == null) {
+            code = new String(bytes, offset, 3, StandardCharsets.US_ASCII);
+            CODES[packed] = code;
+        }
+        return code;
+    }
+
+    /**
+     * @return the base 26 index of three upper case letters, or -1 if any byte is not in A-Z
+     */
+    public static int pack(byte a, byte b, byte c) {
+        if (a < 'A' || a > 'Z' || b < 'A' || b > 'Z' || c < 'A' || c > 'Z') {
+            return -1;
+        }
+        return ((a - 'A') * 26 + (b - 'A')) * 26 + (c - 'A');
+    }
+}
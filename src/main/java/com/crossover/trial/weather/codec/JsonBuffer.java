@@ -0,0 +1,220 @@
+package com.crossover.trial.weather.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer json is written into. Buffers are reused per thread via {@link JsonCodec#buffer()}, so
+ * writing a message normally allocates nothing.
+ */
+public final class JsonBuffer {
+
+    private static final byte[] DIGITS = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * largest magnitude {@link Double#toString(double)} prints without an exponent
+     */
+    private static final double PLAIN_LIMIT = 1e7;
+
+    private static final long NEGATIVE_ZERO = Double.doubleToRawLongBits(-0.0);
+
+    private byte[] bytes;
+
+    private int length;
+
+    public JsonBuffer(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    /**
+     * @return the backing array, valid up to {@link #length()}
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * @return a copy of the written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    /**
+     * Replaces the content with everything remaining in the stream.
+     */
+    public void readFrom(InputStream in) throws IOException {
+        length = 0;
+        int n;
+        while ((n = in.read(bytes, length, bytes.length - length)) != -1) {
+            length += n;
+            if (length == bytes.length) {
+                ensure(1);
+            }
+        }
+    }
+
+    /**
+     * Appends a single ASCII character.
+     */
+    public JsonBuffer raw(char c) {
+        ensure(1);
+        bytes[length++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends pre-encoded ASCII text such as punctuation and quoted keys.
+     */
+    public JsonBuffer raw(byte[] ascii) {
+        return raw(ascii, 0, ascii.length);
+    }
+
+    /**
+     * Appends a pre-encoded fragment.
+     */
+    public JsonBuffer raw(byte[] source, int offset, int len) {
+        ensure(len);
+        System.arraycopy(source, offset, bytes, length, len);
+        length += len;
+        return this;
+    }
+
+    /**
+     * Appends a quoted and escaped json string, or null.
+     */
+    public JsonBuffer string(String s) {
+        if (s == null) {
+            return nullValue();
+        }
+        ensure(s.length() + 2);
+        bytes[length++] = '"';
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+                ensure(1);
+                bytes[length++] = (byte) c;
+            } else if (c == '"' || c == '\\') {
+                ensure(2);
+                bytes[length++] = '\\';
+                bytes[length++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(6);
+                bytes[length++] = '\\';
+                bytes[length++] = 'u';
+                bytes[length++] = '0';
+                bytes[length++] = '0';
+                bytes[length++] = HEX[c >> 4];
+                bytes[length++] = HEX[c & 0xf];
+            } else {
+                // rare: non ASCII text, encode the remainder char by char
+                return stringTail(s, i);
+            }
+        }
+        ensure(1);
+        bytes[length++] = '"';
+        return this;
+    }
+
+    public JsonBuffer nullValue() {
+        ensure(4);
+        bytes[length++] = 'n';
+        bytes[length++] = 'u';
+        bytes[length++] = 'l';
+        bytes[length++] = 'l';
+        return this;
+    }
+
+    /**
+     * Appends a long in decimal notation.
+     */
+    public JsonBuffer number(long v) {
+        if (v == Long.MIN_VALUE) {
+            return raw(Long.toString(v).getBytes(StandardCharsets.US_ASCII));
+        }
+        ensure(20);
+        if (v < 0) {
+            bytes[length++] = '-';
+            v = -v;
+        }
+        int start = length;
+        do {
+            bytes[length++] = DIGITS[(int) (v % 10)];
+            v /= 10;
+        } while (v != 0);
+        // digits were written backwards
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte tmp = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = tmp;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a double exactly as {@link Double#toString(double)} prints it. Integral values, the common case for
+     * collected means, are written without allocating. NaN and the infinities have no json notation and are
+     * written as null.
+     */
+    public JsonBuffer number(double v) {
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            return nullValue();
+        }
+        if (v == (long) v && Math.abs(v) < PLAIN_LIMIT && Double.doubleToRawLongBits(v) != NEGATIVE_ZERO) {
+            number((long) v);
+            ensure(2);
+            bytes[length++] = '.';
+            bytes[length++] = '0';
+            return this;
+        }
+        return raw(Double.toString(v).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private JsonBuffer stringTail(String s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                raw('\\').raw(c);
+            } else if (c < 0x20) {
+                raw('\\').raw('u').raw('0').raw('0').raw((char) HEX[c >> 4]).raw((char) HEX[c & 0xf]);
+            } else if (c < 0x80) {
+                raw(c);
+            } else {
+                int end = i + 1;
+                if (Character.isHighSurrogate(c) && end < s.length()) {
+                    end++;
+                }
+                raw(s.substring(i, end).getBytes(StandardCharsets.UTF_8));
+                i = end - 1;
+            }
+        }
+        return raw('"');
+    }
+
+    private void ensure(int n) {
+        if (length + n > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reflection free json encoding of {@link DataPoint}, {@link AtmosphericInformation} and {@link Airport}. Field names
+ * and order match what the Jackson provider produced for these entities, nulls included.
+ * <p>
+ * Messages are written into per thread {@link JsonBuffer}s and parsed by per thread {@link JsonParser}s, so the
+ * steady state encodes and decodes without garbage apart from the decoded objects themselves.
+ * <p>
+ * The json form of a data point is cached on the data point when it is first written, so the weather of an
+ * airport is encoded once per update rather than once per response, and a projection to some of the types only
+ * copies the fragments of those types.
+ */
+public final class JsonCodec {
+
+    /**
+     * buffers which grew beyond this size are not kept for reuse
+     */
+    private static final int MAX_RETAINED_BUFFER = 1 << 20;
+
+    /**
+     * the lenient fallback of {@link #parseDataPoint(String)}
+     */
+    private static final Gson gson = new Gson();
+
+    private static final byte[] MEAN = key("mean");
+    private static final byte[] FIRST = key("first");
+    private static final byte[] SECOND = key("second");
+    private static final byte[] THIRD = key("third");
+    private static final byte[] COUNT = key("count");
+    private static final byte[] LAST_UPDATE_TIME = key("lastUpdateTime");
+    private static final byte[] IATA = key("iata");
+    private static final byte[] LATITUDE = key("latitude");
+    private static final byte[] LONGITUDE = key("longitude");
+    private static final byte[] ICAO = key("icao");
+    private static final byte[] CITY = key("city");
+    private static final byte[] COUNTRY = key("country");
+    private static final byte[] ALTITUDE = key("altitude");
+    private static final byte[] TIMEZONE = key("timezone");
+
+    /**
+     * atmospheric information members in Jackson's order, i.e. the field declaration order
+     */
+    private static final DataPointType[] FIELD_ORDER = {DataPointType.TEMPERATURE, DataPointType.WIND,
+            DataPointType.HUMIDITY, DataPointType.PRECIPITATION, DataPointType.PRESSURE, DataPointType.CLOUDCOVER};
+
+    private static final byte[][] TYPE_KEYS = new byte[DataPointType.values().length][];
+
+    static {
+        for (DataPointType type : DataPointType.values()) {
+            TYPE_KEYS[type.ordinal()] = key(fieldName(type));
+        }
+    }
+
+    private static final ThreadLocal<JsonBuffer> BUFFER = ThreadLocal.withInitial(() -> new JsonBuffer(4096));
+
+    private static final ThreadLocal<JsonParser> PARSER = ThreadLocal.withInitial(JsonParser::new);
+
+    private JsonCodec() {
+    }
+
+    /**
+     * @return the json property name of a data point type in {@link AtmosphericInformation}
+     */
+    public static String fieldName(DataPointType type) {
+        switch (type) {
+            case TEMPERATURE:
+                return "temperature";
+            case WIND:
+                return "wind";
+            case HUMIDITY:
+                return "humidity";
+            case PRECIPITATION:
+                return "precipitation";
+            case PRESSURE:
+                return "pressure";
+            case CLOUDCOVER:
+                return "cloudCover";
+            default:
+                throw new IllegalArgumentException("unknown data point type " + type);
+        }
+    }
+
+    /**
+     * @return the calling thread's buffer, reset and ready for writing
+     */
+    public static JsonBuffer buffer() {
+        JsonBuffer buffer = BUFFER.get();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER) {
+            buffer = new JsonBuffer(4096);
+            BUFFER.set(buffer);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * @return the calling thread's parser
+     */
+    public static JsonParser parser() {
+        return PARSER.get();
+    }
+
+    public static void write(JsonBuffer out, DataPoint dp) {
+        if (dp == null) {
+            out.nullValue();
+            return;
+        }
+        byte[] json = dp.cachedJson();
+        if (json != null) {
+            out.raw(json);
+            return;
+        }
+        int start = out.length();
+        out.raw('{');
+        out.raw(MEAN).number(dp.getMean()).raw(',');
+        out.raw(FIRST).number(dp.getFirst()).raw(',');
+        out.raw(SECOND).number(dp.getSecond()).raw(',');
+        out.raw(THIRD).number(dp.getThird()).raw(',');
+        out.raw(COUNT).number(dp.getCount());
+        out.raw('}');
+        dp.cacheJson(Arrays.copyOfRange(out.array(), start, out.length()));
+    }
+
+    public static void write(JsonBuffer out, AtmosphericInformation ai) {
+        write(out, ai, DataPointType.ALL);
+    }
+
+    /**
+     * Writes the atmospheric information with only the data points of the given types, plus the last update time.
+     *
+     * @param types a {@link DataPointType#mask() type mask}
+     */
+    public static void write(JsonBuffer out, AtmosphericInformation ai, int types) {
+        if (ai == null) {
+            out.nullValue();
+            return;
+        }
+        out.raw('{');
+        for (DataPointType type : FIELD_ORDER) {
+            if ((types & type.mask()) == 0) {
+                continue;
+            }
+            out.raw(TYPE_KEYS[type.ordinal()]);
+            write(out, ai.get(type));
+            out.raw(',');
+        }
+        out.raw(LAST_UPDATE_TIME).number(ai.getLastUpdateTime());
+        out.raw('}');
+    }
+
+    public static void write(JsonBuffer out, Airport airport) {
+        if (airport == null) {
+            out.nullValue();
+            return;
+        }
+        out.raw('{');
+        out.raw(IATA).string(airport.getIata()).raw(',');
+        out.raw(LATITUDE).number(airport.getLatitude()).raw(',');
+        out.raw(LONGITUDE).number(airport.getLongitude());
+        // the location details only if known, so airports without them keep their short form
+        if (airport.getIcao() != null) {
+            out.raw(',').raw(ICAO).string(airport.getIcao());
+        }
+        if (airport.getCity() != null) {
+            out.raw(',').raw(CITY).string(airport.getCity());
+        }
+        if (airport.getCountry() != null) {
+            out.raw(',').raw(COUNTRY).string(airport.getCountry());
+        }
+        if (airport.getAltitude() != 0) {
+            out.raw(',').raw(ALTITUDE).number((long) airport.getAltitude());
+        }
+        if (!Double.isNaN(airport.getTimezone())) {
+            out.raw(',').raw(TIMEZONE).number(airport.getTimezone());
+        }
+        out.raw('}');
+    }
+
+    /**
+     * Writes a json array of supported entities.
+     */
+    public static void writeAll(JsonBuffer out, Collection<?> values) {
+        out.raw('[');
+        boolean first = true;
+        for (Object value : values) {
+            if (!first) {
+                out.raw(',');
+            }
+            first = false;
+            writeValue(out, value);
+        }
+        out.raw(']');
+    }
+
+    /**
+     * Writes a json array of atmospheric information projected to the given types.
+     *
+     * @param types a {@link DataPointType#mask() type mask}
+     */
+    public static void writeAll(JsonBuffer out, List<AtmosphericInformation> values, int types) {
+        out.raw('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.raw(',');
+            }
+            write(out, values.get(i), types);
+        }
+        out.raw(']');
+    }
+
+    /**
+     * Writes any supported entity or collection of entities.
+     */
+    public static void writeValue(JsonBuffer out, Object value) {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof AtmosphericInformation) {
+            write(out, (AtmosphericInformation) value);
+        } else if (value instanceof DataPoint) {
+            write(out, (DataPoint) value);
+        } else if (value instanceof Airport) {
+            write(out, (Airport) value);
+        } else if (value instanceof Collection) {
+            writeAll(out, (Collection<?>) value);
+        } else {
+            throw new IllegalArgumentException("unsupported type " + value.getClass());
+        }
+    }
+
+    /**
+     * @return the json text of a supported entity
+     */
+    public static String toJson(Object value) {
+        JsonBuffer out = buffer();
+        writeValue(out, value);
+        return new String(out.array(), 0, out.length(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a data point from json text, as posted to the collector endpoint. Text the strict parser refuses is
+     * parsed again leniently by Gson, as the collector endpoint always did, which accepts e.g. single quotes,
+     * unquoted keys and numbers sent as strings.
+     *
+     * @param json the json text
+     * @return the data point, or null for a json null or empty body
+     * @throws IllegalArgumentException if neither parser accepts the text, with the strict parser's message
+     */
+    public static DataPoint parseDataPoint(String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            return parseDataPointStrictly(json);
+        } catch (IllegalArgumentException e) {
+            try {
+                return gson.fromJson(json, DataPoint.class);
+            } catch (JsonParseException | NumberFormatException lenientFailure) {
+                throw e;
+            }
+        }
+    }
+
+    private static DataPoint parseDataPointStrictly(String json) {
+        JsonBuffer buffer = buffer();
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c >= 0x80) {
+                byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+                return parser().reset(utf8, 0, utf8.length).readDataPoint(new DataPoint());
+            }
+            buffer.raw(c);
+        }
+        return parser().reset(buffer.array(), 0, buffer.length()).readDataPoint(new DataPoint());
+    }
+
+    private static byte[] key(String name) {
+        return ('"' + name + "\":").getBytes(StandardCharsets.US_ASCII);
+    }
+}
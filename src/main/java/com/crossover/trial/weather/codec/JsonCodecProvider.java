@@ -0,0 +1,83 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+
+/**
+ * JAX-RS reader and writer for the weather entities based on {@link JsonCodec}, taking precedence over the
+ * reflection based Jackson provider. Collections are handled when their element type is known from the generic
+ * type, i.e. when the resource returns a {@link javax.ws.rs.core.GenericEntity}.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class JsonCodecProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return type == DataPoint.class || type == AtmosphericInformation.class || type == Airport.class;
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        JsonBuffer body = JsonCodec.buffer();
+        body.readFrom(entityStream);
+        JsonParser parser = JsonCodec.parser().reset(body.array(), 0, body.length());
+        Class<?> target = type;
+        try {
+            if (target == DataPoint.class) {
+                return parser.readDataPoint(new DataPoint());
+            } else if (target == AtmosphericInformation.class) {
+                return parser.readAtmosphericInformation();
+            }
+            return parser.readAirport();
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        if (isReadable(type, genericType, annotations, mediaType)) {
+            return true;
+        }
+        if (Collection.class.isAssignableFrom(type) && genericType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            return arguments.length == 1 && (arguments[0] == AtmosphericInformation.class
+                    || arguments[0] == Airport.class || arguments[0] == DataPoint.class);
+        }
+        return false;
+    }
+
+    @Override
+    public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations,
+                        MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeValue(out, value);
+        out.writeTo(entityStream);
+    }
+}
@@ -0,0 +1,401 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reflection free pull parser for the weather entities, reading UTF-8 json from a byte array. Keys are matched
+ * against pre-encoded names without creating strings; unknown keys are skipped.
+ * <p>
+ * Instances are reusable but not thread safe.
+ */
+public final class JsonParser {
+
+    private static final byte[] MEAN = ascii("mean");
+    private static final byte[] FIRST = ascii("first");
+    private static final byte[] SECOND = ascii("second");
+    private static final byte[] THIRD = ascii("third");
+    private static final byte[] COUNT = ascii("count");
+    private static final byte[] IATA = ascii("iata");
+    private static final byte[] LATITUDE = ascii("latitude");
+    private static final byte[] LONGITUDE = ascii("longitude");
+    private static final byte[] ICAO = ascii("icao");
+    private static final byte[] CITY = ascii("city");
+    private static final byte[] COUNTRY = ascii("country");
+    private static final byte[] ALTITUDE = ascii("altitude");
+    private static final byte[] TIMEZONE = ascii("timezone");
+
+    /**
+     * json keys of the {@link DataPointType}s in {@link AtmosphericInformation}, by ordinal
+     */
+    private static final byte[][] TYPE_KEYS = new byte[DataPointType.values().length][];
+
+    static {
+        for (DataPointType type : DataPointType.values()) {
+            TYPE_KEYS[type.ordinal()] = ascii(JsonCodec.fieldName(type));
+        }
+    }
+
+    /**
+     * exact powers of ten for the fast number path
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private byte[] in;
+
+    private int pos;
+
+    private int end;
+
+    private int keyStart;
+
+    private int keyEnd;
+
+    /**
+     * Starts parsing a new message.
+     */
+    public JsonParser reset(byte[] in, int offset, int length) {
+        this.in = in;
+        this.pos = offset;
+        this.end = offset + length;
+        return this;
+    }
+
+    /**
+     * Reads a data point object into the target.
+     *
+     * @param target receives the fields present in the message
+     * @return the target, or null for a json null
+     */
+    public DataPoint readDataPoint(DataPoint target) {
+        if (readNull()) {
+            return null;
+        }
+        expect('{');
+        while (nextKey()) {
+            if (keyIs(MEAN)) {
+                target.setMean(readNumberOrDefault(target.getMean()));
+            } else if (keyIs(FIRST)) {
+                target.setFirst(readInt(target.getFirst()));
+            } else if (keyIs(SECOND)) {
+                target.setSecond(readInt(target.getSecond()));
+            } else if (keyIs(THIRD)) {
+                target.setThird(readInt(target.getThird()));
+            } else if (keyIs(COUNT)) {
+                target.setCount(readInt(target.getCount()));
+            } else {
+                skipValue();
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Reads an atmospheric information object. The last update time is owned by the server and not read.
+     *
+     * @return a new object, or null for a json null
+     */
+    public AtmosphericInformation readAtmosphericInformation() {
+        if (readNull()) {
+            return null;
+        }
+        AtmosphericInformation ai = new AtmosphericInformation();
+        expect('{');
+        while (nextKey()) {
+            DataPointType type = null;
+            for (DataPointType candidate : DataPointType.values()) {
+                if (keyIs(TYPE_KEYS[candidate.ordinal()])) {
+                    type = candidate;
+                    break;
+                }
+            }
+            if (type == null) {
+                skipValue();
+                continue;
+            }
+            DataPoint dp = readDataPoint(new DataPoint());
+            if (dp != null) {
+                ai.set(type, dp);
+            }
+        }
+        return ai;
+    }
+
+    /**
+     * Reads an airport object.
+     *
+     * @return a new airport, or null for a json null
+     */
+    public Airport readAirport() {
+        if (readNull()) {
+            return null;
+        }
+        String iata = null;
+        String icao = null;
+        String city = null;
+        String country = null;
+        double latitude = 0;
+        double longitude = 0;
+        int altitude = 0;
+        double timezone = Double.NaN;
+        expect('{');
+        while (nextKey()) {
+            if (keyIs(IATA)) {
+                iata = readString();
+            } else if (keyIs(LATITUDE)) {
+                latitude = readNumberOrDefault(0);
+            } else if (keyIs(LONGITUDE)) {
+                longitude = readNumberOrDefault(0);
+            } else if (keyIs(ICAO)) {
+                icao = readString();
+            } else if (keyIs(CITY)) {
+                city = readString();
+            } else if (keyIs(COUNTRY)) {
+                country = readString();
+            } else if (keyIs(ALTITUDE)) {
+                altitude = readInt(0);
+            } else if (keyIs(TIMEZONE)) {
+                timezone = readNumberOrDefault(Double.NaN);
+            } else {
+                skipValue();
+            }
+        }
+        return new Airport(iata, icao, city, country, latitude, longitude, altitude, timezone);
+    }
+
+    /**
+     * Advances to the next key of the current object.
+     *
+     * @return false at the end of the object
+     */
+    private boolean nextKey() {
+        skipWhitespace();
+        if (peek() == ',') {
+            pos++;
+            skipWhitespace();
+        }
+        if (peek() == '}') {
+            pos++;
+            return false;
+        }
+        expect('"');
+        keyStart = pos;
+        checkEnd();
+        while (in[pos] != '"') {
+            if (in[pos] == '\\') {
+                pos++;
+            }
+            pos++;
+            checkEnd();
+        }
+        keyEnd = pos++;
+        expect(':');
+        return true;
+    }
+
+    private boolean keyIs(byte[] name) {
+        if (keyEnd - keyStart != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (in[keyStart + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readNull() {
+        skipWhitespace();
+        if (pos + 4 <= end && in[pos] == 'n' && in[pos + 1] == 'u' && in[pos + 2] == 'l' && in[pos + 3] == 'l') {
+            pos += 4;
+            return true;
+        }
+        return false;
+    }
+
+    private int readInt(int defaultValue) {
+        double value = readNumberOrDefault(defaultValue);
+        if (value != (int) value) {
+            throw error("expected an int");
+        }
+        return (int) value;
+    }
+
+    private double readNumberOrDefault(double defaultValue) {
+        if (readNull()) {
+            return defaultValue;
+        }
+        int start = pos;
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = 0;
+        while (pos < end && in[pos] >= '0' && in[pos] <= '9') {
+            mantissa = mantissa * 10 + (in[pos++] - '0');
+            digits++;
+        }
+        if (pos < end && in[pos] == '.') {
+            pos++;
+            while (pos < end && in[pos] >= '0' && in[pos] <= '9') {
+                mantissa = mantissa * 10 + (in[pos++] - '0');
+                digits++;
+                fraction++;
+            }
+        }
+        boolean exponent = pos < end && (in[pos] == 'e' || in[pos] == 'E');
+        if (exponent) {
+            pos++;
+            if (pos < end && (in[pos] == '+' || in[pos] == '-')) {
+                pos++;
+            }
+            while (pos < end && in[pos] >= '0' && in[pos] <= '9') {
+                pos++;
+            }
+        }
+        if (digits == 0) {
+            throw error("expected a number");
+        }
+        // a mantissa below 2^53 divided by an exact power of ten is correctly rounded
+        if (!exponent && digits <= 15 && fraction < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fraction];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(new String(in, start, pos - start, StandardCharsets.US_ASCII));
+    }
+
+    private String readString() {
+        if (readNull()) {
+            return null;
+        }
+        expect('"');
+        int start = pos;
+        boolean escaped = false;
+        checkEnd();
+        while (in[pos] != '"') {
+            if (in[pos] == '\\') {
+                escaped = true;
+                pos++;
+            }
+            pos++;
+            checkEnd();
+        }
+        String raw = new String(in, start, pos - start, StandardCharsets.UTF_8);
+        pos++;
+        return escaped ? unescape(raw) : raw;
+    }
+
+    private String unescape(String raw) {
+        StringBuilder sb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            switch (e) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 5 > raw.length()) {
+                        throw error("truncated unicode escape");
+                    }
+                    sb.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                default:
+                    sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void skipValue() {
+        skipWhitespace();
+        byte c = peek();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            do {
+                c = in[pos];
+                if (c == '"') {
+                    readString();
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+                pos++;
+                checkEnd();
+            } while (depth > 0);
+        } else {
+            // number or literal
+            while (pos < end && in[pos] != ',' && in[pos] != '}' && in[pos] != ']' && !isWhitespace(in[pos])) {
+                pos++;
+            }
+        }
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (peek() != c) {
+            throw error("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private byte peek() {
+        checkEnd();
+        return in[pos];
+    }
+
+    private void checkEnd() {
+        if (pos >= end) {
+            throw error("unexpected end of input");
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && isWhitespace(in[pos])) {
+            pos++;
+        }
+    }
+
+    private static boolean isWhitespace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at offset " + pos);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,70 @@
+package com.crossover.trial.weather.codec;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Airport codes of up to six letters and digits packed into an int, e.g. three letter IATA and four letter ICAO
+ * codes. Each character is a base 37 digit from 1 (A) to 36 (9), the first character the most significant, so the
+ * packed value of a code is never 0 and the int is read as unsigned.
+ */
+public final class PackedCodes {
+
+    /**
+     * the longest code that can be packed
+     */
+    public static final int MAX_LENGTH = 6;
+
+    private static final int BASE = 37;
+
+    private PackedCodes() {
+    }
+
+    /**
+     * @return the packed code, or 0 if it is empty, too long or has characters other than A-Z and 0-9
+     */
+    public static int pack(String code) {
+        if (code == null || code.isEmpty() || code.length() > MAX_LENGTH) {
+            return 0;
+        }
+        long packed = 0;
+        for (int i = 0; i < code.length(); i++) {
+            int digit = digit(code.charAt(i));
+            if (digit == 0) {
+                return 0;
+            }
+            packed = packed * BASE + digit;
+        }
+        return (int) packed;
+    }
+
+    /**
+     * @return the code, a canonical instance for three letter codes; null for 0
+     */
+    public static String unpack(int packed) {
+        long value = packed & 0xffffffffL;
+        if (value == 0) {
+            return null;
+        }
+        byte[] chars = new byte[MAX_LENGTH];
+        int start = MAX_LENGTH;
+        while (value > 0) {
+            int digit = (int) (value % BASE);
+            chars[--start] = (byte) (digit <= 26 ? 'A' + digit - 1 : '0' + digit - 27);
+            value /= BASE;
+        }
+        if (MAX_LENGTH - start == 3) {
+            return IataCodes.of(chars, start);
+        }
+        return new String(chars, start, MAX_LENGTH - start, StandardCharsets.US_ASCII);
+    }
+
+    private static int digit(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 1;
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 27;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.crossover.trial.weather.codec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dense int ids for a small set of repeated strings, e.g. country and city names, so records keep an int instead
+ * of a string and equal names share one instance. Id 0 stands for null; ids are never reused.
+ */
+public final class StringDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] names = new String[16];
+
+    private int size = 1;
+
+    /**
+     * @return the id of the name, added if new; 0 for null
+     */
+    public int intern(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : add(name);
+    }
+
+    private synchronized int add(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (size == current.length) {
+            String[] grown = new String[size * 2];
+            System.arraycopy(current, 0, grown, 0, size);
+            current = grown;
+        }
+        current[size] = name;
+        // publishes the name before its id
+        names = current;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * @return the id of the name, -1 if it was never added; 0 for null
+     */
+    public int id(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return the name of the id, null for 0 or an unknown id
+     */
+    public String name(int id) {
+        String[] current = names;
+        return id <= 0 || id >= current.length ? null : current[id];
+    }
+
+    /**
+     * @return number of names
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -1,5 +1,6 @@
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
 import com.crossover.trial.weather.entity.Airport;
 import com.crossover.trial.weather.entity.DataPointType;
 
@@ -31,7 +32,8 @@ public interface WeatherCollectorEndpoint {
      * @param pointType the point type, {@link DataPointType} for a complete list
      * @param datapointJson a json dict containing mean, first, second, thrid and count keys
      *
-     * @return HTTP Response code
+     * @return HTTP Response code; with asynchronous ingestion 202 once the data point is queued and 429 while the
+     * queue is full
      */
     @POST
     @Path("/weather/{iata}/{pointType}")
@@ -39,6 +41,19 @@ public interface WeatherCollectorEndpoint {
                            @PathParam("pointType") String pointType,
                            String datapointJson);
 
+    /**
+     * Update the atmospheric information of any number of airports with binary encoded data points. The body is a
+     * sequence of fixed width records, see {@link BinaryDataPointCodec} for the layout.
+     *
+     * @param records the concatenated binary records
+     * @return HTTP Response code and a json dict with the number of accepted and rejected records
+     */
+    @POST
+    @Path("/weather")
+    @Consumes(BinaryDataPointCodec.MEDIA_TYPE)
+    @Produces(MediaType.APPLICATION_JSON)
+    Response updateWeatherBinary(byte[] records);
+
     /**
      * Return a list of known airports as a json formatted list
      *
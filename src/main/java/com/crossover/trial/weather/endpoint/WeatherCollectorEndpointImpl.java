@@ -1,20 +1,29 @@
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.codec.JsonCodec;
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.ingest.BinaryIngestor;
+import com.crossover.trial.weather.ingest.IngestionPipeline;
 import com.crossover.trial.weather.entity.Airport;
 import com.crossover.trial.weather.entity.AtmosphericInformation;
 import com.crossover.trial.weather.entity.DataPoint;
 import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.service.AirportRegistry;
 import com.crossover.trial.weather.service.AirportWeatherService;
-import com.google.gson.Gson;
 
 import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  * A REST implementation of the WeatherCollector API. Accessible only to airports weather collection
@@ -29,7 +38,16 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
 
     private static final AirportWeatherService service = AirportWeatherService.getInstance();
 
-    private static final Gson gson = new Gson();
+    /**
+     * not part of the JAX-RS 2.0 status enum
+     */
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * the request's query parameters, null when not called through jersey
+     */
+    @Context
+    private UriInfo uriInfo;
 
     @Override
     public Response ping() {
@@ -40,18 +58,79 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
     public Response updateWeather(String iataCode,
                                   String pointType,
                                   String datapointJson) {
+        DataPoint dataPoint;
         try {
-            service.addDataPoint(iataCode, pointType, gson.fromJson(datapointJson, DataPoint.class));
+            dataPoint = JsonCodec.parseDataPoint(datapointJson);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+        IngestionPipeline pipeline = IngestionPipeline.getInstance();
+        if (pipeline != null) {
+            return enqueue(pipeline, iataCode, pointType, dataPoint);
+        }
+        try {
+            service.addDataPoint(iataCode, pointType, dataPoint);
         } catch (WeatherException e) {
             e.printStackTrace();
         }
         return Response.status(Response.Status.OK).build();
     }
 
+    /**
+     * Validates a data point on the request thread and leaves applying it to the ingestion pipeline.
+     *
+     * @return 202 once queued, 429 if the pipeline is full
+     */
+    private Response enqueue(IngestionPipeline pipeline, String iataCode, String pointType, DataPoint dataPoint) {
+        DataPointType type;
+        try {
+            type = AirportWeatherService.toDataPointType(pointType);
+        } catch (WeatherException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
+        if (dataPoint == null || !type.isValid(dataPoint)) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("invalid data point").build();
+        }
+        if (AirportWeatherService.findAirportData(iataCode) == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (!pipeline.offer(iataCode, type, dataPoint)) {
+            return Response.status(TOO_MANY_REQUESTS).header("Retry-After", "1").build();
+        }
+        return Response.status(Response.Status.ACCEPTED).build();
+    }
 
+    @Override
+    public Response updateWeatherBinary(byte[] records) {
+        BinaryIngestor ingestor = BinaryIngestor.forCurrentThread();
+        ingestor.ingest(ByteBuffer.wrap(records));
+        Map<String, Integer> result = new HashMap<>();
+        result.put("accepted", ingestor.getAccepted());
+        result.put("rejected", ingestor.getRejected());
+        return Response.status(Response.Status.OK).entity(result).build();
+    }
+
+    /**
+     * Lists the IATA codes of the known airports, only those of a country or city if the query parameter country
+     * or city is given.
+     */
     @Override
     public Response getAirports() {
-        Set<String> returnValue = service.airports.stream().map(Airport::getIata).collect(Collectors.toSet());
+        MultivaluedMap<String, String> parameters = uriInfo == null ? null : uriInfo.getQueryParameters();
+        String country = parameters == null ? null : parameters.getFirst("country");
+        String city = parameters == null ? null : parameters.getFirst("city");
+        Iterable<AirportRegistry.Record> records = AirportWeatherService.registry;
+        if (city != null) {
+            records = AirportWeatherService.registry.findByCity(city);
+        } else if (country != null) {
+            records = AirportWeatherService.registry.findByCountry(country);
+        }
+        Set<String> returnValue = new HashSet<>();
+        for (AirportRegistry.Record record : records) {
+            if (country == null || country.equals(record.getAirport().getCountry())) {
+                returnValue.add(record.getAirport().getIata());
+            }
+        }
         return Response.status(Response.Status.OK).entity(returnValue).build();
     }
 
@@ -62,17 +141,35 @@ public class WeatherCollectorEndpointImpl implements WeatherCollectorEndpoint {
         return Response.status(Response.Status.OK).entity(ad).build();
     }
 
+    /**
+     * Adds an airport, with the optional query parameters icao, city, country, altitude in feet and timezone in
+     * hours from UTC.
+     */
     @Override
     public Response addAirport(String iataCode, String latString, String longString) {
-        service.saveAirport(iataCode, Double.valueOf(latString), Double.valueOf(longString));
+        MultivaluedMap<String, String> parameters = uriInfo == null ? null : uriInfo.getQueryParameters();
+        try {
+            if (parameters == null) {
+                service.saveAirport(iataCode, Double.valueOf(latString), Double.valueOf(longString));
+            } else {
+                String altitude = parameters.getFirst("altitude");
+                String timezone = parameters.getFirst("timezone");
+                service.saveAirport(new Airport(iataCode, parameters.getFirst("icao"), parameters.getFirst("city"),
+                        parameters.getFirst("country"), Double.valueOf(latString), Double.valueOf(longString),
+                        altitude == null ? 0 : Integer.parseInt(altitude),
+                        timezone == null ? Double.NaN : Double.parseDouble(timezone)));
+            }
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build();
+        }
         return Response.status(Response.Status.OK).build();
     }
 
     @Override
     public Response deleteAirport(String iataCode) {
-        int idx = service.getAirportDataIdx(iataCode);
-        service.airports.remove(service.airports.get(idx));
-        service.atmosphericInformation.remove(service.atmosphericInformation.get(idx));
+        if (!service.deleteAirport(iataCode)) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
         return Response.status(Response.Status.OK).build();
     }
 
@@ -1,11 +1,15 @@
 package com.crossover.trial.weather.endpoint;
 
 import com.crossover.trial.weather.entity.AtmosphericInformation;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -27,6 +31,29 @@ public interface WeatherQueryEndpoint {
     @Path("/ping")
     String ping();
 
+    /**
+     * Retrieve the request statistics of this node as mergeable sketches: a Count-Min sketch of requested IATA codes
+     * and a fixed layout radius histogram. Snapshots of several nodes can be summed up cell by cell.
+     *
+     * @return a JSON formatted {@link com.crossover.trial.weather.stats.StatsSnapshot}
+     */
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    String stats();
+
+    /**
+     * Retrieve the most requested airports and (iata, radius) queries. Counts come from a constant memory heavy
+     * hitter summary; the true count of each entry lies between count - error and count.
+     *
+     * @param k the maximum number of airports and queries to return
+     * @return a JSON formatted dict with "airports", "queries" and "total"
+     */
+    @GET
+    @Path("/top")
+    @Produces(MediaType.APPLICATION_JSON)
+    String top(@QueryParam("k") @DefaultValue("10") int k);
+
     /**
      * Retrieve the most up to date atmospheric information from the given airports and other airports in the given
      * radius.
@@ -41,4 +68,102 @@ public interface WeatherQueryEndpoint {
     @Path("/weather/{iata}/{radius}")
     @Produces(MediaType.APPLICATION_JSON)
     Response weather(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve a summary of the weather within a radius of an airport instead of the individual airports: per data
+     * point type the number of reporting airports and the mean, min, max and distance weighted mean of their means.
+     *
+     * @param iata         the three letter code of the airport in the center
+     * @param radiusString the radius in km
+     * @return an HTTP Response and a json dict with "airports" and one entry per reported data point type
+     */
+    @GET
+    @Path("/aggregate/{iata}/{radius}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response aggregate(@PathParam("iata") String iata, @PathParam("radius") String radiusString);
+
+    /**
+     * Retrieve the atmospheric information of the airports within a radius of any coordinate.
+     *
+     * @param latitude  latitude of the center in degrees
+     * @param longitude longitude of the center in degrees
+     * @param radius    the radius in km
+     * @return an HTTP Response and a streamed json list of {"airport", "weather"}
+     */
+    @GET
+    @Path("/point/{lat}/{long}/{radius}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response point(@PathParam("lat") double latitude, @PathParam("long") double longitude,
+                   @PathParam("radius") double radius);
+
+    /**
+     * Retrieve the atmospheric information of the airports inside a latitude/longitude box. A box with a western
+     * longitude greater than its eastern longitude crosses the antimeridian.
+     *
+     * @return an HTTP Response and a streamed json list of {"airport", "weather"}
+     */
+    @GET
+    @Path("/bbox/{minLat}/{minLong}/{maxLat}/{maxLong}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response box(@PathParam("minLat") double minLatitude, @PathParam("minLong") double minLongitude,
+                 @PathParam("maxLat") double maxLatitude, @PathParam("maxLong") double maxLongitude);
+
+    /**
+     * Retrieve the weather of a web mercator map tile. Tiles from the detail zoom on list their airports, lower
+     * zoom tiles summarize the weather of the smaller tiles they are made of.
+     *
+     * @param z zoom level
+     * @param x tile column, from the west
+     * @param y tile row, from the north
+     * @return an HTTP Response and a json dict with z, x, y and either "airports", a list of {"airport", "weather"},
+     * or "cellZoom" and "cells", a list of {"x", "y", "summary"}
+     */
+    @GET
+    @Path("/tile/{z}/{x}/{y}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response tile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y);
+
+    /**
+     * Retrieve the atmospheric information of the airports along a route.
+     *
+     * @param path  the route as "lat,long;lat,long;..." connected by great circle segments
+     * @param width the maximum distance from the route in km
+     * @return an HTTP Response and a streamed json list of {"airport", "weather"}
+     */
+    @GET
+    @Path("/corridor")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response corridor(@QueryParam("path") String path, @QueryParam("width") @DefaultValue("50") double width);
+
+    /**
+     * Retrieve the k airports closest to an airport, the airport itself included, optionally limited to a maximum
+     * distance and to airports with recently updated weather.
+     *
+     * @param iata        the three letter code of the airport to search around
+     * @param k           the maximum number of airports to return
+     * @param maxDistance the maximum distance in km, unlimited if omitted
+     * @param maxAge      only airports whose weather was updated within this many seconds, any if omitted
+     * @return an HTTP Response and a json list of {"airport", "distance", "weather"}, closest first
+     */
+    @GET
+    @Path("/nearest/{iata}/{k}")
+    @Produces(MediaType.APPLICATION_JSON)
+    Response nearest(@PathParam("iata") String iata, @PathParam("k") int k,
+                     @QueryParam("maxDistance") Double maxDistance, @QueryParam("maxAge") Long maxAge);
+
+    /**
+     * Subscribe to weather changes of the airports within the given radius of an airport. Changes are pushed as
+     * server-sent events named "weather" carrying {"iata", "type", "dataPoint"}. A client that can not keep up
+     * receives only the latest value per airport and data point type.
+     *
+     * @param iata         the three letter code of the airport in the center
+     * @param radiusString the radius in km
+     * @param types        comma separated data point types to subscribe to, all types if omitted
+     * @return the event stream
+     */
+    @GET
+    @Path("/subscribe/{iata}/{radius}")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    EventOutput subscribe(@PathParam("iata") String iata, @PathParam("radius") String radiusString,
+                          @QueryParam("types") String types);
 }
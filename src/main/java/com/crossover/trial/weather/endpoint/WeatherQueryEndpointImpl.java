@@ -1,15 +1,36 @@
 package com.crossover.trial.weather.endpoint;
 
+import com.crossover.trial.weather.admission.QueryAdmission;
+import com.crossover.trial.weather.codec.AirportWeatherStreamingOutput;
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
 import com.crossover.trial.weather.entity.Airport;
 import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.MapTile;
 import com.crossover.trial.weather.service.AirportWeatherService;
+import com.crossover.trial.weather.subscription.SubscriptionManager;
 import com.google.gson.Gson;
+import org.glassfish.jersey.media.sse.EventOutput;
 
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -30,6 +51,39 @@ public class WeatherQueryEndpointImpl implements WeatherQueryEndpoint {
 
     protected static final AirportWeatherService service = AirportWeatherService.getInstance();
 
+    /**
+     * maximum number of points of a corridor query's route
+     */
+    private static final int MAX_ROUTE_POINTS = 1000;
+
+    private static final byte[] AIRPORT_KEY = "{\"airport\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DISTANCE_KEY = ",\"distance\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WEATHER_KEY = ",\"weather\":".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * response header with the change sequence number a weather response is current as of, to be passed as since
+     * by the next poll
+     */
+    public static final String SEQUENCE_HEADER = "X-Weather-Sequence";
+
+    /**
+     * response header of a weather response sampled from every n-th airport of the search because the query
+     * exceeded the cost budget, with n as its value
+     */
+    public static final String SAMPLE_HEADER = "X-Weather-Sample";
+
+    /**
+     * the request's query parameters, null when not called through jersey
+     */
+    @Context
+    private UriInfo uriInfo;
+
+    /**
+     * evaluates If-None-Match, null when not called through jersey
+     */
+    @Context
+    private Request request;
+
     /**
      * Retrieve service health including total size of valid data points and request frequency information.
      *
@@ -40,17 +94,328 @@ public class WeatherQueryEndpointImpl implements WeatherQueryEndpoint {
         return gson.toJson(service.ping());
     }
 
+    /**
+     * Retrieve the mergeable request statistics of this node.
+     *
+     * @return the statistics sketches as a string
+     */
+    @Override
+    public String stats() {
+        return gson.toJson(service.stats());
+    }
+
+    /**
+     * Retrieve the top k requested airports and queries.
+     *
+     * @param k the maximum number of entries per list
+     * @return the heavy hitters as a string
+     */
+    @Override
+    public String top(int k) {
+        return gson.toJson(service.topRequests(k));
+    }
+
     /**
      * Given a query in json format {'iata': CODE, 'radius': km} extracts the requested airports information and
      * return a list of matching atmosphere information.
      *
-     * @param iata         the iataCode
+     * The optional query parameter types, e.g. {@code ?types=wind,pressure}, projects the response to these data
+     * point types and leaves out the airports in the radius without data of any of them. The optional query
+     * parameter since only returns the airports which changed after the sequence number a previous response
+     * reported in its {@link #SEQUENCE_HEADER} header. Responses carry an ETag derived from the versions of the
+     * returned data, so a poll with a matching If-None-Match is answered by 304 without a body. The center may be
+     * given by its ICAO code, and the optional query parameter country only returns the airports of that country.
+     * <p>
+     * Queries predicted to examine more airports than the budget of the {@link AirportWeatherService#admission}
+     * are refused with 503, sampled or deferred to a low priority thread.
+     *
+     * @param code         the iataCode or the ICAO code
      * @param radiusString the radius in km
      * @return a list of atmospheric information
      */
     @Override
-    public Response weather(String iata, String radiusString) {
-        return Response.status(Response.Status.OK).entity(service.getWeather(iata, radiusString)).build();
+    public Response weather(String code, String radiusString) {
+        String iata = AirportWeatherService.toIata(code);
+        int mask = DataPointType.ALL;
+        long since = 0;
+        String country = null;
+        if (uriInfo != null) {
+            MultivaluedMap<String, String> parameters = uriInfo.getQueryParameters();
+            country = parameters.getFirst("country");
+            String types = parameters.getFirst("types");
+            String sinceString = parameters.getFirst("since");
+            try {
+                if (types != null && !types.isEmpty()) {
+                    mask = 0;
+                    for (DataPointType type : parseTypes(types)) {
+                        mask |= type.mask();
+                    }
+                }
+                since = sinceString == null || sinceString.isEmpty() ? 0 : Long.parseLong(sinceString);
+            } catch (BadRequestException | NumberFormatException e) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+        }
+        // read before the query, so no change after it is missed by the next poll
+        long sequence = AtmosphericInformation.currentSequence();
+        QueryAdmission admission = AirportWeatherService.admission;
+        long cost = service.estimateCost(iata, radiusString, country);
+        int types = mask;
+        long changedSince = since;
+        String inCountry = country;
+        int stride = admission.sampleStride(cost);
+        List<AtmosphericInformation> weather;
+        try {
+            weather = admission.execute(cost,
+                    () -> service.getWeather(iata, radiusString, types, changedSince, inCountry, stride));
+        } catch (RejectedExecutionException e) {
+            return Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", "1").build();
+        }
+
+        EntityTag tag = entityTag(weather, mask, since);
+        Response.ResponseBuilder notModified = request == null ? null : request.evaluatePreconditions(tag);
+        if (notModified != null) {
+            return notModified.tag(tag).header(SEQUENCE_HEADER, sequence).build();
+        }
+        Response.ResponseBuilder response = Response.status(Response.Status.OK)
+                .tag(tag)
+                .header(SEQUENCE_HEADER, sequence);
+        if (stride > 1) {
+            response.header(SAMPLE_HEADER, stride);
+        }
+        if (mask != DataPointType.ALL) {
+            JsonBuffer out = JsonCodec.buffer();
+            JsonCodec.writeAll(out, weather, mask);
+            return response.entity(out.toByteArray()).build();
+        }
+        // the generic type lets the json codec provider serialize the list
+        return response.entity(new GenericEntity<List<AtmosphericInformation>>(weather) {
+        }).build();
+    }
+
+    /**
+     * @return a tag which changes whenever an airport of the response changes, enters or leaves the response
+     */
+    private static EntityTag entityTag(List<AtmosphericInformation> weather, int mask, long since) {
+        long hash = 31 * mask + since;
+        for (AtmosphericInformation ai : weather) {
+            // a version identifies a change, the type mask tells apart copies without expired data points
+            hash = hash * 0x100000001b3L + ai.version();
+            hash = hash * 0x100000001b3L + ai.typeMask();
+        }
+        return new EntityTag(Long.toHexString(hash) + "-" + weather.size());
+    }
+
+    /**
+     * Retrieve the aggregated weather around an airport.
+     *
+     * @param iata         the iataCode of the center
+     * @param radiusString the radius in km
+     * @return the weather summary as json
+     */
+    @Override
+    public Response aggregate(String iata, String radiusString) {
+        Airport center = AirportWeatherService.findAirportData(iata);
+        if (center == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        double radius;
+        try {
+            radius = Double.parseDouble(radiusString);
+        } catch (NumberFormatException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (!(radius >= 0)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(gson.toJson(service.aggregateWeather(center, radius).summary()))
+                .build();
+    }
+
+    /**
+     * Retrieve the weather around a coordinate.
+     *
+     * @param latitude  center latitude
+     * @param longitude center longitude
+     * @param radius    radius in km
+     * @return a streamed list of airports and their weather
+     */
+    @Override
+    public Response point(double latitude, double longitude, double radius) {
+        if (!isLatitude(latitude) || !isLongitude(longitude) || !(radius >= 0)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(new AirportWeatherStreamingOutput(
+                        visitor -> service.forEachNear(latitude, longitude, radius, visitor)))
+                .build();
+    }
+
+    /**
+     * Retrieve the weather inside a box.
+     *
+     * @return a streamed list of airports and their weather
+     */
+    @Override
+    public Response box(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        if (!isLatitude(minLatitude) || !isLatitude(maxLatitude) || minLatitude > maxLatitude
+                || !isLongitude(minLongitude) || !isLongitude(maxLongitude)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK)
+                .entity(new AirportWeatherStreamingOutput(visitor -> service.forEachInBox(minLatitude, minLongitude,
+                        maxLatitude, maxLongitude, visitor)))
+                .build();
+    }
+
+    /**
+     * Retrieve the weather of a map tile, served from the {@link AirportWeatherService#tileCache}.
+     *
+     * @param z zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return the tile as json
+     */
+    @Override
+    public Response tile(int z, int x, int y) {
+        MapTile tile;
+        try {
+            tile = new MapTile(z, x, y);
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        return Response.status(Response.Status.OK).entity(service.tile(tile)).build();
+    }
+
+    /**
+     * Retrieve the weather along a route.
+     *
+     * @param path  "lat,long;lat,long;..."
+     * @param width distance from the route in km
+     * @return a streamed list of airports and their weather
+     */
+    @Override
+    public Response corridor(String path, double width) {
+        if (path == null || path.isEmpty() || !(width >= 0)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        String[] points = path.split(";");
+        if (points.length > MAX_ROUTE_POINTS) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        double[] latitudes = new double[points.length];
+        double[] longitudes = new double[points.length];
+        for (int i = 0; i < points.length; i++) {
+            String[] coordinates = points[i].split(",");
+            try {
+                latitudes[i] = Double.parseDouble(coordinates[0].trim());
+                longitudes[i] = Double.parseDouble(coordinates[1].trim());
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+            if (coordinates.length != 2 || !isLatitude(latitudes[i]) || !isLongitude(longitudes[i])) {
+                return Response.status(Response.Status.BAD_REQUEST).build();
+            }
+        }
+        return Response.status(Response.Status.OK)
+                .entity(new AirportWeatherStreamingOutput(
+                        visitor -> service.forEachInCorridor(latitudes, longitudes, width, visitor)))
+                .build();
     }
 
+    private static boolean isLatitude(double latitude) {
+        return latitude >= -90 && latitude <= 90;
+    }
+
+    private static boolean isLongitude(double longitude) {
+        return longitude >= -180 && longitude <= 180;
+    }
+
+    /**
+     * Retrieve the k nearest airports with their weather.
+     *
+     * @param iata        the iataCode of the center
+     * @param k           the maximum number of airports
+     * @param maxDistance the maximum distance in km, may be null
+     * @param maxAge      the maximum age of the weather in seconds, may be null
+     * @return a json list of airports, distances and weather
+     */
+    @Override
+    public Response nearest(String iata, int k, Double maxDistance, Long maxAge) {
+        Airport center = AirportWeatherService.findAirportData(iata);
+        if (center == null) {
+            return Response.status(Response.Status.NOT_FOUND).build();
+        }
+        if (k <= 0 || (maxDistance != null && !(maxDistance >= 0)) || (maxAge != null && maxAge < 0)) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        List<AirportGridIndex.Neighbor> nearest = service.findNearest(center, k,
+                maxDistance == null ? Double.POSITIVE_INFINITY : maxDistance,
+                maxAge == null ? 0 : TimeUnit.SECONDS.toMillis(maxAge));
+
+        JsonBuffer out = JsonCodec.buffer();
+        out.raw('[');
+        for (int i = 0; i < nearest.size(); i++) {
+            AirportGridIndex.Neighbor neighbor = nearest.get(i);
+            if (i > 0) {
+                out.raw(',');
+            }
+            out.raw(AIRPORT_KEY);
+            JsonCodec.write(out, neighbor.getAirport());
+            out.raw(DISTANCE_KEY).number(neighbor.getDistance());
+            out.raw(WEATHER_KEY);
+            JsonCodec.write(out, neighbor.getWeather());
+            out.raw('}');
+        }
+        out.raw(']');
+        return Response.status(Response.Status.OK).entity(out.toByteArray()).build();
+    }
+
+    /**
+     * Opens a server-sent event stream of the weather changes around an airport.
+     *
+     * @param iata         the iataCode of the center
+     * @param radiusString the radius in km
+     * @param types        comma separated data point types, may be null
+     * @return the event stream
+     */
+    @Override
+    public EventOutput subscribe(String iata, String radiusString, String types) {
+        Airport center = AirportWeatherService.findAirportData(iata);
+        if (center == null) {
+            throw new NotFoundException("unknown airport " + iata);
+        }
+        double radius;
+        try {
+            radius = Double.parseDouble(radiusString);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("invalid radius " + radiusString);
+        }
+        if (!(radius >= 0)) {
+            throw new BadRequestException("invalid radius " + radiusString);
+        }
+        List<DataPointType> dataPointTypes = types == null || types.isEmpty()
+                ? Collections.emptyList() : parseTypes(types);
+        EventOutput output = new EventOutput();
+        SubscriptionManager.getInstance().subscribe(center, radius, dataPointTypes, output);
+        return output;
+    }
+
+    /**
+     * @param types comma separated data point type names, case insensitive
+     * @return the types
+     * @throws BadRequestException if a name is not a data point type
+     */
+    private static List<DataPointType> parseTypes(String types) {
+        List<DataPointType> dataPointTypes = new ArrayList<>();
+        for (String type : types.split(",")) {
+            try {
+                dataPointTypes.add(AirportWeatherService.toDataPointType(type.trim()));
+            } catch (WeatherException e) {
+                throw new BadRequestException(e.getMessage());
+            }
+        }
+        return dataPointTypes;
+    }
 }
@@ -25,10 +25,45 @@ public class Airport {
      */
     private final double longitude;
 
+    /**
+     * the four letter ICAO code, null if unknown
+     */
+    private final String icao;
+
+    /**
+     * the city served, null if unknown
+     */
+    private final String city;
+
+    /**
+     * the country, null if unknown
+     */
+    private final String country;
+
+    /**
+     * altitude in feet
+     */
+    private final int altitude;
+
+    /**
+     * hours offset from UTC, NaN if unknown
+     */
+    private final double timezone;
+
     public Airport(String iata, double latitude, double longitude) {
+        this(iata, null, null, null, latitude, longitude, 0, Double.NaN);
+    }
+
+    public Airport(String iata, String icao, String city, String country, double latitude, double longitude,
+                   int altitude, double timezone) {
         this.iata = iata;
+        this.icao = icao;
+        this.city = city;
+        this.country = country;
         this.latitude = latitude;
         this.longitude = longitude;
+        this.altitude = altitude;
+        this.timezone = timezone;
     }
 
     public String getIata() {
@@ -43,6 +78,26 @@ public class Airport {
         return longitude;
     }
 
+    public String getIcao() {
+        return icao;
+    }
+
+    public String getCity() {
+        return city;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    public int getAltitude() {
+        return altitude;
+    }
+
+    public double getTimezone() {
+        return timezone;
+    }
+
 
     public String toString() {
         return ReflectionToStringBuilder.toString(this, ToStringStyle.NO_CLASS_NAME_STYLE);
@@ -55,4 +110,8 @@ public class Airport {
 
         return false;
     }
+
+    public int hashCode() {
+        return getIata() == null ? 0 : getIata().hashCode();
+    }
 }
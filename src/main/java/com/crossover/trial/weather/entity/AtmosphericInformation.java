@@ -2,6 +2,11 @@ package com.crossover.trial.weather.entity;
 
 
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.stats.TDigest;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * encapsulates sensor information for a particular location
@@ -43,6 +48,51 @@ public class AtmosphericInformation {
      */
     private long lastUpdateTime;
 
+    /**
+     * global change sequence, advanced by every update and expiry of any airport's data. A change draws its number
+     * from {@link #ISSUED_SEQUENCE} without locking; the published sequence only advances over a number once the
+     * changes of it and of all lower numbers are written, so a reader who saw sequence n also sees all changes up to
+     * n.
+     */
+    private static final AtomicLong CHANGE_SEQUENCE = new AtomicLong();
+
+    private static final AtomicLong ISSUED_SEQUENCE = new AtomicLong();
+
+    /**
+     * numbers of the written but not yet published changes, at their number modulo the size. Numbers in flight are
+     * bounded by the number of writing threads, far below the size.
+     */
+    private static final AtomicLongArray WRITTEN_SEQUENCES = new AtomicLongArray(1024);
+
+    /**
+     * centroids of the digest behind each merged data point, see {@link #mergeInfo(DataPointType, DataPoint)}
+     */
+    private static final int DIGEST_CAPACITY = Integer.getInteger("weather.merge.centroids", 32);
+
+    private static final AtomicIntegerFieldUpdater<AtmosphericInformation> EXPIRY_SCHEDULED =
+            AtomicIntegerFieldUpdater.newUpdater(AtmosphericInformation.class, "expiryScheduled");
+
+    /**
+     * update time of each data point by {@link DataPointType} ordinal, 0 if unknown; not part of the json form.
+     * Allocated by the first update, as most airports of a large dataset never report.
+     */
+    private transient volatile long[] updateTimes;
+
+    /**
+     * bit set of the {@link DataPointType} ordinals with a pending expiry timer
+     */
+    private transient volatile int expiryScheduled;
+
+    /**
+     * the change sequence number of the last change to this data, 0 if never changed
+     */
+    private transient volatile long version;
+
+    /**
+     * digest of the merged data points by {@link DataPointType} ordinal, allocated by the first merge of a type
+     */
+    private transient TDigest[] digests;
+
     public AtmosphericInformation() {
 
     }
@@ -113,7 +163,57 @@ public class AtmosphericInformation {
         this.lastUpdateTime = lastUpdateTime;
     }
 
-    public void updateInfo(DataPointType type, DataPoint dataPoint) throws WeatherException {
+    /**
+     * @return true if at least one data point was collected
+     */
+    public boolean hasData() {
+        return temperature != null || wind != null || humidity != null || precipitation != null || pressure != null
+                || cloudCover != null;
+    }
+
+    /**
+     * @return the {@link DataPointType#mask() type mask} of the collected data points
+     */
+    public int typeMask() {
+        int mask = 0;
+        for (DataPointType type : DataPointType.values()) {
+            if (get(type) != null) {
+                mask |= type.mask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @param type the data point type
+     * @return the current data point of the given type, or null if none was collected yet
+     */
+    public DataPoint get(DataPointType type) {
+        switch (type) {
+            case WIND:
+                return wind;
+            case TEMPERATURE:
+                return temperature;
+            case HUMIDITY:
+                return humidity;
+            case CLOUDCOVER:
+                return cloudCover;
+            case PRESSURE:
+                return pressure;
+            case PRECIPITATION:
+                return precipitation;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Replaces the data point of the given type without touching the last update time, e.g. when decoding.
+     *
+     * @param type      the data point type
+     * @param dataPoint the new data point, may be null
+     */
+    public void set(DataPointType type, DataPoint dataPoint) {
         switch (type) {
             case WIND:
                 this.setWind(dataPoint);
@@ -134,8 +234,188 @@ public class AtmosphericInformation {
                 this.setPrecipitation(dataPoint);
                 break;
             default:
-                throw new WeatherException("couldn't update atmospheric data");
+                throw new IllegalArgumentException("unknown data point type " + type);
+        }
+    }
+
+    public synchronized void updateInfo(DataPointType type, DataPoint dataPoint) throws WeatherException {
+        if (type == null) {
+            throw new WeatherException("couldn't update atmospheric data");
+        }
+        // the new data point replaces whatever was merged before
+        resetDigest(type);
+        store(type, dataPoint, System.currentTimeMillis());
+    }
+
+    /**
+     * Replaces the data point of a type as it was updated elsewhere, keeping that update's time, e.g. on a replica.
+     *
+     * @param type       the data point type
+     * @param dataPoint  the data point
+     * @param updateTime when the data point was updated
+     */
+    public synchronized void updateInfo(DataPointType type, DataPoint dataPoint, long updateTime)
+            throws WeatherException {
+        if (type == null) {
+            throw new WeatherException("couldn't update atmospheric data");
+        }
+        resetDigest(type);
+        store(type, dataPoint, updateTime);
+    }
+
+    /**
+     * Merges a data point into the current one of its type, as reported by several collectors for the same airport.
+     * Mean and count are combined exactly, the quartiles by a bounded {@link TDigest} per type, seeded with the current
+     * data point on the first merge. The given data point receives the merged values and replaces the current one,
+     * so a merge allocates nothing once the type's digest exists.
+     *
+     * @param type      the data point type
+     * @param dataPoint the reported data point, overwritten with the merged values
+     */
+    public synchronized void mergeInfo(DataPointType type, DataPoint dataPoint) throws WeatherException {
+        if (type == null) {
+            throw new WeatherException("couldn't update atmospheric data");
+        }
+        if (digests == null) {
+            digests = new TDigest[DataPointType.values().length];
+        }
+        TDigest digest = digests[type.ordinal()];
+        if (digest == null) {
+            digest = new TDigest(DIGEST_CAPACITY);
+            digests[type.ordinal()] = digest;
+        }
+        DataPoint current = get(type);
+        if (digest.totalWeight() == 0 && current != null) {
+            addSummary(digest, current);
+        }
+        addSummary(digest, dataPoint);
+        dataPoint.setMean(digest.mean());
+        dataPoint.setFirst((int) Math.round(digest.quantile(0.25)));
+        dataPoint.setSecond((int) Math.round(digest.quantile(0.5)));
+        dataPoint.setThird((int) Math.round(digest.quantile(0.75)));
+        dataPoint.setCount((int) Math.min(Integer.MAX_VALUE, Math.round(digest.totalWeight())));
+        store(type, dataPoint, System.currentTimeMillis());
+    }
+
+    private static void addSummary(TDigest digest, DataPoint dataPoint) {
+        digest.addSummary(dataPoint.getMean(), dataPoint.getFirst(), dataPoint.getSecond(), dataPoint.getThird(),
+                dataPoint.getCount());
+    }
+
+    private void resetDigest(DataPointType type) {
+        if (digests != null && digests[type.ordinal()] != null) {
+            digests[type.ordinal()].reset();
+        }
+    }
+
+    private void store(DataPointType type, DataPoint dataPoint, long updateTime) {
+        set(type, dataPoint);
+        if (updateTimes == null) {
+            updateTimes = new long[DataPointType.values().length];
+        }
+        updateTimes[type.ordinal()] = updateTime;
+        this.setLastUpdateTime(Math.max(lastUpdateTime, updateTime));
+        nextVersion();
+    }
+
+    private void nextVersion() {
+        long sequence = ISSUED_SEQUENCE.incrementAndGet();
+        int mask = WRITTEN_SEQUENCES.length() - 1;
+        // the slot is reused once the number it held a full round ago is published
+        while (sequence - CHANGE_SEQUENCE.get() > mask) {
+            Thread.yield();
+        }
+        version = sequence;
+        WRITTEN_SEQUENCES.set((int) sequence & mask, sequence);
+        // publishes the written numbers following the published sequence, ours or those of writers which finished
+        // while a lower number was still being written
+        long published;
+        while (WRITTEN_SEQUENCES.get((int) ((published = CHANGE_SEQUENCE.get()) + 1) & mask) == published + 1) {
+            CHANGE_SEQUENCE.compareAndSet(published, published + 1);
+        }
+    }
+
+    /**
+     * @return the sequence number of the latest change of any airport's data
+     */
+    public static long currentSequence() {
+        return CHANGE_SEQUENCE.get();
+    }
+
+    /**
+     * @return the change sequence number of the last change of this data, increasing with every change
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @param type the data point type
+     * @return when the data point of the type was last updated, the last update time if that is not known
+     */
+    public long getUpdateTime(DataPointType type) {
+        long[] times = updateTimes;
+        long updateTime = times == null ? 0 : times[type.ordinal()];
+        return updateTime != 0 ? updateTime : lastUpdateTime;
+    }
+
+    /**
+     * Removes a data point unless it was updated since the given time.
+     *
+     * @param type       the data point type
+     * @param updateTime the update time the data point was found to be stale at
+     * @return true if the data point was removed
+     */
+    public synchronized boolean expire(DataPointType type, long updateTime) {
+        if (getUpdateTime(type) != updateTime) {
+            return false;
         }
-        this.setLastUpdateTime(System.currentTimeMillis());
+        set(type, null);
+        resetDigest(type);
+        nextVersion();
+        int bit = 1 << type.ordinal();
+        EXPIRY_SCHEDULED.getAndUpdate(this, scheduled -> scheduled & ~bit);
+        return true;
+    }
+
+    /**
+     * Marks that an expiry timer is pending for the data point of the type.
+     *
+     * @return false if one was already pending
+     */
+    public boolean markExpiryScheduled(DataPointType type) {
+        int bit = 1 << type.ordinal();
+        return (EXPIRY_SCHEDULED.getAndUpdate(this, scheduled -> scheduled | bit) & bit) == 0;
+    }
+
+    /**
+     * The weather without data points older than their time to live.
+     *
+     * @param now        the current time in milliseconds
+     * @param ttlMillis  time to live by {@link DataPointType} ordinal, 0 or less for unlimited
+     * @return this object if all data points are fresh, a copy without the stale ones otherwise
+     */
+    public AtmosphericInformation retainFresh(long now, long[] ttlMillis) {
+        AtmosphericInformation fresh = this;
+        for (DataPointType type : DataPointType.values()) {
+            long ttl = ttlMillis[type.ordinal()];
+            if (ttl <= 0 || get(type) == null || getUpdateTime(type) + ttl > now) {
+                continue;
+            }
+            if (fresh == this) {
+                fresh = copy();
+            }
+            fresh.set(type, null);
+        }
+        return fresh;
+    }
+
+    private synchronized AtmosphericInformation copy() {
+        AtmosphericInformation copy = new AtmosphericInformation(temperature, wind, humidity, precipitation,
+                pressure, cloudCover);
+        copy.lastUpdateTime = lastUpdateTime;
+        copy.version = version;
+        copy.updateTimes = updateTimes == null ? null : updateTimes.clone();
+        return copy;
     }
 }
@@ -21,9 +21,14 @@ public class DataPoint {
     public int count = 0;
 
     /**
-     * private constructor, use the builder to create this object
+     * json form of this data point, kept by the json codec until a field changes
      */
-    private DataPoint() {
+    private transient volatile byte[] json;
+
+    /**
+     * an empty data point, used by decoders which fill the fields directly. Use the builder to create this object
+     */
+    public DataPoint() {
     }
 
     protected DataPoint(int first, int second, int mean, int third, int count) {
@@ -43,6 +48,7 @@ public class DataPoint {
 
     public void setMean(double mean) {
         this.mean = mean;
+        this.json = null;
     }
 
     /**
@@ -54,6 +60,7 @@ public class DataPoint {
 
     public void setFirst(int first) {
         this.first = first;
+        this.json = null;
     }
 
     /**
@@ -65,6 +72,7 @@ public class DataPoint {
 
     public void setSecond(int second) {
         this.second = second;
+        this.json = null;
     }
 
     /**
@@ -74,8 +82,9 @@ public class DataPoint {
         return third;
     }
 
-    protected void setThird(int third) {
+    public void setThird(int third) {
         this.third = third;
+        this.json = null;
     }
 
     /**
@@ -87,6 +96,18 @@ public class DataPoint {
 
     public void setCount(int count) {
         this.count = count;
+        this.json = null;
+    }
+
+    /**
+     * @return the json form cached by {@link #cacheJson(byte[])}, null if a field changed since
+     */
+    public byte[] cachedJson() {
+        return json;
+    }
+
+    public void cacheJson(byte[] json) {
+        this.json = json;
     }
 
     public String toString() {
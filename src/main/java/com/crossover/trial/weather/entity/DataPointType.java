@@ -11,7 +11,7 @@ public enum DataPointType {
     WIND {
         @Override
         public boolean isValid(DataPoint dataPoint) {
-            return dataPoint.getMean() >= 0;
+            return dataPoint.getMean() >= 0 && !Double.isInfinite(dataPoint.getMean());
         }
     },
     TEMPERATURE {
@@ -45,5 +45,17 @@ public enum DataPointType {
         }
     };
 
+    /**
+     * type mask with the bits of all types set
+     */
+    public static final int ALL = (1 << values().length) - 1;
+
     public abstract boolean isValid(DataPoint dataPoint);
+
+    /**
+     * @return the bit of this type in a type mask
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
 }
@@ -0,0 +1,173 @@
+package com.crossover.trial.weather.expiry;
+
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Evicts data points once they outlive their {@link TtlPolicy time to live}.
+ * <p>
+ * Every update schedules a timer on a {@link TimingWheel} for the updated data point, unless one is already
+ * pending. When the timer fires the data point is removed if it was not updated since, otherwise the timer is
+ * rescheduled for the new deadline. So a data point has at most one timer, and the sweeper never scans the
+ * airports: its work is proportional to the number of updates and expiries.
+ */
+public class ExpirySweeper {
+    public final static Logger LOGGER = Logger.getLogger(ExpirySweeper.class.getName());
+
+    private final TtlPolicy policy;
+
+    private final long tickMillis;
+
+    private final TimingWheel<Timer> wheel;
+
+    /**
+     * told of each removed data point, e.g. to invalidate cached query results
+     */
+    private final Listener onExpired;
+
+    private final AtomicLong scheduled = new AtomicLong();
+
+    private final AtomicLong expired = new AtomicLong();
+
+    private volatile Thread thread;
+
+    /**
+     * @param policy     the time to live of each type
+     * @param tickMillis resolution of the expiry
+     * @param onExpired  told of each removed data point
+     */
+    public ExpirySweeper(TtlPolicy policy, long tickMillis, Listener onExpired) {
+        this.policy = policy;
+        this.tickMillis = tickMillis;
+        this.onExpired = onExpired;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+    }
+
+    public TtlPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Called after a data point of weather not known to belong to an airport was updated.
+     *
+     * @param ai   the updated weather
+     * @param type the updated type
+     */
+    public void onUpdate(AtmosphericInformation ai, DataPointType type) {
+        onUpdate(ai, type, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Called after a data point was updated.
+     *
+     * @param ai        the updated weather
+     * @param type      the updated type
+     * @param latitude  the position of the weather's airport, passed to the listener on expiry
+     * @param longitude the position of the weather's airport
+     */
+    public void onUpdate(AtmosphericInformation ai, DataPointType type, double latitude, double longitude) {
+        long ttl = policy.getTtl(type);
+        if (ttl > 0 && ai.markExpiryScheduled(type)) {
+            wheel.schedule(new Timer(ai, type, latitude, longitude), ai.getUpdateTime(type) + ttl);
+            scheduled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fires the timers due up to the given time.
+     *
+     * @param nowMillis the current time
+     * @return the number of data points removed
+     */
+    public int advance(long nowMillis) {
+        int[] removed = {0};
+        wheel.advance(nowMillis, timer -> {
+            long updateTime = timer.ai.getUpdateTime(timer.type);
+            long deadline = updateTime + policy.getTtl(timer.type);
+            if (deadline <= nowMillis && timer.ai.expire(timer.type, updateTime)) {
+                removed[0]++;
+                onExpired.expired(timer.latitude, timer.longitude);
+            } else {
+                // updated since the timer was scheduled
+                wheel.schedule(timer, Math.max(deadline, nowMillis + 1));
+            }
+        });
+        expired.addAndGet(removed[0]);
+        return removed[0];
+    }
+
+    /**
+     * Starts advancing the wheel once per tick on a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(tickMillis);
+                    advance(System.currentTimeMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "expiry sweep failed", e);
+                }
+            }
+        }, "expiry-sweeper");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return timer statistics for the ping output
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("pending", wheel.size());
+        status.put("scheduled", scheduled.get());
+        status.put("expired", expired.get());
+        return status;
+    }
+
+    /**
+     * Told of the removed data points.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the sweeping thread after a data point was removed.
+         *
+         * @param latitude  the position of the weather's airport, NaN if not known
+         * @param longitude the position of the weather's airport, NaN if not known
+         */
+        void expired(double latitude, double longitude);
+    }
+
+    private static final class Timer {
+        final AtmosphericInformation ai;
+        final DataPointType type;
+        final double latitude;
+        final double longitude;
+
+        Timer(AtmosphericInformation ai, DataPointType type, double latitude, double longitude) {
+            this.ai = ai;
+            this.type = type;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+    }
+}
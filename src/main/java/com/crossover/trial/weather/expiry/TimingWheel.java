@@ -0,0 +1,142 @@
+package com.crossover.trial.weather.expiry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: {@link #LEVELS} wheels of {@link #SLOTS} slots, each slot of a level spanning a full
+ * turn of the level below. Timers are kept in the slot of their deadline at the coarsest level needed and moved
+ * down a level each time the wheel below completes a turn, until they fire from the finest level.
+ * <p>
+ * Scheduling is O(1), and advancing the clock only touches the timers that are due or cascade down, never the
+ * timers far in the future. With one second ticks the wheels span 64 s, 68 min, 73 h and 194 days; timers
+ * further out are parked in the last slot of the coarsest level and re-placed when it comes around.
+ *
+ * @param <T> the timer payload
+ */
+public class TimingWheel<T> {
+
+    private static final int BITS = 6;
+
+    private static final int SLOTS = 1 << BITS;
+
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+
+    @SuppressWarnings("unchecked")
+    private final List<Timer<T>>[][] wheels = new List[LEVELS][SLOTS];
+
+    /**
+     * the last tick that has been processed
+     */
+    private long currentTick;
+
+    private int size;
+
+    /**
+     * @param tickMillis resolution of the wheel
+     * @param nowMillis  the current time
+     */
+    public TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * @return number of pending timers
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Adds a timer. Deadlines in the past fire on the next tick.
+     *
+     * @param payload        passed to the expiry callback
+     * @param deadlineMillis the time the timer is due
+     */
+    public synchronized void schedule(T payload, long deadlineMillis) {
+        place(new Timer<>(payload, Math.max(currentTick + 1, ceilDiv(deadlineMillis, tickMillis))));
+        size++;
+    }
+
+    /**
+     * Advances the clock, firing all timers due up to now. Callbacks may schedule new timers.
+     *
+     * @param nowMillis the current time
+     * @param expired   receives the payloads of the due timers
+     */
+    public synchronized void advance(long nowMillis, Consumer<T> expired) {
+        long target = nowMillis / tickMillis;
+        while (currentTick < target) {
+            long tick = ++currentTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((tick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (tick >>> (BITS * level)) & (SLOTS - 1));
+                }
+            }
+            List<Timer<T>> due = wheels[0][(int) tick & (SLOTS - 1)];
+            if (due == null) {
+                continue;
+            }
+            wheels[0][(int) tick & (SLOTS - 1)] = null;
+            for (Timer<T> timer : due) {
+                size--;
+                if (timer.deadlineTick > tick) {
+                    // parked beyond the span of the wheels
+                    place(timer);
+                    size++;
+                } else {
+                    expired.accept(timer.payload);
+                }
+            }
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        List<Timer<T>> timers = wheels[level][slot];
+        if (timers == null) {
+            return;
+        }
+        wheels[level][slot] = null;
+        for (Timer<T> timer : timers) {
+            place(timer);
+        }
+    }
+
+    private void place(Timer<T> timer) {
+        long delta = timer.deadlineTick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+            level++;
+        }
+        long tick = timer.deadlineTick;
+        if (delta >= 1L << (BITS * LEVELS)) {
+            // the slot before the current one at the coarsest level comes around last
+            tick = currentTick + (1L << (BITS * LEVELS)) - (1L << (BITS * (LEVELS - 1)));
+        }
+        int slot = (int) (tick >>> (BITS * level)) & (SLOTS - 1);
+        List<Timer<T>> timers = wheels[level][slot];
+        if (timers == null) {
+            timers = new ArrayList<>(4);
+            wheels[level][slot] = timers;
+        }
+        timers.add(timer);
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    private static final class Timer<T> {
+        final T payload;
+        final long deadlineTick;
+
+        Timer(T payload, long deadlineTick) {
+            this.payload = payload;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.crossover.trial.weather.expiry;
+
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.util.Locale;
+
+/**
+ * Time to live of the data points of each {@link DataPointType}, after which they are no longer served and are
+ * evicted by the {@link ExpirySweeper}.
+ */
+public final class TtlPolicy {
+
+    /**
+     * the age at which {@link com.crossover.trial.weather.service.AirportWeatherService#ping()} considers data stale
+     */
+    public static final long DEFAULT_TTL_MILLIS = 86400000L;
+
+    private final long[] ttlMillis = new long[DataPointType.values().length];
+
+    /**
+     * @param defaultTtlMillis time to live of all types, 0 or less for unlimited
+     */
+    public TtlPolicy(long defaultTtlMillis) {
+        for (DataPointType type : DataPointType.values()) {
+            ttlMillis[type.ordinal()] = defaultTtlMillis;
+        }
+    }
+
+    /**
+     * Reads the time to live of each type in milliseconds from the system property {@code weather.ttl.<type>},
+     * e.g. {@code -Dweather.ttl.wind=3600000}, defaulting to {@code weather.ttl} and then to 24 hours.
+     */
+    public static TtlPolicy fromSystemProperties() {
+        TtlPolicy policy = new TtlPolicy(Long.getLong("weather.ttl", DEFAULT_TTL_MILLIS));
+        for (DataPointType type : DataPointType.values()) {
+            Long ttl = Long.getLong("weather.ttl." + type.name().toLowerCase(Locale.ROOT));
+            if (ttl != null) {
+                policy.setTtl(type, ttl);
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * @return the time to live in milliseconds, 0 or less for unlimited
+     */
+    public long getTtl(DataPointType type) {
+        return ttlMillis[type.ordinal()];
+    }
+
+    public void setTtl(DataPointType type, long ttlMillis) {
+        this.ttlMillis[type.ordinal()] = ttlMillis;
+    }
+
+    /**
+     * @return the time to live by {@link DataPointType} ordinal, not to be modified
+     */
+    public long[] asArray() {
+        return ttlMillis;
+    }
+}
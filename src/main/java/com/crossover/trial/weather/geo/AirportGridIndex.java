@@ -0,0 +1,1018 @@
+package com.crossover.trial.weather.geo;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Spatial index of the airports and their atmospheric information on a latitude/longitude grid.
+ * <p>
+ * Cells are copy-on-write arrays, replaced by compare-and-set, so searches never lock and updates of different
+ * cells do not wait for each other. Every add and remove takes a new version and each search reads the entries
+ * visible at the version current when it started, so it sees an airport moved from one cell to another once, not
+ * in both cells or in neither. Removed entries stay in their cells as tombstones until {@link #compact(long)}.
+ * <p>
+ * Nearest neighbour searches visit blocks of cells and then cells best first, ordered by the shortest
+ * distance between the query point and the block or cell, and stop as soon as nothing unvisited can hold an airport
+ * closer than the k-th best found so far. Empty blocks are passed over without looking at their cells.
+ */
+public class AirportGridIndex {
+
+    private static final Entry[] EMPTY = new Entry[0];
+
+    /**
+     * edge length of a block in cells
+     */
+    private static final int BLOCK = 8;
+
+    /**
+     * smallest number of entries a parallel reduction is split into
+     */
+    private static final int MIN_PARTITION = 1024;
+
+    private static final int CALIBRATION_AIRPORTS = 20000;
+
+    private static final int CALIBRATION_ROUNDS = 5;
+
+    /**
+     * see {@link #calibrateParallelThreshold()}, parallel reductions are off until calibrated or configured
+     */
+    private static volatile int parallelThreshold = Integer.MAX_VALUE;
+
+    /**
+     * airports looked at by the searches of the current thread, see {@link #candidatesExamined()}
+     */
+    private static final ThreadLocal<long[]> EXAMINED = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * true on threads whose radius reductions run sequentially, see {@link #sequentially(Supplier)}
+     */
+    private static final ThreadLocal<boolean[]> SEQUENTIAL = ThreadLocal.withInitial(() -> new boolean[1]);
+
+    private static final AtomicLongFieldUpdater<Entry> REMOVED =
+            AtomicLongFieldUpdater.newUpdater(Entry.class, "removed");
+
+    private static final Comparator<Neighbor> FARTHEST_FIRST =
+            (a, b) -> Double.compare(b.getDistance(), a.getDistance());
+
+    private final GeoGrid grid;
+
+    private final AtomicReferenceArray<Entry[]> cells;
+
+    /**
+     * coarse grid of BLOCK x BLOCK cells, skipping empty regions without looking at their cells
+     */
+    private final GeoGrid blocks;
+
+    /**
+     * number of airports per block
+     */
+    private final AtomicIntegerArray blockSizes;
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * version of the last add or remove
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * removed entries still in their cells, oldest first
+     */
+    private final ConcurrentLinkedQueue<Tombstone> tombstones = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param cellDegrees edge length of the grid cells
+     */
+    public AirportGridIndex(double cellDegrees) {
+        grid = new GeoGrid(cellDegrees);
+        cells = new AtomicReferenceArray<>(grid.size());
+        blocks = new GeoGrid(cellDegrees * BLOCK);
+        blockSizes = new AtomicIntegerArray(blocks.size());
+    }
+
+    public GeoGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * @return number of indexed airports
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public void add(Airport airport, AtmosphericInformation weather) {
+        int cell = grid.cellOf(airport.getLatitude(), airport.getLongitude());
+        Entry entry = new Entry(airport, weather, version.incrementAndGet());
+        Entry[] current;
+        Entry[] updated;
+        do {
+            current = cells.get(cell);
+            updated = current == null ? new Entry[1] : Arrays.copyOf(current, current.length + 1);
+            updated[updated.length - 1] = entry;
+        } while (!cells.compareAndSet(cell, current, updated));
+        blockSizes.incrementAndGet(blockOf(cell));
+        size.incrementAndGet();
+    }
+
+    /**
+     * Removes one entry of the airport. The entry stays in its cell for the searches which started before, until
+     * a {@link #compact(long) compaction} unlinks it.
+     *
+     * @return false if the airport was not indexed
+     */
+    public boolean remove(Airport airport) {
+        int cell = grid.cellOf(airport.getLatitude(), airport.getLongitude());
+        Entry entry;
+        do {
+            entry = live(cells.get(cell), airport);
+            if (entry == null) {
+                return false;
+            }
+        } while (!REMOVED.compareAndSet(entry, 0, version.incrementAndGet()));
+        tombstones.add(new Tombstone(cell, entry, System.currentTimeMillis()));
+        blockSizes.decrementAndGet(blockOf(cell));
+        size.decrementAndGet();
+        return true;
+    }
+
+    private static Entry live(Entry[] entries, Airport airport) {
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (entry.removed == 0 && entry.airport.equals(airport)) {
+                    return entry;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Unlinks the entries removed more than the grace period ago from their cells.
+     *
+     * @param graceMillis how long a removed entry stays visible to the searches which started before its removal
+     * @return number of entries unlinked
+     */
+    public int compact(long graceMillis) {
+        long oldest = System.currentTimeMillis() - graceMillis;
+        int unlinked = 0;
+        Tombstone tombstone;
+        while ((tombstone = tombstones.peek()) != null && tombstone.removedAt <= oldest) {
+            // another compaction may have taken it first
+            if (tombstones.remove(tombstone)) {
+                unlink(tombstone.cell, tombstone.entry);
+                unlinked++;
+            }
+        }
+        return unlinked;
+    }
+
+    private void unlink(int cell, Entry entry) {
+        Entry[] current;
+        Entry[] updated;
+        do {
+            current = cells.get(cell);
+            int i = current == null ? -1 : Arrays.asList(current).indexOf(entry);
+            if (i < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                updated = null;
+            } else {
+                updated = new Entry[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+            }
+        } while (!cells.compareAndSet(cell, current, updated));
+    }
+
+    /**
+     * Empties the index; not to be called while airports are added or removed.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, null);
+        }
+        for (int i = 0; i < blockSizes.length(); i++) {
+            blockSizes.set(i, 0);
+        }
+        tombstones.clear();
+        size.set(0);
+    }
+
+    /**
+     * @return the entries of a cell including removed ones not compacted yet, see {@link Entry#isRemoved()}; never
+     * null
+     */
+    public Entry[] cell(int cell) {
+        Entry[] entries = cells.get(cell);
+        return entries == null ? EMPTY : entries;
+    }
+
+    /**
+     * Visits the airports within a radius of a point.
+     *
+     * @param latitude  center latitude
+     * @param longitude center longitude
+     * @param radiusKm  radius in km
+     * @param visitor   receives the entries within the radius
+     */
+    public void forEachInRadius(double latitude, double longitude, double radiusKm, Consumer<Entry> visitor) {
+        double[] center = GeoMath.toVector(latitude, longitude);
+        double limit = GeoMath.chordSquared(radiusKm);
+        long snapshot = version.get();
+        grid.forEachCellInRadius(latitude, longitude, radiusKm, cell -> {
+            Entry[] entries = cell(cell);
+            examined(entries.length);
+            for (Entry entry : entries) {
+                if (entry.visibleAt(snapshot) && entry.chordSquared(center) <= limit) {
+                    visitor.accept(entry);
+                }
+            }
+        });
+    }
+
+    /**
+     * Reduces the airports within a radius of a point, e.g. into an aggregate or a result list. Queries with fewer
+     * candidates than the {@link #getParallelThreshold() parallel threshold} are reduced by a plain loop over the
+     * candidate cells on the calling thread, without creating or forking any fork-join task. Larger ones split the
+     * candidate cells into partitions of similar entry counts, reduce them in parallel on the common fork-join pool
+     * and combine the partial results left to right, so the result is the same as that of a sequential reduction in
+     * cell order. Reductions run {@link #sequentially(Supplier) sequentially} never use the fork-join pool.
+     *
+     * @param latitude    center latitude
+     * @param longitude   center longitude
+     * @param radiusKm    radius in km
+     * @param supplier    creates an empty partial result
+     * @param accumulator adds an entry and its distance to the center in km to a partial result
+     * @param combiner    appends the second partial result to the first
+     * @param <A>         the result type
+     * @return the result
+     */
+    public <A> A reduceInRadius(double latitude, double longitude, double radiusKm, Supplier<A> supplier,
+                                EntryAccumulator<A> accumulator, BinaryOperator<A> combiner) {
+        return reduceInRadius(latitude, longitude, radiusKm, 1, supplier, accumulator, combiner);
+    }
+
+    /**
+     * Reduces a sample of the airports within a radius of a point: only every stride-th candidate airport, in cell
+     * order, is examined, so the search costs a stride-th of the full one. See
+     * {@link #reduceInRadius(double, double, double, Supplier, EntryAccumulator, BinaryOperator)}.
+     *
+     * @param latitude    center latitude
+     * @param longitude   center longitude
+     * @param radiusKm    radius in km
+     * @param stride      examine every stride-th candidate, 1 for all
+     * @param supplier    creates an empty partial result
+     * @param accumulator adds an entry and its distance to the center in km to a partial result
+     * @param combiner    appends the second partial result to the first
+     * @param <A>         the result type
+     * @return the result
+     */
+    public <A> A reduceInRadius(double latitude, double longitude, double radiusKm, int stride, Supplier<A> supplier,
+                                EntryAccumulator<A> accumulator, BinaryOperator<A> combiner) {
+        return reduceInRadius(latitude, longitude, radiusKm, Math.max(1, stride), supplier, accumulator, combiner,
+                SEQUENTIAL.get()[0] ? Integer.MAX_VALUE : parallelThreshold);
+    }
+
+    private <A> A reduceInRadius(double latitude, double longitude, double radiusKm, int stride,
+                                 Supplier<A> supplier, EntryAccumulator<A> accumulator, BinaryOperator<A> combiner,
+                                 int threshold) {
+        Candidates candidates = candidatesInRadius(latitude, longitude, radiusKm);
+        int total = candidates.ends.length == 0 ? 0 : candidates.ends[candidates.ends.length - 1];
+        int sampled = (total + stride - 1) / stride;
+        examined(sampled);
+        double[] center = GeoMath.toVector(latitude, longitude);
+        double limit = GeoMath.chordSquared(radiusKm);
+        if (sampled < threshold) {
+            return reduce(candidates, 0, candidates.ends.length, stride, center, limit, supplier.get(), accumulator);
+        }
+        int leafSize = Math.max(MIN_PARTITION, total / (4 * ForkJoinPool.getCommonPoolParallelism()));
+        return ForkJoinPool.commonPool().invoke(new RadiusReduction<>(candidates, 0, candidates.ends.length, leafSize,
+                stride, center, limit, supplier, accumulator, combiner));
+    }
+
+    /**
+     * Adds the entries of a range of candidate cells within the limit to a result, in cell order. Only the entries
+     * at a multiple of the stride, counted across all candidate cells, are examined.
+     */
+    private static <A> A reduce(Candidates candidates, int from, int to, int stride, double[] center, double limit,
+                                A result, EntryAccumulator<A> accumulator) {
+        for (int i = from; i < to; i++) {
+            Entry[] entries = candidates.cells[i];
+            int start = i == 0 ? 0 : candidates.ends[i - 1];
+            for (int j = (stride - start % stride) % stride; j < entries.length; j += stride) {
+                Entry entry = entries[j];
+                if (!entry.visibleAt(candidates.version)) {
+                    continue;
+                }
+                double chordSquared = entry.chordSquared(center);
+                if (chordSquared <= limit) {
+                    accumulator.accept(result, entry, GeoMath.chordDistance(chordSquared));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Estimates how many airports a radius search examines from the airport counts of the blocks of cells
+     * intersecting the bounding box of the circle. It reads one counter per block rather than per cell, and it is an
+     * upper bound: blocks at the edge of the box are counted in full.
+     *
+     * @param latitude  center latitude
+     * @param longitude center longitude
+     * @param radiusKm  radius in km
+     * @return the estimated number of candidates
+     */
+    public long estimateCandidates(double latitude, double longitude, double radiusKm) {
+        long[] estimate = new long[1];
+        blocks.forEachCellInRadius(latitude, longitude, radiusKm, block -> estimate[0] += blockSizes.get(block));
+        return estimate[0];
+    }
+
+    /**
+     * @return snapshot of the non empty cells intersecting the bounding box of a circle
+     */
+    private Candidates candidatesInRadius(double latitude, double longitude, double radiusKm) {
+        Candidates candidates = new Candidates(version.get());
+        grid.forEachCellInRadius(latitude, longitude, radiusKm, cell -> {
+            Entry[] entries = cells.get(cell);
+            if (entries != null) {
+                candidates.add(entries);
+            }
+        });
+        candidates.trim();
+        return candidates;
+    }
+
+    /**
+     * @return minimum number of candidate entries for a radius reduction to run in parallel
+     */
+    public static int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * @param threshold minimum number of candidate entries for a radius reduction to run in parallel,
+     *                  {@link Integer#MAX_VALUE} to always run on the calling thread
+     */
+    public static void setParallelThreshold(int threshold) {
+        parallelThreshold = threshold;
+    }
+
+    /**
+     * Measures sequential against parallel radius reductions of growing size on a synthetic index and sets the
+     * parallel threshold to the smallest candidate count at which the parallel reduction was clearly faster. Without
+     * spare cores parallel reductions are disabled. Takes some hundred milliseconds; the threshold live queries use is
+     * only set once, at the end.
+     *
+     * @return the learned threshold
+     */
+    public static int calibrateParallelThreshold() {
+        if (ForkJoinPool.getCommonPoolParallelism() < 2 || Runtime.getRuntime().availableProcessors() < 2) {
+            setParallelThreshold(Integer.MAX_VALUE);
+            return Integer.MAX_VALUE;
+        }
+        AirportGridIndex index = new AirportGridIndex(1);
+        Random random = new Random(0);
+        for (int i = 0; i < CALIBRATION_AIRPORTS; i++) {
+            index.add(new Airport("CAL", random.nextDouble() * 40 + 20, random.nextDouble() * 60 - 120),
+                    new AtmosphericInformation());
+        }
+        // warm up both paths so the comparison is not about compilation
+        for (int round = 0; round < CALIBRATION_ROUNDS * 4; round++) {
+            index.timeCountInRadius(4000, round % 2 == 0 ? Integer.MAX_VALUE : 0);
+        }
+        // a size only counts if the parallel reduction also wins at the next larger size, to filter out noise
+        int learned = Integer.MAX_VALUE;
+        int candidate = Integer.MAX_VALUE;
+        for (double radius = 250; radius <= 4000; radius *= 2) {
+            Candidates candidates = index.candidatesInRadius(40, -90, radius);
+            int total = candidates.ends.length == 0 ? 0 : candidates.ends[candidates.ends.length - 1];
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            // the baseline is the plain loop queries below the threshold run, not a fork-join task run inline
+            for (int round = 0; round < CALIBRATION_ROUNDS; round++) {
+                sequential = Math.min(sequential, index.timeCountInRadius(radius, Integer.MAX_VALUE));
+                parallel = Math.min(parallel, index.timeCountInRadius(radius, 0));
+            }
+            boolean faster = parallel * 10 < sequential * 8;
+            if (faster && candidate != Integer.MAX_VALUE) {
+                learned = candidate;
+                break;
+            }
+            candidate = faster ? total : Integer.MAX_VALUE;
+        }
+        setParallelThreshold(learned);
+        return learned;
+    }
+
+    private long timeCountInRadius(double radius, int threshold) {
+        long start = System.nanoTime();
+        reduceInRadius(40, -90, radius, 1, () -> new int[1], (count, entry, distance) -> count[0]++, (a, b) -> {
+            a[0] += b[0];
+            return a;
+        }, threshold);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Visits the airports inside a latitude/longitude box. A box whose western longitude is greater than its
+     * eastern one crosses the antimeridian.
+     *
+     * @param visitor receives the entries inside the box
+     */
+    public void forEachInBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                             Consumer<Entry> visitor) {
+        double width = maxLongitude - minLongitude;
+        if (width < 0) {
+            width += 360;
+        }
+        double lonWidth = width;
+        long snapshot = version.get();
+        grid.forEachCell(minLatitude, maxLatitude, minLongitude + lonWidth / 2, lonWidth / 2, cell -> {
+            Entry[] entries = cell(cell);
+            examined(entries.length);
+            for (Entry entry : entries) {
+                if (!entry.visibleAt(snapshot) || entry.latitude < minLatitude || entry.latitude > maxLatitude) {
+                    continue;
+                }
+                double east = entry.longitude - minLongitude;
+                if (east < 0) {
+                    east += 360;
+                }
+                if (east <= lonWidth) {
+                    visitor.accept(entry);
+                }
+            }
+        });
+    }
+
+    /**
+     * Visits the airports within a distance of a route, given as a polyline of great circle segments.
+     *
+     * @param latitudes  latitudes of the route's points
+     * @param longitudes longitudes of the route's points
+     * @param widthKm    maximum distance from the route in km
+     * @param visitor    receives each entry within the corridor once
+     */
+    public void forEachInCorridor(double[] latitudes, double[] longitudes, double widthKm, Consumer<Entry> visitor) {
+        Route route = new Route(latitudes, longitudes, widthKm);
+        BitSet visited = new BitSet(grid.size());
+        long snapshot = version.get();
+        IntConsumer scan = cell -> {
+            if (visited.get(cell)) {
+                return;
+            }
+            visited.set(cell);
+            Entry[] entries = cell(cell);
+            examined(entries.length);
+            for (Entry entry : entries) {
+                if (entry.visibleAt(snapshot) && route.contains(entry)) {
+                    visitor.accept(entry);
+                }
+            }
+        };
+        // cover each segment with circles around points at most half a cell apart
+        double step = Math.toRadians(grid.getCellDegrees() / 2) * GeoMath.EARTH_RADIUS_KM;
+        if (latitudes.length == 1) {
+            grid.forEachCellInRadius(latitudes[0], longitudes[0], widthKm, scan);
+        }
+        for (int i = 1; i < latitudes.length; i++) {
+            double length = GeoMath.distance(latitudes[i - 1], longitudes[i - 1], latitudes[i], longitudes[i]);
+            int steps = Math.max(1, (int) Math.ceil(length / step));
+            for (int j = 0; j <= steps; j++) {
+                double[] point = GeoMath.interpolate(latitudes[i - 1], longitudes[i - 1], latitudes[i],
+                        longitudes[i], (double) j / steps);
+                grid.forEachCellInRadius(point[0], point[1], widthKm + step, scan);
+            }
+        }
+    }
+
+
+    /**
+     * Finds the k airports closest to a point.
+     *
+     * @param latitude    query latitude
+     * @param longitude   query longitude
+     * @param k           maximum number of airports to return
+     * @param maxDistance only airports within this distance in km are returned
+     * @param filter      only matching entries are returned
+     * @return the airports, closest first
+     */
+    public List<Neighbor> nearest(double latitude, double longitude, int k, double maxDistance,
+                                  Predicate<Entry> filter) {
+        if (k <= 0 || size.get() == 0) {
+            return Collections.emptyList();
+        }
+        // k-th best so far on top, to be replaced by anything closer
+        PriorityQueue<Neighbor> best = new PriorityQueue<>(Math.min(k, 64) + 1, FARTHEST_FIRST);
+        long snapshot = version.get();
+        if (k >= size.get()) {
+            // every airport is a candidate, visiting the cells would not save anything
+            for (int cell = 0; cell < cells.length(); cell++) {
+                collect(cell(cell), snapshot, latitude, longitude, k, maxDistance, filter, best);
+            }
+            return sorted(best);
+        }
+
+        PriorityQueue<CellBound> frontier = new PriorityQueue<>();
+        BitSet visited = new BitSet(blocks.size());
+        int startBlock = blockOf(grid.cellOf(latitude, longitude));
+        visited.set(startBlock);
+        frontier.add(new CellBound(startBlock, true, 0));
+        while (!frontier.isEmpty()) {
+            CellBound next = frontier.poll();
+            double bound = bound(best, k, maxDistance);
+            if (next.distance > bound) {
+                break;
+            }
+            if (!next.block) {
+                collect(cell(next.cell), snapshot, latitude, longitude, k, maxDistance, filter, best);
+                continue;
+            }
+            if (blockSizes.get(next.cell) > 0) {
+                expandBlock(next.cell, latitude, longitude, bound, frontier);
+            }
+            int row = next.cell / blocks.getColumns();
+            int column = next.cell % blocks.getColumns();
+            for (int r = row - 1; r <= row + 1; r++) {
+                if (r < 0 || r >= blocks.getRows()) {
+                    continue;
+                }
+                // all blocks around a pole touch each other
+                boolean polar = r == 0 || r == blocks.getRows() - 1;
+                int from = polar ? 0 : column - 1;
+                int to = polar ? blocks.getColumns() - 1 : column + 1;
+                for (int c = from; c <= to; c++) {
+                    int block = r * blocks.getColumns() + (c + blocks.getColumns()) % blocks.getColumns();
+                    if (visited.get(block)) {
+                        continue;
+                    }
+                    visited.set(block);
+                    double distance = distanceToCell(blocks, block, latitude, longitude);
+                    if (distance <= bound) {
+                        frontier.add(new CellBound(block, true, distance));
+                    }
+                }
+            }
+        }
+        return sorted(best);
+    }
+
+    /**
+     * Queues the non empty cells of a block which may hold something within the bound.
+     */
+    private void expandBlock(int block, double latitude, double longitude, double bound,
+                             PriorityQueue<CellBound> frontier) {
+        int fromRow = (block / blocks.getColumns()) * BLOCK;
+        int fromColumn = (block % blocks.getColumns()) * BLOCK;
+        int toRow = Math.min(grid.getRows(), fromRow + BLOCK);
+        int toColumn = Math.min(grid.getColumns(), fromColumn + BLOCK);
+        for (int row = fromRow; row < toRow; row++) {
+            for (int column = fromColumn; column < toColumn; column++) {
+                int cell = row * grid.getColumns() + column;
+                if (cells.get(cell) == null) {
+                    continue;
+                }
+                double distance = distanceToCell(grid, cell, latitude, longitude);
+                if (distance <= bound) {
+                    frontier.add(new CellBound(cell, false, distance));
+                }
+            }
+        }
+    }
+
+    private int blockOf(int cell) {
+        return (cell / grid.getColumns() / BLOCK) * blocks.getColumns() + (cell % grid.getColumns()) / BLOCK;
+    }
+
+    private static double distanceToCell(GeoGrid grid, int cell, double latitude, double longitude) {
+        double minLatitude = grid.minLatitude(cell);
+        return GeoMath.distanceToBox(latitude, longitude, minLatitude,
+                Math.min(90, minLatitude + grid.getCellDegrees()), grid.minLongitude(cell), grid.getCellDegrees());
+    }
+
+    private static double bound(PriorityQueue<Neighbor> best, int k, double maxDistance) {
+        return best.size() < k ? maxDistance : Math.min(maxDistance, best.peek().getDistance());
+    }
+
+    private static void collect(Entry[] entries, long snapshot, double latitude, double longitude, int k,
+                                double maxDistance, Predicate<Entry> filter, PriorityQueue<Neighbor> best) {
+        examined(entries.length);
+        for (Entry entry : entries) {
+            if (!entry.visibleAt(snapshot)) {
+                continue;
+            }
+            double distance = GeoMath.distance(latitude, longitude, entry.latitude, entry.longitude);
+            if (distance > bound(best, k, maxDistance) || (filter != null && !filter.test(entry))) {
+                continue;
+            }
+            best.add(new Neighbor(entry, distance));
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+    }
+
+    private static void examined(int count) {
+        EXAMINED.get()[0] += count;
+    }
+
+    /**
+     * The number of airports the searches of the calling thread looked at since the last
+     * {@link #resetCandidatesExamined() reset}, whether or not they matched. It measures the work of a query
+     * better than the number of results: a radius search examines every airport in the cells it touches.
+     *
+     * @return airports examined by the calling thread
+     */
+    public static long candidatesExamined() {
+        return EXAMINED.get()[0];
+    }
+
+    /**
+     * Adds airports examined on another thread on behalf of the calling thread's query.
+     *
+     * @param count airports examined
+     */
+    public static void addCandidatesExamined(long count) {
+        EXAMINED.get()[0] += count;
+    }
+
+    /**
+     * Restarts counting the {@link #candidatesExamined() airports examined} by the calling thread.
+     */
+    public static void resetCandidatesExamined() {
+        EXAMINED.get()[0] = 0;
+    }
+
+    /**
+     * Runs a task whose radius reductions all run on the calling thread, whatever their size, e.g. a low priority
+     * query which must not take the common fork-join pool's threads from the others.
+     *
+     * @param task the task
+     * @param <T>  the result type
+     * @return the result of the task
+     */
+    public static <T> T sequentially(Supplier<T> task) {
+        boolean[] sequential = SEQUENTIAL.get();
+        boolean previous = sequential[0];
+        sequential[0] = true;
+        try {
+            return task.get();
+        } finally {
+            sequential[0] = previous;
+        }
+    }
+
+    private static List<Neighbor> sorted(PriorityQueue<Neighbor> best) {
+        List<Neighbor> result = new ArrayList<>(best);
+        result.sort(Comparator.comparingDouble(Neighbor::getDistance));
+        return result;
+    }
+
+    /**
+     * Adds an entry to a partial reduction result.
+     *
+     * @param <A> the result type
+     */
+    @FunctionalInterface
+    public interface EntryAccumulator<A> {
+        void accept(A result, Entry entry, double distanceKm);
+    }
+
+    /**
+     * Snapshot of the candidate cells of a query with the running total of their entry counts.
+     */
+    private static final class Candidates {
+        final long version;
+        Entry[][] cells = new Entry[64][];
+        int[] ends = new int[64];
+        int size;
+
+        Candidates(long version) {
+            this.version = version;
+        }
+
+        void add(Entry[] entries) {
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            ends[size] = (size == 0 ? 0 : ends[size - 1]) + entries.length;
+            cells[size++] = entries;
+        }
+
+        void trim() {
+            cells = Arrays.copyOf(cells, size);
+            ends = Arrays.copyOf(ends, size);
+        }
+
+        /**
+         * @return number of entries in the cells from (inclusive) to (exclusive)
+         */
+        int entries(int from, int to) {
+            return to == from ? 0 : ends[to - 1] - (from == 0 ? 0 : ends[from - 1]);
+        }
+    }
+
+    /**
+     * Fork-join reduction of the entries of a range of candidate cells.
+     */
+    private static final class RadiusReduction<A> extends RecursiveTask<A> {
+        private final Candidates candidates;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final int stride;
+        private final double[] center;
+        private final double limit;
+        private final Supplier<A> supplier;
+        private final EntryAccumulator<A> accumulator;
+        private final BinaryOperator<A> combiner;
+
+        RadiusReduction(Candidates candidates, int from, int to, int leafSize, int stride, double[] center,
+                        double limit, Supplier<A> supplier, EntryAccumulator<A> accumulator,
+                        BinaryOperator<A> combiner) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.stride = stride;
+            this.center = center;
+            this.limit = limit;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected A compute() {
+            if (to - from > 1 && candidates.entries(from, to) > leafSize) {
+                // split where half of the entries are on each side
+                int half = (from == 0 ? 0 : candidates.ends[from - 1]) + candidates.entries(from, to) / 2;
+                int middle = Arrays.binarySearch(candidates.ends, from, to, half);
+                middle = Math.max(from + 1, Math.min(to - 1, middle < 0 ? -middle - 1 : middle + 1));
+                RadiusReduction<A> left = new RadiusReduction<>(candidates, from, middle, leafSize, stride, center,
+                        limit, supplier, accumulator, combiner);
+                RadiusReduction<A> right = new RadiusReduction<>(candidates, middle, to, leafSize, stride, center,
+                        limit, supplier, accumulator, combiner);
+                right.fork();
+                A leftResult = left.compute();
+                return combiner.apply(leftResult, right.join());
+            }
+            return reduce(candidates, from, to, stride, center, limit, supplier.get(), accumulator);
+        }
+    }
+
+    /**
+     * An indexed airport with its weather.
+     */
+    public static final class Entry {
+        private final Airport airport;
+        private final AtmosphericInformation weather;
+        private final double latitude;
+        private final double longitude;
+        /**
+         * unit vector of the position, see {@link GeoMath#toVector(double, double)}
+         */
+        private final double x;
+        private final double y;
+        private final double z;
+        /**
+         * versions of the index at which the entry was added and removed, 0 while not removed
+         */
+        private final long added;
+        volatile long removed;
+
+        Entry(Airport airport, AtmosphericInformation weather, long added) {
+            this.added = added;
+            this.airport = airport;
+            this.weather = weather;
+            this.latitude = airport.getLatitude();
+            this.longitude = airport.getLongitude();
+            double[] vector = GeoMath.toVector(latitude, longitude);
+            this.x = vector[0];
+            this.y = vector[1];
+            this.z = vector[2];
+        }
+
+        private Entry(Entry entry, AtmosphericInformation weather) {
+            this.airport = entry.airport;
+            this.weather = weather;
+            this.latitude = entry.latitude;
+            this.longitude = entry.longitude;
+            this.x = entry.x;
+            this.y = entry.y;
+            this.z = entry.z;
+            this.added = entry.added;
+            this.removed = entry.removed;
+        }
+
+        /**
+         * @return this entry with other weather of its airport, e.g. without the expired data points; not indexed
+         */
+        public Entry withWeather(AtmosphericInformation weather) {
+            return weather == this.weather ? this : new Entry(this, weather);
+        }
+
+        double chordSquared(double[] vector) {
+            double dx = x - vector[0];
+            double dy = y - vector[1];
+            double dz = z - vector[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        double dot(double[] vector) {
+            return x * vector[0] + y * vector[1] + z * vector[2];
+        }
+
+        boolean visibleAt(long version) {
+            long removedAt = removed;
+            return added <= version && (removedAt == 0 || removedAt > version);
+        }
+
+        /**
+         * @return true if the entry was removed from the index
+         */
+        public boolean isRemoved() {
+            return removed != 0;
+        }
+
+        public Airport getAirport() {
+            return airport;
+        }
+
+        public AtmosphericInformation getWeather() {
+            return weather;
+        }
+
+        public double getLatitude() {
+            return latitude;
+        }
+
+        public double getLongitude() {
+            return longitude;
+        }
+    }
+
+    /**
+     * A removed entry waiting to be unlinked from its cell.
+     */
+    private static final class Tombstone {
+        final int cell;
+        final Entry entry;
+        final long removedAt;
+
+        Tombstone(int cell, Entry entry, long removedAt) {
+            this.cell = cell;
+            this.entry = entry;
+            this.removedAt = removedAt;
+        }
+    }
+
+    /**
+     * A search result: an entry and its distance to the query point.
+     */
+    public static final class Neighbor {
+        private final Entry entry;
+        private final double distance;
+
+        Neighbor(Entry entry, double distance) {
+            this.entry = entry;
+            this.distance = distance;
+        }
+
+        public Airport getAirport() {
+            return entry.airport;
+        }
+
+        public AtmosphericInformation getWeather() {
+            return entry.weather;
+        }
+
+        /**
+         * @return this neighbor with other weather of its airport, e.g. without the expired data points
+         */
+        public Neighbor withWeather(AtmosphericInformation weather) {
+            return weather == entry.weather ? this : new Neighbor(entry.withWeather(weather), distance);
+        }
+
+        /**
+         * @return the distance in km
+         */
+        public double getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * A polyline of great circle segments with a corridor width, prepared for trigonometry free containment checks:
+     * a point is within the width of a segment if its distance to the segment's great circle is, and its projection
+     * lies between the segment's ends; otherwise the closer end decides.
+     */
+    private static final class Route {
+        final double[][] points;
+        /**
+         * per segment the normal of its great circle and the two tangents bounding its span, null if degenerate
+         */
+        final double[][] normals;
+        final double[][] fromStart;
+        final double[][] fromEnd;
+        final double pointLimit;
+        final double crossLimit;
+
+        Route(double[] latitudes, double[] longitudes, double widthKm) {
+            int n = latitudes.length;
+            points = new double[n][];
+            normals = new double[n][];
+            fromStart = new double[n][];
+            fromEnd = new double[n][];
+            for (int i = 0; i < n; i++) {
+                points[i] = GeoMath.toVector(latitudes[i], longitudes[i]);
+            }
+            for (int i = 1; i < n; i++) {
+                double[] normal = cross(points[i - 1], points[i]);
+                double length = Math.sqrt(dot(normal, normal));
+                if (length < 1e-12) {
+                    continue;
+                }
+                for (int j = 0; j < 3; j++) {
+                    normal[j] /= length;
+                }
+                normals[i] = normal;
+                fromStart[i] = cross(normal, points[i - 1]);
+                fromEnd[i] = cross(points[i], normal);
+            }
+            pointLimit = GeoMath.chordSquared(widthKm);
+            double angular = widthKm / GeoMath.EARTH_RADIUS_KM;
+            crossLimit = angular >= Math.PI / 2 ? 1 : Math.sin(angular);
+        }
+
+        boolean contains(Entry entry) {
+            for (double[] point : points) {
+                if (entry.chordSquared(point) <= pointLimit) {
+                    return true;
+                }
+            }
+            for (int i = 1; i < points.length; i++) {
+                if (normals[i] != null && Math.abs(entry.dot(normals[i])) <= crossLimit
+                        && entry.dot(fromStart[i]) >= 0 && entry.dot(fromEnd[i]) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static double[] cross(double[] a, double[] b) {
+            return new double[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+        }
+
+        private static double dot(double[] a, double[] b) {
+            return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+        }
+    }
+
+    /**
+     * A block or cell queued for the best first search, with its lower bound distance.
+     */
+    private static final class CellBound implements Comparable<CellBound> {
+        final int cell;
+        final boolean block;
+        final double distance;
+
+        CellBound(int cell, boolean block, double distance) {
+            this.cell = cell;
+            this.block = block;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(CellBound other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+}
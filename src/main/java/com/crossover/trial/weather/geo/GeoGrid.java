@@ -0,0 +1,120 @@
+package com.crossover.trial.weather.geo;
+
+import java.util.function.IntConsumer;
+
+/**
+ * A fixed latitude/longitude grid numbering the cells of the earth's surface row by row, from the south pole and
+ * the antimeridian. Used by the spatial indexes to find the cells covered by circles and boxes.
+ */
+public final class GeoGrid {
+
+    private final double cellDegrees;
+
+    private final int rows;
+
+    private final int columns;
+
+    /**
+     * @param cellDegrees edge length of a cell in degrees, should divide 180
+     */
+    public GeoGrid(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+        this.rows = (int) Math.ceil(180 / cellDegrees);
+        this.columns = (int) Math.ceil(360 / cellDegrees);
+    }
+
+    public double getCellDegrees() {
+        return cellDegrees;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of cells of the grid
+     */
+    public int size() {
+        return rows * columns;
+    }
+
+    public int row(double latitude) {
+        return Math.min(rows - 1, Math.max(0, (int) Math.floor((latitude + 90) / cellDegrees)));
+    }
+
+    public int column(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / cellDegrees) % columns;
+        return column < 0 ? column + columns : column;
+    }
+
+    /**
+     * @return the cell holding the point
+     */
+    public int cellOf(double latitude, double longitude) {
+        return row(latitude) * columns + column(longitude);
+    }
+
+    /**
+     * @return southern latitude of the cell's row
+     */
+    public double minLatitude(int cell) {
+        return -90 + (cell / columns) * cellDegrees;
+    }
+
+    /**
+     * @return western longitude of the cell's column
+     */
+    public double minLongitude(int cell) {
+        return -180 + (cell % columns) * cellDegrees;
+    }
+
+    /**
+     * Visits every cell intersecting a latitude band and a longitude range centered on a longitude, wrapping around
+     * the antimeridian. Each cell is visited once.
+     *
+     * @param minLatitude southern bound
+     * @param maxLatitude northern bound
+     * @param longitude   center longitude of the range
+     * @param lonSpan     half width of the range, 180 or more for all longitudes
+     * @param visitor     receives the cell numbers
+     */
+    public void forEachCell(double minLatitude, double maxLatitude, double longitude, double lonSpan,
+                            IntConsumer visitor) {
+        int fromRow = row(minLatitude);
+        int toRow = row(maxLatitude);
+        int fromColumn;
+        int count;
+        if (lonSpan >= 180) {
+            fromColumn = 0;
+            count = columns;
+        } else {
+            fromColumn = column(longitude - lonSpan);
+            count = (int) Math.floor((longitude + lonSpan + 180) / cellDegrees)
+                    - (int) Math.floor((longitude - lonSpan + 180) / cellDegrees) + 1;
+            count = Math.min(count, columns);
+        }
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int i = 0; i < count; i++) {
+                visitor.accept(row * columns + (fromColumn + i) % columns);
+            }
+        }
+    }
+
+    /**
+     * Visits every cell intersecting the bounding box of a circle.
+     *
+     * @param latitude  center latitude
+     * @param longitude center longitude
+     * @param radiusKm  circle radius
+     * @param visitor   receives the cell numbers
+     */
+    public void forEachCellInRadius(double latitude, double longitude, double radiusKm, IntConsumer visitor) {
+        double latSpan = GeoMath.latitudeSpan(radiusKm);
+        forEachCell(Math.max(-90, latitude - latSpan), Math.min(90, latitude + latSpan), longitude,
+                GeoMath.longitudeSpan(latitude, radiusKm), visitor);
+    }
+}
@@ -0,0 +1,191 @@
+package com.crossover.trial.weather.geo;
+
+/**
+ * Great circle math on a spherical earth. Angles are in degrees, distances in km.
+ */
+public final class GeoMath {
+
+    /**
+     * earth radius in KM
+     */
+    public static final double EARTH_RADIUS_KM = 6372.8;
+
+    private GeoMath() {
+    }
+
+    /**
+     * Haversine distance between two points.
+     *
+     * @return the distance in km
+     */
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double deltaLat = phi2 - phi1;
+        double deltaLon = Math.toRadians(lon2 - lon1);
+        double sinLat = Math.sin(deltaLat / 2);
+        double sinLon = Math.sin(deltaLon / 2);
+        double a = sinLat * sinLat + sinLon * sinLon * Math.cos(phi1) * Math.cos(phi2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Unit vector of a point, with x towards latitude and longitude 0 and z towards the north pole. Comparing the
+     * chord between two vectors with {@link #chordSquared(double)} is a trigonometry free distance check.
+     *
+     * @return x, y and z
+     */
+    public static double[] toVector(double lat, double lon) {
+        double phi = Math.toRadians(lat);
+        double lambda = Math.toRadians(lon);
+        return new double[]{Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi)};
+    }
+
+    /**
+     * @param distanceKm a great circle distance
+     * @return the squared length of the chord between two unit vectors this far apart
+     */
+    public static double chordSquared(double distanceKm) {
+        double angular = distanceKm / EARTH_RADIUS_KM;
+        if (angular >= Math.PI) {
+            return 4;
+        }
+        double chord = 2 * Math.sin(angular / 2);
+        return chord * chord;
+    }
+
+    /**
+     * Inverse of {@link #chordSquared(double)}.
+     *
+     * @param chordSquared squared chord length between two unit vectors
+     * @return the great circle distance in km
+     */
+    public static double chordDistance(double chordSquared) {
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(chordSquared) / 2));
+    }
+
+    /**
+     * Shortest distance from a point to the great circle segment between two points.
+     *
+     * @return the distance in km
+     */
+    public static double distanceToSegment(double lat, double lon, double lat1, double lon1, double lat2,
+                                           double lon2) {
+        double start = distance(lat1, lon1, lat, lon) / EARTH_RADIUS_KM;
+        double length = distance(lat1, lon1, lat2, lon2) / EARTH_RADIUS_KM;
+        if (length == 0) {
+            return start * EARTH_RADIUS_KM;
+        }
+        double angle = bearing(lat1, lon1, lat, lon) - bearing(lat1, lon1, lat2, lon2);
+        double crossTrack = Math.asin(Math.sin(start) * Math.sin(angle));
+        double alongTrack = Math.atan2(Math.sin(start) * Math.cos(angle), Math.cos(start));
+        if (alongTrack < 0) {
+            return start * EARTH_RADIUS_KM;
+        }
+        if (alongTrack > length) {
+            return distance(lat2, lon2, lat, lon);
+        }
+        return Math.abs(crossTrack) * EARTH_RADIUS_KM;
+    }
+
+    /**
+     * @return initial bearing from the first to the second point in radians
+     */
+    public static double bearing(double lat1, double lon1, double lat2, double lon2) {
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double deltaLon = Math.toRadians(lon2 - lon1);
+        return Math.atan2(Math.sin(deltaLon) * Math.cos(phi2),
+                Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(deltaLon));
+    }
+
+    /**
+     * Point at a fraction of the great circle segment between two points.
+     *
+     * @return latitude and longitude of the point
+     */
+    public static double[] interpolate(double lat1, double lon1, double lat2, double lon2, double fraction) {
+        double angular = distance(lat1, lon1, lat2, lon2) / EARTH_RADIUS_KM;
+        if (angular == 0) {
+            return new double[]{lat1, lon1};
+        }
+        double a = Math.sin((1 - fraction) * angular) / Math.sin(angular);
+        double b = Math.sin(fraction * angular) / Math.sin(angular);
+        double phi1 = Math.toRadians(lat1);
+        double phi2 = Math.toRadians(lat2);
+        double lambda1 = Math.toRadians(lon1);
+        double lambda2 = Math.toRadians(lon2);
+        double x = a * Math.cos(phi1) * Math.cos(lambda1) + b * Math.cos(phi2) * Math.cos(lambda2);
+        double y = a * Math.cos(phi1) * Math.sin(lambda1) + b * Math.cos(phi2) * Math.sin(lambda2);
+        double z = a * Math.sin(phi1) + b * Math.sin(phi2);
+        return new double[]{Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y))),
+                Math.toDegrees(Math.atan2(y, x))};
+    }
+
+    /**
+     * @param radiusKm a radius
+     * @return the latitude difference in degrees covered by the radius
+     */
+    public static double latitudeSpan(double radiusKm) {
+        return Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+    }
+
+    /**
+     * Half width in degrees of longitude of the bounding box of a circle. Circles reaching over a pole cover all
+     * longitudes.
+     *
+     * @param latitude center latitude
+     * @param radiusKm circle radius
+     * @return the longitude difference in degrees, 180 if the circle covers all longitudes
+     */
+    public static double longitudeSpan(double latitude, double radiusKm) {
+        double angular = radiusKm / EARTH_RADIUS_KM;
+        double latSpan = Math.toDegrees(angular);
+        if (latitude + latSpan >= 90 || latitude - latSpan <= -90 || angular >= Math.PI / 2) {
+            return 180;
+        }
+        double s = Math.sin(angular) / Math.cos(Math.toRadians(latitude));
+        return s >= 1 ? 180 : Math.toDegrees(Math.asin(s));
+    }
+
+    /**
+     * Shortest distance from a point to a latitude/longitude box, 0 if the point lies inside. Used as the lower
+     * bound of the distance to anything stored in a grid cell.
+     *
+     * @param minLon western edge, the box spans lonWidth degrees eastwards from it
+     * @return the distance in km
+     */
+    public static double distanceToBox(double lat, double lon, double minLat, double maxLat, double minLon,
+                                       double lonWidth) {
+        double east = normalizeLongitude(lon - minLon);
+        if (east < 0) {
+            east += 360;
+        }
+        if (east <= lonWidth) {
+            // within the box's meridians: straight north or south
+            if (lat < minLat) {
+                return Math.toRadians(minLat - lat) * EARTH_RADIUS_KM;
+            }
+            return lat > maxLat ? Math.toRadians(lat - maxLat) * EARTH_RADIUS_KM : 0;
+        }
+        // otherwise the closest point lies on the nearer of the two meridian edges
+        double edge = east - lonWidth < 360 - east ? minLon + lonWidth : minLon;
+        double phi = Math.toRadians(lat);
+        double deltaLon = Math.toRadians(lon - edge);
+        // latitude of the point on the edge's great circle closest to the point
+        double closest = Math.toDegrees(Math.atan2(Math.sin(phi), Math.cos(phi) * Math.cos(deltaLon)));
+        double d = Math.min(distance(lat, lon, minLat, edge), distance(lat, lon, maxLat, edge));
+        if (closest > minLat && closest < maxLat) {
+            d = Math.min(d, distance(lat, lon, closest, edge));
+        }
+        return d;
+    }
+
+    /**
+     * @return the longitude in the range [-180, 180)
+     */
+    public static double normalizeLongitude(double lon) {
+        double normalized = (lon + 180) % 360;
+        return (normalized < 0 ? normalized + 360 : normalized) - 180;
+    }
+}
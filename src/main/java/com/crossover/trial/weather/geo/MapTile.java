@@ -0,0 +1,146 @@
+package com.crossover.trial.weather.geo;
+
+/**
+ * A web mercator map tile as addressed by map frontends: zoom z splits the world into 2^z by 2^z tiles, x counting
+ * eastwards from the antimeridian and y southwards from the northern edge at about 85.05 degrees. The tiles of the
+ * first and last row extend to the poles, so every point lies in exactly one tile per zoom; points on a tile
+ * boundary belong to the tile east or south of it.
+ */
+public final class MapTile {
+
+    /**
+     * highest zoom accepted, tiles are a few meters wide there
+     */
+    public static final int MAX_ZOOM = 24;
+
+    private final int z;
+
+    private final int x;
+
+    private final int y;
+
+    /**
+     * @throws IllegalArgumentException if the zoom or the tile numbers are out of range
+     */
+    public MapTile(int z, int x, int y) {
+        if (z < 0 || z > MAX_ZOOM) {
+            throw new IllegalArgumentException("zoom must be from 0 to " + MAX_ZOOM + ", got " + z);
+        }
+        int n = 1 << z;
+        if (x < 0 || x >= n || y < 0 || y >= n) {
+            throw new IllegalArgumentException("no tile " + x + "/" + y + " at zoom " + z);
+        }
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * @return the tile of the zoom holding the point
+     */
+    public static MapTile containing(int z, double latitude, double longitude) {
+        return new MapTile(z, column(z, longitude), row(z, latitude));
+    }
+
+    /**
+     * @return the key of the tile of the zoom holding the point, see {@link #key()}
+     */
+    public static long keyOf(int z, double latitude, double longitude) {
+        return key(z, column(z, longitude), row(z, latitude));
+    }
+
+    private static int column(int z, double longitude) {
+        int n = 1 << z;
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((longitude + 180) / 360 * n)));
+    }
+
+    private static int row(int z, double latitude) {
+        int n = 1 << z;
+        double phi = Math.toRadians(Math.max(-89.9, Math.min(89.9, latitude)));
+        double mercator = Math.log(Math.tan(phi) + 1 / Math.cos(phi));
+        return Math.max(0, Math.min(n - 1, (int) Math.floor((1 - mercator / Math.PI) / 2 * n)));
+    }
+
+    private static long key(int z, int x, int y) {
+        return ((long) z << 58) | ((long) x << 29) | y;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    /**
+     * @return a number identifying the tile among the tiles of all zooms
+     */
+    public long key() {
+        return key(z, x, y);
+    }
+
+    /**
+     * @return true if the point lies in this tile
+     */
+    public boolean contains(double latitude, double longitude) {
+        return column(z, longitude) == x && row(z, latitude) == y;
+    }
+
+    /**
+     * @return the tile at the zoom below this one, i.e. with {@code 4^levels} times as many tiles, at the given
+     * offsets from this tile's north western one
+     */
+    public MapTile descendant(int levels, int dx, int dy) {
+        return new MapTile(z + levels, (x << levels) + dx, (y << levels) + dy);
+    }
+
+    public double getMinLatitude() {
+        return y == (1 << z) - 1 ? -90 : latitude(y + 1);
+    }
+
+    public double getMaxLatitude() {
+        return y == 0 ? 90 : latitude(y);
+    }
+
+    public double getMinLongitude() {
+        return (double) x / (1 << z) * 360 - 180;
+    }
+
+    public double getMaxLongitude() {
+        return (double) (x + 1) / (1 << z) * 360 - 180;
+    }
+
+    /**
+     * @return latitude of the northern edge of the tile row
+     */
+    private double latitude(int row) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * row / (1 << z)))));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MapTile)) {
+            return false;
+        }
+        MapTile that = (MapTile) o;
+        return z == that.z && x == that.x && y == that.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(key());
+    }
+
+    @Override
+    public String toString() {
+        return z + "/" + x + "/" + y;
+    }
+}
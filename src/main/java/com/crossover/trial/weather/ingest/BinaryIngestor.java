@@ -0,0 +1,93 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
+import com.crossover.trial.weather.codec.IataCodes;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportWeatherService;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Applies binary data point messages to the {@link AirportWeatherService}. Records are decoded into reusable scratch
+ * objects and validated with {@link DataPointType#isValid(DataPoint)}; only accepted records are copied for storage.
+ * Records are queued instead when the {@link IngestionPipeline} is running; records refused by a full pipeline
+ * count as rejected.
+ * <p>
+ * Instances are not thread safe, use one per thread.
+ */
+public class BinaryIngestor {
+
+    private static final ThreadLocal<BinaryIngestor> PER_THREAD = ThreadLocal.withInitial(BinaryIngestor::new);
+
+    private final AirportWeatherService service = AirportWeatherService.getInstance();
+
+    private final byte[] iata = new byte[3];
+
+    private final DataPoint scratch = new DataPoint();
+
+    private int accepted;
+
+    private int rejected;
+
+    /**
+     * @return the ingestor of the calling thread
+     */
+    public static BinaryIngestor forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Applies all complete records remaining in the buffer. Trailing bytes of an incomplete record are counted as
+     * one rejected record.
+     *
+     * @param in buffer positioned at the first record
+     */
+    public void ingest(ByteBuffer in) {
+        accepted = 0;
+        rejected = 0;
+        while (in.remaining() >= BinaryDataPointCodec.RECORD_SIZE) {
+            DataPointType type = BinaryDataPointCodec.decode(in, iata, scratch);
+            if (type == null || !type.isValid(scratch)) {
+                rejected++;
+                continue;
+            }
+            String iataCode = IataCodes.of(iata, 0);
+            IngestionPipeline pipeline = IngestionPipeline.getInstance();
+            if (pipeline != null) {
+                if (AirportWeatherService.findAirportData(iataCode) != null
+                        && pipeline.offer(iataCode, type, BinaryDataPointCodec.copyOf(scratch))) {
+                    accepted++;
+                } else {
+                    rejected++;
+                }
+                continue;
+            }
+            try {
+                service.addDataPoint(iataCode, type, BinaryDataPointCodec.copyOf(scratch));
+                accepted++;
+            } catch (WeatherException e) {
+                rejected++;
+            }
+        }
+        if (in.hasRemaining()) {
+            rejected++;
+            in.position(in.limit());
+        }
+    }
+
+    /**
+     * @return number of records applied by the last {@link #ingest(ByteBuffer)}
+     */
+    public int getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return number of records rejected by the last {@link #ingest(ByteBuffer)}
+     */
+    public int getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,263 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportWeatherService;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Decouples collecting from applying data points. Collector requests only enqueue an update and return; dedicated
+ * applier threads drain the queues in batches and apply them to {@link AirportWeatherService}.
+ * <p>
+ * Updates are sharded by airport onto one {@link MpscRingBuffer} and applier thread each, so the updates of an
+ * airport are applied in order. Within a batch, updates of the same airport and data point type are coalesced and
+ * only the last one is applied, since earlier values would be overwritten before anyone could read them. When the
+ * service {@link AirportWeatherService#isMergingDataPoints() merges} data points every update is applied.
+ * <p>
+ * The queues are bounded: when a shard is full {@link #offer(String, DataPointType, DataPoint)} fails and the
+ * collector is expected to retry later.
+ */
+public class IngestionPipeline {
+    public final static Logger LOGGER = Logger.getLogger(IngestionPipeline.class.getName());
+
+    /**
+     * maximum number of updates drained and coalesced at once
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    /**
+     * how long an idle applier parks before polling again, producers wake it up earlier
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static volatile IngestionPipeline instance;
+
+    private final AirportWeatherService service = AirportWeatherService.getInstance();
+
+    private final Shard[] shards;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong refused = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong applied = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running;
+
+    /**
+     * @param capacity total number of queued updates, split over the shards
+     * @param threads  number of shards and applier threads
+     */
+    public IngestionPipeline(int capacity, int threads) {
+        shards = new Shard[threads];
+        for (int i = 0; i < threads; i++) {
+            shards[i] = new Shard(Math.max(1, capacity / threads), i);
+        }
+    }
+
+    /**
+     * Creates and starts the pipeline collector requests are routed through.
+     *
+     * @param capacity total number of queued updates
+     * @param threads  number of applier threads
+     * @return the started pipeline
+     */
+    public static synchronized IngestionPipeline start(int capacity, int threads) {
+        if (instance == null) {
+            IngestionPipeline pipeline = new IngestionPipeline(capacity, threads);
+            pipeline.start();
+            AirportWeatherService.registerPingSection("ingest", pipeline::status);
+            instance = pipeline;
+            LOGGER.info("asynchronous ingestion with " + threads + " appliers, capacity " + capacity);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the started pipeline, or null if data points are applied synchronously
+     */
+    public static IngestionPipeline getInstance() {
+        return instance;
+    }
+
+    public void start() {
+        running = true;
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+    }
+
+    /**
+     * Queues an update. The type must be known; validity of the data point is checked by the caller.
+     *
+     * @return false if the update's shard is full
+     */
+    public boolean offer(String iataCode, DataPointType type, DataPoint dataPoint) {
+        Shard shard = shards[(iataCode.hashCode() & Integer.MAX_VALUE) % shards.length];
+        if (!shard.queue.offer(new Update(iataCode, type, dataPoint))) {
+            refused.incrementAndGet();
+            return false;
+        }
+        enqueued.incrementAndGet();
+        if (shard.idle) {
+            LockSupport.unpark(shard.thread);
+        }
+        return true;
+    }
+
+    /**
+     * Waits until all updates queued so far have been applied.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return false if the timeout elapsed first
+     */
+    public boolean awaitApplied(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (applied.get() + coalesced.get() + failed.get() < target) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+        return true;
+    }
+
+    /**
+     * @return pipeline statistics for the ping output
+     */
+    public Map<String, Object> status() {
+        int queued = 0;
+        for (Shard shard : shards) {
+            queued += shard.queue.size();
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("queued", queued);
+        status.put("enqueued", enqueued.get());
+        status.put("refused", refused.get());
+        status.put("coalesced", coalesced.get());
+        status.put("applied", applied.get());
+        status.put("failed", failed.get());
+        return status;
+    }
+
+    private void apply(Update update) {
+        try {
+            service.addDataPoint(update.iataCode, update.type, update.dataPoint);
+            applied.incrementAndGet();
+        } catch (WeatherException e) {
+            // e.g. the airport was deleted after the update was accepted
+            failed.incrementAndGet();
+            LOGGER.log(Level.FINE, "dropping update of " + update.iataCode, e);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            LOGGER.log(Level.WARNING, "applying update of " + update.iataCode + " failed", e);
+        }
+    }
+
+    private final class Shard {
+        final MpscRingBuffer<Update> queue;
+
+        final Thread thread;
+
+        /**
+         * last update per airport and type of the current batch
+         */
+        final Map<Update, Update> batch = new HashMap<>();
+
+        /**
+         * updates of the current batch applied as drained, without coalescing
+         */
+        int uncoalesced;
+
+        volatile boolean idle;
+
+        Shard(int capacity, int index) {
+            queue = new MpscRingBuffer<>(capacity);
+            thread = new Thread(this::run, "ingest-applier-" + index);
+            thread.setDaemon(true);
+        }
+
+        void run() {
+            while (running) {
+                int drained = queue.drain(this::coalesce, BATCH_SIZE);
+                if (drained == 0) {
+                    idle = true;
+                    if (queue.size() == 0) {
+                        LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                coalesced.addAndGet(drained - uncoalesced - batch.size());
+                for (Update update : batch.values()) {
+                    apply(update);
+                }
+                batch.clear();
+                uncoalesced = 0;
+            }
+        }
+
+        void coalesce(Update update) {
+            if (AirportWeatherService.isMergingDataPoints()) {
+                // every update adds observations to the merged data point
+                apply(update);
+                uncoalesced++;
+            } else {
+                batch.put(update, update);
+            }
+        }
+    }
+
+    /**
+     * A queued data point; equal to other updates of the same airport and type.
+     */
+    private static final class Update {
+        final String iataCode;
+        final DataPointType type;
+        final DataPoint dataPoint;
+
+        Update(String iataCode, DataPointType type, DataPoint dataPoint) {
+            this.iataCode = iataCode;
+            this.type = type;
+            this.dataPoint = dataPoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Update)) {
+                return false;
+            }
+            Update other = (Update) o;
+            return type == other.type && iataCode.equals(other.iataCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return iataCode.hashCode() * 31 + type.ordinal();
+        }
+    }
+}
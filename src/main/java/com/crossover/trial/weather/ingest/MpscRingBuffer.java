@@ -0,0 +1,103 @@
+package com.crossover.trial.weather.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free multi producer, single consumer queue on a ring of slots. Each slot carries a sequence number
+ * telling producers and the consumer whose turn it is, so producers only contend on the tail counter and never
+ * wait for each other.
+ *
+ * @param <E> the element type
+ */
+public final class MpscRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * only touched by the consumer
+     */
+    private long head;
+
+    /**
+     * @param capacity minimum number of slots, rounded up to a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds an element, from any thread.
+     *
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(slot, element);
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // the consumer has not freed the slot of the previous lap yet
+                return false;
+            }
+            // another producer claimed the position, retry with the new tail
+        }
+    }
+
+    /**
+     * Removes up to max elements, from the consumer thread only. Stops early at a slot claimed by a producer which
+     * has not published its element yet.
+     *
+     * @return the number of elements passed to the consumer
+     */
+    public int drain(Consumer<? super E> consumer, int max) {
+        int drained = 0;
+        while (drained < max) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            E element = elements.get(slot);
+            elements.lazySet(slot, null);
+            sequences.set(slot, head + mask + 1);
+            head++;
+            drained++;
+            consumer.accept(element);
+        }
+        return drained;
+    }
+
+    /**
+     * @return the approximate number of queued elements
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+}
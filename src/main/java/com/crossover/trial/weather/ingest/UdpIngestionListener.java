@@ -0,0 +1,118 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
+import com.crossover.trial.weather.tenant.TenantQuotas;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives binary data point messages ({@link BinaryDataPointCodec}) as UDP datagrams, for collectors which can
+ * tolerate loss in exchange for the lowest overhead. Each datagram holds any number of whole records. A single
+ * thread reads into one reusable direct buffer.
+ * <p>
+ * With {@link TenantQuotas} each datagram is charged one data point per record to the tenant of its source address;
+ * a datagram beyond the quota is dropped and its records count as rejected.
+ */
+public class UdpIngestionListener {
+    public final static Logger LOGGER = Logger.getLogger(UdpIngestionListener.class.getName());
+
+    /**
+     * largest UDP payload
+     */
+    private static final int MAX_DATAGRAM = 65507;
+
+    private final int port;
+
+    /**
+     * ingestion quotas by source address, null for none
+     */
+    private final TenantQuotas quotas;
+
+    private final AtomicLong accepted = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile DatagramChannel channel;
+
+    public UdpIngestionListener(int port) {
+        this(port, null);
+    }
+
+    /**
+     * @param port   the port to receive on, 0 for any free one
+     * @param quotas the ingestion quotas charged by source address, null for none
+     */
+    public UdpIngestionListener(int port, TenantQuotas quotas) {
+        this.port = port;
+        this.quotas = quotas;
+    }
+
+    /**
+     * Binds the port and starts the receiver thread.
+     *
+     * @throws IOException if the port can not be bound
+     */
+    public void start() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        Thread receiver = new Thread(this::receive, "udp-ingestion");
+        receiver.setDaemon(true);
+        receiver.start();
+        LOGGER.info("binary ingestion listening on udp port " + port);
+    }
+
+    /**
+     * @return the port datagrams are received on, the one bound if started on port 0
+     */
+    public int getPort() throws IOException {
+        return channel == null ? port : ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    public void stop() throws IOException {
+        channel.close();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        BinaryIngestor ingestor = new BinaryIngestor();
+        while (channel.isOpen()) {
+            try {
+                buffer.clear();
+                SocketAddress source = channel.receive(buffer);
+                buffer.flip();
+                long records = Math.max(1, buffer.remaining() / BinaryDataPointCodec.RECORD_SIZE);
+                if (quotas != null && source instanceof InetSocketAddress && !quotas.forAddress(
+                        ((InetSocketAddress) source).getAddress()).admitIngest(records, System.nanoTime())) {
+                    rejected.addAndGet(records);
+                    continue;
+                }
+                ingestor.ingest(buffer);
+                accepted.addAndGet(ingestor.getAccepted());
+                rejected.addAndGet(ingestor.getRejected());
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    LOGGER.log(Level.WARNING, "receiving datagram failed", e);
+                }
+            } catch (RuntimeException e) {
+                // e.g. thrown by a change listener; the rest of the datagram is lost, the next ones are received
+                accepted.addAndGet(ingestor.getAccepted());
+                LOGGER.log(Level.WARNING, "ingesting datagram failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.crossover.trial.weather.replication;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+/**
+ * Answers the queries of a replica with a 503 and a Retry-After header while it applies a snapshot of the primary,
+ * so clients never see a partially loaded state. The ping is always served, it reports the replication progress.
+ */
+@Provider
+public class BootstrapFilter implements ContainerRequestFilter {
+
+    private final ReplicationReplica replica;
+
+    public BootstrapFilter(ReplicationReplica replica) {
+        this.replica = replica;
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        String path = request.getUriInfo().getPath();
+        if (!replica.isBootstrapped() && path.startsWith("query") && !path.startsWith("query/ping")) {
+            request.abortWith(Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", "1")
+                    .build());
+        }
+    }
+}
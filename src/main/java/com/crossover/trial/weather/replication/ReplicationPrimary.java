@@ -0,0 +1,253 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.service.AirportRegistry;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import com.crossover.trial.weather.service.WeatherChangeListener;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Primary side of the replication stream. Every mutation of {@link AirportWeatherService} is encoded once as a
+ * {@link ReplicationProtocol} record and queued for all connected replicas. A newly connected replica first gets a
+ * snapshot of the current state and then tails the log. The service notifies its listeners while it still holds
+ * the changed airport's lock, so records are numbered and queued in the order the changes were applied.
+ * <p>
+ * Each replica has a bounded queue; a replica that falls too far behind is disconnected and has to bootstrap again
+ * from a fresh snapshot, so a slow replica never stalls the collectors.
+ */
+public class ReplicationPrimary implements WeatherChangeListener {
+    public final static Logger LOGGER = Logger.getLogger(ReplicationPrimary.class.getName());
+
+    /**
+     * maximum number of records buffered per replica before it is dropped
+     */
+    private static final int QUEUE_CAPACITY = 65536;
+
+    /**
+     * interval of heartbeats sent on an idle stream, used by replicas to compute the lag
+     */
+    private static final long HEARTBEAT_MILLIS = 1000;
+
+    private final int port;
+
+    private final List<Session> sessions = new CopyOnWriteArrayList<>();
+
+    /**
+     * sequence number of the last published record, guarded by this
+     */
+    private long seq;
+
+    private volatile ServerSocket serverSocket;
+
+    public ReplicationPrimary(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Starts accepting replicas and registers this primary as listener of the service.
+     *
+     * @throws IOException if the replication port can not be bound
+     */
+    public void start() throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port));
+        serverSocket = socket;
+        AirportWeatherService.addListener(this);
+        AirportWeatherService.registerPingSection("replication", this::status);
+
+        Thread acceptor = new Thread(this::acceptLoop, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        LOGGER.info("replication primary listening on port " + port);
+    }
+
+    /**
+     * @return the port replicas connect to, the one bound if started on port 0
+     */
+    public int getPort() {
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting replicas and disconnects the connected ones.
+     */
+    public void stop() {
+        AirportWeatherService.removeListener(this);
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "closing replication socket", e);
+        }
+        for (Session session : sessions) {
+            session.close();
+        }
+    }
+
+    @Override
+    public void airportSaved(Airport airport) {
+        synchronized (this) {
+            publish(ReplicationProtocol.saveAirport(++seq, System.currentTimeMillis(), airport));
+        }
+    }
+
+    @Override
+    public void airportDeleted(Airport airport) {
+        synchronized (this) {
+            publish(ReplicationProtocol.deleteAirport(++seq, System.currentTimeMillis(), airport.getIata()));
+        }
+    }
+
+    @Override
+    public void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint) {
+        long now = System.currentTimeMillis();
+        // called under the airport's lock, so this is the time of the update being published
+        AirportRegistry.Record record = AirportWeatherService.registry.get(airport.getIata());
+        long updateTime = record == null ? now : record.getWeather().getUpdateTime(type);
+        synchronized (this) {
+            publish(ReplicationProtocol.dataPoint(++seq, now, airport.getIata(), type, dataPoint, updateTime));
+        }
+    }
+
+    /**
+     * Must be called holding the lock, so records are queued in sequence order for every session.
+     */
+    private void publish(byte[] record) {
+        for (Session session : sessions) {
+            if (!session.queue.offer(record)) {
+                LOGGER.warning("replica " + session.remote + " is too slow, disconnecting");
+                session.close();
+            }
+        }
+    }
+
+    private synchronized long currentSeq() {
+        return seq;
+    }
+
+    private Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("role", "primary");
+        status.put("seq", currentSeq());
+        status.put("replicas", sessions.size());
+        List<Integer> backlog = new ArrayList<>();
+        for (Session session : sessions) {
+            backlog.add(session.queue.size());
+        }
+        status.put("backlog", backlog);
+        return status;
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                long snapshotSeq;
+                // registering under the lock guarantees that every record after snapshotSeq reaches the queue
+                synchronized (this) {
+                    sessions.add(session);
+                    snapshotSeq = seq;
+                }
+                Thread writer = new Thread(() -> session.run(snapshotSeq), "replication-" + session.remote);
+                writer.setDaemon(true);
+                writer.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "accepting replica failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A connected replica with its pending records.
+     */
+    private class Session {
+        private final Socket socket;
+
+        private final String remote;
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        Session(Socket socket) {
+            this.socket = socket;
+            this.remote = String.valueOf(socket.getRemoteSocketAddress());
+        }
+
+        void run(long snapshotSeq) {
+            LOGGER.info("replica " + remote + " connected, sending snapshot at seq " + snapshotSeq);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                out.writeInt(ReplicationProtocol.MAGIC);
+                writeSnapshot(out, snapshotSeq);
+                out.flush();
+
+                while (!socket.isClosed()) {
+                    byte[] record = queue.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (record == null) {
+                        out.write(ReplicationProtocol.control(ReplicationProtocol.HEARTBEAT, currentSeq(),
+                                System.currentTimeMillis()));
+                    } else {
+                        out.write(record);
+                        // batch whatever else is already pending into the same flush
+                        while ((record = queue.poll()) != null) {
+                            out.write(record);
+                        }
+                    }
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                LOGGER.log(Level.INFO, "replica " + remote + " disconnected", e);
+            } finally {
+                close();
+            }
+        }
+
+        private void writeSnapshot(DataOutputStream out, long snapshotSeq) throws IOException {
+            long now = System.currentTimeMillis();
+            out.write(ReplicationProtocol.control(ReplicationProtocol.SNAPSHOT_BEGIN, snapshotSeq, now));
+            for (AirportRegistry.Record record : AirportWeatherService.registry) {
+                Airport airport = record.getAirport();
+                out.write(ReplicationProtocol.saveAirport(snapshotSeq, now, airport));
+                AtmosphericInformation ai = record.getWeather();
+                for (DataPointType type : DataPointType.values()) {
+                    DataPoint dp = ai.get(type);
+                    if (dp != null) {
+                        out.write(ReplicationProtocol.dataPoint(snapshotSeq, now, airport.getIata(), type, dp,
+                                ai.getUpdateTime(type)));
+                    }
+                }
+            }
+            out.write(ReplicationProtocol.control(ReplicationProtocol.SNAPSHOT_END, snapshotSeq, now));
+        }
+
+        void close() {
+            sessions.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "closing replica socket", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary log format shared by the replication primary and its replicas.
+ * <p>
+ * The stream starts with {@link #MAGIC}, followed by records. Every record has a common header
+ * <pre>
+ *   byte op | long seq | long primaryTimeMillis
+ * </pre>
+ * and an op specific payload:
+ * <pre>
+ *   SAVE_AIRPORT   : utf iata | double latitude | double longitude | utf icao | utf city | utf country
+ *                    | int altitude | double timezone
+ *   DELETE_AIRPORT : utf iata
+ *   DATA_POINT     : utf iata | byte type ordinal | double mean | int first | int second | int third | int count
+ *                    | long updateTimeMillis
+ *   SNAPSHOT_BEGIN, SNAPSHOT_END, HEARTBEAT : no payload
+ * </pre>
+ * A replica first receives a snapshot bracketed by SNAPSHOT_BEGIN/SNAPSHOT_END, then tails the live log. Records
+ * of the live log are numbered in the order the primary applied them, and data points carry the primary's update
+ * time, so expiry and freshness on a replica follow the primary.
+ * All operations are idempotent, so records overlapping with the snapshot can safely be applied twice. Unknown
+ * codes and names are written as empty strings.
+ */
+public final class ReplicationProtocol {
+
+    /**
+     * "WRL3", written once at the start of every stream
+     */
+    public static final int MAGIC = 0x57524c33;
+
+    public static final byte SNAPSHOT_BEGIN = 1;
+
+    public static final byte SNAPSHOT_END = 2;
+
+    public static final byte SAVE_AIRPORT = 3;
+
+    public static final byte DELETE_AIRPORT = 4;
+
+    public static final byte DATA_POINT = 5;
+
+    public static final byte HEARTBEAT = 6;
+
+    private static final DataPointType[] TYPES = DataPointType.values();
+
+    private ReplicationProtocol() {
+    }
+
+    /**
+     * @return an encoded record without payload
+     */
+    public static byte[] control(byte op, long seq, long time) {
+        return encode(op, seq, time, null, null, null, null, 0);
+    }
+
+    /**
+     * @return an encoded SAVE_AIRPORT record
+     */
+    public static byte[] saveAirport(long seq, long time, Airport airport) {
+        return encode(SAVE_AIRPORT, seq, time, airport.getIata(), airport, null, null, 0);
+    }
+
+    /**
+     * @return an encoded DELETE_AIRPORT record
+     */
+    public static byte[] deleteAirport(long seq, long time, String iata) {
+        return encode(DELETE_AIRPORT, seq, time, iata, null, null, null, 0);
+    }
+
+    /**
+     * @return an encoded DATA_POINT record
+     */
+    public static byte[] dataPoint(long seq, long time, String iata, DataPointType type, DataPoint dp,
+                                   long updateTime) {
+        return encode(DATA_POINT, seq, time, iata, null, type, dp, updateTime);
+    }
+
+    private static byte[] encode(byte op, long seq, long time, String iata, Airport airport, DataPointType type,
+                                 DataPoint dp, long updateTime) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(op);
+            out.writeLong(seq);
+            out.writeLong(time);
+            switch (op) {
+                case SAVE_AIRPORT:
+                    out.writeUTF(iata);
+                    out.writeDouble(airport.getLatitude());
+                    out.writeDouble(airport.getLongitude());
+                    out.writeUTF(orEmpty(airport.getIcao()));
+                    out.writeUTF(orEmpty(airport.getCity()));
+                    out.writeUTF(orEmpty(airport.getCountry()));
+                    out.writeInt(airport.getAltitude());
+                    out.writeDouble(airport.getTimezone());
+                    break;
+                case DELETE_AIRPORT:
+                    out.writeUTF(iata);
+                    break;
+                case DATA_POINT:
+                    out.writeUTF(iata);
+                    out.writeByte(type.ordinal());
+                    writeDataPoint(out, dp);
+                    out.writeLong(updateTime);
+                    break;
+                default:
+                    break;
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // in-memory stream, can not happen
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeDataPoint(DataOutput out, DataPoint dp) throws IOException {
+        out.writeDouble(dp.getMean());
+        out.writeInt(dp.getFirst());
+        out.writeInt(dp.getSecond());
+        out.writeInt(dp.getThird());
+        out.writeInt(dp.getCount());
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String orNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Reads a SAVE_AIRPORT payload.
+     */
+    static Airport readAirport(DataInput in) throws IOException {
+        String iata = in.readUTF();
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        String icao = orNull(in.readUTF());
+        String city = orNull(in.readUTF());
+        String country = orNull(in.readUTF());
+        return new Airport(iata, icao, city, country, latitude, longitude, in.readInt(), in.readDouble());
+    }
+
+    /**
+     * Reads a data point payload.
+     */
+    static DataPoint readDataPoint(DataInput in) throws IOException {
+        DataPoint dp = new DataPoint();
+        dp.setMean(in.readDouble());
+        dp.setFirst(in.readInt());
+        dp.setSecond(in.readInt());
+        dp.setThird(in.readInt());
+        dp.setCount(in.readInt());
+        return dp;
+    }
+
+    /**
+     * Reads a data point type ordinal.
+     */
+    static DataPointType readType(DataInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= TYPES.length) {
+            throw new IOException("unknown data point type ordinal " + ordinal);
+        }
+        return TYPES[ordinal];
+    }
+}
@@ -0,0 +1,261 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportWeatherService;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replica side of the replication stream. Connects to the primary, bootstraps the in-memory state from the snapshot
+ * and then applies the live log. On disconnect it reconnects and bootstraps again. Queries are refused by the
+ * {@link BootstrapFilter} while a snapshot is applied; the request statistics are kept across snapshots.
+ * <p>
+ * The replication lag is published in the query ping under the "replication" key.
+ */
+public class ReplicationReplica {
+    public final static Logger LOGGER = Logger.getLogger(ReplicationReplica.class.getName());
+
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * applies the log to the service
+     */
+    private static final Target SERVICE = new Target() {
+        @Override
+        public void clear() {
+            AirportWeatherService.clearAirports();
+        }
+
+        @Override
+        public void saveAirport(Airport airport) {
+            AirportWeatherService.saveAirport(airport);
+        }
+
+        @Override
+        public void deleteAirport(String iata) {
+            AirportWeatherService.deleteAirport(iata);
+        }
+
+        @Override
+        public void addDataPoint(String iata, DataPointType type, DataPoint dp, long updateTime)
+                throws WeatherException {
+            // the primary ships data points already merged, if it merges
+            AirportWeatherService.getInstance().replicateDataPoint(iata, type, dp, updateTime);
+        }
+
+        @Override
+        public int size() {
+            return AirportWeatherService.registry.size();
+        }
+    };
+
+    private final Target target;
+
+    private volatile boolean running;
+
+    private volatile boolean connected;
+
+    private volatile boolean bootstrapped;
+
+    /**
+     * sequence of the last applied record
+     */
+    private volatile long appliedSeq;
+
+    /**
+     * latest sequence known to exist on the primary, advanced by heartbeats
+     */
+    private volatile long primarySeq;
+
+    /**
+     * primary clock of the last record or heartbeat
+     */
+    private volatile long primaryTime;
+
+    /**
+     * local clock when the last record or heartbeat was received
+     */
+    private volatile long receivedTime;
+
+    /**
+     * @param primary host:port of the replication primary
+     */
+    public ReplicationReplica(String primary) {
+        this(primary, SERVICE);
+    }
+
+    /**
+     * @param primary host:port of the replication primary
+     * @param target  what the log is applied to
+     */
+    ReplicationReplica(String primary, Target target) {
+        this.target = target;
+        int colon = primary.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("expected host:port, got " + primary);
+        }
+        this.host = primary.substring(0, colon);
+        this.port = Integer.parseInt(primary.substring(colon + 1));
+    }
+
+    /**
+     * Starts tailing the primary in a background thread.
+     */
+    public void start() {
+        running = true;
+        AirportWeatherService.registerPingSection("replication", this::status);
+        Thread tailer = new Thread(this::run, "replication-replica");
+        tailer.setDaemon(true);
+        tailer.start();
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @return true once the initial snapshot has been applied
+     */
+    public boolean isBootstrapped() {
+        return bootstrapped;
+    }
+
+    Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("role", "replica");
+        status.put("connected", connected);
+        status.put("bootstrapped", bootstrapped);
+        status.put("applied_seq", appliedSeq);
+        status.put("primary_seq", primarySeq);
+        status.put("seq_lag", Math.max(0, primarySeq - appliedSeq));
+        // time since the primary produced the newest record we have seen, includes clock skew between the hosts
+        status.put("lag_ms", primaryTime == 0 ? -1 : Math.max(0, System.currentTimeMillis() - primaryTime));
+        status.put("last_received_ms_ago", receivedTime == 0 ? -1 : System.currentTimeMillis() - receivedTime);
+        return status;
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                connected = true;
+                tail(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "replication stream from " + host + ":" + port + " failed", e);
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void tail(DataInputStream in) throws IOException {
+        if (in.readInt() != ReplicationProtocol.MAGIC) {
+            throw new IOException("not a replication stream");
+        }
+        while (running) {
+            byte op = in.readByte();
+            long seq = in.readLong();
+            long time = in.readLong();
+            apply(op, in);
+
+            receivedTime = System.currentTimeMillis();
+            primaryTime = time;
+            primarySeq = Math.max(primarySeq, seq);
+            if (op != ReplicationProtocol.HEARTBEAT) {
+                appliedSeq = seq;
+            }
+        }
+    }
+
+    private void apply(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case ReplicationProtocol.SNAPSHOT_BEGIN:
+                LOGGER.info("bootstrapping from primary snapshot");
+                bootstrapped = false;
+                primarySeq = 0;
+                target.clear();
+                break;
+            case ReplicationProtocol.SNAPSHOT_END:
+                bootstrapped = true;
+                LOGGER.info("snapshot applied, " + target.size() + " airports");
+                break;
+            case ReplicationProtocol.SAVE_AIRPORT:
+                // a known code is left alone by the service
+                target.saveAirport(ReplicationProtocol.readAirport(in));
+                break;
+            case ReplicationProtocol.DELETE_AIRPORT:
+                target.deleteAirport(in.readUTF());
+                break;
+            case ReplicationProtocol.DATA_POINT: {
+                String iata = in.readUTF();
+                DataPointType type = ReplicationProtocol.readType(in);
+                DataPoint dp = ReplicationProtocol.readDataPoint(in);
+                long updateTime = in.readLong();
+                try {
+                    target.addDataPoint(iata, type, dp, updateTime);
+                } catch (WeatherException e) {
+                    // the airport may be deleted by a later record of the log
+                    LOGGER.log(Level.FINE, "skipping replicated data point", e);
+                }
+                break;
+            }
+            case ReplicationProtocol.HEARTBEAT:
+                break;
+            default:
+                throw new IOException("unknown replication op " + op);
+        }
+    }
+
+    /**
+     * What a replica applies the log to.
+     */
+    interface Target {
+        /**
+         * Drops all airports and weather data.
+         */
+        void clear();
+
+        /**
+         * Adds an airport, a known code is left alone.
+         */
+        void saveAirport(Airport airport);
+
+        void deleteAirport(String iata);
+
+        /**
+         * Replaces a data point, keeping the primary's update time.
+         *
+         * @throws WeatherException if the airport is unknown
+         */
+        void addDataPoint(String iata, DataPointType type, DataPoint dp, long updateTime) throws WeatherException;
+
+        /**
+         * @return number of airports
+         */
+        int size();
+    }
+}
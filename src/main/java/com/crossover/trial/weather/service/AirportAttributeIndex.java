@@ -0,0 +1,128 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.codec.StringDictionary;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Secondary indexes of a registry's airports by country and by city. Names are dictionary encoded and each one
+ * maps to the sorted slot numbers of its airports, four to eight bytes per airport and index. The postings are
+ * immutable snapshots written by the registry under its lock, so readers take them without locking and may keep
+ * them.
+ * <p>
+ * Airports are mostly added to the highest slot yet, e.g. all of them while loading a dataset. Such a slot is
+ * appended to the spare capacity of the posting array, which older snapshots do not read past their size, so
+ * loading takes amortized constant time per airport rather than a copy of its country's and city's postings.
+ * Other inserts and deletes copy the array.
+ */
+class AirportAttributeIndex {
+
+    private static final Postings NONE = new Postings(new int[0], 0);
+
+    final StringDictionary countries = new StringDictionary();
+
+    final StringDictionary cities = new StringDictionary();
+
+    private volatile AtomicReferenceArray<Postings> byCountry = new AtomicReferenceArray<>(16);
+
+    private volatile AtomicReferenceArray<Postings> byCity = new AtomicReferenceArray<>(16);
+
+    synchronized void add(int slot, int country, int city) {
+        byCountry = insert(byCountry, country, slot);
+        byCity = insert(byCity, city, slot);
+    }
+
+    synchronized void remove(int slot, int country, int city) {
+        delete(byCountry, country, slot);
+        delete(byCity, city, slot);
+    }
+
+    /**
+     * @return the slots of the airports in the country
+     */
+    Postings country(String country) {
+        return postings(byCountry, countries.id(country));
+    }
+
+    /**
+     * @return the slots of the airports serving the city
+     */
+    Postings city(String city) {
+        return postings(byCity, cities.id(city));
+    }
+
+    synchronized void clear() {
+        byCountry = new AtomicReferenceArray<>(16);
+        byCity = new AtomicReferenceArray<>(16);
+    }
+
+    private static Postings postings(AtomicReferenceArray<Postings> postings, int id) {
+        if (id <= 0 || id >= postings.length()) {
+            return NONE;
+        }
+        Postings slots = postings.get(id);
+        return slots == null ? NONE : slots;
+    }
+
+    private static AtomicReferenceArray<Postings> insert(AtomicReferenceArray<Postings> postings, int id, int slot) {
+        if (id <= 0) {
+            return postings;
+        }
+        if (id >= postings.length()) {
+            AtomicReferenceArray<Postings> grown = new AtomicReferenceArray<>(Math.max(id + 1, postings.length() * 2));
+            for (int i = 0; i < postings.length(); i++) {
+                grown.set(i, postings.get(i));
+            }
+            postings = grown;
+        }
+        Postings current = postings(postings, id);
+        int[] slots = current.slots;
+        int size = current.size;
+        if (size == 0 || slot > slots[size - 1]) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(4, size * 2));
+            }
+            slots[size] = slot;
+            postings.set(id, new Postings(slots, size + 1));
+            return postings;
+        }
+        int at = Arrays.binarySearch(slots, 0, size, slot);
+        if (at < 0) {
+            at = -at - 1;
+            int[] copy = new int[slots.length > size ? slots.length : size * 2];
+            System.arraycopy(slots, 0, copy, 0, at);
+            copy[at] = slot;
+            System.arraycopy(slots, at, copy, at + 1, size - at);
+            postings.set(id, new Postings(copy, size + 1));
+        }
+        return postings;
+    }
+
+    private static void delete(AtomicReferenceArray<Postings> postings, int id, int slot) {
+        Postings current = postings(postings, id);
+        int[] slots = current.slots;
+        int size = current.size;
+        int at = Arrays.binarySearch(slots, 0, size, slot);
+        if (at >= 0) {
+            // a copy even at the end, an append into the shared array would overwrite what older snapshots read
+            int[] copy = new int[size - 1];
+            System.arraycopy(slots, 0, copy, 0, at);
+            System.arraycopy(slots, at + 1, copy, at, size - at - 1);
+            postings.set(id, copy.length == 0 ? null : new Postings(copy, copy.length));
+        }
+    }
+
+    /**
+     * Sorted slot numbers, the first {@link #size} of the array; the rest is capacity for appends.
+     */
+    static final class Postings {
+        final int[] slots;
+        final int size;
+
+        Postings(int[] slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+    }
+}
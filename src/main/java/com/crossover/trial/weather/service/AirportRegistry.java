@@ -0,0 +1,330 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The known airports and their atmospheric information, each in a numbered slot.
+ * <p>
+ * Lookups by IATA code go through a hash map, lookups by slot and iteration read the slot array; neither locks.
+ * Deleting an airport is O(1): it leaves a tombstone in its slot rather than shifting the others, so slot numbers
+ * stay stable for everything that keeps them. Tombstoned slots are only reused after {@link #compact(long)} found
+ * them older than a grace period, so a query which picked up a slot number before the delete never sees another
+ * airport in its place. Compaction also gives back the free slots at the end of the array.
+ * <p>
+ * Airports are also found by ICAO code, and by country or city through sorted slot arrays of each name, see
+ * {@link #findByCountry(String)}.
+ */
+public class AirportRegistry implements Iterable<AirportRegistry.Record> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Record> byIata = new ConcurrentHashMap<>();
+
+    private final Map<String, Record> byIcao = new ConcurrentHashMap<>();
+
+    /**
+     * country and city indexes, shared with subclasses for their name dictionaries
+     */
+    final AirportAttributeIndex attributes = new AirportAttributeIndex();
+
+    private volatile AtomicReferenceArray<Record> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * number of slots ever handed out and not trimmed, live, tombstoned or free
+     */
+    private volatile int used;
+
+    /**
+     * reclaimed slots below {@link #used}, reused lowest first to keep the end of the array free for trimming
+     */
+    private final BitSet free = new BitSet();
+
+    /**
+     * tombstoned slots in the order of deletion
+     */
+    private final ArrayDeque<Record> tombstones = new ArrayDeque<>();
+
+    /**
+     * Adds an airport unless one with the same IATA code is registered.
+     *
+     * @return the new record, or the registered one if the code is taken
+     */
+    public synchronized Record add(Airport airport, AtmosphericInformation weather) {
+        Record existing = byIata.get(airport.getIata());
+        if (existing != null) {
+            return existing;
+        }
+        int slot = free.nextSetBit(0);
+        if (slot >= 0) {
+            free.clear(slot);
+        } else {
+            slot = used;
+            if (slot == slots.length()) {
+                slots = resize(slots, slot * 2);
+            }
+            used = slot + 1;
+        }
+        int country = attributes.countries.intern(airport.getCountry());
+        int city = attributes.cities.intern(airport.getCity());
+        Record record = new Record(slot, canonical(airport, country, city), weather);
+        slots.set(slot, record);
+        byIata.put(airport.getIata(), record);
+        if (airport.getIcao() != null) {
+            byIcao.putIfAbsent(airport.getIcao(), record);
+        }
+        attributes.add(slot, country, city);
+        return record;
+    }
+
+    /**
+     * @return the airport with the dictionary's instances of its country and city names
+     */
+    private Airport canonical(Airport airport, int countryId, int cityId) {
+        String country = attributes.countries.name(countryId);
+        String city = attributes.cities.name(cityId);
+        if (country == airport.getCountry() && city == airport.getCity()) {
+            return airport;
+        }
+        return new Airport(airport.getIata(), airport.getIcao(), city, country, airport.getLatitude(),
+                airport.getLongitude(), airport.getAltitude(), airport.getTimezone());
+    }
+
+    /**
+     * Removes an airport, leaving a tombstone in its slot.
+     *
+     * @return the removed record, null if the code is unknown
+     */
+    public synchronized Record remove(String iata) {
+        Record record = byIata.remove(iata);
+        if (record == null) {
+            return null;
+        }
+        record.deletedAt = System.currentTimeMillis();
+        tombstones.add(record);
+        Airport airport = record.getAirport();
+        if (airport.getIcao() != null) {
+            byIcao.remove(airport.getIcao(), record);
+        }
+        attributes.remove(record.slot, attributes.countries.id(airport.getCountry()),
+                attributes.cities.id(airport.getCity()));
+        return record;
+    }
+
+    /**
+     * @return the airport registered under the code, null if unknown
+     */
+    public Record get(String iata) {
+        return iata == null ? null : byIata.get(iata);
+    }
+
+    /**
+     * @return the airport registered under the ICAO code, null if unknown
+     */
+    public Record getByIcao(String icao) {
+        return icao == null ? null : byIcao.get(icao);
+    }
+
+    /**
+     * @return the airports in the country, in slot order
+     */
+    public List<Record> findByCountry(String country) {
+        return records(attributes.country(country));
+    }
+
+    /**
+     * @return the airports serving the city, in slot order
+     */
+    public List<Record> findByCity(String city) {
+        return records(attributes.city(city));
+    }
+
+    /**
+     * @return number of airports in the country, without collecting them
+     */
+    public int countByCountry(String country) {
+        return attributes.country(country).size;
+    }
+
+    private List<Record> records(AirportAttributeIndex.Postings postings) {
+        List<Record> records = new ArrayList<>(postings.size);
+        for (int i = 0; i < postings.size; i++) {
+            Record record = get(postings.slots[i]);
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the airport in the slot, null if the slot is free or the airport was deleted
+     */
+    public Record get(int slot) {
+        AtomicReferenceArray<Record> current = slots;
+        if (slot < 0 || slot >= current.length()) {
+            return null;
+        }
+        Record record = current.get(slot);
+        return record == null || record.isDeleted() ? null : record;
+    }
+
+    /**
+     * @return number of registered airports
+     */
+    public int size() {
+        return byIata.size();
+    }
+
+    /**
+     * Frees the slots deleted more than the grace period ago and trims free slots off the end of the array.
+     *
+     * @param graceMillis how long a tombstone is kept
+     * @return number of slots freed
+     */
+    public synchronized int compact(long graceMillis) {
+        long oldest = System.currentTimeMillis() - graceMillis;
+        int freed = 0;
+        while (!tombstones.isEmpty() && tombstones.peek().deletedAt <= oldest) {
+            Record record = tombstones.poll();
+            slots.set(record.slot, null);
+            free.set(record.slot);
+            freed++;
+        }
+        int last = used;
+        while (last > 0 && free.get(last - 1)) {
+            last--;
+        }
+        if (last < used) {
+            free.clear(last, used);
+            used = last;
+            if (slots.length() > INITIAL_CAPACITY && used < slots.length() / 4) {
+                slots = resize(slots, Math.max(INITIAL_CAPACITY, used * 2));
+            }
+        }
+        return freed;
+    }
+
+    public synchronized void clear() {
+        byIata.clear();
+        byIcao.clear();
+        attributes.clear();
+        tombstones.clear();
+        free.clear();
+        used = 0;
+        slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return slot usage for the ping output
+     */
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("airports", byIata.size());
+        status.put("slots", used);
+        status.put("capacity", slots.length());
+        status.put("tombstones", tombstones.size());
+        status.put("free", free.cardinality());
+        status.put("countries", attributes.countries.size());
+        status.put("cities", attributes.cities.size());
+        return status;
+    }
+
+    /**
+     * Iterates the live airports in slot order, without locking. Airports added or deleted meanwhile may or may
+     * not be seen.
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        AtomicReferenceArray<Record> current = slots;
+        int end = Math.min(used, current.length());
+        return new Iterator<Record>() {
+            private int slot = -1;
+            private Record next = advance();
+
+            private Record advance() {
+                while (++slot < end) {
+                    Record record = current.get(slot);
+                    if (record != null && !record.isDeleted()) {
+                        return record;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Record next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Record record = next;
+                next = advance();
+                return record;
+            }
+        };
+    }
+
+    private static AtomicReferenceArray<Record> resize(AtomicReferenceArray<Record> slots, int capacity) {
+        AtomicReferenceArray<Record> resized = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < Math.min(capacity, slots.length()); i++) {
+            resized.set(i, slots.get(i));
+        }
+        return resized;
+    }
+
+    /**
+     * An airport, its weather and its slot.
+     */
+    public static final class Record {
+        private final int slot;
+        private final Airport airport;
+        private final AtmosphericInformation weather;
+        private volatile long deletedAt;
+
+        Record(int slot, Airport airport, AtmosphericInformation weather) {
+            this(slot, airport, weather, 0);
+        }
+
+        Record(int slot, Airport airport, AtmosphericInformation weather, long deletedAt) {
+            this.slot = slot;
+            this.airport = airport;
+            this.weather = weather;
+            this.deletedAt = deletedAt;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+        public Airport getAirport() {
+            return airport;
+        }
+
+        public AtmosphericInformation getWeather() {
+            return weather;
+        }
+
+        /**
+         * @return true once the airport was deleted; the airport and weather stay readable
+         */
+        public boolean isDeleted() {
+            return deletedAt != 0;
+        }
+    }
+}
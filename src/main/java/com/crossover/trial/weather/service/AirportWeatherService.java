@@ -1,20 +1,45 @@
 package com.crossover.trial.weather.service;
 
+import com.crossover.trial.weather.admission.QueryAdmission;
+import com.crossover.trial.weather.admission.QueryCostModel;
 import com.crossover.trial.weather.entity.Airport;
 import com.crossover.trial.weather.entity.AtmosphericInformation;
 import com.crossover.trial.weather.entity.DataPoint;
 import com.crossover.trial.weather.entity.DataPointType;
 import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.expiry.ExpirySweeper;
+import com.crossover.trial.weather.expiry.TtlPolicy;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.GeoMath;
+import com.crossover.trial.weather.geo.MapTile;
+import com.crossover.trial.weather.stats.QueryKey;
+import com.crossover.trial.weather.stats.RequestStatistics;
+import com.crossover.trial.weather.stats.SpaceSaving;
+import com.crossover.trial.weather.stats.StatsSnapshot;
+import com.crossover.trial.weather.stats.WeatherAggregate;
+import com.crossover.trial.weather.utils.AirportLoader;
 import com.google.gson.Gson;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Airport weather service, which provides operations with airports and weather.
@@ -22,6 +47,8 @@ import java.util.concurrent.locks.ReentrantLock;
  * Created by dmitry on 16.09.16.
  */
 public class AirportWeatherService {
+    public final static Logger LOGGER = Logger.getLogger(AirportWeatherService.class.getName());
+
     private static volatile AirportWeatherService instance;
 
     /**
@@ -35,14 +62,11 @@ public class AirportWeatherService {
     public static final Gson gson = new Gson();
 
     /**
-     * all known airports
-     */
-    public static List<Airport> airports = new CopyOnWriteArrayList<>();
-
-    /**
-     * atmospheric information for each airports, idx corresponds with airports
+     * all known airports with their atmospheric information; kept off the heap with {@code -Dweather.offheap=true},
+     * in a memory mapped file if {@code weather.offheap.file} names one
      */
-    public static List<AtmosphericInformation> atmosphericInformation = new CopyOnWriteArrayList<>();
+    public static final AirportRegistry registry = Boolean.getBoolean("weather.offheap")
+            ? new OffHeapAirportRegistry(System.getProperty("weather.offheap.file")) : new AirportRegistry();
 
     /**
      * Internal performance counter to better understand most requested information, this map can be improved but
@@ -54,16 +78,122 @@ public class AirportWeatherService {
 
     public static Map<Double, Integer> radiusFreq = new ConcurrentHashMap<Double, Integer>();
 
+    /**
+     * most airports listed in the iata_freq of {@link #ping()}; larger registries list their most requested airports
+     */
+    private static final int PING_AIRPORTS = Integer.getInteger("weather.ping.airports", 1000);
+
+    /**
+     * Mergeable sketches of the same request information, pulled by the cluster wide aggregation via {@link #stats()}
+     */
+    public static final RequestStatistics requestStatistics = new RequestStatistics();
+
+    /**
+     * observers notified after every successful mutation, e.g. the replication stream
+     */
+    private static final List<WeatherChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * additional sections reported by {@link #ping()}, keyed by the json key they are published under
+     */
+    private static final Map<String, Supplier<Object>> pingSections = new ConcurrentHashMap<>();
+
+    /**
+     * results of the most requested queries, see {@link #startCachePrewarming(int, long)}
+     */
+    public static final WeatherQueryCache queryCache = new WeatherQueryCache(AirportWeatherService::findAirportData);
+
+    /**
+     * spatial index of the {@link #registry airports} and their atmospheric information, with 1 degree cells
+     */
+    public static final AirportGridIndex airportIndex = new AirportGridIndex(1);
+
+    /**
+     * predicts the airports a radius query examines, learning from the queries run by {@link #findWeather}
+     */
+    public static final QueryCostModel costModel = new QueryCostModel(airportIndex);
+
+    /**
+     * decides how queries beyond the cost budget run, see {@link QueryAdmission#fromSystemProperties()}
+     */
+    public static final QueryAdmission admission = QueryAdmission.fromSystemProperties();
+
+    /**
+     * map tiles of the weather, listing airports from zoom weather.tile.detailZoom on and summaries below it; at most
+     * weather.tile.cacheSize tiles are cached
+     */
+    public static final TileCache tileCache = new TileCache(airportIndex, weather -> getInstance().retainFresh(weather),
+            Integer.getInteger("weather.tile.detailZoom", 6), Integer.getInteger("weather.tile.cacheSize", 10000));
+
+    /**
+     * evicts data points older than their time to live, see {@link TtlPolicy#fromSystemProperties()}; an expiry
+     * evicts the cached queries and tiles holding its airport, or all of them if the weather was updated without its
+     * airport
+     */
+    public static final ExpirySweeper expirySweeper = new ExpirySweeper(TtlPolicy.fromSystemProperties(), 1000,
+            (latitude, longitude) -> {
+                queryCache.invalidate(latitude, longitude);
+                if (Double.isNaN(latitude)) {
+                    tileCache.clear();
+                } else {
+                    tileCache.invalidate(latitude, longitude);
+                }
+            });
+
+    /**
+     * true to merge the data points reported for the same airport and type by several collectors instead of keeping
+     * the last one, see {@link AtmosphericInformation#mergeInfo(DataPointType, DataPoint)}
+     */
+    private static volatile boolean mergeDataPoints = Boolean.getBoolean("weather.merge");
+
+    /**
+     * orders the changes of each airport code across the registry and the spatial index; changes of codes in
+     * different stripes run concurrently, the index taking them without a lock
+     */
+    private static final Object[] CHURN_STRIPES = new Object[64];
+
+    /**
+     * shared by the airport changes, exclusive to {@link #clear()}
+     */
+    private static final ReadWriteLock churn = new ReentrantReadWriteLock();
+
+    /**
+     * @return true if the data points of several collectors are merged rather than replaced
+     */
+    public static boolean isMergingDataPoints() {
+        return mergeDataPoints;
+    }
+
+    public static void setMergeDataPoints(boolean merge) {
+        mergeDataPoints = merge;
+    }
+
     public static AirportWeatherService getInstance() {
-        if (instance == null) {
+        AirportWeatherService service = instance;
+        if (service == null) {
             synchronized (AirportWeatherService.class) {
-                instance = new AirportWeatherService();
+                service = instance;
+                if (service == null) {
+                    instance = service = new AirportWeatherService();
+                }
             }
         }
-        return instance;
+        return service;
     }
 
     static {
+        for (int i = 0; i < CHURN_STRIPES.length; i++) {
+            CHURN_STRIPES[i] = new Object();
+        }
+        addListener(queryCache);
+        addListener(tileCache);
+        registerPingSection("cache", queryCache::status);
+        registerPingSection("tiles", tileCache::status);
+        registerPingSection("expiry", expirySweeper::status);
+        registerPingSection("registry", registry::status);
+        registerPingSection("admission", admission::status);
+        registerPingSection("cost_model", costModel::status);
+        expirySweeper.start();
         init();
     }
 
@@ -75,31 +205,22 @@ public class AirportWeatherService {
      */
     public Map<String, Object> ping() {
         Map<String, Object> returnValue = new HashMap<String, Object>();
+        returnValue.put("datasize", dataSize());
 
-        int dataSize = 0;
-        for (AtmosphericInformation ai : atmosphericInformation) {
-            // we only count recent readings
-            if (ai.getCloudCover() != null
-                    || ai.getHumidity() != null
-                    || ai.getPressure() != null
-                    || ai.getPrecipitation() != null
-                    || ai.getTemperature() != null
-                    || ai.getWind() != null) {
-                // updated in the last day
-                if (ai.getLastUpdateTime() > System.currentTimeMillis() - 86400000) {
-                    dataSize++;
+        Map<String, Double> freq = new HashMap<>();
+        // fraction of queries, of the most requested airports only once there are too many to list
+        if (registry.size() <= PING_AIRPORTS) {
+            for (AirportRegistry.Record record : registry) {
+                freq.put(record.getAirport().getIata(), requestFraction(record.getAirport()));
+            }
+        } else {
+            for (SpaceSaving.HeavyHitter<String> hitter : requestStatistics.topAirports(PING_AIRPORTS)) {
+                Airport data = findAirportData(hitter.getKey());
+                if (data != null) {
+                    freq.put(data.getIata(), requestFraction(data));
                 }
             }
         }
-        returnValue.put("datasize", dataSize);
-
-        Map<String, Double> freq = new HashMap<>();
-        // fraction of queries
-        for (Airport data : airports) {
-            double frac = (double) requestFrequency.getOrDefault(data, 0) / requestFrequency.size();
-            frac = Double.isNaN(frac) ? 0 : frac;
-            freq.put(data.getIata(), frac);
-        }
         returnValue.put("iata_freq", freq);
 
         int m = radiusFreq.keySet().stream()
@@ -112,9 +233,78 @@ public class AirportWeatherService {
             hist[i] += e.getValue();
         }
         returnValue.put("radius_freq", hist);
+
+        for (Map.Entry<String, Supplier<Object>> section : pingSections.entrySet()) {
+            returnValue.put(section.getKey(), section.getValue().get());
+        }
         return returnValue;
     }
 
+    /**
+     * @return the requests for the airport per requested airport, as reported in iata_freq
+     */
+    private static double requestFraction(Airport airport) {
+        double frac = (double) requestFrequency.getOrDefault(airport, 0) / requestFrequency.size();
+        return Double.isNaN(frac) ? 0 : frac;
+    }
+
+    /**
+     * Counts the airports holding recent atmospheric information.
+     *
+     * @return number of airports updated in the last day
+     */
+    public int dataSize() {
+        int dataSize = 0;
+        for (AirportRegistry.Record record : registry) {
+            AtmosphericInformation ai = record.getWeather();
+            // we only count recent readings
+            if (ai.hasData()) {
+                // updated in the last day
+                if (ai.getLastUpdateTime() > System.currentTimeMillis() - 86400000) {
+                    dataSize++;
+                }
+            }
+        }
+        return dataSize;
+    }
+
+    /**
+     * Mergeable request statistics of this node, see {@link StatsSnapshot#merge(StatsSnapshot)}.
+     *
+     * @return a copy of the request sketches
+     */
+    public StatsSnapshot stats() {
+        return requestStatistics.snapshot(dataSize());
+    }
+
+    /**
+     * Registers a listener which is notified after every mutation of airports or weather data.
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(WeatherChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a previously registered listener.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(WeatherChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publishes an additional section in the {@link #ping()} output.
+     *
+     * @param key      json key of the section
+     * @param supplier computes the section value on each ping
+     */
+    public static void registerPingSection(String key, Supplier<Object> supplier) {
+        pingSections.put(key, supplier);
+    }
+
     /**
      * Finds all atmospheric information near the Airport(iataCode) within a radius(radiusString).
      *
@@ -123,28 +313,432 @@ public class AirportWeatherService {
      * @return List of AtmosphericInformation
      */
     public List<AtmosphericInformation> getWeather(String iataCode, String radiusString) {
+        return getWeather(iataCode, radiusString, DataPointType.ALL);
+    }
+
+    /**
+     * Finds the atmospheric information near the Airport(iataCode) within a radius(radiusString) which has data of
+     * at least one of the given types. A radius of 0 returns the center airport whatever data it has; with a larger
+     * radius the center is one of the airports in it, left out like the others without data of the types.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @param types        a {@link DataPointType#mask() type mask}
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> getWeather(String iataCode, String radiusString, int types) {
+        return getWeather(iataCode, radiusString, types, 0);
+    }
+
+    /**
+     * Finds the atmospheric information near the Airport(iataCode) within a radius(radiusString) which has data of
+     * at least one of the given types and changed after the given change sequence number.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @param types        a {@link DataPointType#mask() type mask}
+     * @param since        a {@link AtmosphericInformation#currentSequence() change sequence number}, 0 for all
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> getWeather(String iataCode, String radiusString, int types, long since) {
+        return getWeather(iataCode, radiusString, types, since, null);
+    }
+
+    /**
+     * Finds the atmospheric information near the Airport(iataCode) within a radius(radiusString) in a country which
+     * has data of at least one of the given types and changed after the given change sequence number. Queries with
+     * a country are not cached.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @param types        a {@link DataPointType#mask() type mask}
+     * @param since        a {@link AtmosphericInformation#currentSequence() change sequence number}, 0 for all
+     * @param country      the country of the airports, null for all
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> getWeather(String iataCode, String radiusString, int types, long since,
+                                                   String country) {
+        return getWeather(iataCode, radiusString, types, since, country, 1);
+    }
+
+    /**
+     * Finds a sample of the atmospheric information of
+     * {@link #getWeather(String, String, int, long, String)}: the radius search only examines every stride-th
+     * airport, so it costs a stride-th of the full one. Sampled results are not cached.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @param types        a {@link DataPointType#mask() type mask}
+     * @param since        a {@link AtmosphericInformation#currentSequence() change sequence number}, 0 for all
+     * @param country      the country of the airports, null for all
+     * @param stride       examine every stride-th airport, 1 for all
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> getWeather(String iataCode, String radiusString, int types, long since,
+                                                   String country, int stride) {
         double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
         updateRequestFrequency(iataCode, radius);
 
-        List<AtmosphericInformation> returnValue = new ArrayList<>();
-        if (radius == 0) {
-            int idx = getAirportDataIdx(iataCode);
-            returnValue.add(atmosphericInformation.get(idx));
+        List<AtmosphericInformation> result;
+        if (country != null) {
+            // examines at most the airports of the country
+            result = QueryAdmission.sample(findWeather(iataCode, radius, country), stride);
+        } else if (stride > 1) {
+            result = findWeather(iataCode, radius, stride);
         } else {
-            Airport ad = findAirportData(iataCode);
-            for (int i = 0; i < airports.size(); i++) {
-                if (calculateDistance(ad, airports.get(i)) <= radius) {
-                    AtmosphericInformation ai = atmosphericInformation.get(i);
-                    if (ai.getCloudCover() != null || ai.getHumidity() != null || ai.getPrecipitation() != null
-                            || ai.getPressure() != null || ai.getTemperature() != null || ai.getWind() != null) {
-                        returnValue.add(ai);
+            QueryKey key = new QueryKey(iataCode, radius);
+            result = queryCache.get(key);
+            if (result == null) {
+                long generation = queryCache.generation();
+                result = queryCache.put(key, generation, findWeather(iataCode, radius));
+            }
+        }
+        result = retainFresh(result);
+        if ((radius == 0 || types == DataPointType.ALL) && since <= 0) {
+            return result;
+        }
+        // filtered after the cache, so all projections and deltas of a query share one entry
+        List<AtmosphericInformation> filtered = new ArrayList<>(result.size());
+        for (AtmosphericInformation ai : result) {
+            if ((radius == 0 || (ai.typeMask() & types) != 0) && ai.version() > since) {
+                filtered.add(ai);
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Predicts the cost of {@link #getWeather(String, String, int, long)} before running it.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @return the predicted number of airports examined, 0 if the result is cached or no search is needed
+     */
+    public long estimateCost(String iataCode, String radiusString) {
+        return estimateCost(iataCode, radiusString, null);
+    }
+
+    /**
+     * Predicts the cost of {@link #getWeather(String, String, int, long, String)} before running it.
+     *
+     * @param iataCode     the center airport
+     * @param radiusString the radius in km
+     * @param country      the country of the airports, null for all
+     * @return the predicted number of airports examined, 0 if the result is cached or no search is needed
+     */
+    public long estimateCost(String iataCode, String radiusString, String country) {
+        double radius = radiusString == null || radiusString.trim().isEmpty() ? 0 : Double.valueOf(radiusString);
+        AirportRegistry.Record center = registry.get(iataCode);
+        if (center == null || radius == 0
+                || (country == null && queryCache.contains(new QueryKey(iataCode, radius)))) {
+            return 0;
+        }
+        long predicted = costModel.predict(center.getAirport().getLatitude(), center.getAirport().getLongitude(),
+                radius);
+        return country == null ? predicted : Math.min(predicted, registry.countByCountry(country));
+    }
+
+    /**
+     * Drops the data points older than their time to live, which the {@link #expirySweeper} did not evict yet.
+     *
+     * @param weather the weather to check
+     * @return the weather itself if all of it is fresh, a copy without the stale data points otherwise
+     */
+    public AtmosphericInformation retainFresh(AtmosphericInformation weather) {
+        return weather.retainFresh(System.currentTimeMillis(), expirySweeper.getPolicy().asArray());
+    }
+
+    private List<AtmosphericInformation> retainFresh(List<AtmosphericInformation> weather) {
+        List<AtmosphericInformation> fresh = weather;
+        for (int i = 0; i < weather.size(); i++) {
+            AtmosphericInformation ai = retainFresh(weather.get(i));
+            if (ai != weather.get(i)) {
+                if (fresh == weather) {
+                    fresh = new ArrayList<>(weather);
+                }
+                fresh.set(i, ai);
+            }
+        }
+        return fresh;
+    }
+
+    /**
+     * Computes the atmospheric information near the Airport(iataCode) within a radius, bypassing the cache and the
+     * request statistics.
+     *
+     * @param iataCode the center airport
+     * @param radius   the radius in km
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> findWeather(String iataCode, double radius) {
+        return findWeather(iataCode, radius, 1);
+    }
+
+    /**
+     * Computes a sample of the atmospheric information near the Airport(iataCode) within a radius, examining every
+     * stride-th airport of the radius search only.
+     *
+     * @param iataCode the center airport
+     * @param radius   the radius in km
+     * @param stride   examine every stride-th airport, 1 for all
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> findWeather(String iataCode, double radius, int stride) {
+        AirportRegistry.Record center = registry.get(iataCode);
+        if (center == null) {
+            return new ArrayList<>();
+        }
+        if (radius == 0) {
+            List<AtmosphericInformation> returnValue = new ArrayList<>();
+            returnValue.add(center.getWeather());
+            return returnValue;
+        }
+        // runs in parallel for continental radii, see AirportGridIndex#calibrateParallelThreshold()
+        Airport ad = center.getAirport();
+        long examined = AirportGridIndex.candidatesExamined();
+        long start = System.nanoTime();
+        List<AtmosphericInformation> result = airportIndex.reduceInRadius(ad.getLatitude(), ad.getLongitude(),
+                radius, stride, ArrayList<AtmosphericInformation>::new, (list, entry, distance) -> {
+                    if (entry.getWeather().hasData()) {
+                        list.add(entry.getWeather());
                     }
+                }, (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+        if (stride == 1) {
+            // a sample examines a stride-th of the airports the model predicts
+            costModel.observe(ad.getLatitude(), ad.getLongitude(), radius,
+                    AirportGridIndex.candidatesExamined() - examined, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * Computes the atmospheric information near the Airport(iataCode) within a radius in a country, bypassing the
+     * cache and the request statistics. Checks the distance of each airport of the country if there are fewer of
+     * them than the radius search is predicted to examine, and the country of each airport of the radius search
+     * otherwise.
+     *
+     * @param iataCode the center airport
+     * @param radius   the radius in km
+     * @param country  the country of the airports
+     * @return List of AtmosphericInformation
+     */
+    public List<AtmosphericInformation> findWeather(String iataCode, double radius, String country) {
+        AirportRegistry.Record center = registry.get(iataCode);
+        List<AtmosphericInformation> result = new ArrayList<>();
+        if (center == null) {
+            return result;
+        }
+        Airport ad = center.getAirport();
+        if (radius == 0) {
+            if (country.equals(ad.getCountry())) {
+                result.add(center.getWeather());
+            }
+            return result;
+        }
+        int inCountry = registry.countByCountry(country);
+        if (inCountry < costModel.predict(ad.getLatitude(), ad.getLongitude(), radius)) {
+            for (AirportRegistry.Record record : registry.findByCountry(country)) {
+                Airport airport = record.getAirport();
+                if (record.getWeather().hasData() && GeoMath.distance(ad.getLatitude(), ad.getLongitude(),
+                        airport.getLatitude(), airport.getLongitude()) <= radius) {
+                    result.add(record.getWeather());
                 }
             }
+            AirportGridIndex.addCandidatesExamined(inCountry);
+            return result;
+        }
+        forEachNear(ad.getLatitude(), ad.getLongitude(), radius, entry -> {
+            if (country.equals(entry.getAirport().getCountry())) {
+                result.add(entry.getWeather());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visits the airports with fresh weather data within a radius of a point.
+     *
+     * @param latitude  center latitude in degrees
+     * @param longitude center longitude in degrees
+     * @param radius    radius in km
+     * @param visitor   receives the airports and their weather
+     */
+    public void forEachNear(double latitude, double longitude, double radius,
+                            Consumer<AirportGridIndex.Entry> visitor) {
+        airportIndex.forEachInRadius(latitude, longitude, radius, freshWithData(visitor));
+    }
+
+    /**
+     * @return the json of a map tile, see {@link TileCache}
+     */
+    public byte[] tile(MapTile tile) {
+        return tileCache.get(tile);
+    }
+
+    /**
+     * Visits the airports with fresh weather data inside a box, which crosses the antimeridian if minLongitude is
+     * greater than maxLongitude.
+     *
+     * @param visitor receives the airports and their weather
+     */
+    public void forEachInBox(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                             Consumer<AirportGridIndex.Entry> visitor) {
+        airportIndex.forEachInBox(minLatitude, minLongitude, maxLatitude, maxLongitude, freshWithData(visitor));
+    }
+
+    /**
+     * Visits the airports with fresh weather data within a distance of a route.
+     *
+     * @param latitudes  latitudes of the route's points
+     * @param longitudes longitudes of the route's points
+     * @param width      maximum distance from the route in km
+     * @param visitor    receives the airports and their weather
+     */
+    public void forEachInCorridor(double[] latitudes, double[] longitudes, double width,
+                                  Consumer<AirportGridIndex.Entry> visitor) {
+        airportIndex.forEachInCorridor(latitudes, longitudes, width, freshWithData(visitor));
+    }
+
+    /**
+     * Aggregates the weather of the airports within a radius of an airport in a single pass, in parallel for large
+     * areas.
+     *
+     * @param center the airport in the center
+     * @param radius radius in km
+     * @return count, mean, min, max and distance weighted mean per data point type
+     */
+    public WeatherAggregate aggregateWeather(Airport center, double radius) {
+        return airportIndex.reduceInRadius(center.getLatitude(), center.getLongitude(), radius,
+                WeatherAggregate::new,
+                (aggregate, entry, distance) -> aggregate.add(retainFresh(entry.getWeather()), distance),
+                WeatherAggregate::merge);
+    }
+
+    /**
+     * @return a visitor of the airports with data left once the expired data points are dropped, which it passes on
+     * with that weather
+     */
+    private static Consumer<AirportGridIndex.Entry> freshWithData(Consumer<AirportGridIndex.Entry> visitor) {
+        long now = System.currentTimeMillis();
+        long[] ttlMillis = expirySweeper.getPolicy().asArray();
+        return entry -> {
+            if (!entry.getWeather().hasData()) {
+                return;
+            }
+            AtmosphericInformation fresh = entry.getWeather().retainFresh(now, ttlMillis);
+            if (fresh.hasData()) {
+                visitor.accept(entry.withWeather(fresh));
+            }
+        };
+    }
+
+    /**
+     * Finds the airports closest to an airport, including the airport itself.
+     *
+     * @param center       the airport to search around
+     * @param k            maximum number of airports
+     * @param maxDistance  maximum distance in km
+     * @param maxAgeMillis only airports whose weather was updated within this many milliseconds, 0 for any
+     * @return the airports with their weather without the expired data points and distance, closest first
+     */
+    public List<AirportGridIndex.Neighbor> findNearest(Airport center, int k, double maxDistance, long maxAgeMillis) {
+        Predicate<AirportGridIndex.Entry> fresh = null;
+        if (maxAgeMillis > 0) {
+            long oldest = System.currentTimeMillis() - maxAgeMillis;
+            fresh = entry -> entry.getWeather().getLastUpdateTime() >= oldest;
+        }
+        List<AirportGridIndex.Neighbor> nearest = new ArrayList<>(
+                airportIndex.nearest(center.getLatitude(), center.getLongitude(), k, maxDistance, fresh));
+        nearest.replaceAll(neighbor -> neighbor.withWeather(retainFresh(neighbor.getWeather())));
+        return nearest;
+    }
+
+    /**
+     * The most requested airports and queries, from constant size heavy hitter summaries. The true count of every
+     * reported entry is between count - error and count.
+     *
+     * @param k maximum number of entries per list
+     * @return a map with the "airports" and "queries" lists and the "total" number of queries
+     */
+    public Map<String, Object> topRequests(int k) {
+        Map<String, Object> returnValue = new HashMap<>();
+        returnValue.put("total", requestStatistics.getTotal());
+
+        List<Map<String, Object>> topAirports = new ArrayList<>();
+        for (SpaceSaving.HeavyHitter<String> hitter : requestStatistics.topAirports(k)) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("iata", hitter.getKey());
+            entry.put("count", hitter.getCount());
+            entry.put("error", hitter.getError());
+            topAirports.add(entry);
+        }
+        returnValue.put("airports", topAirports);
+
+        List<Map<String, Object>> topQueries = new ArrayList<>();
+        for (SpaceSaving.HeavyHitter<QueryKey> hitter : requestStatistics.topQueries(k)) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("iata", hitter.getKey().getIata());
+            entry.put("radius", hitter.getKey().getRadius());
+            entry.put("count", hitter.getCount());
+            entry.put("error", hitter.getError());
+            topQueries.add(entry);
         }
+        returnValue.put("queries", topQueries);
         return returnValue;
     }
 
+    /**
+     * Periodically refreshes the query cache with the current top queries.
+     *
+     * @param hotQueries   number of top queries to keep cached
+     * @param periodMillis refresh interval
+     */
+    public static void startCachePrewarming(int hotQueries, long periodMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "query-cache-prewarm");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AirportWeatherService service = getInstance();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                List<QueryKey> hot = requestStatistics.topQueries(hotQueries).stream()
+                        .map(SpaceSaving.HeavyHitter::getKey)
+                        .collect(Collectors.toList());
+                queryCache.prewarm(hot, key -> service.findWeather(key.getIata(), key.getRadius()));
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "query cache prewarming failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Periodically frees the registry slots and index entries of deleted airports once no query can still be using
+     * them.
+     *
+     * @param periodMillis interval between compactions
+     * @param graceMillis  how long the slot and index entry of a deleted airport are kept
+     */
+    public static void startCompaction(long periodMillis, long graceMillis) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "registry-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                // the index first, its removed entries may be flyweights of the registry's slots
+                airportIndex.compact(graceMillis);
+                registry.compact(graceMillis);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "registry compaction failed", e);
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Records information about how often requests are made
      *
@@ -153,8 +747,11 @@ public class AirportWeatherService {
      */
     public void updateRequestFrequency(String iata, Double radius) {
         Airport airport = findAirportData(iata);
-        requestFrequency.put(airport, requestFrequency.getOrDefault(airport, 0) + 1);
+        if (airport != null) {
+            requestFrequency.put(airport, requestFrequency.getOrDefault(airport, 0) + 1);
+        }
         radiusFreq.put(radius, radiusFreq.getOrDefault(radius, 0) + 1);
+        requestStatistics.record(iata, radius);
     }
 
     /**
@@ -164,20 +761,45 @@ public class AirportWeatherService {
      * @return airports data or null if not found
      */
     public static Airport findAirportData(String iataCode) {
-        return airports.stream()
-                .filter(ap -> ap.getIata().equals(iataCode))
-                .findFirst().orElse(null);
+        AirportRegistry.Record record = findRecord(iataCode);
+        return record == null ? null : record.getAirport();
     }
 
     /**
-     * Given an iataCode find the airports data
+     * @param code an IATA or ICAO code
+     * @return the IATA code of the airport with the ICAO code, the code itself otherwise
+     */
+    public static String toIata(String code) {
+        AirportRegistry.Record record = findRecord(code);
+        return record == null ? code : record.getAirport().getIata();
+    }
+
+    private static AirportRegistry.Record findRecord(String code) {
+        AirportRegistry.Record record = registry.get(code);
+        return record != null ? record : registry.getByIcao(code);
+    }
+
+    /**
+     * Given an iataCode find the airports weather
      *
      * @param iataCode as a string
-     * @return airports data or null if not found
+     * @return atmospheric information or null if not found
+     */
+    public static AtmosphericInformation findAtmosphericInformation(String iataCode) {
+        AirportRegistry.Record record = registry.get(iataCode);
+        return record == null ? null : record.getWeather();
+    }
+
+    /**
+     * Given an iataCode find the airports slot in the {@link #registry}, which stays the same until the airport is
+     * deleted
+     *
+     * @param iataCode as a string
+     * @return the slot or -1 if not found
      */
     public static int getAirportDataIdx(String iataCode) {
-        Airport ad = findAirportData(iataCode);
-        return airports.indexOf(ad);
+        AirportRegistry.Record record = registry.get(iataCode);
+        return record == null ? -1 : record.getSlot();
     }
 
     /**
@@ -188,12 +810,7 @@ public class AirportWeatherService {
      * @return the distance in KM
      */
     public double calculateDistance(Airport ad1, Airport ad2) {
-        double deltaLat = Math.toRadians(ad2.getLatitude() - ad1.getLatitude());
-        double deltaLon = Math.toRadians(ad2.getLongitude() - ad1.getLongitude());
-        double a = Math.pow(Math.sin(deltaLat / 2), 2) + Math.pow(Math.sin(deltaLon / 2), 2)
-                * Math.cos(ad1.getLatitude()) * Math.cos(ad2.getLatitude());
-        double c = 2 * Math.asin(Math.sqrt(a));
-        return R * c;
+        return GeoMath.distance(ad1.getLatitude(), ad1.getLongitude(), ad2.getLatitude(), ad2.getLongitude());
     }
 
     /**
@@ -205,9 +822,68 @@ public class AirportWeatherService {
      * @throws WeatherException if the update can not be completed
      */
     public void addDataPoint(String iataCode, String pointType, DataPoint dp) throws WeatherException {
-        int airportDataIdx = getAirportDataIdx(iataCode);
-        AtmosphericInformation ai = atmosphericInformation.get(airportDataIdx);
-        updateAtmosphericInformation(ai, pointType, dp);
+        addDataPoint(iataCode, toDataPointType(pointType), dp);
+    }
+
+    /**
+     * Update the airports weather data with the collected data.
+     *
+     * @param iataCode  the 3 letter IATA code
+     * @param type      the point type
+     * @param dp        a datapoint object holding pointType data
+     * @throws WeatherException if the airport is unknown or the data point is invalid
+     */
+    public void addDataPoint(String iataCode, DataPointType type, DataPoint dp) throws WeatherException {
+        addDataPoint(iataCode, type, dp, mergeDataPoints);
+    }
+
+    /**
+     * Update the airports weather data with the collected data.
+     *
+     * @param iataCode  the 3 letter IATA code
+     * @param type      the point type
+     * @param dp        a datapoint object holding pointType data, receives the merged values when merging
+     * @param merge     true to merge the data point into the current one, false to replace it
+     * @throws WeatherException if the airport is unknown or the data point is invalid
+     */
+    public void addDataPoint(String iataCode, DataPointType type, DataPoint dp, boolean merge)
+            throws WeatherException {
+        addDataPoint(iataCode, type, dp, merge, 0);
+    }
+
+    /**
+     * Replaces the airports weather data with a data point updated elsewhere, keeping that update's time, as a
+     * replica applies the primary's log.
+     *
+     * @param iataCode   the 3 letter IATA code
+     * @param type       the point type
+     * @param dp         a datapoint object holding pointType data
+     * @param updateTime when the data point was updated
+     * @throws WeatherException if the airport is unknown or the data point is invalid
+     */
+    public void replicateDataPoint(String iataCode, DataPointType type, DataPoint dp, long updateTime)
+            throws WeatherException {
+        addDataPoint(iataCode, type, dp, false, updateTime);
+    }
+
+    /**
+     * The listeners are notified under the airport's stripe, so they see the changes of an airport in the order
+     * they were applied.
+     *
+     * @param updateTime when the data point was updated, 0 for now
+     */
+    private void addDataPoint(String iataCode, DataPointType type, DataPoint dp, boolean merge, long updateTime)
+            throws WeatherException {
+        synchronized (stripe(iataCode)) {
+            AirportRegistry.Record record = registry.get(iataCode);
+            if (record == null) {
+                throw new WeatherException("unknown airport " + iataCode);
+            }
+            updateAtmosphericInformation(record.getWeather(), type, dp, merge, updateTime, record.getAirport());
+            for (WeatherChangeListener listener : listeners) {
+                listener.dataPointAdded(record.getAirport(), type, dp);
+            }
+        }
     }
 
     /**
@@ -218,52 +894,200 @@ public class AirportWeatherService {
      * @param dp        the actual data point
      */
     public void updateAtmosphericInformation(AtmosphericInformation ai, String pointType, DataPoint dp) throws WeatherException {
-        final DataPointType dataPointType = DataPointType.valueOf(pointType.toUpperCase());
-        if (dataPointType != null) {
+        updateAtmosphericInformation(ai, toDataPointType(pointType), dp);
+    }
+
+    /**
+     * update atmospheric information with the given data point for the given point type
+     *
+     * @param ai            the atmospheric information object to update
+     * @param dataPointType the data point type
+     * @param dp            the actual data point
+     */
+    public void updateAtmosphericInformation(AtmosphericInformation ai, DataPointType dataPointType, DataPoint dp) throws WeatherException {
+        updateAtmosphericInformation(ai, dataPointType, dp, mergeDataPoints, 0, null);
+    }
+
+    /**
+     * @param updateTime when the data point was updated, 0 for now
+     * @param airport    the weather's airport, for its position on expiry; null if not known
+     */
+    private void updateAtmosphericInformation(AtmosphericInformation ai, DataPointType dataPointType, DataPoint dp,
+                                              boolean merge, long updateTime, Airport airport)
+            throws WeatherException {
+        if (dataPointType != null && dp != null) {
             if (dataPointType.isValid(dp)) {
-                ai.updateInfo(dataPointType, dp);
+                if (merge) {
+                    ai.mergeInfo(dataPointType, dp);
+                } else if (updateTime != 0) {
+                    ai.updateInfo(dataPointType, dp, updateTime);
+                } else {
+                    ai.updateInfo(dataPointType, dp);
+                }
+                if (airport == null) {
+                    expirySweeper.onUpdate(ai, dataPointType);
+                } else {
+                    expirySweeper.onUpdate(ai, dataPointType, airport.getLatitude(), airport.getLongitude());
+                }
                 return;
             }
         }
         throw new WeatherException("couldn't update atmospheric data");
     }
 
+    /**
+     * Parses a point type name, case insensitive.
+     *
+     * @param pointType the data point type as a string
+     * @return the matching type
+     * @throws WeatherException if the name is not a known {@link DataPointType}
+     */
+    public static DataPointType toDataPointType(String pointType) throws WeatherException {
+        try {
+            return DataPointType.valueOf(pointType.toUpperCase());
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new WeatherException("unknown data point type " + pointType);
+        }
+    }
+
     /**
      * Add a new known airports to our list.
      *
      * @param iataCode  3 letter code
      * @param latitude  in degrees
      * @param longitude in degrees
-     * @return the added airports
+     * @return the added airports, or the known one if the code is taken
+     * @throws IllegalArgumentException if the registry cannot store the code
      */
     public static Airport saveAirport(String iataCode, double latitude, double longitude) {
-        Airport ad = new Airport(iataCode, latitude, longitude);
+        return saveAirport(new Airport(iataCode, latitude, longitude));
+    }
+
+    /**
+     * Add a new known airport with its ICAO code and location details to our list.
+     *
+     * @param airport the airport
+     * @return the added airports, or the known one if the IATA code is taken
+     * @throws IllegalArgumentException if the registry cannot store a code
+     */
+    public static Airport saveAirport(Airport airport) {
         AtmosphericInformation ai = new AtmosphericInformation();
-        Lock lock = new ReentrantLock();
-        lock.lock();
+        Airport ad;
+        churn.readLock().lock();
         try {
-            airports.add(ad);
-            atmosphericInformation.add(ai);
+            // keeps the registry and the spatial index in step when the same code is added and deleted concurrently
+            synchronized (stripe(airport.getIata())) {
+                AirportRegistry.Record record = registry.add(airport, ai);
+                ad = record.getAirport();
+                if (record.getWeather() != ai) {
+                    return ad;
+                }
+                // the registry's instance, a flyweight of the off heap record in that mode
+                airportIndex.add(ad, ai);
+                // under the stripe, so listeners see the changes of an airport in the order they were applied
+                for (WeatherChangeListener listener : listeners) {
+                    listener.airportSaved(ad);
+                }
+            }
         } finally {
-            lock.unlock();
+            churn.readLock().unlock();
         }
         return ad;
     }
 
+    private static Object stripe(String iataCode) {
+        int h = Objects.hashCode(iataCode) * 0x9e3779b9;
+        return CHURN_STRIPES[(h ^ (h >>> 16)) & (CHURN_STRIPES.length - 1)];
+    }
+
     /**
-     * A dummy init method that loads hard coded data
+     * Adds the airports of a file in the airports.dat format, see {@link AirportLoader#parse(String)}, skipping
+     * malformed lines.
+     *
+     * @param reader the file
+     * @return number of airports read, including those already known
+     * @throws IOException if reading fails
      */
-    public static void init() {
-        airports.clear();
-        atmosphericInformation.clear();
+    public static int loadAirports(BufferedReader reader) throws IOException {
+        int added = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            try {
+                Airport airport = AirportLoader.parse(line);
+                if (airport != null) {
+                    saveAirport(airport);
+                    added++;
+                }
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("skipped airport " + line + ": " + e.getMessage());
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Remove an airport and its atmospheric information from the known airports.
+     *
+     * @param iataCode 3 letter code
+     * @return true if the airport was known and has been removed
+     */
+    public static boolean deleteAirport(String iataCode) {
+        churn.readLock().lock();
+        try {
+            synchronized (stripe(iataCode)) {
+                AirportRegistry.Record record = registry.remove(iataCode);
+                if (record == null) {
+                    return false;
+                }
+                Airport ad = record.getAirport();
+                airportIndex.remove(ad);
+                for (WeatherChangeListener listener : listeners) {
+                    listener.airportDeleted(ad);
+                }
+            }
+        } finally {
+            churn.readLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Drops all airports, weather data and request statistics.
+     */
+    public static void clear() {
+        clearAirports();
         requestFrequency.clear();
+        radiusFreq.clear();
+        requestStatistics.clear();
+    }
 
+    /**
+     * Drops all airports and weather data, keeping the request statistics, as a replica does before it loads a
+     * snapshot of the primary.
+     */
+    public static void clearAirports() {
+        churn.writeLock().lock();
+        try {
+            registry.clear();
+            airportIndex.clear();
+        } finally {
+            churn.writeLock().unlock();
+        }
+        queryCache.clear();
+        tileCache.clear();
+    }
+
+    /**
+     * A dummy init method that loads hard coded data
+     */
+    public static void init() {
+        clear();
 
-        saveAirport("BOS", 42.364347, -71.005181);
-        saveAirport("EWR", 40.6925, -74.168667);
-        saveAirport("JFK", 40.639751, -73.778925);
-        saveAirport("LGA", 40.777245, -73.872608);
-        saveAirport("MMU", 40.79935, -74.4148747);
+        saveAirport(new Airport("BOS", "KBOS", "Boston", "United States", 42.364347, -71.005181, 19, -5));
+        saveAirport(new Airport("EWR", "KEWR", "Newark", "United States", 40.6925, -74.168667, 18, -5));
+        saveAirport(new Airport("JFK", "KJFK", "New York", "United States", 40.639751, -73.778925, 13, -5));
+        saveAirport(new Airport("LGA", "KLGA", "New York", "United States", 40.777245, -73.872608, 22, -5));
+        saveAirport(new Airport("MMU", "KMMU", "Morristown", "United States", 40.79935, -74.4148747, 187, -5));
     }
 
 }
@@ -0,0 +1,514 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.codec.PackedCodes;
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An {@link AirportRegistry} keeping the airports outside the java heap, for datasets of hundreds of thousands of
+ * airfields.
+ * <p>
+ * Each slot is a fixed width record in a direct buffer, or in a memory mapped file if one is given:
+ * <pre>
+ *   offset size field
+ *        0    4 IATA code, {@link PackedCodes packed}, 0 for a free slot
+ *        4    4 ICAO code, packed, 0 if unknown
+ *        8    8 latitude
+ *       16    8 longitude
+ *       24    8 deletion time in milliseconds, 0 while live
+ *       32    4 country, id in the registry's name dictionary, 0 if unknown
+ *       36    4 city, id in the name dictionary, 0 if unknown
+ *       40    4 altitude in feet
+ *       44    4 hours offset from UTC, float
+ * </pre>
+ * The IATA and ICAO codes are found through open addressing hash tables of slot numbers, also off the heap. The
+ * country and city names are kept once on the heap, with the slot arrays of their airports. The {@link Airport}
+ * instances handed out are flyweights reading their fields from the record, so the registry keeps no object per
+ * airport except its weather. They keep their IATA code though, which makes them equal, e.g. as map keys, to the
+ * airport they were handed out for after its slot was freed or reused. Records are written under the registry's
+ * lock and read optimistically, retrying if a write intervened; a record does not change while its slot is live,
+ * so the flyweights read it without checks.
+ */
+public class OffHeapAirportRegistry extends AirportRegistry {
+
+    static final int RECORD_SIZE = 48;
+
+    private static final int IATA = 0;
+    private static final int ICAO = 4;
+    private static final int LATITUDE = 8;
+    private static final int LONGITUDE = 16;
+    private static final int DELETED_AT = 24;
+    private static final int COUNTRY = 32;
+    private static final int CITY = 36;
+    private static final int ALTITUDE = 40;
+    private static final int TIMEZONE = 44;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final FileChannel file;
+
+    private final StampedLock lock = new StampedLock();
+
+    private volatile ByteBuffer records;
+
+    /**
+     * slot + 1 by hash of the packed IATA code, 0 for empty; twice the record capacity, linear probing
+     */
+    private volatile IntBuffer table;
+
+    /**
+     * slot + 1 by hash of the packed ICAO code, like {@link #table}
+     */
+    private volatile IntBuffer icaoTable;
+
+    private volatile AtomicReferenceArray<AtmosphericInformation> weather;
+
+    private volatile int used;
+
+    private volatile int size;
+
+    private final BitSet free = new BitSet();
+
+    /**
+     * tombstoned slots in the order of deletion
+     */
+    private final ArrayDeque<Integer> tombstones = new ArrayDeque<>();
+
+    /**
+     * @param path file to map the records into, null to keep them in a direct buffer
+     */
+    public OffHeapAirportRegistry(String path) {
+        try {
+            file = path == null ? null : FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        records = records(capacity, null);
+        table = ByteBuffer.allocateDirect(capacity * 2 * Integer.BYTES).asIntBuffer();
+        icaoTable = ByteBuffer.allocateDirect(capacity * 2 * Integer.BYTES).asIntBuffer();
+        weather = new AtomicReferenceArray<>(capacity);
+    }
+
+    private ByteBuffer records(int capacity, ByteBuffer current) {
+        if (file != null) {
+            try {
+                // maps the grown file, the records written through the old mapping are already in it
+                return file.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        if (current != null) {
+            ByteBuffer copy = current.duplicate();
+            copy.clear();
+            buffer.put(copy);
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a code has characters other than A-Z and 0-9 or more than six
+     */
+    @Override
+    public synchronized Record add(Airport airport, AtmosphericInformation weather) {
+        int iata = PackedCodes.pack(airport.getIata());
+        if (iata == 0) {
+            throw new IllegalArgumentException("not a packable airport code: " + airport.getIata());
+        }
+        int icao = PackedCodes.pack(airport.getIcao());
+        if (icao == 0 && airport.getIcao() != null) {
+            throw new IllegalArgumentException("not a packable airport code: " + airport.getIcao());
+        }
+        Record existing = get(airport.getIata());
+        if (existing != null) {
+            return existing;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int slot = free.nextSetBit(0);
+            if (slot >= 0) {
+                free.clear(slot);
+            } else {
+                slot = used;
+                if (slot == this.weather.length()) {
+                    grow(slot * 2);
+                }
+                used = slot + 1;
+            }
+            int offset = slot * RECORD_SIZE;
+            records.putInt(offset + IATA, iata);
+            int country = attributes.countries.intern(airport.getCountry());
+            int city = attributes.cities.intern(airport.getCity());
+            records.putInt(offset + ICAO, icao);
+            records.putDouble(offset + LATITUDE, airport.getLatitude());
+            records.putDouble(offset + LONGITUDE, airport.getLongitude());
+            records.putLong(offset + DELETED_AT, 0);
+            records.putInt(offset + COUNTRY, country);
+            records.putInt(offset + CITY, city);
+            records.putInt(offset + ALTITUDE, airport.getAltitude());
+            records.putFloat(offset + TIMEZONE, (float) airport.getTimezone());
+            this.weather.set(slot, weather);
+            insert(table, iata, slot);
+            if (icao != 0) {
+                insert(icaoTable, icao, slot);
+            }
+            attributes.add(slot, country, city);
+            size++;
+            return record(slot);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer grown = records(capacity, records);
+        IntBuffer grownTable = ByteBuffer.allocateDirect(capacity * 2 * Integer.BYTES).asIntBuffer();
+        IntBuffer grownIcaoTable = ByteBuffer.allocateDirect(capacity * 2 * Integer.BYTES).asIntBuffer();
+        AtomicReferenceArray<AtmosphericInformation> grownWeather = new AtomicReferenceArray<>(capacity);
+        for (int slot = 0; slot < used; slot++) {
+            grownWeather.set(slot, weather.get(slot));
+            int offset = slot * RECORD_SIZE;
+            if (grown.getInt(offset + IATA) != 0 && grown.getLong(offset + DELETED_AT) == 0) {
+                insert(grownTable, grown.getInt(offset + IATA), slot);
+                if (grown.getInt(offset + ICAO) != 0) {
+                    insert(grownIcaoTable, grown.getInt(offset + ICAO), slot);
+                }
+            }
+        }
+        records = grown;
+        table = grownTable;
+        icaoTable = grownIcaoTable;
+        weather = grownWeather;
+    }
+
+    private static void insert(IntBuffer table, int code, int slot) {
+        int mask = table.capacity() - 1;
+        int bucket = hash(code) & mask;
+        while (table.get(bucket) != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        table.put(bucket, slot + 1);
+    }
+
+    /**
+     * @param field the offset of the code in the records, {@link #IATA} or {@link #ICAO}
+     * @return the slot of the live airport with the code, -1 if none; to be called under the lock or validated
+     */
+    private int find(ByteBuffer records, IntBuffer table, int field, int code) {
+        int mask = table.capacity() - 1;
+        int bucket = hash(code) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int entry = table.get(bucket);
+            if (entry == 0) {
+                return -1;
+            }
+            if (records.getInt((entry - 1) * RECORD_SIZE + field) == code) {
+                return entry - 1;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the slot from the hash table of a code, shifting back the entries of the probe sequence behind it.
+     */
+    private void unlink(IntBuffer table, int field, int code, int slot) {
+        int mask = table.capacity() - 1;
+        int bucket = hash(code) & mask;
+        while (table.get(bucket) != slot + 1) {
+            bucket = (bucket + 1) & mask;
+        }
+        int hole = bucket;
+        for (int next = (hole + 1) & mask; table.get(next) != 0; next = (next + 1) & mask) {
+            int home = hash(records.getInt((table.get(next) - 1) * RECORD_SIZE + field)) & mask;
+            // an entry can move into the hole if the hole lies between its home bucket and its bucket
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                table.put(hole, table.get(next));
+                hole = next;
+            }
+        }
+        table.put(hole, 0);
+    }
+
+    private static int hash(int code) {
+        int h = code * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public synchronized Record remove(String iataCode) {
+        int iata = PackedCodes.pack(iataCode);
+        int slot = iata == 0 ? -1 : find(records, table, IATA, iata);
+        if (slot < 0) {
+            return null;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int offset = slot * RECORD_SIZE;
+            unlink(table, IATA, iata, slot);
+            if (records.getInt(offset + ICAO) != 0) {
+                unlink(icaoTable, ICAO, records.getInt(offset + ICAO), slot);
+            }
+            attributes.remove(slot, records.getInt(offset + COUNTRY), records.getInt(offset + CITY));
+            long now = System.currentTimeMillis();
+            records.putLong(slot * RECORD_SIZE + DELETED_AT, now);
+            tombstones.add(slot);
+            size--;
+            return new Record(slot, new FlyweightAirport(this, slot, iata), weather.get(slot), now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Record get(String iataCode) {
+        return find(IATA, PackedCodes.pack(iataCode));
+    }
+
+    @Override
+    public Record getByIcao(String icaoCode) {
+        return find(ICAO, PackedCodes.pack(icaoCode));
+    }
+
+    private Record find(int field, int code) {
+        if (code == 0) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Record record;
+        try {
+            int slot = find(records, field == IATA ? table : icaoTable, field, code);
+            record = slot < 0 ? null : record(slot);
+        } catch (IndexOutOfBoundsException e) {
+            // read a slot number and records of different sizes while growing, the validation fails
+            record = null;
+        }
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                int slot = find(records, field == IATA ? table : icaoTable, field, code);
+                record = slot < 0 ? null : record(slot);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public Record get(int slot) {
+        if (slot < 0 || slot >= used) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        Record record = liveRecord(slot);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                record = liveRecord(slot);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return record;
+    }
+
+    private Record liveRecord(int slot) {
+        ByteBuffer records = this.records;
+        int offset = slot * RECORD_SIZE;
+        boolean live = offset < records.capacity() && records.getInt(offset + IATA) != 0
+                && records.getLong(offset + DELETED_AT) == 0;
+        return live ? record(slot) : null;
+    }
+
+    private Record record(int slot) {
+        int iata = records.getInt(slot * RECORD_SIZE + IATA);
+        return new Record(slot, new FlyweightAirport(this, slot, iata), weather.get(slot), 0);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized int compact(long graceMillis) {
+        long oldest = System.currentTimeMillis() - graceMillis;
+        int freed = 0;
+        long stamp = lock.writeLock();
+        try {
+            while (!tombstones.isEmpty()
+                    && records.getLong(tombstones.peek() * RECORD_SIZE + DELETED_AT) <= oldest) {
+                int slot = tombstones.poll();
+                records.putInt(slot * RECORD_SIZE + IATA, 0);
+                weather.set(slot, null);
+                free.set(slot);
+                freed++;
+            }
+            int last = used;
+            while (last > 0 && free.get(last - 1)) {
+                last--;
+            }
+            free.clear(last, used);
+            used = last;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return freed;
+    }
+
+    @Override
+    public synchronized void clear() {
+        long stamp = lock.writeLock();
+        try {
+            tombstones.clear();
+            free.clear();
+            used = 0;
+            size = 0;
+            attributes.clear();
+            allocate(INITIAL_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("airports", size);
+        status.put("slots", used);
+        status.put("capacity", weather.length());
+        status.put("tombstones", tombstones.size());
+        status.put("free", free.cardinality());
+        status.put("countries", attributes.countries.size());
+        status.put("cities", attributes.cities.size());
+        status.put("off_heap_bytes",
+                (long) records.capacity() + (table.capacity() + icaoTable.capacity()) * Integer.BYTES);
+        status.put("mapped", file != null);
+        return status;
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        int end = used;
+        return new Iterator<Record>() {
+            private int slot = -1;
+            private Record next = advance();
+
+            private Record advance() {
+                while (++slot < end) {
+                    Record record = get(slot);
+                    if (record != null) {
+                        return record;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Record next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Record record = next;
+                next = advance();
+                return record;
+            }
+        };
+    }
+
+    /**
+     * An airport reading its fields from its record, except the IATA code its equality rests on.
+     */
+    static final class FlyweightAirport extends Airport {
+        private final OffHeapAirportRegistry registry;
+        private final int slot;
+
+        /**
+         * the packed IATA code, as read when the flyweight was handed out
+         */
+        private final int iata;
+
+        FlyweightAirport(OffHeapAirportRegistry registry, int slot, int iata) {
+            super(null, Double.NaN, Double.NaN);
+            this.registry = registry;
+            this.slot = slot;
+            this.iata = iata;
+        }
+
+        @Override
+        public String getIata() {
+            return PackedCodes.unpack(iata);
+        }
+
+        @Override
+        public double getLatitude() {
+            return registry.records.getDouble(slot * RECORD_SIZE + LATITUDE);
+        }
+
+        @Override
+        public double getLongitude() {
+            return registry.records.getDouble(slot * RECORD_SIZE + LONGITUDE);
+        }
+
+        @Override
+        public String getIcao() {
+            return PackedCodes.unpack(registry.records.getInt(slot * RECORD_SIZE + ICAO));
+        }
+
+        @Override
+        public String getCity() {
+            return registry.attributes.cities.name(registry.records.getInt(slot * RECORD_SIZE + CITY));
+        }
+
+        @Override
+        public String getCountry() {
+            return registry.attributes.countries.name(registry.records.getInt(slot * RECORD_SIZE + COUNTRY));
+        }
+
+        @Override
+        public int getAltitude() {
+            return registry.records.getInt(slot * RECORD_SIZE + ALTITUDE);
+        }
+
+        @Override
+        public double getTimezone() {
+            return registry.records.getFloat(slot * RECORD_SIZE + TIMEZONE);
+        }
+
+        @Override
+        public String toString() {
+            return new Airport(getIata(), getIcao(), getCity(), getCountry(), getLatitude(), getLongitude(),
+                    getAltitude(), getTimezone()).toString();
+        }
+    }
+}
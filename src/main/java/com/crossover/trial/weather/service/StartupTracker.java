@@ -0,0 +1,118 @@
+package com.crossover.trial.weather.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Times the startup of a node, from the start of the jvm: how long each initialization phase took, when the server
+ * was listening, when it was ready, i.e. done with all phases, and when the first request arrived. Published in the
+ * ping output under "startup"; load balancers route to a node once its "ready" flag is set.
+ * <p>
+ * A lazy startup opens the server before the heavy phases and runs them in the background, so a new node answers
+ * early and serves with defaults, e.g. an empty dataset, until it is ready.
+ */
+public class StartupTracker {
+
+    public final static Logger LOGGER = Logger.getLogger(StartupTracker.class.getName());
+
+    private final boolean lazy;
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    /**
+     * milliseconds taken by each phase, in the order run
+     */
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private final CountDownLatch ready = new CountDownLatch(1);
+
+    private volatile long listeningAt;
+
+    private volatile long readyAt;
+
+    private volatile long firstRequestAt;
+
+    /**
+     * @param lazy true if the phases run after the server is listening
+     */
+    public StartupTracker(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Runs and times an initialization phase.
+     */
+    public void phase(String name, Runnable phase) {
+        long start = System.nanoTime();
+        phase.run();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        synchronized (phases) {
+            phases.put(name, millis);
+        }
+        LOGGER.info("startup phase " + name + " took " + millis + " ms");
+    }
+
+    public void listening() {
+        listeningAt = System.currentTimeMillis();
+        LOGGER.info("listening " + (listeningAt - jvmStart) + " ms after jvm start");
+    }
+
+    public void ready() {
+        readyAt = System.currentTimeMillis();
+        ready.countDown();
+        LOGGER.info("ready " + (readyAt - jvmStart) + " ms after jvm start");
+    }
+
+    public boolean isReady() {
+        return ready.getCount() == 0;
+    }
+
+    /**
+     * @return true once ready, false if the timeout elapsed first
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        return ready.await(timeout, unit);
+    }
+
+    /**
+     * Notes the arrival of a request; only the first one is recorded.
+     */
+    public void requestReceived() {
+        if (firstRequestAt == 0) {
+            synchronized (this) {
+                if (firstRequestAt == 0) {
+                    firstRequestAt = System.currentTimeMillis();
+                    LOGGER.info("time to first request " + (firstRequestAt - jvmStart) + " ms");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the readiness flag and the times in milliseconds after jvm start, -1 for what did not happen yet
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("ready", isReady());
+        status.put("mode", lazy ? "lazy" : "eager");
+        status.put("listening_ms", sinceJvmStart(listeningAt));
+        status.put("ready_ms", sinceJvmStart(readyAt));
+        status.put("first_request_ms", sinceJvmStart(firstRequestAt));
+        synchronized (phases) {
+            status.put("phases_ms", new LinkedHashMap<>(phases));
+        }
+        return status;
+    }
+
+    private long sinceJvmStart(long time) {
+        return time == 0 ? -1 : time - jvmStart;
+    }
+}
@@ -0,0 +1,278 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.MapTile;
+import com.crossover.trial.weather.stats.WeatherAggregate;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Web mercator map tiles of the weather, as json, for map frontends which would otherwise run a radius query per
+ * visible airport.
+ * <p>
+ * From the detail zoom on a tile lists its airports with their weather. Below it a tile holds the
+ * {@link WeatherAggregate} summaries of its descendants {@link #SPLIT} zoom levels down, or at the detail zoom, so
+ * its payload is bounded by {@code 4^SPLIT} summaries however many airports it covers. The aggregate of a tile
+ * below the detail zoom is merged from the cached aggregates of those descendants, so only the tiles of the detail
+ * zoom look at airports.
+ * <p>
+ * Tiles up to {@link #MAX_CACHED_ZOOM} are cached. A change of an airport or its weather evicts the one tile per
+ * zoom holding the airport; the next request recomputes it from the cached tiles below. A tile whose computation
+ * overlapped an eviction is not cached.
+ */
+public class TileCache implements WeatherChangeListener {
+
+    /**
+     * zoom levels between a tile below the detail zoom and the tiles its summaries are of
+     */
+    public static final int SPLIT = 3;
+
+    /**
+     * tiles above this zoom are a few km wide and computed for each request
+     */
+    public static final int MAX_CACHED_ZOOM = 12;
+
+    /**
+     * widening of the box query of a tile in degrees, against rounding at its edges; the tile test decides
+     */
+    private static final double EDGE = 1e-9;
+
+    private static final Gson gson = new Gson();
+
+    private static final byte[] Z_KEY = "{\"z\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] X_KEY = ",\"x\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] Y_KEY = ",\"y\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AIRPORTS_KEY = ",\"airports\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CELL_ZOOM_KEY = ",\"cellZoom\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CELLS_KEY = ",\"cells\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AIRPORT_KEY = "{\"airport\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] WEATHER_KEY = ",\"weather\":".getBytes(StandardCharsets.US_ASCII);
+
+    private final AirportGridIndex index;
+
+    /**
+     * drops the expired data points of the weather served
+     */
+    private final UnaryOperator<AtmosphericInformation> fresh;
+
+    private final int detailZoom;
+
+    private final int maxTiles;
+
+    private final Map<Long, Tile> tiles = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param index      the airports
+     * @param fresh      drops the expired data points of an airport's weather
+     * @param detailZoom the lowest zoom whose tiles list airports, at most {@link #MAX_CACHED_ZOOM}
+     * @param maxTiles   maximum number of cached tiles, further tiles are computed for each request
+     */
+    public TileCache(AirportGridIndex index, UnaryOperator<AtmosphericInformation> fresh, int detailZoom,
+                     int maxTiles) {
+        if (detailZoom < 0 || detailZoom > MAX_CACHED_ZOOM) {
+            throw new IllegalArgumentException("detail zoom must be from 0 to " + MAX_CACHED_ZOOM);
+        }
+        this.index = index;
+        this.fresh = fresh;
+        this.detailZoom = detailZoom;
+        this.maxTiles = maxTiles;
+    }
+
+    public int getDetailZoom() {
+        return detailZoom;
+    }
+
+    /**
+     * @return the json of the tile
+     */
+    public byte[] get(MapTile tile) {
+        return tile(tile).json;
+    }
+
+    private Tile tile(MapTile tile) {
+        if (tile.getZ() > MAX_CACHED_ZOOM) {
+            return compute(tile);
+        }
+        Long key = tile.key();
+        Tile cached = tiles.get(key);
+        if (cached != null && cached.json != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        // a marker of this computation, an eviction in the meantime removes it and the result is not cached
+        Tile computing = new Tile(null, null);
+        boolean cache = cached == null && tiles.size() < maxTiles && tiles.putIfAbsent(key, computing) == null;
+        Tile computed;
+        try {
+            computed = compute(tile);
+        } catch (RuntimeException e) {
+            tiles.remove(key, computing);
+            throw e;
+        }
+        if (cache) {
+            tiles.replace(key, computing, computed);
+        }
+        return computed;
+    }
+
+    private Tile compute(MapTile tile) {
+        return tile.getZ() < detailZoom ? summarize(tile) : list(tile);
+    }
+
+    /**
+     * @return the tile's airports with their weather, and their aggregate at the detail zoom
+     */
+    private Tile list(MapTile tile) {
+        WeatherAggregate aggregate = tile.getZ() == detailZoom ? new WeatherAggregate() : null;
+        JsonBuffer out = new JsonBuffer(1024);
+        header(out, tile);
+        out.raw(AIRPORTS_KEY);
+        boolean[] first = {true};
+        index.forEachInBox(tile.getMinLatitude() - EDGE, tile.getMinLongitude() - EDGE,
+                tile.getMaxLatitude() + EDGE, tile.getMaxLongitude() + EDGE, entry -> {
+                    if (!entry.getWeather().hasData() || !tile.contains(entry.getLatitude(), entry.getLongitude())) {
+                        return;
+                    }
+                    AtmosphericInformation weather = fresh.apply(entry.getWeather());
+                    if (aggregate != null) {
+                        aggregate.add(weather, 0);
+                    }
+                    if (!first[0]) {
+                        out.raw(',');
+                    }
+                    first[0] = false;
+                    out.raw(AIRPORT_KEY);
+                    JsonCodec.write(out, entry.getAirport());
+                    out.raw(WEATHER_KEY);
+                    JsonCodec.write(out, weather);
+                    out.raw('}');
+                });
+        out.raw(']').raw('}');
+        return new Tile(out.toByteArray(), aggregate);
+    }
+
+    /**
+     * @return the summaries of the tile's descendants and their aggregate
+     */
+    private Tile summarize(MapTile tile) {
+        int levels = Math.min(SPLIT, detailZoom - tile.getZ());
+        WeatherAggregate aggregate = new WeatherAggregate();
+        List<Map<String, Object>> cells = new ArrayList<>();
+        for (int dy = 0; dy < 1 << levels; dy++) {
+            for (int dx = 0; dx < 1 << levels; dx++) {
+                MapTile descendant = tile.descendant(levels, dx, dy);
+                WeatherAggregate part = tile(descendant).aggregate;
+                if (part.getAirports() == 0) {
+                    continue;
+                }
+                aggregate.merge(part);
+                Map<String, Object> cell = new LinkedHashMap<>();
+                cell.put("x", descendant.getX());
+                cell.put("y", descendant.getY());
+                cell.put("summary", part.summary());
+                cells.add(cell);
+            }
+        }
+        JsonBuffer out = new JsonBuffer(256 + cells.size() * 256);
+        header(out, tile);
+        out.raw(CELL_ZOOM_KEY).number(tile.getZ() + levels);
+        out.raw(CELLS_KEY);
+        out.raw(gson.toJson(cells).getBytes(StandardCharsets.UTF_8));
+        out.raw('}');
+        return new Tile(out.toByteArray(), aggregate);
+    }
+
+    private static void header(JsonBuffer out, MapTile tile) {
+        out.raw(Z_KEY).number(tile.getZ());
+        out.raw(X_KEY).number(tile.getX());
+        out.raw(Y_KEY).number(tile.getY());
+    }
+
+    /**
+     * Evicts the tiles holding a point.
+     */
+    public void invalidate(double latitude, double longitude) {
+        if (tiles.isEmpty()) {
+            return;
+        }
+        // deepest first: a tile summarizing a stale tile below was started before its own eviction, so it is not cached
+        for (int z = MAX_CACHED_ZOOM; z >= 0; z--) {
+            if (tiles.remove(MapTile.keyOf(z, latitude, longitude)) != null) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Evicts all tiles, e.g. when all airports are cleared.
+     */
+    public void clear() {
+        tiles.clear();
+    }
+
+    /**
+     * @return cache statistics for the ping output
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("tiles", tiles.size());
+        status.put("detail_zoom", detailZoom);
+        status.put("hits", hits.get());
+        status.put("misses", misses.get());
+        status.put("evictions", evictions.get());
+        return status;
+    }
+
+    @Override
+    public void airportSaved(Airport airport) {
+        invalidate(airport.getLatitude(), airport.getLongitude());
+    }
+
+    @Override
+    public void airportDeleted(Airport airport) {
+        invalidate(airport.getLatitude(), airport.getLongitude());
+    }
+
+    @Override
+    public void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint) {
+        invalidate(airport.getLatitude(), airport.getLongitude());
+    }
+
+    /**
+     * A computed tile, or the marker of a computation in progress with neither.
+     */
+    private static final class Tile {
+        final byte[] json;
+        /**
+         * aggregate of the tile's airports, null above the detail zoom
+         */
+        final WeatherAggregate aggregate;
+
+        Tile(byte[] json, WeatherAggregate aggregate) {
+            this.json = json;
+            this.aggregate = aggregate;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+
+/**
+ * Observer of {@link AirportWeatherService} mutations. Callbacks are invoked on the mutating thread after the
+ * change has been applied, still holding the airport's lock, so the changes of an airport are observed in the order
+ * they were applied. Implementations must be fast, must not block and must not mutate the service.
+ */
+public interface WeatherChangeListener {
+
+    /**
+     * Called after a new airport has been added.
+     *
+     * @param airport the added airport
+     */
+    void airportSaved(Airport airport);
+
+    /**
+     * Called after an airport and its weather data have been removed.
+     *
+     * @param airport the removed airport
+     */
+    void airportDeleted(Airport airport);
+
+    /**
+     * Called after a valid data point has been stored for an airport.
+     *
+     * @param airport   the updated airport
+     * @param type      the type of the data point
+     * @param dataPoint the stored data point
+     */
+    void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint);
+}
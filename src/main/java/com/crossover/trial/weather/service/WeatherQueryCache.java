@@ -0,0 +1,223 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.GeoMath;
+import com.crossover.trial.weather.stats.QueryKey;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cache of weather query results for the currently hot queries only, so its size is bounded by the heavy hitter
+ * summary of {@link com.crossover.trial.weather.stats.RequestStatistics}.
+ * <p>
+ * Every mutation bumps a generation counter. A data point or an expiry only makes the hot queries stale whose circle
+ * contains its airport, while saving or deleting an airport makes all entries stale; an entry is only served while
+ * it was computed at or after the last change which made its query stale. The hot set is refreshed and pre-warmed
+ * periodically by {@link #prewarm(Collection, Function)}.
+ */
+public class WeatherQueryCache implements WeatherChangeListener {
+
+    /**
+     * margin for the rounding of the index's distances, so an airport on the edge of a circle counts as inside
+     */
+    private static final double RADIUS_SLACK_KM = 1e-6;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * generation of the last change making all entries stale
+     */
+    private final AtomicLong membership = new AtomicLong();
+
+    /**
+     * generation of the last change within the circle of each hot query
+     */
+    private final Map<QueryKey, Long> touched = new ConcurrentHashMap<>();
+
+    /**
+     * finds the center airport of a query, null if it is unknown
+     */
+    private final Function<String, Airport> centers;
+
+    private final Map<QueryKey, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile Set<QueryKey> hot = Collections.emptySet();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A cache which can not locate the queries, so every data point makes all entries stale.
+     */
+    public WeatherQueryCache() {
+        this(iata -> null);
+    }
+
+    /**
+     * @param centers finds the center airport of a query by its code, null if it is unknown
+     */
+    public WeatherQueryCache(Function<String, Airport> centers) {
+        this.centers = centers;
+    }
+
+    /**
+     * @return the current data generation, to be captured before computing a result
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * @param key the query
+     * @return the cached result if it is still current, null otherwise
+     */
+    public List<AtmosphericInformation> get(QueryKey key) {
+        Entry entry = entries.get(key);
+        if (isCurrent(key, entry)) {
+            hits.incrementAndGet();
+            return entry.result;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key the query
+     * @return true if a current result is cached, without counting a hit or miss
+     */
+    public boolean contains(QueryKey key) {
+        return isCurrent(key, entries.get(key));
+    }
+
+    private boolean isCurrent(QueryKey key, Entry entry) {
+        return entry != null && entry.generation >= membership.get()
+                && entry.generation >= touched.getOrDefault(key, 0L);
+    }
+
+    /**
+     * Stores a result if the query is hot.
+     *
+     * @param key        the query
+     * @param generation generation captured before the result was computed
+     * @param result     the query result
+     * @return the result as it has to be handed out, read only
+     */
+    public List<AtmosphericInformation> put(QueryKey key, long generation, List<AtmosphericInformation> result) {
+        List<AtmosphericInformation> readOnly = Collections.unmodifiableList(result);
+        if (hot.contains(key)) {
+            entries.put(key, new Entry(generation, readOnly));
+        }
+        return readOnly;
+    }
+
+    /**
+     * Replaces the hot set, evicts queries which are no longer hot and recomputes stale hot entries.
+     *
+     * @param hotKeys the queries to keep cached
+     * @param loader  computes the result of a query
+     */
+    public void prewarm(Collection<QueryKey> hotKeys, Function<QueryKey, List<AtmosphericInformation>> loader) {
+        Set<QueryKey> hotSet = new HashSet<>(hotKeys);
+        Set<QueryKey> previous = hot;
+        for (QueryKey key : hotSet) {
+            // changes in their circle were not tracked while they were cold
+            if (!previous.contains(key)) {
+                touched.put(key, generation.get());
+            }
+        }
+        hot = hotSet;
+        entries.keySet().retainAll(hotSet);
+        touched.keySet().retainAll(hotSet);
+        for (QueryKey key : hotSet) {
+            long current = generation.get();
+            if (!isCurrent(key, entries.get(key))) {
+                put(key, current, loader.apply(key));
+            }
+        }
+    }
+
+    /**
+     * @return cache statistics for the ping output
+     */
+    public Map<String, Object> status() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("hot", hot.size());
+        status.put("entries", entries.size());
+        status.put("hits", hits.get());
+        status.put("misses", misses.get());
+        return status;
+    }
+
+    /**
+     * Makes all entries stale.
+     */
+    public void invalidate() {
+        membership.accumulateAndGet(generation.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Makes the entries stale whose circle contains a position, e.g. of an airport whose data points expired.
+     *
+     * @param latitude  latitude of the change, NaN if unknown to make all entries stale
+     * @param longitude longitude of the change
+     */
+    public void invalidate(double latitude, double longitude) {
+        if (Double.isNaN(latitude)) {
+            invalidate();
+            return;
+        }
+        long changed = generation.incrementAndGet();
+        for (QueryKey key : hot) {
+            Airport center = centers.apply(key.getIata());
+            if (center == null || GeoMath.distance(center.getLatitude(), center.getLongitude(), latitude,
+                    longitude) <= key.getRadius() + RADIUS_SLACK_KM) {
+                touched.merge(key, changed, Math::max);
+            }
+        }
+    }
+
+    public void clear() {
+        hot = Collections.emptySet();
+        entries.clear();
+        touched.clear();
+        invalidate();
+    }
+
+    @Override
+    public void airportSaved(Airport airport) {
+        invalidate();
+    }
+
+    @Override
+    public void airportDeleted(Airport airport) {
+        invalidate();
+    }
+
+    @Override
+    public void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint) {
+        invalidate(airport.getLatitude(), airport.getLongitude());
+    }
+
+    private static final class Entry {
+        final long generation;
+        final List<AtmosphericInformation> result;
+
+        Entry(long generation, List<AtmosphericInformation> result) {
+            this.generation = generation;
+            this.result = result;
+        }
+    }
+}
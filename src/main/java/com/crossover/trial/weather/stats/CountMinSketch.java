@@ -0,0 +1,125 @@
+package com.crossover.trial.weather.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe Count-Min sketch of string keys. Estimates never undercount; the overcount is bounded by
+ * {@code e / width * total} with probability {@code 1 - exp(-depth)}.
+ * <p>
+ * Hashing only depends on {@link String#hashCode()}, which is specified by the JLS, so sketches of the same
+ * dimensions built on different nodes can be merged cell by cell.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+
+    private final int width;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * @param depth number of hash rows
+     * @param width number of counters per row, rounded up to a power of two
+     */
+    public CountMinSketch(int depth, int width) {
+        if (depth <= 0 || width <= 0) {
+            throw new IllegalArgumentException("depth and width must be positive");
+        }
+        int w = 1;
+        while (w < width) {
+            w <<= 1;
+        }
+        this.depth = depth;
+        this.width = w;
+        this.counts = new AtomicLongArray(depth * w);
+    }
+
+    /**
+     * Restores a sketch from its counters, e.g. after transfer from another node.
+     *
+     * @param depth  number of hash rows
+     * @param width  number of counters per row, must be a power of two
+     * @param counts the counters, row after row
+     */
+    public CountMinSketch(int depth, int width, long[] counts) {
+        if (Integer.bitCount(width) != 1 || counts.length != depth * width) {
+            throw new IllegalArgumentException("counters don't match a " + depth + "x" + width + " sketch");
+        }
+        this.depth = depth;
+        this.width = width;
+        this.counts = new AtomicLongArray(counts);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Adds occurrences of a key.
+     */
+    public void add(String key, long n) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        for (int row = 0; row < depth; row++) {
+            counts.addAndGet(row * width + ((h1 + row * h2) & (width - 1)), n);
+        }
+    }
+
+    /**
+     * @return an upper bound estimate of the occurrences of the key
+     */
+    public long estimate(String key) {
+        int h1 = mix(key.hashCode());
+        int h2 = mix(h1 ^ 0x9e3779b9) | 1;
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counts.get(row * width + ((h1 + row * h2) & (width - 1))));
+        }
+        return min;
+    }
+
+    /**
+     * Adds all counters of another sketch of the same dimensions into this one.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("can't merge sketches of different dimensions");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+    }
+
+    /**
+     * @return a copy of all counters, row after row
+     */
+    public long[] toArray() {
+        long[] copy = new long[counts.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    public void clear() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * murmur3 finalizer
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,43 @@
+package com.crossover.trial.weather.stats;
+
+/**
+ * Identity of a weather query: the center airport and the radius in km.
+ */
+public final class QueryKey {
+
+    private final String iata;
+
+    private final double radius;
+
+    public QueryKey(String iata, double radius) {
+        this.iata = iata;
+        this.radius = radius;
+    }
+
+    public String getIata() {
+        return iata;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof QueryKey)) {
+            return false;
+        }
+        QueryKey that = (QueryKey) other;
+        return Double.compare(radius, that.radius) == 0 && iata.equals(that.iata);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * iata.hashCode() + Double.hashCode(radius);
+    }
+
+    @Override
+    public String toString() {
+        return iata + "/" + radius;
+    }
+}
@@ -0,0 +1,89 @@
+package com.crossover.trial.weather.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of query radii with a fixed bucket layout, so histograms of different nodes merge by
+ * adding buckets. Buckets are 1 km wide below 100 km, 10 km wide below 1000 km and 100 km wide up to the maximum
+ * distance on earth; everything beyond falls into the last bucket.
+ */
+public class RadiusHistogram {
+
+    /**
+     * number of buckets of the fixed layout
+     */
+    public static final int BUCKETS = 100 + 90 + 192 + 1;
+
+    private final AtomicLongArray counts;
+
+    public RadiusHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Restores a histogram from its buckets.
+     */
+    public RadiusHistogram(long[] buckets) {
+        if (buckets.length != BUCKETS) {
+            throw new IllegalArgumentException("expected " + BUCKETS + " buckets, got " + buckets.length);
+        }
+        counts = new AtomicLongArray(buckets);
+    }
+
+    /**
+     * @param radius radius in km
+     * @return index of the bucket holding the radius
+     */
+    public static int bucketOf(double radius) {
+        if (!(radius > 0)) {
+            return 0;
+        } else if (radius < 100) {
+            return (int) radius;
+        } else if (radius < 1000) {
+            return 100 + (int) ((radius - 100) / 10);
+        } else if (radius < 20200) {
+            return 190 + (int) ((radius - 1000) / 100);
+        }
+        return BUCKETS - 1;
+    }
+
+    /**
+     * @return the smallest radius in km falling into the bucket
+     */
+    public static int lowerBound(int bucket) {
+        if (bucket < 100) {
+            return bucket;
+        } else if (bucket < 190) {
+            return 100 + (bucket - 100) * 10;
+        }
+        return 1000 + (bucket - 190) * 100;
+    }
+
+    public void record(double radius) {
+        counts.incrementAndGet(bucketOf(radius));
+    }
+
+    public void merge(RadiusHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.addAndGet(i, other.counts.get(i));
+        }
+    }
+
+    public long get(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long[] toArray() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.crossover.trial.weather.stats;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Query statistics of a node: a Count-Min sketch of requested airports and a histogram of requested radii, both
+ * mergeable across nodes, plus Space-Saving summaries of the most requested airports and queries. Memory and merge
+ * cost are constant, independent of the number of airports.
+ */
+public class RequestStatistics {
+
+    /**
+     * rows of the airport sketch
+     */
+    public static final int DEPTH = 4;
+
+    /**
+     * counters per row of the airport sketch, ~0.07% overcount of the total with 98% confidence
+     */
+    public static final int WIDTH = 4096;
+
+    /**
+     * number of keys monitored by the heavy hitter summaries
+     */
+    public static final int HEAVY_HITTERS = 256;
+
+    private final CountMinSketch airports = new CountMinSketch(DEPTH, WIDTH);
+
+    private final RadiusHistogram radii = new RadiusHistogram();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final SpaceSaving<String> topAirports = new SpaceSaving<>(HEAVY_HITTERS);
+
+    private final SpaceSaving<QueryKey> topQueries = new SpaceSaving<>(HEAVY_HITTERS);
+
+    /**
+     * Records a single weather query.
+     *
+     * @param iata   the requested airport
+     * @param radius the requested radius in km
+     */
+    public void record(String iata, double radius) {
+        airports.add(iata, 1);
+        radii.record(radius);
+        total.incrementAndGet();
+        topAirports.offer(iata);
+        topQueries.offer(new QueryKey(iata, radius));
+    }
+
+    /**
+     * @return total number of recorded queries
+     */
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @param k maximum number of airports
+     * @return the most requested airports with their count error bounds
+     */
+    public List<SpaceSaving.HeavyHitter<String>> topAirports(int k) {
+        return topAirports.top(k);
+    }
+
+    /**
+     * @param k maximum number of queries
+     * @return the most requested (iata, radius) pairs with their count error bounds
+     */
+    public List<SpaceSaving.HeavyHitter<QueryKey>> topQueries(int k) {
+        return topQueries.top(k);
+    }
+
+    /**
+     * @param dataSize the node's current count of airports with recent data
+     * @return a serializable copy of the counters
+     */
+    public StatsSnapshot snapshot(int dataSize) {
+        StatsSnapshot snapshot = new StatsSnapshot();
+        snapshot.nodes = 1;
+        snapshot.datasize = dataSize;
+        snapshot.total = total.get();
+        snapshot.depth = airports.getDepth();
+        snapshot.width = airports.getWidth();
+        snapshot.iata_sketch = airports.toArray();
+        snapshot.radius_buckets = radii.toArray();
+        return snapshot;
+    }
+
+    public void clear() {
+        airports.clear();
+        radii.clear();
+        total.set(0);
+        topAirports.clear();
+        topQueries.clear();
+    }
+}
@@ -0,0 +1,266 @@
+package com.crossover.trial.weather.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Space-Saving heavy hitters summary (Metwally et al.) over a stream of keys, using constant memory.
+ * <p>
+ * At most {@code capacity} keys are monitored. A new key evicts the key with the smallest count and inherits that
+ * count as its error, so for every reported key the true count lies in {@code [count - error, count]} and every
+ * key occurring more than {@code total / capacity} times is guaranteed to be monitored. Counters are kept in a
+ * min-heap, so counting a key costs O(log capacity).
+ * <p>
+ * Offers are buffered per thread stripe and counted in the summary in batches with their weight, which keeps the
+ * guarantees, so the summary's lock is taken once per batch rather than on every query. Reading the summary counts
+ * the pending offers first.
+ *
+ * @param <K> the key type
+ */
+public class SpaceSaving<K> {
+
+    /**
+     * distinct keys a stripe buffers before counting them in the summary
+     */
+    private static final int BATCH = 64;
+
+    private final int capacity;
+
+    private final Stripe<K>[] stripes;
+
+    private final Map<K, Counter<K>> counters;
+
+    /**
+     * min-heap of counters ordered by count
+     */
+    private final Counter<K>[] heap;
+
+    private int size;
+
+    private long total;
+
+    @SuppressWarnings("unchecked")
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+        int stripeCount = 1;
+        while (stripeCount < 2 * Runtime.getRuntime().availableProcessors()) {
+            stripeCount <<= 1;
+        }
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Counts one occurrence of the key.
+     */
+    public void offer(K key) {
+        Stripe<K> stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+        synchronized (stripe) {
+            stripe.pending.computeIfAbsent(key, stripe.newCount)[0]++;
+            if (stripe.pending.size() >= BATCH) {
+                flush(stripe);
+            }
+        }
+    }
+
+    /**
+     * Counts the pending offers of a stripe, must be called holding the stripe's lock.
+     */
+    private void flush(Stripe<K> stripe) {
+        synchronized (this) {
+            for (Map.Entry<K, long[]> pending : stripe.pending.entrySet()) {
+                add(pending.getKey(), pending.getValue()[0]);
+            }
+        }
+        stripe.pending.clear();
+    }
+
+    private void flush() {
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                if (!stripe.pending.isEmpty()) {
+                    flush(stripe);
+                }
+            }
+        }
+    }
+
+    private void add(K key, long weight) {
+        total += weight;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.index);
+        } else if (size < capacity) {
+            counter = new Counter<>(key, weight, 0);
+            counter.index = size;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.index);
+        } else {
+            // replace the minimum, the new key may have occurred up to min.count times before
+            counter = heap[0];
+            counters.remove(counter.key);
+            counter.key = key;
+            counter.error = counter.count;
+            counter.count += weight;
+            counters.put(key, counter);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * @param k maximum number of keys to return
+     * @return the k most frequent keys, most frequent first
+     */
+    public List<HeavyHitter<K>> top(int k) {
+        flush();
+        synchronized (this) {
+            return sortedTop(k);
+        }
+    }
+
+    private List<HeavyHitter<K>> sortedTop(int k) {
+        List<HeavyHitter<K>> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new HeavyHitter<>(heap[i].key, heap[i].count, heap[i].error));
+        }
+        Collections.sort(result);
+        return result.size() > k ? new ArrayList<>(result.subList(0, Math.max(0, k))) : result;
+    }
+
+    /**
+     * @return total number of offered keys
+     */
+    public long getTotal() {
+        flush();
+        synchronized (this) {
+            return total;
+        }
+    }
+
+    public void clear() {
+        for (Stripe<K> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.pending.clear();
+            }
+        }
+        synchronized (this) {
+            clearSummary();
+        }
+    }
+
+    private void clearSummary() {
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(int i) {
+        Counter<K> counter = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(counter, i);
+    }
+
+    private void siftDown(int i) {
+        Counter<K> counter = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(counter, i);
+    }
+
+    private void place(Counter<K> counter, int i) {
+        heap[i] = counter;
+        counter.index = i;
+    }
+
+    /**
+     * Offers of the threads mapped to a stripe, not yet counted in the summary.
+     */
+    private static final class Stripe<K> {
+        final Map<K, long[]> pending = new HashMap<>(BATCH * 2);
+
+        final Function<K, long[]> newCount = key -> new long[1];
+    }
+
+    private static final class Counter<K> {
+        K key;
+        long count;
+        long error;
+        int index;
+
+        Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A reported heavy hitter. The true count of the key is between {@code count - error} and {@code count}.
+     *
+     * @param <K> the key type
+     */
+    public static final class HeavyHitter<K> implements Comparable<HeavyHitter<K>> {
+        private final K key;
+        private final long count;
+        private final long error;
+
+        public HeavyHitter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public int compareTo(HeavyHitter<K> other) {
+            return Long.compare(other.count, count);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.crossover.trial.weather.stats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Wire form of {@link RequestStatistics}, published by every node at /query/stats and merged by
+ * {@link com.crossover.trial.weather.utils.StatsAggregator}. Field names follow the ping json.
+ */
+public class StatsSnapshot {
+
+    /**
+     * number of nodes merged into this snapshot
+     */
+    public int nodes;
+
+    /**
+     * sum of the nodes' datasize
+     */
+    public long datasize;
+
+    /**
+     * total number of weather queries
+     */
+    public long total;
+
+    public int depth;
+
+    public int width;
+
+    /**
+     * Count-Min sketch counters of requested iata codes
+     */
+    public long[] iata_sketch;
+
+    /**
+     * {@link RadiusHistogram} buckets of requested radii
+     */
+    public long[] radius_buckets;
+
+    /**
+     * Merges another node's snapshot into this one. Cost only depends on the sketch dimensions.
+     *
+     * @param other snapshot of the same sketch dimensions
+     */
+    public void merge(StatsSnapshot other) {
+        if (other.depth != depth || other.width != width || other.radius_buckets.length != radius_buckets.length) {
+            throw new IllegalArgumentException("can't merge snapshots of different dimensions");
+        }
+        nodes += other.nodes;
+        datasize += other.datasize;
+        total += other.total;
+        for (int i = 0; i < iata_sketch.length; i++) {
+            iata_sketch[i] += other.iata_sketch[i];
+        }
+        for (int i = 0; i < radius_buckets.length; i++) {
+            radius_buckets[i] += other.radius_buckets[i];
+        }
+    }
+
+    /**
+     * @return the airport sketch, for frequency estimates of iata codes
+     */
+    public CountMinSketch airportSketch() {
+        return new CountMinSketch(depth, width, iata_sketch);
+    }
+
+    /**
+     * @return non empty radius buckets keyed by their lower bound in km
+     */
+    public Map<Integer, Long> radiusFrequency() {
+        Map<Integer, Long> freq = new LinkedHashMap<>();
+        for (int i = 0; i < radius_buckets.length; i++) {
+            if (radius_buckets[i] > 0) {
+                freq.put(RadiusHistogram.lowerBound(i), radius_buckets[i]);
+            }
+        }
+        return freq;
+    }
+}
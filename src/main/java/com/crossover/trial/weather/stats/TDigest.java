@@ -0,0 +1,189 @@
+package com.crossover.trial.weather.stats;
+
+/**
+ * A merging t-digest of bounded size: weighted centroids sorted by value, neighbours merged while they stay below a
+ * weight limit. It uses the linear scale function, which gives all centroids the same weight limit, since the
+ * quartiles it is asked for are in the middle rather than in the tails. It keeps at most {@code capacity} centroids
+ * in arrays allocated once; adding and compressing never allocate. The mean and the total weight are kept exactly.
+ * <p>
+ * {@link #addSummary(double, int, int, int, long) Summaries} of mean, quartiles and count, as collectors report them
+ * in a {@link com.crossover.trial.weather.entity.DataPoint}, are added as five centroids: an eighth of the weight at
+ * the lower and upper quartile each for the tails, and a quarter at each quartile, so a single summary's quartiles
+ * come back unchanged.
+ * <p>
+ * Not thread safe.
+ */
+public final class TDigest {
+
+    /**
+     * centroids a summary adds at most, kept free below the capacity between additions
+     */
+    private static final int SUMMARY_CENTROIDS = 5;
+
+    private final int capacity;
+
+    private final double[] means;
+
+    private final double[] weights;
+
+    private int size;
+
+    private double totalWeight;
+
+    /**
+     * sum of the values, weighted
+     */
+    private double sum;
+
+    /**
+     * @param capacity maximum number of centroids, at least 8
+     */
+    public TDigest(int capacity) {
+        if (capacity < 8) {
+            throw new IllegalArgumentException("capacity must be at least 8, got " + capacity);
+        }
+        this.capacity = capacity;
+        means = new double[capacity];
+        weights = new double[capacity];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param value  the value
+     * @param weight its weight, e.g. the number of observations of the value
+     */
+    public void add(double value, double weight) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("weight must be positive, got " + weight);
+        }
+        insert(value, weight);
+        sum += value * weight;
+        compressIfFull();
+    }
+
+    /**
+     * Adds the observations described by a summary.
+     *
+     * @param mean   mean of the observations
+     * @param first  first quartile
+     * @param second median
+     * @param third  third quartile
+     * @param count  number of observations, a summary of none counts as one
+     */
+    public void addSummary(double mean, int first, int second, int third, long count) {
+        double weight = Math.max(1, count);
+        if (first == second && second == third) {
+            insert(second, weight);
+        } else {
+            insert(first, weight / 8);
+            insert(first, weight / 4);
+            insert(second, weight / 4);
+            insert(third, weight / 4);
+            insert(third, weight / 8);
+        }
+        sum += mean * weight;
+        compressIfFull();
+    }
+
+    /**
+     * @param q the quantile, from 0 to 1
+     * @return the estimated value at the quantile, NaN if nothing was added
+     */
+    public double quantile(double q) {
+        if (size == 0) {
+            return Double.NaN;
+        }
+        double target = Math.max(0, Math.min(1, q)) * totalWeight;
+        // interpolates between the centers of the centroids around the target
+        double before = 0;
+        double center = weights[0] / 2;
+        if (target <= center) {
+            return means[0];
+        }
+        for (int i = 1; i < size; i++) {
+            before += weights[i - 1];
+            double next = before + weights[i] / 2;
+            if (target <= next) {
+                return means[i - 1] + (means[i] - means[i - 1]) * (target - center) / (next - center);
+            }
+            center = next;
+        }
+        return means[size - 1];
+    }
+
+    /**
+     * @return the exact mean of everything added, NaN if nothing was
+     */
+    public double mean() {
+        return size == 0 ? Double.NaN : sum / totalWeight;
+    }
+
+    /**
+     * @return the total weight added
+     */
+    public double totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return number of centroids
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Empties the digest, keeping its arrays.
+     */
+    public void reset() {
+        size = 0;
+        totalWeight = 0;
+        sum = 0;
+    }
+
+    private void insert(double value, double weight) {
+        int i = size;
+        while (i > 0 && means[i - 1] > value) {
+            means[i] = means[i - 1];
+            weights[i] = weights[i - 1];
+            i--;
+        }
+        means[i] = value;
+        weights[i] = weight;
+        size++;
+        totalWeight += weight;
+    }
+
+    private void compressIfFull() {
+        if (size > capacity - SUMMARY_CENTROIDS) {
+            compress();
+        }
+    }
+
+    /**
+     * Merges neighbouring centroids in place as long as the merged weight stays within the limit. Any two
+     * neighbours left then weigh more than the limit together, so at most {@code capacity - SUMMARY_CENTROIDS}
+     * centroids remain and the next summary fits.
+     */
+    private void compress() {
+        double limit = totalWeight / ((capacity - SUMMARY_CENTROIDS - 1) / 2.0);
+        int merged = 0;
+        for (int i = 1; i < size; i++) {
+            double combined = weights[merged] + weights[i];
+            if (combined <= limit) {
+                means[merged] += (means[i] - means[merged]) * weights[i] / combined;
+                weights[merged] = combined;
+            } else {
+                merged++;
+                means[merged] = means[i];
+                weights[merged] = weights[i];
+            }
+        }
+        size = merged + 1;
+    }
+}
@@ -0,0 +1,152 @@
+package com.crossover.trial.weather.stats;
+
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summary of the weather of a set of airports: per {@link DataPointType} the number of airports reporting it and
+ * the mean, minimum, maximum and distance weighted mean of their means. Built in a single pass by
+ * {@link #add(AtmosphericInformation, double)}; partial aggregates of disjoint sets are combined with
+ * {@link #merge(WeatherAggregate)}.
+ * <p>
+ * The distance weighted mean uses inverse distance weighting, w = 1 / max(d, 1 km)^2, so close airports dominate.
+ */
+public class WeatherAggregate {
+
+    private static final int TYPES = DataPointType.values().length;
+
+    /**
+     * distances below this many km weigh as much as this distance
+     */
+    private static final double MIN_WEIGHT_DISTANCE = 1;
+
+    private long airports;
+
+    private final long[] count = new long[TYPES];
+
+    private final double[] sum = new double[TYPES];
+
+    private final double[] min = new double[TYPES];
+
+    private final double[] max = new double[TYPES];
+
+    private final double[] weightedSum = new double[TYPES];
+
+    private final double[] weights = new double[TYPES];
+
+    public WeatherAggregate() {
+        for (int i = 0; i < TYPES; i++) {
+            min[i] = Double.POSITIVE_INFINITY;
+            max[i] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Adds an airport's weather.
+     *
+     * @param ai         the airport's atmospheric information
+     * @param distanceKm distance of the airport from the center of the aggregated area
+     */
+    public void add(AtmosphericInformation ai, double distanceKm) {
+        boolean reported = false;
+        double d = Math.max(distanceKm, MIN_WEIGHT_DISTANCE);
+        double weight = 1 / (d * d);
+        for (DataPointType type : DataPointType.values()) {
+            DataPoint dp = ai.get(type);
+            if (dp == null) {
+                continue;
+            }
+            reported = true;
+            int i = type.ordinal();
+            double value = dp.getMean();
+            count[i]++;
+            sum[i] += value;
+            min[i] = Math.min(min[i], value);
+            max[i] = Math.max(max[i], value);
+            weightedSum[i] += weight * value;
+            weights[i] += weight;
+        }
+        if (reported) {
+            airports++;
+        }
+    }
+
+    /**
+     * Adds another aggregate of a disjoint set of airports.
+     *
+     * @return this aggregate
+     */
+    public WeatherAggregate merge(WeatherAggregate other) {
+        airports += other.airports;
+        for (int i = 0; i < TYPES; i++) {
+            count[i] += other.count[i];
+            sum[i] += other.sum[i];
+            min[i] = Math.min(min[i], other.min[i]);
+            max[i] = Math.max(max[i], other.max[i]);
+            weightedSum[i] += other.weightedSum[i];
+            weights[i] += other.weights[i];
+        }
+        return this;
+    }
+
+    /**
+     * @return number of airports with at least one data point
+     */
+    public long getAirports() {
+        return airports;
+    }
+
+    public long getCount(DataPointType type) {
+        return count[type.ordinal()];
+    }
+
+    /**
+     * @return the mean of the airports' means, NaN if no airport reported the type
+     */
+    public double getMean(DataPointType type) {
+        int i = type.ordinal();
+        return count[i] == 0 ? Double.NaN : sum[i] / count[i];
+    }
+
+    public double getMin(DataPointType type) {
+        return count[type.ordinal()] == 0 ? Double.NaN : min[type.ordinal()];
+    }
+
+    public double getMax(DataPointType type) {
+        return count[type.ordinal()] == 0 ? Double.NaN : max[type.ordinal()];
+    }
+
+    /**
+     * @return the inverse distance weighted mean, NaN if no airport reported the type
+     */
+    public double getWeightedMean(DataPointType type) {
+        int i = type.ordinal();
+        return count[i] == 0 ? Double.NaN : weightedSum[i] / weights[i];
+    }
+
+    /**
+     * @return the summary as json ready map, types without reports are left out
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("airports", airports);
+        for (DataPointType type : DataPointType.values()) {
+            if (getCount(type) == 0) {
+                continue;
+            }
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", getCount(type));
+            values.put("mean", getMean(type));
+            values.put("min", getMin(type));
+            values.put("max", getMax(type));
+            values.put("weightedMean", getWeightedMean(type));
+            summary.put(JsonCodec.fieldName(type), values);
+        }
+        return summary;
+    }
+}
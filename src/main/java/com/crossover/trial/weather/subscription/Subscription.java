@@ -0,0 +1,227 @@
+package com.crossover.trial.weather.subscription;
+
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A client's interest in weather changes within a circle, with its server-sent event stream.
+ * <p>
+ * Deltas are not queued but coalesced per (airport, type): while a slow client is still being written to, newer
+ * values replace pending ones, so a subscription never holds more than one pending delta per airport and type and
+ * the client always receives the latest value.
+ * <p>
+ * A failed write closes the subscription and removes it from its manager, and so does a write which takes longer
+ * than the manager's write timeout, see {@link #isStalled(long, long)}.
+ */
+public class Subscription {
+
+    private static final byte[] IATA = "{\"iata\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TYPE = ",\"type\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DATA_POINT = ",\"dataPoint\":".getBytes(StandardCharsets.US_ASCII);
+
+    private static final OutboundEvent HEARTBEAT = new OutboundEvent.Builder().comment("heartbeat").build();
+
+    private final long id;
+
+    private final double latitude;
+
+    private final double longitude;
+
+    private final double radius;
+
+    /**
+     * bit set of {@link DataPointType} ordinals the client is interested in
+     */
+    private final int types;
+
+    private final EventOutput output;
+
+    private final SubscriptionManager manager;
+
+    private final Map<String, Delta> pending = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * set when the client has to be written to even without deltas, to find out whether it is still there
+     */
+    private final AtomicBoolean heartbeat = new AtomicBoolean();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * {@link System#nanoTime() time} the write in progress started at, valid while writing is set
+     */
+    private volatile long writeStarted;
+
+    private volatile boolean writing;
+
+    Subscription(long id, double latitude, double longitude, double radius, int types, EventOutput output,
+                 SubscriptionManager manager) {
+        this.id = id;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+        this.types = types;
+        this.output = output;
+        this.manager = manager;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public boolean isClosed() {
+        return closed.get() || output.isClosed();
+    }
+
+    /**
+     * @param now     the current {@link System#nanoTime() time}
+     * @param timeout nanoseconds a write may take
+     * @return true if a write to the client has been blocked for longer than the timeout, i.e. its stream is backed
+     * up
+     */
+    boolean isStalled(long now, long timeout) {
+        return writing && now - writeStarted > timeout;
+    }
+
+    /**
+     * @return number of deltas replaced by a newer value before they were sent
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    boolean accepts(DataPointType type) {
+        return (types & (1 << type.ordinal())) != 0;
+    }
+
+    /**
+     * Queues a delta, replacing a pending one for the same airport and type, and makes sure a flush is scheduled.
+     */
+    void offer(String iata, DataPointType type, DataPoint dataPoint, Executor executor) {
+        if (pending.put(iata + '/' + type.ordinal(), new Delta(iata, type, dataPoint)) != null) {
+            coalesced.incrementAndGet();
+        }
+        schedule(executor);
+    }
+
+    /**
+     * Makes sure the client is written to soon, with a comment event if no delta is pending.
+     */
+    void heartbeat(Executor executor) {
+        heartbeat.set(true);
+        schedule(executor);
+    }
+
+    private void schedule(Executor executor) {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        do {
+            try {
+                boolean written = false;
+                Iterator<Delta> deltas = pending.values().iterator();
+                while (deltas.hasNext()) {
+                    Delta delta = deltas.next();
+                    deltas.remove();
+                    write(delta.toEvent());
+                    manager.delivered();
+                    written = true;
+                }
+                if (heartbeat.getAndSet(false) && !written) {
+                    write(HEARTBEAT);
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                return;
+            } finally {
+                writing = false;
+                scheduled.set(false);
+            }
+            // deltas offered after the iterator passed them need another round
+        } while ((!pending.isEmpty() || heartbeat.get()) && scheduled.compareAndSet(false, true));
+    }
+
+    private void write(OutboundEvent event) throws IOException {
+        writeStarted = System.nanoTime();
+        writing = true;
+        output.write(event);
+        writing = false;
+    }
+
+    /**
+     * Closes the client's stream and removes the subscription from its manager.
+     */
+    void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        pending.clear();
+        try {
+            output.close();
+        } catch (IOException e) {
+            // already gone
+        }
+        manager.unsubscribe(this);
+    }
+
+    private static final class Delta {
+        final String iata;
+        final DataPointType type;
+        final DataPoint dataPoint;
+        final long time = System.currentTimeMillis();
+
+        Delta(String iata, DataPointType type, DataPoint dataPoint) {
+            this.iata = iata;
+            this.type = type;
+            this.dataPoint = dataPoint;
+        }
+
+        OutboundEvent toEvent() {
+            JsonBuffer out = JsonCodec.buffer();
+            out.raw(IATA).string(iata);
+            out.raw(TYPE).string(JsonCodec.fieldName(type));
+            out.raw(DATA_POINT);
+            JsonCodec.write(out, dataPoint);
+            out.raw('}');
+            return new OutboundEvent.Builder()
+                    .name("weather")
+                    .id(Long.toString(time))
+                    .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                    .data(String.class, new String(out.array(), 0, out.length(), StandardCharsets.UTF_8))
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.crossover.trial.weather.subscription;
+
+import com.crossover.trial.weather.geo.GeoGrid;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Spatial index of subscription circles. A subscription is registered in every grid cell its circle's bounding box
+ * touches, so finding the subscriptions that may contain a point only reads the point's cell, independent of the
+ * total number of subscribers.
+ * <p>
+ * Cells are copy-on-write arrays: matching never locks, (un)subscribing copies the touched cells.
+ */
+public class SubscriptionIndex {
+
+    private static final Subscription[] EMPTY = new Subscription[0];
+
+    private final GeoGrid grid;
+
+    private final AtomicReferenceArray<Subscription[]> cells;
+
+    /**
+     * @param cellDegrees edge length of the grid cells
+     */
+    public SubscriptionIndex(double cellDegrees) {
+        grid = new GeoGrid(cellDegrees);
+        cells = new AtomicReferenceArray<>(grid.size());
+    }
+
+    public synchronized void add(Subscription subscription) {
+        grid.forEachCellInRadius(subscription.getLatitude(), subscription.getLongitude(), subscription.getRadius(),
+                cell -> {
+                    Subscription[] current = cells.get(cell);
+                    Subscription[] updated = current == null
+                            ? new Subscription[1] : Arrays.copyOf(current, current.length + 1);
+                    updated[updated.length - 1] = subscription;
+                    cells.set(cell, updated);
+                });
+    }
+
+    public synchronized void remove(Subscription subscription) {
+        grid.forEachCellInRadius(subscription.getLatitude(), subscription.getLongitude(), subscription.getRadius(),
+                cell -> {
+                    Subscription[] current = cells.get(cell);
+                    if (current == null) {
+                        return;
+                    }
+                    int idx = -1;
+                    for (int i = 0; i < current.length; i++) {
+                        if (current[i] == subscription) {
+                            idx = i;
+                            break;
+                        }
+                    }
+                    if (idx < 0) {
+                        return;
+                    }
+                    if (current.length == 1) {
+                        cells.set(cell, null);
+                        return;
+                    }
+                    Subscription[] updated = new Subscription[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, idx);
+                    System.arraycopy(current, idx + 1, updated, idx, current.length - idx - 1);
+                    cells.set(cell, updated);
+                });
+    }
+
+    /**
+     * @return the subscriptions whose bounding box contains the point, to be checked exactly by the caller
+     */
+    public Subscription[] candidates(double latitude, double longitude) {
+        Subscription[] candidates = cells.get(grid.cellOf(latitude, longitude));
+        return candidates == null ? EMPTY : candidates;
+    }
+}
@@ -0,0 +1,237 @@
+package com.crossover.trial.weather.subscription;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.GeoMath;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import com.crossover.trial.weather.service.WeatherChangeListener;
+import org.glassfish.jersey.media.sse.EventOutput;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Pushes weather changes to the clients subscribed to a circle around an airport.
+ * <p>
+ * Matching runs on the collecting thread and only touches the subscriptions registered in the updated airport's
+ * grid cell; writing to the clients runs on a small shared pool, so a slow client neither blocks collection nor
+ * other clients. Clients that went away are dropped on the next failed write; every client is sent a heartbeat
+ * comment periodically, so that also happens to clients of regions without changes. A client which does not take
+ * a write within the write timeout is dropped as well: its stream is closed, which fails the blocked write and
+ * frees the writer thread for the other clients.
+ */
+public class SubscriptionManager implements WeatherChangeListener {
+    public final static Logger LOGGER = Logger.getLogger(SubscriptionManager.class.getName());
+
+    /**
+     * grid cell size of the subscription index in degrees
+     */
+    private static final double CELL_DEGREES = 5;
+
+    private static volatile SubscriptionManager instance;
+
+    private final SubscriptionIndex index = new SubscriptionIndex(CELL_DEGREES);
+
+    private final Map<Long, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final AtomicLong stalled = new AtomicLong();
+
+    private final ExecutorService writers;
+
+    /**
+     * closes the streams of stalled clients, as closing may wait for the blocked write
+     */
+    private final ExecutorService closers;
+
+    private final long writeTimeoutNanos;
+
+    /**
+     * @param writerThreads   threads writing to the clients
+     * @param heartbeatMillis interval of the heartbeats sent to all clients, none if not positive
+     */
+    SubscriptionManager(int writerThreads, long heartbeatMillis) {
+        this(writerThreads, heartbeatMillis, 0);
+    }
+
+    /**
+     * @param writerThreads      threads writing to the clients
+     * @param heartbeatMillis    interval of the heartbeats sent to all clients, none if not positive
+     * @param writeTimeoutMillis time a write to a client may take before it is dropped, no limit if not positive
+     */
+    SubscriptionManager(int writerThreads, long heartbeatMillis, long writeTimeoutMillis) {
+        writers = Executors.newFixedThreadPool(writerThreads, r -> {
+            Thread thread = new Thread(r, "subscription-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        closers = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "subscription-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        if (heartbeatMillis <= 0 && writeTimeoutMillis <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "subscription-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (heartbeatMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatMillis, heartbeatMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+        if (writeTimeoutMillis > 0) {
+            // checked several times per timeout, so a stalled client is dropped soon after it
+            long period = Math.max(1, writeTimeoutMillis / 4);
+            scheduler.scheduleWithFixedDelay(this::dropStalled, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the manager, registered with {@link AirportWeatherService} on first use
+     */
+    public static SubscriptionManager getInstance() {
+        if (instance == null) {
+            synchronized (SubscriptionManager.class) {
+                if (instance == null) {
+                    SubscriptionManager manager = new SubscriptionManager(
+                            Integer.getInteger("weather.subscription.threads", 2),
+                            Long.getLong("weather.subscription.heartbeatMillis", 15000),
+                            Long.getLong("weather.subscription.writeTimeoutMillis", 10000));
+                    AirportWeatherService.addListener(manager);
+                    AirportWeatherService.registerPingSection("subscriptions", manager::status);
+                    instance = manager;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a subscription.
+     *
+     * @param center the airport in the center of the circle
+     * @param radius the radius in km
+     * @param types  the data point types to push, all if null or empty
+     * @param output the client's event stream
+     * @return the subscription
+     */
+    public Subscription subscribe(Airport center, double radius, Iterable<DataPointType> types, EventOutput output) {
+        int mask = 0;
+        if (types != null) {
+            for (DataPointType type : types) {
+                mask |= 1 << type.ordinal();
+            }
+        }
+        if (mask == 0) {
+            mask = (1 << DataPointType.values().length) - 1;
+        }
+        Subscription subscription = new Subscription(ids.incrementAndGet(), center.getLatitude(),
+                center.getLongitude(), radius, mask, output, this);
+        subscriptions.put(subscription.getId(), subscription);
+        index.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription) {
+        if (subscriptions.remove(subscription.getId()) != null) {
+            index.remove(subscription);
+            subscription.close();
+        }
+    }
+
+    /**
+     * Counts a delta written to a client.
+     */
+    void delivered() {
+        delivered.incrementAndGet();
+    }
+
+    /**
+     * Writes a heartbeat to every client, which drops the clients that went away.
+     */
+    void heartbeat() {
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.isClosed()) {
+                unsubscribe(subscription);
+            } else {
+                subscription.heartbeat(writers);
+            }
+        }
+    }
+
+    /**
+     * Drops the clients whose write has been blocked for longer than the write timeout. They are unsubscribed at
+     * once and their streams closed on the closer thread.
+     */
+    void dropStalled() {
+        long now = System.nanoTime();
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.isStalled(now, writeTimeoutNanos)
+                    && subscriptions.remove(subscription.getId()) != null) {
+                index.remove(subscription);
+                stalled.incrementAndGet();
+                LOGGER.info("dropping subscription " + subscription.getId() + ", a write took longer than "
+                        + TimeUnit.NANOSECONDS.toMillis(writeTimeoutNanos) + " ms");
+                closers.execute(subscription::close);
+            }
+        }
+    }
+
+    /**
+     * @return number of open subscriptions
+     */
+    public int size() {
+        return subscriptions.size();
+    }
+
+    public Map<String, Object> status() {
+        long coalesced = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            coalesced += subscription.getCoalesced();
+        }
+        Map<String, Object> status = new HashMap<>();
+        status.put("open", subscriptions.size());
+        status.put("delivered", delivered.get());
+        status.put("coalesced", coalesced);
+        status.put("stalled", stalled.get());
+        return status;
+    }
+
+    @Override
+    public void airportSaved(Airport airport) {
+    }
+
+    @Override
+    public void airportDeleted(Airport airport) {
+    }
+
+    @Override
+    public void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint) {
+        for (Subscription subscription : index.candidates(airport.getLatitude(), airport.getLongitude())) {
+            if (subscription.isClosed()) {
+                unsubscribe(subscription);
+                continue;
+            }
+            if (subscription.accepts(type) && GeoMath.distance(subscription.getLatitude(),
+                    subscription.getLongitude(), airport.getLatitude(), airport.getLongitude())
+                    <= subscription.getRadius()) {
+                subscription.offer(airport.getIata(), type, dataPoint, writers);
+            }
+        }
+    }
+}
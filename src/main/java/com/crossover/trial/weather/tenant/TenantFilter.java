@@ -0,0 +1,114 @@
+package com.crossover.trial.weather.tenant;
+
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.service.AirportWeatherService;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the {@link TenantQuotas} of the tenant whose token the {@code X-Tenant} header holds, or of the anonymous
+ * tenant without one.
+ * <p>
+ * Queries are admitted while the tenant's query bucket is not empty and are charged the number of airports the
+ * {@link AirportGridIndex} examined for them once they ran, including while a streamed response was written, and
+ * at least one. Data points posted to the collector are charged before they are applied, one per json data point
+ * and one per record of a binary batch. Refused requests get a 429 with a Retry-After header.
+ * <p>
+ * A check is a hash map lookup and a read or compare-and-set of the bucket, well below a microsecond.
+ */
+@Provider
+public class TenantFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    /**
+     * request header holding the client's tenant token, see {@link TenantQuotas#get(String)}
+     */
+    public static final String TENANT_HEADER = "X-Tenant";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * request property holding the tenant to charge for a query
+     */
+    private static final String QUERY_TENANT = TenantFilter.class.getName() + ".query";
+
+    private final TenantQuotas quotas;
+
+    public TenantFilter(TenantQuotas quotas) {
+        this.quotas = quotas;
+        AirportWeatherService.registerPingSection("tenants", quotas::status);
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        String path = request.getUriInfo().getPath();
+        boolean query = path.startsWith("query");
+        if (!query && !(path.startsWith("collect/weather") && "POST".equals(request.getMethod()))) {
+            return;
+        }
+        TenantQuotas.Tenant tenant = quotas.get(request.getHeaderString(TENANT_HEADER));
+        long now = System.nanoTime();
+        if (query) {
+            if (!tenant.admitQuery(now)) {
+                request.abortWith(tooManyRequests(tenant.queryRetryNanos(now)));
+                return;
+            }
+            AirportGridIndex.resetCandidatesExamined();
+            request.setProperty(QUERY_TENANT, tenant);
+        } else if (!tenant.admitIngest(dataPoints(request), now)) {
+            request.abortWith(tooManyRequests(tenant.ingestRetryNanos(now)));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        TenantQuotas.Tenant tenant = (TenantQuotas.Tenant) request.getProperty(QUERY_TENANT);
+        if (tenant != null) {
+            tenant.chargeQuery(Math.max(1, AirportGridIndex.candidatesExamined()), System.nanoTime());
+            AirportGridIndex.resetCandidatesExamined();
+        }
+    }
+
+    /**
+     * Charges the airports examined while writing a streamed response.
+     */
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        try {
+            context.proceed();
+        } finally {
+            TenantQuotas.Tenant tenant = (TenantQuotas.Tenant) context.getProperty(QUERY_TENANT);
+            long examined = AirportGridIndex.candidatesExamined();
+            if (tenant != null && examined > 0) {
+                tenant.chargeQuery(examined, System.nanoTime());
+                AirportGridIndex.resetCandidatesExamined();
+            }
+        }
+    }
+
+    /**
+     * @return the number of records of a binary batch by its length, otherwise one
+     */
+    private static long dataPoints(ContainerRequestContext request) {
+        String type = request.getHeaderString(HttpHeaders.CONTENT_TYPE);
+        if (type != null && type.startsWith(BinaryDataPointCodec.MEDIA_TYPE) && request.getLength() > 0) {
+            return Math.max(1, request.getLength() / BinaryDataPointCodec.RECORD_SIZE);
+        }
+        return 1;
+    }
+
+    private static Response tooManyRequests(long retryNanos) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(retryNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return Response.status(TOO_MANY_REQUESTS).header("Retry-After", String.valueOf(seconds)).build();
+    }
+}
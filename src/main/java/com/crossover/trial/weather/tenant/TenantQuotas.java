@@ -0,0 +1,262 @@
+package com.crossover.trial.weather.tenant;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The tenants of the server and their quotas.
+ * <p>
+ * Each tenant has two {@link TokenBucket token buckets}: one for queries, whose tokens are the airports a query
+ * examines, so one radius 5000 query costs as much as thousands of single airport ones, and one for ingestion,
+ * whose tokens are data points. Quotas default to {@code weather.tenant.query.rate}, {@code .query.burst},
+ * {@code .ingest.rate} and {@code .ingest.burst} and can be set per tenant, e.g.
+ * {@code -Dweather.tenant.dashboard.query.rate=50000}.
+ * <p>
+ * Clients identify themselves by a token, which {@code weather.tenant.tokens} maps to their tenant, e.g.
+ * {@code -Dweather.tenant.tokens=3f9a...=dashboard,77c1...=mobile}. Unknown tokens share the buckets of the
+ * {@link #OVERFLOW} tenant, so a client can not get a fresh burst by making up names. Collectors sending datagrams
+ * are charged by their source address instead; only the first {@code weather.tenant.max} tenants get their own
+ * buckets, any further addresses share those of the overflow tenant.
+ */
+public class TenantQuotas {
+
+    /**
+     * the tenant of requests which do not name one
+     */
+    public static final String ANONYMOUS = "anonymous";
+
+    /**
+     * the tenant sharing its quotas among unknown tokens and the addresses beyond the maximum number of tenants
+     */
+    public static final String OVERFLOW = "overflow";
+
+    /**
+     * name prefix of the tenants of datagram source addresses
+     */
+    public static final String ADDRESS_PREFIX = "udp:";
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+    /**
+     * tenant names by the tokens clients present
+     */
+    private final Map<String, String> tokens;
+
+    private final Limits queryLimits;
+
+    private final Limits ingestLimits;
+
+    private final int maxTenants;
+
+    /**
+     * @param queryLimits  default rate and burst of airports examined by queries
+     * @param ingestLimits default rate and burst of data points collected
+     * @param tokens       tenant names by the tokens clients present
+     * @param maxTenants   number of tenants with their own buckets
+     */
+    public TenantQuotas(Limits queryLimits, Limits ingestLimits, Map<String, String> tokens, int maxTenants) {
+        this.tokens = new HashMap<>(tokens);
+        this.queryLimits = queryLimits;
+        this.ingestLimits = ingestLimits;
+        this.maxTenants = maxTenants;
+    }
+
+    /**
+     * Reads the default quotas from the system properties, by default 2 million airports examined per second with
+     * a burst of 500000, i.e. about ten world wide radius queries at once, and 50000 data points per second with a
+     * burst of 100000.
+     */
+    public static TenantQuotas fromSystemProperties() {
+        return new TenantQuotas(
+                Limits.fromSystemProperties("weather.tenant.query", new Limits(2000000, 500000)),
+                Limits.fromSystemProperties("weather.tenant.ingest", new Limits(50000, 100000)),
+                parseTokens(System.getProperty("weather.tenant.tokens", "")),
+                Integer.getInteger("weather.tenant.max", 1024));
+    }
+
+    /**
+     * @param tokens comma separated {@code token=tenant} pairs
+     * @return tenant names by token
+     * @throws IllegalArgumentException if a pair lacks its token or tenant
+     */
+    static Map<String, String> parseTokens(String tokens) {
+        if (tokens.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> tenants = new HashMap<>();
+        for (String pair : tokens.split(",")) {
+            // tokens may end in base64 padding, tenant names hold no '='
+            int separator = pair.lastIndexOf('=');
+            String token = separator < 0 ? "" : pair.substring(0, separator).trim();
+            String tenant = separator < 0 ? "" : pair.substring(separator + 1).trim();
+            if (token.isEmpty() || tenant.isEmpty()) {
+                throw new IllegalArgumentException("expected token=tenant: " + pair);
+            }
+            tenants.put(token, tenant);
+        }
+        return tenants;
+    }
+
+    /**
+     * @param token the token presented by the client, null for none
+     * @return the tenant of the token, the anonymous tenant without one and the overflow tenant for unknown ones,
+     * created with its configured quotas on first use
+     */
+    public Tenant get(String token) {
+        String name = token == null || token.isEmpty() ? ANONYMOUS : tokens.getOrDefault(token, OVERFLOW);
+        Tenant tenant = tenants.get(name);
+        return tenant != null ? tenant : tenants.computeIfAbsent(name, this::create);
+    }
+
+    /**
+     * @param address the source address of a datagram
+     * @return the tenant of the address, or the overflow tenant once there are too many tenants
+     */
+    public Tenant forAddress(InetAddress address) {
+        String name = ADDRESS_PREFIX + address.getHostAddress();
+        Tenant tenant = tenants.get(name);
+        if (tenant != null) {
+            return tenant;
+        }
+        if (tenants.size() >= maxTenants) {
+            name = OVERFLOW;
+        }
+        return tenants.computeIfAbsent(name, this::create);
+    }
+
+    private Tenant create(String name) {
+        String prefix = "weather.tenant." + name;
+        return new Tenant(name,
+                Limits.fromSystemProperties(prefix + ".query", queryLimits).bucket(),
+                Limits.fromSystemProperties(prefix + ".ingest", ingestLimits).bucket());
+    }
+
+    /**
+     * @return admissions and rejections by tenant for the ping output
+     */
+    public Map<String, Object> status() {
+        long now = System.nanoTime();
+        Map<String, Object> status = new HashMap<>();
+        for (Tenant tenant : tenants.values()) {
+            Map<String, Object> counts = new HashMap<>();
+            counts.put("queries", tenant.queriesAdmitted.sum());
+            counts.put("queries_rejected", tenant.queriesRejected.sum());
+            counts.put("query_tokens", tenant.queries.available(now));
+            counts.put("ingested", tenant.ingestAdmitted.sum());
+            counts.put("ingest_rejected", tenant.ingestRejected.sum());
+            counts.put("ingest_tokens", tenant.ingest.available(now));
+            status.put(tenant.name, counts);
+        }
+        return status;
+    }
+
+    /**
+     * A rate and burst, e.g. the defaults of the query buckets.
+     */
+    public static final class Limits {
+        private final double rate;
+        private final long burst;
+
+        /**
+         * @param rate  tokens per second
+         * @param burst tokens a bucket holds
+         */
+        public Limits(double rate, long burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        /**
+         * @return the limits set by {@code <prefix>.rate} and {@code <prefix>.burst}, the defaults where not set
+         */
+        static Limits fromSystemProperties(String prefix, Limits defaults) {
+            String rate = System.getProperty(prefix + ".rate");
+            return new Limits(rate == null ? defaults.rate : Double.parseDouble(rate),
+                    Long.getLong(prefix + ".burst", defaults.burst));
+        }
+
+        TokenBucket bucket() {
+            return new TokenBucket(rate, burst);
+        }
+    }
+
+    /**
+     * A client of the server, with its buckets and counters.
+     */
+    public static final class Tenant {
+        private final String name;
+        private final TokenBucket queries;
+        private final TokenBucket ingest;
+        private final LongAdder queriesAdmitted = new LongAdder();
+        private final LongAdder queriesRejected = new LongAdder();
+        private final LongAdder ingestAdmitted = new LongAdder();
+        private final LongAdder ingestRejected = new LongAdder();
+
+        Tenant(String name, TokenBucket queries, TokenBucket ingest) {
+            this.name = name;
+            this.queries = queries;
+            this.ingest = ingest;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Admits a query while the tenant's query bucket is not empty. Its cost is only known once it ran and is
+         * {@link #chargeQuery(long, long) charged} afterwards, so an expensive query may overdraw the bucket and
+         * hold back the tenant's next queries until the debt is paid off.
+         *
+         * @param nanos the current {@link System#nanoTime() time}
+         * @return true if the query may run
+         */
+        public boolean admitQuery(long nanos) {
+            if (queries.hasCapacity(nanos)) {
+                queriesAdmitted.increment();
+                return true;
+            }
+            queriesRejected.increment();
+            return false;
+        }
+
+        /**
+         * @param examined airports the query examined
+         * @param nanos    the current {@link System#nanoTime() time}
+         */
+        public void chargeQuery(long examined, long nanos) {
+            queries.charge(examined, nanos);
+        }
+
+        /**
+         * @param dataPoints number of data points to collect
+         * @param nanos      the current {@link System#nanoTime() time}
+         * @return true if they may be collected, false and nothing taken if the ingestion quota is exhausted
+         */
+        public boolean admitIngest(long dataPoints, long nanos) {
+            if (ingest.tryAcquire(dataPoints, nanos)) {
+                ingestAdmitted.add(dataPoints);
+                return true;
+            }
+            ingestRejected.add(dataPoints);
+            return false;
+        }
+
+        /**
+         * @return nanoseconds until the tenant may query again
+         */
+        public long queryRetryNanos(long nanos) {
+            return queries.nanosUntilAvailable(nanos);
+        }
+
+        /**
+         * @return nanoseconds until the tenant may collect at least one data point again
+         */
+        public long ingestRetryNanos(long nanos) {
+            return ingest.nanosUntilAvailable(nanos);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.crossover.trial.weather.tenant;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, kept as the theoretical arrival time of the next token (generic cell rate algorithm).
+ * <p>
+ * The whole state is one long: the time at which the bucket would be full again if nothing else were taken. Taking
+ * tokens pushes it forward by their cost, time catches up with it at the refill rate, and a request is refused if it
+ * would push it more than a burst ahead of now. So a check is a read and a compare-and-set, with no refill thread
+ * and no lock.
+ */
+public class TokenBucket {
+
+    private final double nanosPerToken;
+
+    /**
+     * how far the arrival time may run ahead of now, i.e. the burst in nanoseconds
+     */
+    private final long tolerance;
+
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE / 2);
+
+    /**
+     * @param ratePerSecond tokens added per second
+     * @param burst         tokens the bucket holds
+     */
+    public TokenBucket(double ratePerSecond, long burst) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        this.tolerance = (long) (burst * nanosPerToken);
+    }
+
+    /**
+     * Takes tokens if the bucket holds enough of them.
+     *
+     * @param cost  tokens to take
+     * @param nanos the current {@link System#nanoTime() time}
+     * @return false, taking nothing, if the bucket holds fewer tokens
+     */
+    public boolean tryAcquire(long cost, long nanos) {
+        long increment = (long) (cost * nanosPerToken);
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, nanos) + increment;
+            if (next - nanos > tolerance) {
+                return false;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes tokens whether or not the bucket holds them, leaving it in debt if not. Used for costs only known once
+     * the work is done; the debt is paid off at the refill rate before the bucket admits anything again.
+     *
+     * @param cost  tokens to take
+     * @param nanos the current {@link System#nanoTime() time}
+     */
+    public void charge(long cost, long nanos) {
+        long increment = (long) (cost * nanosPerToken);
+        arrival.accumulateAndGet(nanos, (current, now) -> Math.max(current, now) + increment);
+    }
+
+    /**
+     * @param nanos the current {@link System#nanoTime() time}
+     * @return true if the bucket holds at least one token, without taking it
+     */
+    public boolean hasCapacity(long nanos) {
+        return Math.max(arrival.get(), nanos) + (long) nanosPerToken - nanos <= tolerance;
+    }
+
+    /**
+     * @param nanos the current {@link System#nanoTime() time}
+     * @return nanoseconds until the bucket holds one token, 0 if it does
+     */
+    public long nanosUntilAvailable(long nanos) {
+        return Math.max(0, arrival.get() + (long) nanosPerToken - tolerance - nanos);
+    }
+
+    /**
+     * @param nanos the current {@link System#nanoTime() time}
+     * @return tokens in the bucket, negative while in debt
+     */
+    public long available(long nanos) {
+        return (long) ((tolerance - Math.max(0, arrival.get() - nanos)) / nanosPerToken);
+    }
+}
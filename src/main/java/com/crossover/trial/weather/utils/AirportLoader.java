@@ -1,9 +1,14 @@
 package com.crossover.trial.weather.utils;
 
+import com.crossover.trial.weather.entity.Airport;
+
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.WebTarget;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A simple airports loader which reads a file from disk and sends entries to the webservice
@@ -28,22 +33,82 @@ public class AirportLoader {
         collect = client.target("http://localhost:9090/collect");
     }
 
+    /**
+     * Uploads the airports of a file in the airports.dat format, see {@link #parse(String)}.
+     */
     public void upload(InputStream airportDataStream) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(airportDataStream, StandardCharsets.UTF_8));
         String l = null;
         while ((l = reader.readLine()) != null) {
-            String[] data = l.split(",");
-            String iataCode = data[4].replace("\"", "");
-            collect
+            Airport airport = parse(l);
+            if (airport == null) {
+                continue;
+            }
+            WebTarget target = collect
                     .path("airports")
-                    .path(iataCode)
-                    .path(data[6])
-                    .path(data[7])
-                    .request()
-                    .post(null);
+                    .path(airport.getIata())
+                    .path(String.valueOf(airport.getLatitude()))
+                    .path(String.valueOf(airport.getLongitude()));
+            target = queryParam(target, "city", airport.getCity());
+            target = queryParam(target, "country", airport.getCountry());
+            target = queryParam(target, "icao", airport.getIcao());
+            target = queryParam(target, "altitude", airport.getAltitude() == 0 ? null : airport.getAltitude());
+            target = queryParam(target, "timezone", Double.isNaN(airport.getTimezone()) ? null : airport.getTimezone());
+            target.request().post(null);
         }
     }
 
+    /**
+     * Parses a line in the airports.dat format: id, name, city, country, IATA code, ICAO code, latitude, longitude,
+     * altitude in feet, hours offset from UTC and daylight saving time, with quoted strings and {@code \N} for
+     * unknown values.
+     *
+     * @return the airport, null if the line has no IATA code
+     * @throws NumberFormatException if a number is malformed
+     */
+    public static Airport parse(String line) {
+        String[] data = fields(line);
+        if (data.length < 10 || data[4] == null) {
+            return null;
+        }
+        return new Airport(data[4], data[5], data[2], data[3], Double.parseDouble(data[6]),
+                Double.parseDouble(data[7]), data[8] == null ? 0 : (int) Double.parseDouble(data[8]),
+                data[9] == null ? Double.NaN : Double.parseDouble(data[9]));
+    }
+
+    private static WebTarget queryParam(WebTarget target, String name, Object value) {
+        return value == null ? target : target.queryParam(name, value);
+    }
+
+    /**
+     * Splits a line at the commas outside quotes.
+     *
+     * @return the unquoted fields, null for empty and {@code \N} ones
+     */
+    static String[] fields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                fields.add(value(field));
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(value(field));
+        return fields.toArray(new String[fields.size()]);
+    }
+
+    private static String value(StringBuilder field) {
+        String value = field.toString().trim();
+        return value.isEmpty() || value.equals("\\N") ? null : value;
+    }
+
     public static void main(String args[]) throws IOException {
         File airportDataFile = new File(AirportLoader.class.getClassLoader().getResource(args[0]).getFile());
         if (!airportDataFile.exists() || airportDataFile.length() == 0) {
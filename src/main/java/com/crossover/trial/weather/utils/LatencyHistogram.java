@@ -0,0 +1,125 @@
+package com.crossover.trial.weather.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe histogram of latencies in microseconds with a relative error below 1%, up to about an hour.
+ * Values below 256 have a bucket each; larger values are bucketed by their highest bit and the 7 bits below it,
+ * so recording is a couple of bit operations and an atomic increment, and the memory use is fixed.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 8;
+
+    private static final int HALF = 1 << (SUB_BITS - 1);
+
+    /**
+     * values with more bits than this fall into the overflow bucket
+     */
+    private static final int MAX_BITS = 32;
+
+    /**
+     * the buckets of single values, those of each shift up to {@link #MAX_BITS} bits, and the overflow bucket
+     */
+    static final int BUCKETS = 2 * HALF + (MAX_BITS - SUB_BITS) * HALF + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param micros the latency in microseconds
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket holding the percentile in microseconds, 0 if empty
+     */
+    public long percentile(double percentile) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Adds the counts of another histogram.
+     */
+    public void add(LatencyHistogram other) {
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            counts.addAndGet(bucket, other.counts.get(bucket));
+        }
+        total.addAndGet(other.total.get());
+        max.accumulateAndGet(other.max.get(), Math::max);
+    }
+
+    /**
+     * Moves the counts into a new histogram and resets this one. A value recorded meanwhile is counted by one of the
+     * two, so draining at intervals loses none.
+     *
+     * @return the histogram of the values recorded since the last drain
+     */
+    public LatencyHistogram drain() {
+        LatencyHistogram drained = new LatencyHistogram();
+        long count = 0;
+        for (int bucket = 0; bucket < counts.length(); bucket++) {
+            long bucketCount = counts.getAndSet(bucket, 0);
+            drained.counts.set(bucket, bucketCount);
+            count += bucketCount;
+        }
+        // the total counts a value after its bucket, so it is taken from the drained buckets
+        drained.total.set(count);
+        total.addAndGet(-count);
+        drained.max.set(max.getAndSet(0));
+        return drained;
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        if (shift > MAX_BITS - SUB_BITS) {
+            return BUCKETS - 1;
+        }
+        return 2 * HALF + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < 2 * HALF) {
+            return bucket;
+        }
+        if (bucket == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int shift = (bucket - 2 * HALF) / HALF + 1;
+        long top = (bucket - 2 * HALF) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+}
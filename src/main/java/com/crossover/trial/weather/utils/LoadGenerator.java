@@ -0,0 +1,326 @@
+package com.crossover.trial.weather.utils;
+
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator and soak test for a running {@link com.crossover.trial.weather.WeatherServer}.
+ * <p>
+ * Requests are sent open loop at a constant arrival rate: request i is due at start + i / rate, whether or not
+ * earlier requests have completed, and its latency is measured from that due time. A stalled server therefore
+ * shows up as high latency of every request that should have been sent meanwhile, instead of as a pause in
+ * sending that hides it (coordinated omission).
+ * <p>
+ * Queried airports follow a Zipf distribution over the airports ranked by their share of queries in the server's
+ * ping, with the exponent fitted to those shares, and radii follow the ping's radius histogram. Latency
+ * percentiles of the last interval and of the whole run are printed every {@code load.report} seconds.
+ * <p>
+ * Configured by system properties:
+ * <ul>
+ * <li>load.url - server url, default http://localhost:9090</li>
+ * <li>load.rate - requests per second, default 200</li>
+ * <li>load.duration - run time in seconds, default 60; e.g. 43200 for a 12 hour soak</li>
+ * <li>load.collect - share of requests posting data points instead of querying, default 0.1</li>
+ * <li>load.zipf - Zipf exponent when the ping has no query statistics yet, default 1.0</li>
+ * <li>load.outstanding - requests in flight before further requests are counted as dropped, default 10000</li>
+ * <li>load.threads - client threads waiting for responses, default 64</li>
+ * <li>load.report - report interval in seconds, default 10</li>
+ * </ul>
+ */
+public class LoadGenerator {
+
+    private static final Gson gson = new Gson();
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private final WebTarget query;
+
+    private final WebTarget collect;
+
+    private final int rate;
+
+    private final double collectShare;
+
+    private final int maxOutstanding;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final LatencyHistogram total = new LatencyHistogram();
+
+    private final LatencyHistogram interval = new LatencyHistogram();
+
+    private String[] airports;
+
+    /**
+     * cumulative Zipf probabilities by airport rank
+     */
+    private double[] airportCdf;
+
+    private double[] radii;
+
+    /**
+     * cumulative probabilities of {@link #radii}
+     */
+    private double[] radiusCdf;
+
+    public LoadGenerator(String baseUri, int rate, double collectShare, int maxOutstanding, int threads) {
+        Client client = ClientBuilder.newBuilder()
+                .property("jersey.config.client.async.threadPoolSize", threads)
+                .property("jersey.config.client.connectTimeout", 5000)
+                .property("jersey.config.client.readTimeout", 30000)
+                .build();
+        this.query = client.target(baseUri).path("/query");
+        this.collect = client.target(baseUri).path("/collect");
+        this.rate = rate;
+        this.collectShare = collectShare;
+        this.maxOutstanding = maxOutstanding;
+    }
+
+    /**
+     * Derives the airport and radius distributions from the server's ping.
+     *
+     * @param defaultExponent Zipf exponent used when no airport has been queried yet
+     */
+    public void loadWorkload(double defaultExponent) {
+        JsonObject ping = new JsonParser().parse(query.path("/ping").request().get(String.class)).getAsJsonObject();
+
+        List<Map.Entry<String, JsonElement>> shares = new ArrayList<>(ping.getAsJsonObject("iata_freq").entrySet());
+        if (shares.isEmpty()) {
+            throw new IllegalStateException("the server knows no airports");
+        }
+        shares.sort((a, b) -> Double.compare(b.getValue().getAsDouble(), a.getValue().getAsDouble()));
+        airports = new String[shares.size()];
+        double[] observed = new double[shares.size()];
+        for (int i = 0; i < airports.length; i++) {
+            airports[i] = shares.get(i).getKey();
+            observed[i] = shares.get(i).getValue().getAsDouble();
+        }
+        double exponent = fitZipfExponent(observed, defaultExponent);
+        airportCdf = new double[airports.length];
+        double sum = 0;
+        for (int rank = 0; rank < airports.length; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            airportCdf[rank] = sum;
+        }
+        normalize(airportCdf);
+
+        JsonArray histogram = ping.getAsJsonArray("radius_freq");
+        List<Double> radiusValues = new ArrayList<>();
+        List<Double> radiusWeights = new ArrayList<>();
+        for (int radius = 0; radius < histogram.size(); radius++) {
+            int count = histogram.get(radius).getAsInt();
+            if (count > 0) {
+                radiusValues.add((double) radius);
+                radiusWeights.add((double) count);
+            }
+        }
+        if (radiusValues.isEmpty()) {
+            radiusValues.add(0.0);
+            radiusWeights.add(1.0);
+        }
+        radii = new double[radiusValues.size()];
+        radiusCdf = new double[radiusValues.size()];
+        sum = 0;
+        for (int i = 0; i < radii.length; i++) {
+            radii[i] = radiusValues.get(i);
+            sum += radiusWeights.get(i);
+            radiusCdf[i] = sum;
+        }
+        normalize(radiusCdf);
+        System.out.printf("workload: %d airports, zipf exponent %.2f, %d distinct radii%n",
+                airports.length, exponent, radii.length);
+    }
+
+    /**
+     * Least squares fit of log(share) against log(rank) over the airports queried at least once.
+     *
+     * @param shares query shares in descending order
+     * @return the Zipf exponent, the fallback with fewer than two queried airports
+     */
+    static double fitZipfExponent(double[] shares, double fallback) {
+        int n = 0;
+        double sx = 0;
+        double sy = 0;
+        double sxx = 0;
+        double sxy = 0;
+        for (int rank = 0; rank < shares.length && shares[rank] > 0; rank++) {
+            double x = Math.log(rank + 1);
+            double y = Math.log(shares[rank]);
+            n++;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        double denominator = n * sxx - sx * sx;
+        if (n < 2 || denominator == 0) {
+            return fallback;
+        }
+        return Math.max(0, -(n * sxy - sx * sy) / denominator);
+    }
+
+    /**
+     * Sends requests at the configured rate until the duration has passed, then waits for the outstanding ones.
+     *
+     * @param durationSeconds run time
+     * @param reportSeconds   interval between reports
+     */
+    public void run(long durationSeconds, long reportSeconds) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long nextReport = start + TimeUnit.SECONDS.toNanos(reportSeconds);
+        Random random = new Random();
+        for (long i = 0; ; i++) {
+            long due = start + i * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < due) {
+                LockSupport.parkNanos(due - now);
+            }
+            if (now >= nextReport) {
+                report(now - start);
+                nextReport += TimeUnit.SECONDS.toNanos(reportSeconds);
+            }
+            if (outstanding.get() >= maxOutstanding) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            outstanding.incrementAndGet();
+            if (random.nextDouble() < collectShare) {
+                sendCollect(due, random);
+            } else {
+                sendQuery(due, random);
+            }
+        }
+        while (outstanding.get() > 0 && System.nanoTime() < end + TimeUnit.SECONDS.toNanos(30)) {
+            Thread.sleep(100);
+        }
+        report(System.nanoTime() - start);
+    }
+
+    private void sendQuery(long due, Random random) {
+        String iata = airports[sample(airportCdf, random)];
+        double radius = radii[sample(radiusCdf, random)];
+        query.path("/weather/" + iata + "/" + radius).request().async().get(new Callback(due));
+    }
+
+    private void sendCollect(long due, Random random) {
+        String iata = airports[random.nextInt(airports.length)];
+        DataPointType type = DataPointType.values()[random.nextInt(DataPointType.values().length)];
+        collect.path("/weather/" + iata + "/" + type.name().toLowerCase()).request().async()
+                .post(Entity.entity(gson.toJson(validDataPoint(type, random)), "application/json"),
+                        new Callback(due));
+    }
+
+    private static DataPoint validDataPoint(DataPointType type, Random random) {
+        double low = type == DataPointType.PRESSURE ? 650 : type == DataPointType.TEMPERATURE ? -50 : 0;
+        double high = type == DataPointType.PRESSURE ? 800 : 100;
+        DataPoint dp = new DataPoint();
+        dp.setMean(low + random.nextDouble() * (high - low - 1));
+        dp.setFirst((int) low);
+        dp.setSecond((int) dp.getMean());
+        dp.setThird((int) high - 1);
+        dp.setCount(1 + random.nextInt(100));
+        return dp;
+    }
+
+    private static int sample(double[] cdf, Random random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    private static void normalize(double[] cdf) {
+        double sum = cdf[cdf.length - 1];
+        for (int i = 0; i < cdf.length; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        LatencyHistogram last = interval.drain();
+        total.add(last);
+        StringBuilder line = new StringBuilder(String.format("%6ds  outstanding %d  errors %d  dropped %d",
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), outstanding.get(), errors.get(), dropped.get()));
+        appendPercentiles(line, "interval", last);
+        appendPercentiles(line, "total", total);
+        System.out.println(line);
+    }
+
+    private static void appendPercentiles(StringBuilder line, String name, LatencyHistogram histogram) {
+        line.append(String.format("%n        %-8s n=%d", name, histogram.getCount()));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format("  p%s=%.1fms", percentile == (int) percentile
+                    ? String.valueOf((int) percentile) : String.valueOf(percentile),
+                    histogram.percentile(percentile) / 1000.0));
+        }
+        line.append(String.format("  max=%.1fms", histogram.getMax() / 1000.0));
+    }
+
+    /**
+     * Records the latency from the due time of the request, so time spent waiting for a client thread counts.
+     */
+    private final class Callback implements InvocationCallback<Response> {
+        private final long due;
+
+        Callback(long due) {
+            this.due = due;
+        }
+
+        @Override
+        public void completed(Response response) {
+            interval.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+            if (response.getStatus() >= 400) {
+                errors.incrementAndGet();
+            }
+            response.close();
+            outstanding.decrementAndGet();
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            interval.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due));
+            errors.incrementAndGet();
+            outstanding.decrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadGenerator generator = new LoadGenerator(
+                System.getProperty("load.url", "http://localhost:9090"),
+                Integer.getInteger("load.rate", 200),
+                Double.parseDouble(System.getProperty("load.collect", "0.1")),
+                Integer.getInteger("load.outstanding", 10000),
+                Integer.getInteger("load.threads", 64));
+        generator.loadWorkload(Double.parseDouble(System.getProperty("load.zipf", "1.0")));
+        generator.run(Long.getLong("load.duration", 60), Long.getLong("load.report", 10));
+        System.exit(generator.errors.get() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,106 @@
+package com.crossover.trial.weather.utils;
+
+import com.crossover.trial.weather.stats.CountMinSketch;
+import com.crossover.trial.weather.stats.StatsSnapshot;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Pulls the request statistics of several weather nodes and merges them into a cluster wide ping style report.
+ * Merging only touches the fixed size sketches, so its cost does not depend on the number of airports.
+ * <p>
+ * Usage: {@code StatsAggregator http://localhost:9091 http://localhost:9092 ...}. The airports reported in
+ * iata_freq are the union of the nodes' /collect/airports, or the comma separated -Dcodes=BOS,JFK list.
+ *
+ * @see com.crossover.trial.weather.stats.StatsSnapshot
+ */
+public class StatsAggregator {
+
+    private static final Gson gson = new Gson();
+
+    private final Client client = ClientBuilder.newClient();
+
+    /**
+     * Fetches and merges the snapshots of all nodes.
+     *
+     * @param baseUris node urls, e.g. http://localhost:9090
+     * @return the merged snapshot
+     */
+    public StatsSnapshot merge(List<String> baseUris) {
+        StatsSnapshot merged = null;
+        for (String baseUri : baseUris) {
+            String json = client.target(baseUri).path("/query/stats").request().get(String.class);
+            StatsSnapshot snapshot = gson.fromJson(json, StatsSnapshot.class);
+            if (merged == null) {
+                merged = snapshot;
+            } else {
+                merged.merge(snapshot);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the union of the airports known by the nodes, nodes without a collector endpoint are skipped
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> airports(List<String> baseUris) {
+        TreeSet<String> codes = new TreeSet<>();
+        for (String baseUri : baseUris) {
+            Response response = client.target(baseUri).path("/collect/airports").request().get();
+            if (response.getStatus() == Response.Status.OK.getStatusCode()) {
+                codes.addAll(gson.fromJson(response.readEntity(String.class), List.class));
+            }
+            response.close();
+        }
+        return new ArrayList<>(codes);
+    }
+
+    /**
+     * Renders the merged snapshot like the query ping.
+     *
+     * @param merged merged snapshot
+     * @param codes  airports to report frequencies for
+     * @return report with datasize, iata_freq and radius_freq
+     */
+    public static Map<String, Object> report(StatsSnapshot merged, List<String> codes) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("nodes", merged.nodes);
+        report.put("datasize", merged.datasize);
+        report.put("total", merged.total);
+
+        CountMinSketch sketch = merged.airportSketch();
+        Map<String, Double> freq = new LinkedHashMap<>();
+        for (String code : codes) {
+            freq.put(code, merged.total == 0 ? 0 : (double) sketch.estimate(code) / merged.total);
+        }
+        report.put("iata_freq", freq);
+        report.put("radius_freq", merged.radiusFrequency());
+        return report;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("usage: StatsAggregator <node url>...");
+            System.exit(1);
+        }
+        List<String> nodes = Arrays.asList(args);
+        StatsAggregator aggregator = new StatsAggregator();
+        StatsSnapshot merged = aggregator.merge(nodes);
+
+        String codes = System.getProperty("codes");
+        List<String> airports = codes == null ? aggregator.airports(nodes) : Arrays.asList(codes.split(","));
+        System.out.println(new GsonBuilder().setPrettyPrinting().create().toJson(report(merged, airports)));
+        System.exit(0);
+    }
+}
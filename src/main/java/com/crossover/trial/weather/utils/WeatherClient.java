@@ -1,17 +1,20 @@
 package com.crossover.trial.weather.utils;
 
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
 import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
 
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Response;
+import java.nio.ByteBuffer;
 
 /**
  * A reference implementation for the weather client. Consumers of the REST API can look at WeatherClient
  * to understand API semantics. This existing client populates the REST endpoint with dummy data useful for
- * testing.
+ * testing. For load and soak tests use {@link LoadGenerator}.
  *
  * @author code test administrator
  */
@@ -61,6 +64,16 @@ public class WeatherClient {
         Response post = path.request().post(Entity.entity(dp, "application/json"));
     }
 
+    public void populateBinary(String iataCode, DataPointType type, DataPoint... dataPoints) {
+        ByteBuffer records = ByteBuffer.allocate(dataPoints.length * BinaryDataPointCodec.RECORD_SIZE);
+        for (DataPoint dp : dataPoints) {
+            BinaryDataPointCodec.encode(records, iataCode, type, dp);
+        }
+        Response post = collect.path("/weather").request()
+                .post(Entity.entity(records.array(), BinaryDataPointCodec.MEDIA_TYPE));
+        System.out.println("collect.weather.binary: " + post.readEntity(String.class));
+    }
+
     public void exit() {
         try {
             collect.path("/exit").request().get();
@@ -73,6 +86,8 @@ public class WeatherClient {
         WeatherClient wc = new WeatherClient();
         wc.pingCollect();
         wc.populate("wind", 0, 10, 6, 4, 20);
+        wc.populateBinary("JFK", DataPointType.TEMPERATURE, new DataPoint.Builder()
+                .withFirst(10).withLast(30).withMean(22).withMedian(20).withCount(5).build());
 
         wc.query("BOS");
         wc.query("JFK");
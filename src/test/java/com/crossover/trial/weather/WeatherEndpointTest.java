@@ -1,21 +1,39 @@
 package com.crossover.trial.weather;
 
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
 import com.crossover.trial.weather.endpoint.WeatherCollectorEndpoint;
 import com.crossover.trial.weather.endpoint.WeatherCollectorEndpointImpl;
 import com.crossover.trial.weather.endpoint.WeatherQueryEndpoint;
 import com.crossover.trial.weather.endpoint.WeatherQueryEndpointImpl;
+import com.crossover.trial.weather.entity.Airport;
 import com.crossover.trial.weather.entity.AtmosphericInformation;
 import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.expiry.TtlPolicy;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.MapTile;
 import com.crossover.trial.weather.service.AirportWeatherService;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.ws.rs.core.Response;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class WeatherEndpointTest {
 
@@ -62,6 +80,91 @@ public class WeatherEndpointTest {
         assertEquals(3, ais.size());
     }
 
+    @Test
+    public void testIcaoCenterAndCountryFilter() throws Exception {
+        AirportWeatherService service = AirportWeatherService.getInstance();
+        AirportWeatherService.saveAirport(new Airport("LHR", "EGLL", "London", "United Kingdom", 51.4775, -0.461389,
+                83, 0));
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        _update.updateWeather("LGA", "wind", _gson.toJson(_dp));
+        _update.updateWeather("LHR", "wind", _gson.toJson(_dp));
+
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("KJFK", "200").getEntity();
+        assertEquals(2, ais.size());
+        assertEquals("LHR", AirportWeatherService.findAirportData("EGLL").getIata());
+
+        assertEquals(4, service.getWeather("JFK", "6000", DataPointType.ALL, 0).size());
+        // BOS has data from setUp
+        assertEquals(3, service.getWeather("JFK", "6000", DataPointType.ALL, 0, "United States").size());
+        List<AtmosphericInformation> british = service.getWeather("JFK", "6000", DataPointType.ALL, 0,
+                "United Kingdom");
+        assertEquals(1, british.size());
+        assertSame(AirportWeatherService.findAtmosphericInformation("LHR"), british.get(0));
+        assertEquals(0, service.getWeather("JFK", "6000", DataPointType.ALL, 0, "France").size());
+        assertEquals(0, service.getWeather("JFK", "0", DataPointType.ALL, 0, "United Kingdom").size());
+    }
+
+    @Test
+    public void testLoadAirports() throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                getClass().getResourceAsStream("/airports.dat"), StandardCharsets.UTF_8))) {
+            assertEquals(10, AirportWeatherService.loadAirports(reader));
+        }
+        assertEquals(10, AirportWeatherService.registry.size());
+        Airport heathrow = AirportWeatherService.findAirportData("EGLL");
+        assertEquals("LHR", heathrow.getIata());
+        assertEquals("London", heathrow.getCity());
+        assertEquals(83, heathrow.getAltitude());
+        assertEquals(5, AirportWeatherService.registry.findByCountry("United Kingdom").size());
+    }
+
+    @Test
+    public void testChangedSince() throws Exception {
+        AirportWeatherService service = AirportWeatherService.getInstance();
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        _update.updateWeather("EWR", "wind", _gson.toJson(_dp));
+        long sequence = AtmosphericInformation.currentSequence();
+        assertEquals(0, service.getWeather("JFK", "200", DataPointType.ALL, sequence).size());
+
+        _update.updateWeather("LGA", "wind", _gson.toJson(_dp));
+        List<AtmosphericInformation> changed = service.getWeather("JFK", "200", DataPointType.ALL, sequence);
+        assertEquals(1, changed.size());
+        assertTrue(changed.get(0).version() > sequence);
+    }
+
+    @Test
+    public void testExpiredDataPointsAreNotServed() throws Exception {
+        AirportWeatherService service = AirportWeatherService.getInstance();
+        TtlPolicy policy = AirportWeatherService.expirySweeper.getPolicy();
+        long windTtl = policy.getTtl(DataPointType.WIND);
+        DataPoint cloudCover = new DataPoint.Builder()
+                .withCount(4).withFirst(10).withMedian(60).withLast(100).withMean(50).build();
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        _update.updateWeather("JFK", "cloudcover", _gson.toJson(cloudCover));
+        policy.setTtl(DataPointType.WIND, 1);
+        try {
+            Thread.sleep(10);
+            Airport jfk = AirportWeatherService.findAirportData("JFK");
+            // BOS has nothing but wind, so it is left out
+            List<AtmosphericInformation> near = new ArrayList<>();
+            service.forEachNear(jfk.getLatitude(), jfk.getLongitude(), 400, entry -> near.add(entry.getWeather()));
+            assertEquals(1, near.size());
+            assertNull(near.get(0).getWind());
+            assertEquals(cloudCover, near.get(0).getCloudCover());
+
+            List<AtmosphericInformation> boxed = new ArrayList<>();
+            service.forEachInBox(-90, -180, 90, 180, entry -> boxed.add(entry.getWeather()));
+            assertEquals(1, boxed.size());
+            assertNull(boxed.get(0).getWind());
+
+            for (AirportGridIndex.Neighbor neighbor : service.findNearest(jfk, 10, 400, 0)) {
+                assertNull(neighbor.getWeather().getWind());
+            }
+        } finally {
+            policy.setTtl(DataPointType.WIND, windTtl);
+        }
+    }
+
     @Test
     public void testUpdate() throws Exception {
 
@@ -83,4 +186,87 @@ public class WeatherEndpointTest {
         assertEquals(ais.get(0).getCloudCover(), cloudCoverDp);
     }
 
+    @Test
+    public void testBinaryUpdate() throws Exception {
+        ByteBuffer records = ByteBuffer.allocate(3 * BinaryDataPointCodec.RECORD_SIZE + 2);
+        BinaryDataPointCodec.encode(records, "JFK", DataPointType.WIND, _dp);
+        BinaryDataPointCodec.encode(records, "XYZ", DataPointType.WIND, _dp);
+        BinaryDataPointCodec.encode(records, "EWR", DataPointType.WIND, _dp);
+
+        // the whole batch is answered with its counts, the two trailing bytes are a rejected record
+        Response response = _update.updateWeatherBinary(records.array());
+        assertEquals(200, response.getStatus());
+        Map<?, ?> counts = (Map<?, ?>) response.getEntity();
+        assertEquals(2, counts.get("accepted"));
+        assertEquals(2, counts.get("rejected"));
+        assertEquals(_dp, AirportWeatherService.findAtmosphericInformation("EWR").getWind());
+
+        response = _update.updateWeatherBinary(new byte[0]);
+        assertEquals(200, response.getStatus());
+        assertEquals(0, ((Map<?, ?>) response.getEntity()).get("accepted"));
+    }
+
+    @Test
+    public void testTiles() throws Exception {
+        Airport bos = AirportWeatherService.findAirportData("BOS");
+        MapTile detail = MapTile.containing(7, bos.getLatitude(), bos.getLongitude());
+        JsonObject tile = tile(detail.getZ(), detail.getX(), detail.getY());
+        assertEquals(1, tile.get("airports").getAsJsonArray().size());
+        JsonObject entry = tile.get("airports").getAsJsonArray().get(0).getAsJsonObject();
+        assertEquals("BOS", entry.get("airport").getAsJsonObject().get("iata").getAsString());
+
+        JsonObject world = tile(0, 0, 0);
+        assertEquals(3, world.get("cellZoom").getAsInt());
+        assertEquals(1, world.get("cells").getAsJsonArray().size());
+        JsonObject cell = world.get("cells").getAsJsonArray().get(0).getAsJsonObject();
+        assertEquals(1, cell.get("summary").getAsJsonObject().get("airports").getAsInt());
+
+        // a new report evicts the tiles holding the airport at every zoom, JFK is in the zoom 3 row south of BOS
+        _update.updateWeather("JFK", "wind", _gson.toJson(_dp));
+        world = tile(0, 0, 0);
+        assertEquals(2, world.get("cells").getAsJsonArray().size());
+        cell = world.get("cells").getAsJsonArray().get(1).getAsJsonObject();
+        assertEquals(3, cell.get("y").getAsInt());
+        assertEquals(1, cell.get("summary").getAsJsonObject().get("airports").getAsInt());
+        assertEquals(1, tile(detail.getZ(), detail.getX(), detail.getY()).get("airports").getAsJsonArray().size());
+
+        assertEquals(400, _query.tile(1, 2, 0).getStatus());
+        assertEquals(400, _query.tile(-1, 0, 0).getStatus());
+    }
+
+    private JsonObject tile(int z, int x, int y) {
+        byte[] json = (byte[]) _query.tile(z, x, y).getEntity();
+        return new JsonParser().parse(new String(json, StandardCharsets.UTF_8)).getAsJsonObject();
+    }
+
+    @Test
+    public void testMergeDataPointsOfSeveralCollectors() throws Exception {
+        AirportWeatherService.setMergeDataPoints(true);
+        try {
+            // a second station reporting higher values than the one of setUp, which has the quartiles 10, 22
+            // and 30 and the mean 20 as the builder swaps mean and median
+            DataPoint windDp = new DataPoint();
+            windDp.setFirst(30);
+            windDp.setSecond(40);
+            windDp.setThird(50);
+            windDp.setMean(42);
+            windDp.setCount(10);
+            _update.updateWeather("BOS", "wind", _gson.toJson(windDp));
+        } finally {
+            AirportWeatherService.setMergeDataPoints(false);
+        }
+        List<AtmosphericInformation> ais = (List<AtmosphericInformation>) _query.weather("BOS", "0").getEntity();
+        DataPoint merged = ais.get(0).getWind();
+        assertEquals(20, merged.getCount());
+        assertEquals(31, merged.getMean(), 1e-9);
+        assertEquals(22, merged.getFirst());
+        assertEquals(30, merged.getSecond());
+        assertEquals(40, merged.getThird());
+
+        // without merging the last data point wins again
+        _update.updateWeather("BOS", "wind", _gson.toJson(_dp));
+        ais = (List<AtmosphericInformation>) _query.weather("BOS", "0").getEntity();
+        assertEquals(_dp, ais.get(0).getWind());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,132 @@
+package com.crossover.trial.weather.admission;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class QueryAdmissionTest {
+
+    @Test
+    public void testCostModelLearnsFromExaminedCandidates() throws Exception {
+        AirportGridIndex index = new AirportGridIndex(1);
+        // 10 airports in each of the cells of an 8 degree block
+        for (int lat = 0; lat < 8; lat++) {
+            for (int lon = 0; lon < 8; lon++) {
+                for (int i = 0; i < 10; i++) {
+                    index.add(new Airport(lat + "/" + lon + "/" + i, lat + 0.5, lon + 0.5),
+                            new AtmosphericInformation());
+                }
+            }
+        }
+        QueryCostModel model = new QueryCostModel(index);
+        // the small radius only touches one cell but is estimated by the blocks it touches
+        long estimate = index.estimateCandidates(3.5, 3.5, 10);
+        assertTrue(estimate >= 100);
+        assertEquals(estimate, model.predict(3.5, 3.5, 10));
+        for (int i = 0; i < 200; i++) {
+            AirportGridIndex.resetCandidatesExamined();
+            index.forEachInRadius(3.5, 3.5, 10, entry -> {
+            });
+            model.observe(3.5, 3.5, 10, AirportGridIndex.candidatesExamined(), 1000);
+        }
+        long predicted = model.predict(3.5, 3.5, 10);
+        assertTrue(String.valueOf(predicted), predicted >= 10 && predicted < 15);
+        // other radius classes learn separately
+        assertEquals(index.estimateCandidates(3.5, 3.5, 300), model.predict(3.5, 3.5, 300));
+        assertEquals(1000, model.predictNanos(10));
+    }
+
+    @Test
+    public void testPolicies() throws Exception {
+        QueryAdmission reject = new QueryAdmission(100, QueryAdmission.Policy.REJECT, 1, 1);
+        assertEquals("cheap", reject.execute(100, () -> "cheap"));
+        try {
+            reject.execute(101, () -> "expensive");
+            fail("expected the expensive query to be refused");
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, reject.sampleStride(1000));
+
+        QueryAdmission sample = new QueryAdmission(100, QueryAdmission.Policy.SAMPLE, 1, 1);
+        assertEquals("expensive", sample.execute(1000, () -> "expensive"));
+        assertEquals(1, sample.sampleStride(100));
+        assertEquals(3, sample.sampleStride(201));
+        List<Integer> list = Arrays.asList(0, 1, 2, 3, 4, 5, 6);
+        assertEquals(Arrays.asList(0, 3, 6), QueryAdmission.sample(list, 3));
+        assertSame(list, QueryAdmission.sample(list, 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeferredQueriesQueueOnTheLowPriorityThread() throws Exception {
+        QueryAdmission admission = new QueryAdmission(100, QueryAdmission.Policy.DEFER, 1, 1);
+        assertSame(Thread.currentThread(), admission.execute(1, Thread::currentThread));
+
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> deferredOn = new AtomicReference<>();
+        Thread first = new Thread(() -> admission.execute(1000, () -> {
+            deferredOn.set(Thread.currentThread());
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        first.start();
+        assertTrue(running.await(10, TimeUnit.SECONDS));
+        assertNotSame(first, deferredOn.get());
+        assertEquals(Thread.MIN_PRIORITY, deferredOn.get().getPriority());
+
+        // one query waits in the queue, the next one is refused
+        Thread second = new Thread(() -> admission.execute(1000, () -> null));
+        second.start();
+        while (!((Map<String, Object>) admission.status().get("expensive")).get("deferred").equals(2L)) {
+            Thread.sleep(1);
+        }
+        try {
+            admission.execute(1000, () -> null);
+            fail("expected the full queue to refuse the query");
+        } catch (RejectedExecutionException expected) {
+        }
+        // cheap queries are not held up
+        assertEquals("cheap", admission.execute(1, () -> "cheap"));
+        release.countDown();
+        first.join();
+        second.join();
+
+        Map<String, Object> expensive = (Map<String, Object>) admission.status().get("expensive");
+        assertEquals(2L, expensive.get("executed"));
+        assertEquals(2L, expensive.get("deferred"));
+        assertEquals(1L, expensive.get("rejected"));
+        assertEquals(0, expensive.get("queued"));
+        assertFalse(((Map<String, Object>) admission.status().get("cheap")).get("executed").equals(0L));
+    }
+
+    @Test
+    public void testDeferredQueriesHoldAQuarterOfTheWorkers() throws Exception {
+        assertEquals(7, QueryAdmission.queueLength(32, 1, 16));
+        assertEquals(16, QueryAdmission.queueLength(200, 1, 16));
+        assertEquals(2, QueryAdmission.queueLength(16, 2, 16));
+        // a queue of one however few the workers, or the deferred policy refused every expensive query
+        assertEquals(1, QueryAdmission.queueLength(4, 1, 16));
+    }
+}
@@ -0,0 +1,117 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.codec.CompressionInterceptor;
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Server side latency and bytes on the wire of a radius query response around New York over 5000 airports in
+ * North America reporting all six data point types, sent as it is and compressed like the
+ * {@link CompressionInterceptor} does. The bytes on the wire are printed at the end of each run. Run with
+ * {@code mvn -Pbenchmark test -Dbenchmark.filter=Compression}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int AIRPORTS = 5000;
+
+    @Param({"50", "500", "2000"})
+    public double radius;
+
+    @Param({"identity", "gzip", "deflate"})
+    public String encoding;
+
+    private final AirportGridIndex index = new AirportGridIndex(1);
+
+    private final CountingSink sink = new CountingSink();
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        for (int i = 0; i < AIRPORTS; i++) {
+            Airport airport = new Airport(String.format("%04d", i), 25 + random.nextDouble() * 25,
+                    -125 + random.nextDouble() * 60);
+            AtmosphericInformation ai = new AtmosphericInformation();
+            for (DataPointType type : DataPointType.values()) {
+                DataPoint dp = new DataPoint();
+                dp.setMean(random.nextInt(5000) / 100.0);
+                dp.setFirst(random.nextInt(30));
+                dp.setSecond(random.nextInt(40));
+                dp.setThird(random.nextInt(50));
+                dp.setCount(random.nextInt(1000));
+                ai.updateInfo(type, dp);
+            }
+            index.add(airport, ai);
+        }
+    }
+
+    @Benchmark
+    public long respond() throws IOException {
+        List<AtmosphericInformation> weather = index.reduceInRadius(40.64, -73.78, radius,
+                ArrayList<AtmosphericInformation>::new, (list, entry, distance) -> list.add(entry.getWeather()),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeAll(out, weather);
+        sink.count = 0;
+        if ("identity".equals(encoding)) {
+            out.writeTo(sink);
+        } else {
+            DeflaterOutputStream compressed = CompressionInterceptor.compress(encoding, sink);
+            out.writeTo(compressed);
+            compressed.close();
+        }
+        return sink.count;
+    }
+
+    @TearDown
+    public void reportSize() throws IOException {
+        System.out.printf("%nradius=%.0f km, %s: %d bytes on the wire%n", radius, encoding, respond());
+    }
+
+    private static final class CountingSink extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.ingest.BinaryIngestor;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collector ingestion throughput, json ({@code updateWeather}) against the binary record format. The decode
+ * benchmarks isolate parsing, the ingest benchmarks include validation and storage. Run with
+ * {@code mvn -Pbenchmark test -Dbenchmark.filter=Ingestion}, add {@code -prof gc} to the filter to see allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int RECORDS = 1000;
+
+    private static final String[] AIRPORTS = {"BOS", "EWR", "JFK", "LGA", "MMU"};
+
+    private static final DataPointType[] TYPES = {DataPointType.WIND, DataPointType.TEMPERATURE,
+            DataPointType.HUMIDITY, DataPointType.CLOUDCOVER, DataPointType.PRECIPITATION};
+
+    private final Gson gson = new Gson();
+
+    private final AirportWeatherService service = AirportWeatherService.getInstance();
+
+    private final String[] json = new String[RECORDS];
+
+    private final ByteBuffer binary = ByteBuffer.allocate(RECORDS * BinaryDataPointCodec.RECORD_SIZE);
+
+    private final byte[] iata = new byte[3];
+
+    private final DataPoint scratch = new DataPoint();
+
+    @Setup
+    public void setUp() {
+        AirportWeatherService.init();
+        for (int i = 0; i < RECORDS; i++) {
+            DataPoint dp = new DataPoint();
+            dp.setMean(i % 50);
+            dp.setFirst(i % 10);
+            dp.setSecond(i % 30);
+            dp.setThird(i % 40);
+            dp.setCount(i);
+            json[i] = gson.toJson(dp);
+            BinaryDataPointCodec.encode(binary, AIRPORTS[i % AIRPORTS.length], TYPES[i % TYPES.length], dp);
+        }
+        binary.flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void jsonDecode(Blackhole bh) {
+        for (String record : json) {
+            bh.consume(gson.fromJson(record, DataPoint.class));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void binaryDecode(Blackhole bh) {
+        binary.rewind();
+        while (binary.hasRemaining()) {
+            bh.consume(BinaryDataPointCodec.decode(binary, iata, scratch));
+        }
+        bh.consume(scratch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public void jsonIngest() throws Exception {
+        for (int i = 0; i < RECORDS; i++) {
+            service.addDataPoint(AIRPORTS[i % AIRPORTS.length], TYPES[i % TYPES.length].name(),
+                    gson.fromJson(json[i], DataPoint.class));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORDS)
+    public int binaryIngest() {
+        binary.rewind();
+        BinaryIngestor ingestor = BinaryIngestor.forCurrentThread();
+        ingestor.ingest(binary);
+        return ingestor.getAccepted();
+    }
+}
@@ -0,0 +1,97 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per message cost of the reflection based json mappers against {@link JsonCodec}: parsing a posted data point and
+ * writing a radius query response of {@link #airports} entries. Run with
+ * {@code mvn -Pbenchmark test -Dbenchmark.filter="JsonCodec -prof gc"} to get the allocation rate per operation
+ * (gc.alloc.rate.norm) next to the time per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"1", "100"})
+    public int airports;
+
+    private final Gson gson = new Gson();
+
+    private final ObjectMapper jackson = new ObjectMapper();
+
+    private String dataPointJson;
+
+    private List<AtmosphericInformation> response;
+
+    @Setup
+    public void setUp() throws Exception {
+        DataPoint dp = new DataPoint();
+        dp.setMean(22.5);
+        dp.setFirst(10);
+        dp.setSecond(20);
+        dp.setThird(30);
+        dp.setCount(10);
+        dataPointJson = gson.toJson(dp);
+
+        response = new ArrayList<>();
+        for (int i = 0; i < airports; i++) {
+            AtmosphericInformation ai = new AtmosphericInformation();
+            ai.updateInfo(DataPointType.WIND, dp);
+            ai.updateInfo(DataPointType.TEMPERATURE, dp);
+            ai.updateInfo(DataPointType.PRESSURE, dp);
+            response.add(ai);
+        }
+    }
+
+    @Benchmark
+    public DataPoint parseGson() {
+        return gson.fromJson(dataPointJson, DataPoint.class);
+    }
+
+    @Benchmark
+    public DataPoint parseCodec() {
+        return JsonCodec.parseDataPoint(dataPointJson);
+    }
+
+    @Benchmark
+    public byte[] writeJackson() throws Exception {
+        return jackson.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public String writeGson() {
+        return gson.toJson(response);
+    }
+
+    @Benchmark
+    public int writeCodec() {
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeAll(out, response);
+        return out.length();
+    }
+}
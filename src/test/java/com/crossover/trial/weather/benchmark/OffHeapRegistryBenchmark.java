@@ -0,0 +1,80 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.service.AirportRegistry;
+import com.crossover.trial.weather.service.OffHeapAirportRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap use and full collection pause with 500000 airports in the on heap and the off heap registry, each also in
+ * the spatial index as the service keeps them. The benchmark times a full collection of the live set; the heap used
+ * after it is printed at the end of each run. Run with {@code mvn -Pbenchmark test -Dbenchmark.filter=OffHeap}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class OffHeapRegistryBenchmark {
+
+    private static final int AIRPORTS = 500000;
+
+    @Param({"heap", "offheap"})
+    public String mode;
+
+    private AirportRegistry registry;
+
+    private AirportGridIndex index;
+
+    @Setup
+    public void setUp() {
+        registry = "offheap".equals(mode) ? new OffHeapAirportRegistry(null) : new AirportRegistry();
+        index = new AirportGridIndex(1);
+        Random random = new Random(42);
+        for (int i = 0; i < AIRPORTS; i++) {
+            AtmosphericInformation weather = new AtmosphericInformation();
+            AirportRegistry.Record record = registry.add(new Airport(code(i), random.nextDouble() * 140 - 70,
+                    random.nextDouble() * 360 - 180), weather);
+            index.add(record.getAirport(), weather);
+        }
+    }
+
+    /**
+     * @return a distinct code of four to six letters and digits
+     */
+    static String code(int i) {
+        return "X" + Integer.toString(i, 36).toUpperCase();
+    }
+
+    @Benchmark
+    public int fullGc() {
+        System.gc();
+        return registry.size() + index.size();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.gc();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.printf("%n%s: %d airports, %.1f MB heap used, %s%n", mode, registry.size(),
+                used / 1048576.0, registry.status());
+    }
+}
@@ -0,0 +1,88 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.codec.JsonBuffer;
+import com.crossover.trial.weather.codec.JsonCodec;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost and size of a radius query response of 100 airports with all six data point types, written in full and
+ * projected with {@code ?types=}. The response size of each projection relative to the full response is printed at
+ * the end of each run. Run with {@code mvn -Pbenchmark test -Dbenchmark.filter=Projection}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProjectionBenchmark {
+
+    private static final int AIRPORTS = 100;
+
+    /**
+     * comma separated types, or "all"
+     */
+    @Param({"all", "wind", "wind,pressure"})
+    public String types;
+
+    private int mask;
+
+    private List<AtmosphericInformation> response;
+
+    @Setup
+    public void setUp() throws Exception {
+        mask = 0;
+        for (String type : types.split(",")) {
+            mask |= "all".equals(type) ? DataPointType.ALL : DataPointType.valueOf(type.toUpperCase()).mask();
+        }
+        response = new ArrayList<>();
+        for (int i = 0; i < AIRPORTS; i++) {
+            AtmosphericInformation ai = new AtmosphericInformation();
+            for (DataPointType type : DataPointType.values()) {
+                DataPoint dp = new DataPoint();
+                dp.setMean(700 + i + type.ordinal() / 8.0);
+                dp.setFirst(650 + i);
+                dp.setSecond(700 + i);
+                dp.setThird(750 + i);
+                dp.setCount(100 + i);
+                ai.updateInfo(type, dp);
+            }
+            response.add(ai);
+        }
+    }
+
+    @Benchmark
+    public int write() {
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeAll(out, response, mask);
+        return out.length();
+    }
+
+    @TearDown
+    public void reportSize() {
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeAll(out, response, DataPointType.ALL);
+        int all = out.length();
+        int projected = write();
+        System.out.printf("%ntypes=%s: %d bytes per response, %d bytes with all types, %.1f%% saved%n",
+                types, projected, all, 100.0 * (all - projected) / all);
+    }
+}
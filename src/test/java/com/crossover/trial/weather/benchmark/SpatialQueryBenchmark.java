@@ -0,0 +1,142 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.codec.AirportWeatherStreamingOutput;
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.GeoMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-radius, bounding box and corridor queries on {@link AirportGridIndex} over {@link #airports} airports spread
+ * over North America and Europe. A "narrow" query covers a metropolitan area (50 km, 1x1 degree, 20 km wide
+ * corridor), a "wide" one a continent (1500 km, 30x30 degrees, 300 km wide corridor). The linear scan is what
+ * radius queries did before the index; the streamed variants include json encoding of the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpatialQueryBenchmark {
+
+    @Param({"50000"})
+    public int airports;
+
+    @Param({"narrow", "wide"})
+    public String extent;
+
+    private final List<Airport> list = new ArrayList<>();
+
+    private final AirportGridIndex index = new AirportGridIndex(1);
+
+    private final OutputStream sink = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    private double radius;
+
+    private double boxSize;
+
+    private double[] routeLatitudes;
+
+    private double[] routeLongitudes;
+
+    private double width;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        DataPoint dp = new DataPoint();
+        dp.setMean(20);
+        dp.setCount(1);
+        for (int i = 0; i < airports; i++) {
+            boolean america = random.nextBoolean();
+            double latitude = america ? 25 + random.nextDouble() * 25 : 36 + random.nextDouble() * 24;
+            double longitude = america ? -125 + random.nextDouble() * 60 : -10 + random.nextDouble() * 40;
+            Airport airport = new Airport(String.format("%05d", i), latitude, longitude);
+            AtmosphericInformation ai = new AtmosphericInformation();
+            ai.updateInfo(DataPointType.TEMPERATURE, dp);
+            list.add(airport);
+            index.add(airport, ai);
+        }
+        boolean wide = "wide".equals(extent);
+        radius = wide ? 1500 : 50;
+        boxSize = wide ? 30 : 1;
+        width = wide ? 300 : 20;
+        // Boston - New York - Washington, or across the continent to Seattle
+        routeLatitudes = wide ? new double[]{42.36, 41.97, 47.45} : new double[]{42.36, 40.64, 38.85};
+        routeLongitudes = wide ? new double[]{-71.0, -87.9, -122.3} : new double[]{-71.0, -73.78, -77.04};
+    }
+
+    @Benchmark
+    public int pointLinearScan() {
+        int found = 0;
+        for (Airport airport : list) {
+            if (GeoMath.distance(40.64, -73.78, airport.getLatitude(), airport.getLongitude()) <= radius) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void point(Blackhole blackhole) {
+        index.forEachInRadius(40.64, -73.78, radius, blackhole::consume);
+    }
+
+    @Benchmark
+    public void box(Blackhole blackhole) {
+        index.forEachInBox(40, -75, 40 + boxSize, -75 + boxSize, blackhole::consume);
+    }
+
+    @Benchmark
+    public void corridor(Blackhole blackhole) {
+        index.forEachInCorridor(routeLatitudes, routeLongitudes, width, blackhole::consume);
+    }
+
+    @Benchmark
+    public void pointStreamed() throws IOException {
+        new AirportWeatherStreamingOutput(visitor -> index.forEachInRadius(40.64, -73.78, radius, visitor))
+                .write(sink);
+    }
+
+    @Benchmark
+    public void boxStreamed() throws IOException {
+        new AirportWeatherStreamingOutput(visitor -> index.forEachInBox(40, -75, 40 + boxSize, -75 + boxSize,
+                visitor)).write(sink);
+    }
+
+    @Benchmark
+    public void corridorStreamed() throws IOException {
+        new AirportWeatherStreamingOutput(visitor -> index.forEachInCorridor(routeLatitudes, routeLongitudes, width,
+                visitor)).write(sink);
+    }
+}
@@ -0,0 +1,63 @@
+package com.crossover.trial.weather.benchmark;
+
+import com.crossover.trial.weather.tenant.TenantQuotas;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the tenant quota checks per request: looking up the tenant, admitting a query and charging its cost,
+ * and admitting a data point, with four threads sharing one tenant's buckets. Run with
+ * {@code mvn -Pbenchmark test -Dbenchmark.filter=TenantQuota}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TenantQuotaBenchmark {
+
+    private TenantQuotas quotas;
+
+    @Setup
+    public void setUp() {
+        // large enough never to refuse, so every call takes the full path
+        Map<String, String> tokens = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            tokens.put("token" + i, "tenant" + i);
+        }
+        quotas = new TenantQuotas(new TenantQuotas.Limits(1e9, 1000000000000000L),
+                new TenantQuotas.Limits(1e9, 1000000000000000L), tokens, 1024);
+        for (int i = 0; i < 100; i++) {
+            quotas.get("token" + i);
+        }
+    }
+
+    @Benchmark
+    public boolean query() {
+        TenantQuotas.Tenant tenant = quotas.get("token42");
+        long now = System.nanoTime();
+        boolean admitted = tenant.admitQuery(now);
+        tenant.chargeQuery(250, now);
+        return admitted;
+    }
+
+    @Benchmark
+    public boolean ingest() {
+        return quotas.get("token42").admitIngest(1, System.nanoTime());
+    }
+}
@@ -0,0 +1,69 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BinaryDataPointCodecTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DataPoint dp = new DataPoint();
+        dp.setMean(-12.25);
+        dp.setFirst(-20);
+        dp.setSecond(-10);
+        dp.setThird(Integer.MAX_VALUE);
+        dp.setCount(42);
+
+        ByteBuffer buffer = ByteBuffer.allocate(2 * BinaryDataPointCodec.RECORD_SIZE);
+        BinaryDataPointCodec.encode(buffer, "BOS", DataPointType.TEMPERATURE, dp);
+        assertEquals(BinaryDataPointCodec.RECORD_SIZE, buffer.position());
+        BinaryDataPointCodec.encode(buffer, "JFK", DataPointType.PRECIPITATION, new DataPoint());
+        buffer.flip();
+
+        byte[] iata = new byte[3];
+        DataPoint scratch = new DataPoint();
+        assertSame(DataPointType.TEMPERATURE, BinaryDataPointCodec.decode(buffer, iata, scratch));
+        assertEquals("BOS", IataCodes.of(iata, 0));
+        assertEquals(dp, scratch);
+        DataPoint copy = BinaryDataPointCodec.copyOf(scratch);
+        assertEquals(dp, copy);
+
+        assertSame(DataPointType.PRECIPITATION, BinaryDataPointCodec.decode(buffer, iata, scratch));
+        assertEquals("JFK", IataCodes.of(iata, 0));
+        assertEquals(new DataPoint(), scratch);
+        assertEquals(0, buffer.remaining());
+        // the copy is independent of the scratch object
+        assertEquals(42, copy.getCount());
+    }
+
+    @Test
+    public void testUnknownType() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryDataPointCodec.RECORD_SIZE);
+        BinaryDataPointCodec.encode(buffer, "BOS", DataPointType.WIND, new DataPoint());
+        buffer.put(3, (byte) DataPointType.values().length);
+        buffer.flip();
+        assertNull(BinaryDataPointCodec.decode(buffer, new byte[3], new DataPoint()));
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsLongCodes() throws Exception {
+        BinaryDataPointCodec.encode(ByteBuffer.allocate(64), "KBOS", DataPointType.WIND, new DataPoint());
+    }
+
+    @Test
+    public void testIataCodes() throws Exception {
+        byte[] bytes = "XBOSb12".getBytes("US-ASCII");
+        assertSame(IataCodes.of(bytes, 1), IataCodes.of("BOS".getBytes("US-ASCII"), 0));
+        // not an upper case code, decoded as is
+        assertEquals("b12", IataCodes.of(bytes, 4));
+        assertEquals(-1, IataCodes.pack((byte) 'b', (byte) '1', (byte) '2'));
+    }
+}
@@ -0,0 +1,213 @@
+package com.crossover.trial.weather.codec;
+
+import org.junit.Test;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class CompressionInterceptorTest {
+
+    @Test
+    public void testNegotiate() throws Exception {
+        assertNull(CompressionInterceptor.negotiate(null));
+        assertNull(CompressionInterceptor.negotiate(""));
+        assertNull(CompressionInterceptor.negotiate("identity, br"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("GZIP"));
+        assertEquals("deflate", CompressionInterceptor.negotiate("br, deflate"));
+        // the configured order wins over the client's
+        assertEquals("gzip", CompressionInterceptor.negotiate("deflate, gzip"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("deflate;q=1.0, gzip;q=0.5"));
+        // q=0 refuses an encoding, however it is spelled
+        assertEquals("deflate", CompressionInterceptor.negotiate("gzip;q=0, deflate"));
+        assertEquals("deflate", CompressionInterceptor.negotiate("gzip ; q=0.000, deflate"));
+        assertNull(CompressionInterceptor.negotiate("gzip;q=0, deflate;q=0"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("gzip;q=0.001"));
+    }
+
+    @Test
+    public void testSmallResponseIsSentAsItIs() throws Exception {
+        Exchange exchange = new Exchange(body(100), new EntityTag("small"));
+        CompressionInterceptor.encode(exchange.context(), "gzip");
+        assertArrayEquals(exchange.body, exchange.sent.toByteArray());
+        assertNull(exchange.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(new EntityTag("small"), exchange.headers.getFirst(HttpHeaders.ETAG));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, exchange.headers.getFirst(HttpHeaders.VARY));
+    }
+
+    @Test
+    public void testLargeResponseIsCompressed() throws Exception {
+        for (String encoding : new String[]{"gzip", "deflate"}) {
+            Exchange exchange = new Exchange(body(10000), new EntityTag("large-" + System.nanoTime()));
+            exchange.headers.putSingle(HttpHeaders.CONTENT_LENGTH, 10000);
+            CompressionInterceptor.encode(exchange.context(), encoding);
+            assertEquals(encoding, exchange.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertNull(exchange.headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+            assertArrayEquals(exchange.body, decompress(encoding, exchange.sent.toByteArray()));
+        }
+    }
+
+    @Test
+    public void testEntityTagPerEncoding() throws Exception {
+        String value = "tag-" + System.nanoTime();
+        Exchange gzip = new Exchange(body(10000), new EntityTag(value));
+        CompressionInterceptor.encode(gzip.context(), "gzip");
+        assertEquals(new EntityTag(value + "-gzip"), gzip.headers.getFirst(HttpHeaders.ETAG));
+
+        Exchange deflate = new Exchange(body(10000), new EntityTag(value, true));
+        CompressionInterceptor.encode(deflate.context(), "deflate");
+        assertEquals(new EntityTag(value + "-deflate", true), deflate.headers.getFirst(HttpHeaders.ETAG));
+
+        assertEquals("\"abc-gzip\"", CompressionInterceptor.withEncoding("\"abc\"", "gzip"));
+
+        // If-None-Match of a client holding a compressed body matches the endpoint's plain tag again
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.add(HttpHeaders.IF_NONE_MATCH, "\"abc-gzip\", W/\"def-deflate\", \"ghi\"");
+        ContainerRequestContext request = (ContainerRequestContext) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{ContainerRequestContext.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getHeaders")) {
+                        return headers;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        new CompressionInterceptor().filter(request);
+        assertEquals("\"abc\", W/\"def\", \"ghi\"", headers.getFirst(HttpHeaders.IF_NONE_MATCH));
+    }
+
+    @Test
+    public void testCacheIsKeyedByEntityTag() throws Exception {
+        String value = "cache-" + System.nanoTime();
+        Exchange first = new Exchange(body(10000), new EntityTag(value));
+        CompressionInterceptor.encode(first.context(), "gzip");
+
+        // the same tag and size stand for the same body, so its compressed form is served from the cache
+        byte[] other = body(10000);
+        Arrays.fill(other, 0, 100, (byte) 'x');
+        Exchange second = new Exchange(other, new EntityTag(value));
+        CompressionInterceptor.encode(second.context(), "gzip");
+        assertArrayEquals(first.sent.toByteArray(), second.sent.toByteArray());
+
+        Exchange otherEncoding = new Exchange(other, new EntityTag(value));
+        CompressionInterceptor.encode(otherEncoding.context(), "deflate");
+        assertArrayEquals(other, decompress("deflate", otherEncoding.sent.toByteArray()));
+
+        Exchange otherTag = new Exchange(other, new EntityTag(value + "-changed"));
+        CompressionInterceptor.encode(otherTag.context(), "gzip");
+        assertArrayEquals(other, decompress("gzip", otherTag.sent.toByteArray()));
+
+        Exchange untagged = new Exchange(other, null);
+        CompressionInterceptor.encode(untagged.context(), "gzip");
+        assertArrayEquals(other, decompress("gzip", untagged.sent.toByteArray()));
+    }
+
+    @Test
+    public void testStreamedResponse() throws Exception {
+        byte[] body = body(100);
+        boolean[] closed = {false};
+        Exchange exchange = new Exchange(body, (StreamingOutput) out -> out.write(body));
+        exchange.out = new OutputStream() {
+            @Override
+            public void write(int b) {
+                exchange.sent.write(b);
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        CompressionInterceptor.encode(exchange.context(), "gzip");
+        // even a small stream is compressed, as it is not buffered, and the response stays open for jersey
+        assertEquals("gzip", exchange.headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(body, decompress("gzip", exchange.sent.toByteArray()));
+        assertFalse(closed[0]);
+    }
+
+    private static byte[] body(int size) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; json.length() < size - 1; i++) {
+            json.append("{\"iata\":\"A").append(i % 1000).append("\",\"mean\":").append(i % 37).append('}');
+        }
+        json.setLength(size - 1);
+        return json.append(']').toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] decompress(String encoding, byte[] bytes) throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream inflated = "gzip".equals(encoding) ? new GZIPInputStream(in) : new InflaterInputStream(in)) {
+            byte[] chunk = new byte[4096];
+            for (int n; (n = inflated.read(chunk)) > 0; ) {
+                out.write(chunk, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A response written through the interceptor, the entity writer writes the body to the current stream.
+     */
+    private static final class Exchange {
+        final byte[] body;
+        final Object entity;
+        final MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        OutputStream out = sent;
+
+        Exchange(byte[] body, Object tagOrEntity) {
+            this.body = body;
+            if (tagOrEntity instanceof EntityTag) {
+                headers.putSingle(HttpHeaders.ETAG, tagOrEntity);
+            }
+            this.entity = tagOrEntity instanceof StreamingOutput ? tagOrEntity : body;
+        }
+
+        WriterInterceptorContext context() {
+            return (WriterInterceptorContext) Proxy.newProxyInstance(CompressionInterceptorTest.class.getClassLoader(),
+                    new Class<?>[]{WriterInterceptorContext.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "proceed":
+                                if (entity instanceof StreamingOutput) {
+                                    ((StreamingOutput) entity).write(out);
+                                } else {
+                                    out.write(body);
+                                }
+                                return null;
+                            case "getEntity":
+                                return entity;
+                            case "getHeaders":
+                                return headers;
+                            case "getOutputStream":
+                                return out;
+                            case "setOutputStream":
+                                out = (OutputStream) args[0];
+                                return null;
+                            case "getMediaType":
+                                return MediaType.APPLICATION_JSON_TYPE;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+}
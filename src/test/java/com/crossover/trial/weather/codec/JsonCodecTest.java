@@ -0,0 +1,182 @@
+package com.crossover.trial.weather.codec;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JsonCodecTest {
+
+    private Gson _gson = new Gson();
+
+    private DataPoint dataPoint(double mean, int first, int second, int third, int count) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setFirst(first);
+        dp.setSecond(second);
+        dp.setThird(third);
+        dp.setCount(count);
+        return dp;
+    }
+
+    @Test
+    public void testDataPointMatchesReflectionOutput() throws Exception {
+        for (double mean : new double[]{0, 22, -5, 22.5, 0.1, 1e7, 123456.789, -0.0, 1e-5}) {
+            DataPoint dp = dataPoint(mean, 10, 20, 30, 4);
+            assertEquals(_gson.toJson(dp), JsonCodec.toJson(dp));
+        }
+    }
+
+    @Test
+    public void testAtmosphericInformation() throws Exception {
+        AtmosphericInformation ai = new AtmosphericInformation();
+        ai.updateInfo(DataPointType.WIND, dataPoint(22, 10, 20, 30, 10));
+        String json = JsonCodec.toJson(Arrays.asList(ai));
+        assertEquals("[{\"temperature\":null,\"wind\":{\"mean\":22.0,\"first\":10,\"second\":20,\"third\":30,"
+                + "\"count\":10},\"humidity\":null,\"precipitation\":null,\"pressure\":null,\"cloudCover\":null,"
+                + "\"lastUpdateTime\":" + ai.getLastUpdateTime() + "}]", json);
+
+        byte[] bytes = JsonCodec.toJson(ai).getBytes(StandardCharsets.UTF_8);
+        AtmosphericInformation parsed = new JsonParser().reset(bytes, 0, bytes.length).readAtmosphericInformation();
+        assertEquals(ai.getWind(), parsed.getWind());
+        assertNull(parsed.getTemperature());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        AtmosphericInformation ai = new AtmosphericInformation();
+        ai.updateInfo(DataPointType.WIND, dataPoint(22, 10, 20, 30, 10));
+        ai.updateInfo(DataPointType.PRESSURE, dataPoint(700, 1, 2, 3, 4));
+        int types = DataPointType.WIND.mask() | DataPointType.HUMIDITY.mask();
+        JsonBuffer out = JsonCodec.buffer();
+        JsonCodec.writeAll(out, Arrays.asList(ai), types);
+        assertEquals("[{\"wind\":{\"mean\":22.0,\"first\":10,\"second\":20,\"third\":30,\"count\":10},"
+                        + "\"humidity\":null,\"lastUpdateTime\":" + ai.getLastUpdateTime() + "}]",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCachedFragmentFollowsChanges() throws Exception {
+        DataPoint dp = dataPoint(22, 10, 20, 30, 4);
+        assertEquals(_gson.toJson(dp), JsonCodec.toJson(dp));
+        dp.setCount(5);
+        assertEquals(_gson.toJson(dp), JsonCodec.toJson(dp));
+    }
+
+    @Test
+    public void testAirportRoundTrip() throws Exception {
+        Airport airport = new Airport("BOS", 42.364347, -71.005181);
+        String json = JsonCodec.toJson(airport);
+        assertEquals("{\"iata\":\"BOS\",\"latitude\":42.364347,\"longitude\":-71.005181}", json);
+
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        Airport parsed = new JsonParser().reset(bytes, 0, bytes.length).readAirport();
+        assertEquals("BOS", parsed.getIata());
+        assertEquals(42.364347, parsed.getLatitude(), 0);
+        assertEquals(-71.005181, parsed.getLongitude(), 0);
+        assertNull(parsed.getIcao());
+        assertTrue(Double.isNaN(parsed.getTimezone()));
+
+        airport = new Airport("BOS", "KBOS", "Boston", "United States", 42.364347, -71.005181, 19, -5);
+        json = JsonCodec.toJson(airport);
+        assertEquals("{\"iata\":\"BOS\",\"latitude\":42.364347,\"longitude\":-71.005181,\"icao\":\"KBOS\","
+                + "\"city\":\"Boston\",\"country\":\"United States\",\"altitude\":19,\"timezone\":-5.0}", json);
+        bytes = json.getBytes(StandardCharsets.UTF_8);
+        parsed = new JsonParser().reset(bytes, 0, bytes.length).readAirport();
+        assertEquals("KBOS", parsed.getIcao());
+        assertEquals("Boston", parsed.getCity());
+        assertEquals("United States", parsed.getCountry());
+        assertEquals(19, parsed.getAltitude());
+        assertEquals(-5, parsed.getTimezone(), 0);
+    }
+
+    @Test
+    public void testParseDataPoint() throws Exception {
+        DataPoint dp = dataPoint(22.25, 10, 20, 30, 10);
+        assertEquals(dp, JsonCodec.parseDataPoint(_gson.toJson(dp)));
+        assertEquals(dp, JsonCodec.parseDataPoint(
+                " { \"count\" : 10, \"unknown\": {\"a\": [1, \"}\"]}, \"mean\": 2.225e1, \"first\":10,"
+                        + "\"second\":20, \"third\":30 } "));
+        assertNull(JsonCodec.parseDataPoint("null"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformed() throws Exception {
+        JsonCodec.parseDataPoint("{\"mean\": }");
+    }
+
+    @Test
+    public void testParseEndingInOpeningQuote() throws Exception {
+        // non-ascii input is parsed from an array of exactly its length
+        for (String json : new String[]{"{\"\u00e9\":1,\"", "{\"iata\":\"\u00e9\",\"city\":\""}) {
+            byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+            try {
+                JsonCodec.parser().reset(utf8, 0, utf8.length).readAirport();
+                fail(json);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("unexpected end of input"));
+            }
+        }
+        try {
+            JsonCodec.parseDataPoint("{\"mean\":1,\"");
+            fail("parsed");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("unexpected end of input"));
+        }
+    }
+
+    @Test
+    public void testNonFiniteNumbers() throws Exception {
+        DataPoint huge = JsonCodec.parseDataPoint("{\"mean\":1e999,\"count\":1}");
+        assertTrue(Double.isInfinite(huge.getMean()));
+        for (DataPointType type : DataPointType.values()) {
+            assertFalse(type.name(), type.isValid(huge));
+        }
+        // written as json anyway, should one get through
+        JsonBuffer out = new JsonBuffer(64);
+        out.number(Double.NaN).raw(',').number(Double.POSITIVE_INFINITY).raw(',').number(Double.NEGATIVE_INFINITY)
+                .raw(',').number(1.5);
+        assertEquals("null,null,null,1.5", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testParseDataPointLeniently() throws Exception {
+        DataPoint dp = dataPoint(22.5, 10, 20, 30, 10);
+        // accepted by the collector endpoint since it parsed with Gson
+        assertEquals(dp, JsonCodec.parseDataPoint(
+                "{'mean':22.5,'first':10,'second':20,'third':30,'count':10}"));
+        assertEquals(dp, JsonCodec.parseDataPoint("{mean:22.5,first:10,second:20,third:30,count:10}"));
+        assertEquals(dp, JsonCodec.parseDataPoint(
+                "{\"mean\":\"22.5\",\"first\":\"10\",\"second\":20,\"third\":30,\"count\":\"10\"}"));
+        try {
+            JsonCodec.parseDataPoint("{\"mean\":\"warm\"}");
+            fail("parsed");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("expected a number"));
+        }
+    }
+
+    @Test
+    public void testTruncatedUnicodeEscape() throws Exception {
+        for (String json : new String[]{"{\"iata\":\"\\u00\"}", "{\"iata\":\"\\u\"}"}) {
+            byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+            try {
+                JsonCodec.parser().reset(utf8, 0, utf8.length).readAirport();
+                fail(json);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("truncated unicode escape"));
+            }
+        }
+    }
+}
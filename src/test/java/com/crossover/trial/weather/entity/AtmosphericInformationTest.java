@@ -0,0 +1,66 @@
+package com.crossover.trial.weather.entity;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AtmosphericInformationTest {
+
+    @Test
+    public void testConcurrentChangesGetDistinctPublishedVersions() throws Exception {
+        int threads = 4;
+        int changes = 20000;
+        long start = AtmosphericInformation.currentSequence();
+        long[][] versions = new long[threads][changes];
+        Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers[t] = new Thread(() -> {
+                AtmosphericInformation ai = new AtmosphericInformation();
+                DataPoint dp = new DataPoint();
+                dp.setMean(1);
+                try {
+                    for (int i = 0; i < changes; i++) {
+                        ai.updateInfo(DataPointType.WIND, dp);
+                        versions[thread][i] = ai.version();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writers[t].start();
+        }
+        long last = start;
+        boolean running = true;
+        while (running) {
+            running = false;
+            for (Thread writer : writers) {
+                running |= writer.isAlive();
+            }
+            long current = AtmosphericInformation.currentSequence();
+            assertTrue(current >= last);
+            last = current;
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        // every change is published, other changes of the jvm may be too
+        assertTrue(AtmosphericInformation.currentSequence() >= start + threads * changes);
+        BitSet seen = new BitSet();
+        for (long[] thread : versions) {
+            for (int i = 0; i < changes; i++) {
+                int offset = (int) (thread[i] - start);
+                assertTrue(offset > 0 && thread[i] <= AtmosphericInformation.currentSequence());
+                assertFalse(seen.get(offset));
+                seen.set(offset);
+                if (i > 0) {
+                    assertTrue(thread[i] > thread[i - 1]);
+                }
+            }
+        }
+    }
+}
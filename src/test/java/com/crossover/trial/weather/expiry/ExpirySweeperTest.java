@@ -0,0 +1,93 @@
+package com.crossover.trial.weather.expiry;
+
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ExpirySweeperTest {
+
+    private DataPoint dataPoint(double mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setCount(1);
+        return dp;
+    }
+
+    @Test
+    public void testTimingWheelFiresInOrderAcrossLevels() throws Exception {
+        TimingWheel<Long> wheel = new TimingWheel<>(1, 0);
+        long[] deadlines = {1, 5, 63, 64, 65, 4095, 4096, 4097, 300000, 20000000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+        assertEquals(deadlines.length, wheel.size());
+
+        List<Long> fired = new ArrayList<>();
+        long now = 0;
+        for (long step : new long[]{3, 60, 1, 1, 1, 5000, 295000, 100000, 19600000}) {
+            now += step;
+            long time = now;
+            wheel.advance(now, deadline -> {
+                assertTrue(deadline + " fired at " + time, deadline <= time);
+                fired.add(deadline);
+            });
+            for (long deadline : deadlines) {
+                assertEquals(deadline + " at " + now, deadline <= now, fired.contains(deadline));
+            }
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testExpiresOnlyStaleDataPoints() throws Exception {
+        TtlPolicy policy = new TtlPolicy(0);
+        policy.setTtl(DataPointType.WIND, 60000);
+        List<double[]> expired = new ArrayList<>();
+        ExpirySweeper sweeper = new ExpirySweeper(policy, 1000,
+                (latitude, longitude) -> expired.add(new double[]{latitude, longitude}));
+
+        AtmosphericInformation ai = new AtmosphericInformation();
+        ai.updateInfo(DataPointType.WIND, dataPoint(10));
+        sweeper.onUpdate(ai, DataPointType.WIND, 42.36, -71.01);
+        ai.updateInfo(DataPointType.TEMPERATURE, dataPoint(20));
+        sweeper.onUpdate(ai, DataPointType.TEMPERATURE);
+        // a second update does not add a timer
+        sweeper.onUpdate(ai, DataPointType.WIND);
+        assertEquals(1L, sweeper.status().get("scheduled"));
+
+        long updated = ai.getUpdateTime(DataPointType.WIND);
+        assertSame(ai, ai.retainFresh(updated + 59000, policy.asArray()));
+        AtmosphericInformation fresh = ai.retainFresh(updated + 61000, policy.asArray());
+        assertNull(fresh.getWind());
+        assertNotNull(fresh.getTemperature());
+        assertNotNull(ai.getWind());
+
+        assertEquals(0, sweeper.advance(updated + 30000));
+        assertEquals(1, sweeper.advance(updated + 62000));
+        assertNull(ai.getWind());
+        assertNotNull(ai.getTemperature());
+        // the listener learns where the airport of the expired data point is
+        assertEquals(1, expired.size());
+        assertEquals(42.36, expired.get(0)[0], 0);
+        assertEquals(-71.01, expired.get(0)[1], 0);
+        assertEquals(0, sweeper.status().get("pending"));
+
+        // weather updated without its airport expires at an unknown position
+        sweeper = new ExpirySweeper(policy, 1000,
+                (latitude, longitude) -> expired.add(new double[]{latitude, longitude}));
+        ai.updateInfo(DataPointType.WIND, dataPoint(30));
+        sweeper.onUpdate(ai, DataPointType.WIND);
+        assertEquals(1, sweeper.advance(ai.getUpdateTime(DataPointType.WIND) + 62000));
+        assertTrue(Double.isNaN(expired.get(1)[0]));
+    }
+}
@@ -0,0 +1,265 @@
+package com.crossover.trial.weather.geo;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AirportGridIndexTest {
+
+    @Test
+    public void testNearestMatchesLinearScan() throws Exception {
+        Random random = new Random(42);
+        AirportGridIndex index = new AirportGridIndex(1);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // uniform on the sphere, plus some airports close to the poles
+            double latitude = i % 10 == 0 ? 89 * Math.signum(random.nextGaussian()) + random.nextDouble()
+                    : Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+            Airport airport = new Airport("A" + i, latitude, random.nextDouble() * 360 - 180);
+            airports.add(airport);
+            index.add(airport, new AtmosphericInformation());
+        }
+        for (int q = 0; q < 300; q++) {
+            double latitude = q % 7 == 0 ? 89.9 : random.nextDouble() * 180 - 90;
+            double longitude = q % 5 == 0 ? 179.95 : random.nextDouble() * 360 - 180;
+            int k = 1 + random.nextInt(10);
+            double maxDistance = q % 2 == 0 ? Double.POSITIVE_INFINITY : random.nextDouble() * 2000;
+
+            double[] expected = airports.stream()
+                    .mapToDouble(a -> GeoMath.distance(latitude, longitude, a.getLatitude(), a.getLongitude()))
+                    .filter(d -> d <= maxDistance)
+                    .sorted()
+                    .limit(k)
+                    .toArray();
+            List<AirportGridIndex.Neighbor> nearest = index.nearest(latitude, longitude, k, maxDistance, null);
+            assertEquals(expected.length, nearest.size());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], nearest.get(i).getDistance(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRangeQueriesMatchLinearScan() throws Exception {
+        Random random = new Random(7);
+        AirportGridIndex index = new AirportGridIndex(1);
+        List<Airport> airports = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Airport airport = new Airport("A" + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+            airports.add(airport);
+            index.add(airport, new AtmosphericInformation());
+        }
+        for (int q = 0; q < 100; q++) {
+            double lat = random.nextDouble() * 160 - 80;
+            double lon = q % 4 == 0 ? 179 : random.nextDouble() * 360 - 180;
+            double radius = random.nextDouble() * 3000;
+            assertEquals(airports.stream()
+                            .filter(a -> GeoMath.distance(lat, lon, a.getLatitude(), a.getLongitude()) <= radius)
+                            .count(),
+                    count(visitor -> index.forEachInRadius(lat, lon, radius, visitor)));
+
+            double maxLon = GeoMath.normalizeLongitude(lon + random.nextDouble() * 40);
+            double maxLat = Math.min(90, lat + random.nextDouble() * 30);
+            assertEquals(airports.stream()
+                            .filter(a -> a.getLatitude() >= lat && a.getLatitude() <= maxLat)
+                            .filter(a -> (a.getLongitude() - lon + 360) % 360 <= (maxLon - lon + 360) % 360)
+                            .count(),
+                    count(visitor -> index.forEachInBox(lat, lon, maxLat, maxLon, visitor)));
+
+            double[] lats = {lat, random.nextDouble() * 160 - 80, random.nextDouble() * 160 - 80};
+            double[] lons = {lon, random.nextDouble() * 360 - 180, random.nextDouble() * 360 - 180};
+            double width = random.nextDouble() * 300;
+            long expected = airports.stream().filter(a -> {
+                double d = Double.MAX_VALUE;
+                for (int i = 1; i < lats.length; i++) {
+                    d = Math.min(d, GeoMath.distanceToSegment(a.getLatitude(), a.getLongitude(),
+                            lats[i - 1], lons[i - 1], lats[i], lons[i]));
+                }
+                return d <= width;
+            }).count();
+            assertEquals(expected, count(visitor -> index.forEachInCorridor(lats, lons, width, visitor)));
+        }
+    }
+
+    @Test
+    public void testParallelReductionKeepsOrder() throws Exception {
+        Random random = new Random(11);
+        AirportGridIndex index = new AirportGridIndex(1);
+        for (int i = 0; i < 20000; i++) {
+            index.add(new Airport("A" + i, random.nextDouble() * 40 + 20, random.nextDouble() * 60 - 120),
+                    new AtmosphericInformation());
+        }
+        int threshold = AirportGridIndex.getParallelThreshold();
+        try {
+            AirportGridIndex.setParallelThreshold(Integer.MAX_VALUE);
+            List<String> sequential = iataInRadius(index);
+            AirportGridIndex.setParallelThreshold(0);
+            assertEquals(sequential, iataInRadius(index));
+            assertTrue(sequential.size() > 1000);
+        } finally {
+            AirportGridIndex.setParallelThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void testReductionBelowThresholdDoesNotFork() throws Exception {
+        Random random = new Random(13);
+        AirportGridIndex index = new AirportGridIndex(1);
+        for (int i = 0; i < 20000; i++) {
+            index.add(new Airport("A" + i, random.nextDouble() * 40 + 20, random.nextDouble() * 60 - 120),
+                    new AtmosphericInformation());
+        }
+        int threshold = AirportGridIndex.getParallelThreshold();
+        try {
+            AirportGridIndex.setParallelThreshold(Integer.MAX_VALUE);
+            int[] counts = index.reduceInRadius(40, -90, 2000, () -> new int[2], (count, entry, distance) -> {
+                count[0]++;
+                count[1] += ForkJoinTask.inForkJoinPool() ? 1 : 0;
+            }, (a, b) -> {
+                throw new AssertionError("combined");
+            });
+            assertTrue(counts[0] > 1000);
+            assertEquals(0, counts[1]);
+        } finally {
+            AirportGridIndex.setParallelThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void testSampledAndSequentialReductions() throws Exception {
+        Random random = new Random(17);
+        AirportGridIndex index = new AirportGridIndex(1);
+        for (int i = 0; i < 20000; i++) {
+            index.add(new Airport("A" + i, random.nextDouble() * 40 + 20, random.nextDouble() * 60 - 120),
+                    new AtmosphericInformation());
+        }
+        int threshold = AirportGridIndex.getParallelThreshold();
+        try {
+            AirportGridIndex.setParallelThreshold(0);
+            AirportGridIndex.resetCandidatesExamined();
+            List<String> all = iataInRadius(index, 1);
+            long examinedAll = AirportGridIndex.candidatesExamined();
+            AirportGridIndex.resetCandidatesExamined();
+            List<String> sample = iataInRadius(index, 4);
+            assertEquals(examinedAll / 4, AirportGridIndex.candidatesExamined(), 1);
+            assertTrue(all.containsAll(sample));
+            assertEquals(all.size() / 4.0, sample.size(), all.size() / 20.0);
+
+            // the same sample whether reduced in parallel or not
+            AirportGridIndex.setParallelThreshold(Integer.MAX_VALUE);
+            assertEquals(sample, iataInRadius(index, 4));
+
+            AirportGridIndex.setParallelThreshold(0);
+            int[] forked = AirportGridIndex.sequentially(() -> index.reduceInRadius(40, -90, 2000, () -> new int[1],
+                    (count, entry, distance) -> count[0] += ForkJoinTask.inForkJoinPool() ? 1 : 0, (x, y) -> {
+                        throw new AssertionError("combined");
+                    }));
+            assertEquals(0, forked[0]);
+        } finally {
+            AirportGridIndex.setParallelThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void testCalibrationLeavesLiveThresholdAlone() throws Exception {
+        int threshold = AirportGridIndex.getParallelThreshold();
+        AirportGridIndex.setParallelThreshold(123456);
+        try {
+            int[] learned = {-1};
+            Thread calibration = new Thread(() -> learned[0] = AirportGridIndex.calibrateParallelThreshold());
+            calibration.start();
+            Set<Integer> seen = new HashSet<>();
+            while (calibration.isAlive()) {
+                seen.add(AirportGridIndex.getParallelThreshold());
+            }
+            calibration.join();
+            // the live threshold only ever changes to the learned one
+            seen.remove(123456);
+            seen.remove(learned[0]);
+            assertEquals(Collections.emptySet(), seen);
+            assertEquals(learned[0], AirportGridIndex.getParallelThreshold());
+        } finally {
+            AirportGridIndex.setParallelThreshold(threshold);
+        }
+    }
+
+    private static List<String> iataInRadius(AirportGridIndex index) {
+        return iataInRadius(index, 1);
+    }
+
+    private static List<String> iataInRadius(AirportGridIndex index, int stride) {
+        return index.reduceInRadius(40, -90, 3000, stride, ArrayList<String>::new,
+                (list, entry, distance) -> list.add(entry.getAirport().getIata()), (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    private static long count(Consumer<Consumer<AirportGridIndex.Entry>> query) {
+        long[] count = {0};
+        query.accept(entry -> count[0]++);
+        return count[0];
+    }
+
+    @Test
+    public void testFilterAndRemove() throws Exception {
+        AirportGridIndex index = new AirportGridIndex(1);
+        Airport bos = new Airport("BOS", 42.364347, -71.005181);
+        Airport jfk = new Airport("JFK", 40.639751, -73.778925);
+        Airport lga = new Airport("LGA", 40.777245, -73.872608);
+        AtmosphericInformation fresh = new AtmosphericInformation();
+        fresh.updateInfo(DataPointType.WIND, new DataPoint());
+        index.add(bos, new AtmosphericInformation());
+        index.add(jfk, fresh);
+        index.add(lga, new AtmosphericInformation());
+
+        List<AirportGridIndex.Neighbor> nearest = index.nearest(bos.getLatitude(), bos.getLongitude(), 1,
+                Double.POSITIVE_INFINITY, e -> e.getWeather().getLastUpdateTime() > 0);
+        assertEquals("JFK", nearest.get(0).getAirport().getIata());
+
+        index.remove(bos);
+        assertEquals(2, index.size());
+        assertEquals("LGA", index.nearest(bos.getLatitude(), bos.getLongitude(), 1, Double.POSITIVE_INFINITY, null)
+                .get(0).getAirport().getIata());
+    }
+
+    @Test
+    public void testRemovedEntriesStayUntilCompacted() throws Exception {
+        AirportGridIndex index = new AirportGridIndex(1);
+        Airport bos = new Airport("BOS", 42.364347, -71.005181);
+        index.add(bos, new AtmosphericInformation());
+        int cell = index.getGrid().cellOf(bos.getLatitude(), bos.getLongitude());
+        AirportGridIndex.Entry removed = index.cell(cell)[0];
+        assertTrue(index.remove(bos));
+        assertFalse(index.remove(bos));
+
+        // a new entry of the same code next to the removed one, which searches no longer see
+        index.add(bos, new AtmosphericInformation());
+        assertEquals(2, index.cell(cell).length);
+        assertTrue(removed.isRemoved());
+        List<AirportGridIndex.Entry> found = new ArrayList<>();
+        index.forEachInRadius(bos.getLatitude(), bos.getLongitude(), 10, found::add);
+        assertEquals(1, found.size());
+        assertFalse(found.get(0).isRemoved());
+
+        assertEquals(0, index.compact(60000));
+        assertEquals(1, index.compact(0));
+        assertEquals(1, index.cell(cell).length);
+        assertEquals(1, index.size());
+    }
+}
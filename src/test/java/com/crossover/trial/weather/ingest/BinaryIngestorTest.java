@@ -0,0 +1,168 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.codec.BinaryDataPointCodec;
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import com.crossover.trial.weather.service.WeatherChangeListener;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryIngestorTest {
+
+    private final BinaryIngestor ingestor = new BinaryIngestor();
+
+    @Before
+    public void setUp() throws Exception {
+        AirportWeatherService.init();
+    }
+
+    private static DataPoint dp(double mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setFirst((int) mean - 1);
+        dp.setSecond((int) mean);
+        dp.setThird((int) mean + 1);
+        dp.setCount(5);
+        return dp;
+    }
+
+    private static ByteBuffer batch(int extraBytes, Object... records) {
+        ByteBuffer buffer = ByteBuffer.allocate(records.length / 3 * BinaryDataPointCodec.RECORD_SIZE + extraBytes);
+        for (int i = 0; i < records.length; i += 3) {
+            BinaryDataPointCodec.encode(buffer, (String) records[i], (DataPointType) records[i + 1],
+                    (DataPoint) records[i + 2]);
+        }
+        buffer.position(buffer.limit()).flip();
+        return buffer;
+    }
+
+    @Test
+    public void testAppliesValidRecords() throws Exception {
+        ingestor.ingest(batch(0,
+                "BOS", DataPointType.WIND, dp(10),
+                "JFK", DataPointType.TEMPERATURE, dp(20),
+                "BOS", DataPointType.HUMIDITY, dp(30)));
+        assertEquals(3, ingestor.getAccepted());
+        assertEquals(0, ingestor.getRejected());
+        assertEquals(dp(10), AirportWeatherService.findAtmosphericInformation("BOS").getWind());
+        assertEquals(dp(30), AirportWeatherService.findAtmosphericInformation("BOS").getHumidity());
+        assertEquals(dp(20), AirportWeatherService.findAtmosphericInformation("JFK").getTemperature());
+    }
+
+    @Test
+    public void testRejectsUnknownAirportsAndInvalidRecords() throws Exception {
+        ByteBuffer batch = batch(0,
+                "XYZ", DataPointType.WIND, dp(10),
+                "BOS", DataPointType.PRESSURE, dp(10),
+                "BOS", DataPointType.WIND, dp(-1),
+                "BOS", DataPointType.WIND, dp(10),
+                "JFK", DataPointType.WIND, dp(15));
+        // an unknown type ordinal in the last record
+        batch.put(4 * BinaryDataPointCodec.RECORD_SIZE + 3, (byte) 0x7f);
+        ingestor.ingest(batch);
+        assertEquals(1, ingestor.getAccepted());
+        assertEquals(4, ingestor.getRejected());
+        assertEquals(10, AirportWeatherService.findAtmosphericInformation("BOS").getWind().getMean(), 0);
+        assertNull(AirportWeatherService.findAtmosphericInformation("BOS").getPressure());
+        assertNull(AirportWeatherService.findAtmosphericInformation("JFK").getWind());
+    }
+
+    @Test
+    public void testTruncatedBatch() throws Exception {
+        ByteBuffer batch = batch(0, "BOS", DataPointType.WIND, dp(10), "JFK", DataPointType.WIND, dp(20));
+        batch.limit(batch.limit() - 5);
+        ingestor.ingest(batch);
+        assertEquals(1, ingestor.getAccepted());
+        assertEquals(1, ingestor.getRejected());
+        assertEquals(0, batch.remaining());
+        assertNull(AirportWeatherService.findAtmosphericInformation("JFK").getWind());
+
+        // counts are per batch, a batch shorter than a record is one rejected record
+        ingestor.ingest(ByteBuffer.wrap(new byte[BinaryDataPointCodec.RECORD_SIZE - 1]));
+        assertEquals(0, ingestor.getAccepted());
+        assertEquals(1, ingestor.getRejected());
+        ingestor.ingest(ByteBuffer.allocate(0));
+        assertEquals(0, ingestor.getAccepted());
+        assertEquals(0, ingestor.getRejected());
+
+        // trailing bytes after whole records
+        ingestor.ingest(batch(3, "JFK", DataPointType.WIND, dp(20)));
+        assertEquals(1, ingestor.getAccepted());
+        assertEquals(1, ingestor.getRejected());
+    }
+
+    @Test
+    public void testUdpDatagrams() throws Exception {
+        UdpIngestionListener listener = new UdpIngestionListener(0);
+        listener.start();
+        try (DatagramChannel client = DatagramChannel.open()) {
+            client.send(batch(0, "BOS", DataPointType.WIND, dp(10), "XYZ", DataPointType.WIND, dp(10)),
+                    new InetSocketAddress("localhost", listener.getPort()));
+            client.send(batch(1, "JFK", DataPointType.WIND, dp(20)),
+                    new InetSocketAddress("localhost", listener.getPort()));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (listener.getAccepted() + listener.getRejected() < 4) {
+                assertTrue("timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            listener.stop();
+        }
+        assertEquals(2, listener.getAccepted());
+        assertEquals(2, listener.getRejected());
+        assertEquals(20, AirportWeatherService.findAtmosphericInformation("JFK").getWind().getMean(), 0);
+    }
+
+    @Test
+    public void testUdpReceiverSurvivesFailingListener() throws Exception {
+        AtomicBoolean failed = new AtomicBoolean();
+        WeatherChangeListener failing = new WeatherChangeListener() {
+            @Override
+            public void airportSaved(Airport airport) {
+            }
+
+            @Override
+            public void airportDeleted(Airport airport) {
+            }
+
+            @Override
+            public void dataPointAdded(Airport airport, DataPointType type, DataPoint dataPoint) {
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("listener failure");
+                }
+            }
+        };
+        UdpIngestionListener listener = new UdpIngestionListener(0);
+        AirportWeatherService.addListener(failing);
+        listener.start();
+        try (DatagramChannel client = DatagramChannel.open()) {
+            InetSocketAddress server = new InetSocketAddress("localhost", listener.getPort());
+            client.send(batch(0, "BOS", DataPointType.WIND, dp(10)), server);
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!failed.get()) {
+                assertTrue("timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            client.send(batch(0, "JFK", DataPointType.WIND, dp(20)), server);
+            while (listener.getAccepted() < 1) {
+                assertTrue("timed out", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        } finally {
+            listener.stop();
+            AirportWeatherService.removeListener(failing);
+        }
+        assertEquals(20, AirportWeatherService.findAtmosphericInformation("JFK").getWind().getMean(), 0);
+    }
+}
@@ -0,0 +1,69 @@
+package com.crossover.trial.weather.ingest;
+
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IngestionPipelineTest {
+
+    private IngestionPipeline pipeline;
+
+    @Before
+    public void setUp() throws Exception {
+        AirportWeatherService.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    private DataPoint wind(int mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setCount(1);
+        return dp;
+    }
+
+    @Test
+    public void testRefusesWhenFull() throws Exception {
+        pipeline = new IngestionPipeline(8, 1);
+        for (int i = 0; i < 8; i++) {
+            assertTrue(pipeline.offer("BOS", DataPointType.WIND, wind(i)));
+        }
+        assertFalse(pipeline.offer("BOS", DataPointType.WIND, wind(8)));
+        assertEquals(1L, pipeline.status().get("refused"));
+    }
+
+    @Test
+    public void testCoalescesToLatestValue() throws Exception {
+        pipeline = new IngestionPipeline(4096, 2);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(pipeline.offer("BOS", DataPointType.WIND, wind(i)));
+            assertTrue(pipeline.offer("JFK", DataPointType.WIND, wind(i)));
+        }
+        pipeline.start();
+        assertTrue(pipeline.awaitApplied(10, TimeUnit.SECONDS));
+
+        for (String iata : new String[]{"BOS", "JFK"}) {
+            AtmosphericInformation ai = AirportWeatherService.findAtmosphericInformation(iata);
+            assertEquals(999.0, ai.getWind().getMean(), 0);
+        }
+        Map<String, Object> status = pipeline.status();
+        assertEquals(2000L, (long) status.get("applied") + (long) status.get("coalesced"));
+        assertTrue((long) status.get("applied") < 2000L);
+    }
+}
@@ -0,0 +1,92 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationProtocolTest {
+
+    private static DataInputStream stream(byte[]... records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] record : records) {
+            bytes.write(record);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void assertHeader(DataInputStream in, byte op, long seq, long time) throws IOException {
+        assertEquals(op, in.readByte());
+        assertEquals(seq, in.readLong());
+        assertEquals(time, in.readLong());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Airport bos = new Airport("BOS", "KBOS", "Boston", "United States", 42.364347, -71.005181, 19, -5);
+        Airport xyz = new Airport("XYZ", 10.5, -20.25);
+        DataPoint dp = new DataPoint();
+        dp.setMean(12.5);
+        dp.setFirst(10);
+        dp.setSecond(12);
+        dp.setThird(14);
+        dp.setCount(7);
+
+        DataInputStream in = stream(
+                ReplicationProtocol.control(ReplicationProtocol.SNAPSHOT_BEGIN, 1, 100),
+                ReplicationProtocol.saveAirport(2, 101, bos),
+                ReplicationProtocol.saveAirport(3, 102, xyz),
+                ReplicationProtocol.dataPoint(4, 103, "BOS", DataPointType.PRECIPITATION, dp, 99),
+                ReplicationProtocol.deleteAirport(5, 104, "XYZ"),
+                ReplicationProtocol.control(ReplicationProtocol.HEARTBEAT, 5, 105));
+
+        assertHeader(in, ReplicationProtocol.SNAPSHOT_BEGIN, 1, 100);
+
+        assertHeader(in, ReplicationProtocol.SAVE_AIRPORT, 2, 101);
+        Airport read = ReplicationProtocol.readAirport(in);
+        assertEquals("BOS", read.getIata());
+        assertEquals("KBOS", read.getIcao());
+        assertEquals("Boston", read.getCity());
+        assertEquals("United States", read.getCountry());
+        assertEquals(42.364347, read.getLatitude(), 0);
+        assertEquals(-71.005181, read.getLongitude(), 0);
+        assertEquals(19, read.getAltitude());
+        assertEquals(-5, read.getTimezone(), 0);
+
+        // unknown details come back as unknown
+        assertHeader(in, ReplicationProtocol.SAVE_AIRPORT, 3, 102);
+        read = ReplicationProtocol.readAirport(in);
+        assertEquals("XYZ", read.getIata());
+        assertNull(read.getIcao());
+        assertNull(read.getCity());
+        assertNull(read.getCountry());
+        assertEquals(10.5, read.getLatitude(), 0);
+        assertTrue(Double.isNaN(read.getTimezone()));
+
+        assertHeader(in, ReplicationProtocol.DATA_POINT, 4, 103);
+        assertEquals("BOS", in.readUTF());
+        assertEquals(DataPointType.PRECIPITATION, ReplicationProtocol.readType(in));
+        assertEquals(dp, ReplicationProtocol.readDataPoint(in));
+        assertEquals(99, in.readLong());
+
+        assertHeader(in, ReplicationProtocol.DELETE_AIRPORT, 5, 104);
+        assertEquals("XYZ", in.readUTF());
+
+        assertHeader(in, ReplicationProtocol.HEARTBEAT, 5, 105);
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownType() throws Exception {
+        ReplicationProtocol.readType(stream(new byte[]{(byte) DataPointType.values().length}));
+    }
+}
@@ -0,0 +1,194 @@
+package com.crossover.trial.weather.replication;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.exception.WeatherException;
+import com.crossover.trial.weather.service.AirportWeatherService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplicationReplicaTest {
+
+    private final AirportWeatherService service = AirportWeatherService.getInstance();
+
+    /**
+     * the replica's state, kept apart from the service the primary publishes
+     */
+    private final ReplicaState state = new ReplicaState();
+
+    private ReplicationPrimary primary;
+
+    private ReplicationReplica replica;
+
+    @Before
+    public void setUp() throws Exception {
+        AirportWeatherService.init();
+        primary = new ReplicationPrimary(0);
+        primary.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (replica != null) {
+            replica.stop();
+        }
+        primary.stop();
+        AirportWeatherService.init();
+    }
+
+    private static DataPoint wind(int mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setFirst(mean - 1);
+        dp.setSecond(mean);
+        dp.setThird(mean + 1);
+        dp.setCount(10);
+        return dp;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testSnapshotThenTail() throws Exception {
+        service.addDataPoint("BOS", DataPointType.WIND, wind(10));
+
+        replica = new ReplicationReplica("localhost:" + primary.getPort(), state);
+        replica.start();
+        await(replica::isBootstrapped);
+        assertEquals(5, state.size());
+        assertEquals(10, state.get("BOS", DataPointType.WIND).getMean(), 0);
+        assertEquals(updateTime("BOS"), state.updateTimes.get("BOS").longValue());
+
+        // the log in order: an update of an airport deleted and added again, which must come back without weather
+        AirportWeatherService.saveAirport("XYZ", 10, 20);
+        service.addDataPoint("XYZ", DataPointType.WIND, wind(20));
+        AirportWeatherService.deleteAirport("XYZ");
+        AirportWeatherService.saveAirport("XYZ", 11, 21);
+        service.addDataPoint("JFK", DataPointType.WIND, wind(30));
+        await(() -> state.get("JFK", DataPointType.WIND) != null);
+
+        assertEquals(6, state.size());
+        assertEquals(11, state.airports.get("XYZ").getLatitude(), 0);
+        assertNull(state.get("XYZ", DataPointType.WIND));
+        assertEquals(30, state.get("JFK", DataPointType.WIND).getMean(), 0);
+        assertEquals(updateTime("JFK"), state.updateTimes.get("JFK").longValue());
+
+        Map<String, Object> status = replica.status();
+        assertEquals(true, status.get("connected"));
+        assertEquals(true, status.get("bootstrapped"));
+        assertEquals(0L, status.get("seq_lag"));
+        assertEquals(status.get("primary_seq"), status.get("applied_seq"));
+        long lag = (long) status.get("lag_ms");
+        assertTrue("lag " + lag, lag >= 0 && lag < 10000);
+
+        // an idle stream keeps the lag current with heartbeats
+        long applied = (long) status.get("applied_seq");
+        await(() -> (long) replica.status().get("last_received_ms_ago") < 500
+                && (long) replica.status().get("lag_ms") < 2000);
+        assertEquals(applied, replica.status().get("applied_seq"));
+    }
+
+    private static long updateTime(String iata) {
+        return AirportWeatherService.registry.get(iata).getWeather().getUpdateTime(DataPointType.WIND);
+    }
+
+    @Test
+    public void testReplicatedDataPointKeepsUpdateTime() throws Exception {
+        service.replicateDataPoint("BOS", DataPointType.WIND, wind(10), 1234);
+        assertEquals(1234, updateTime("BOS"));
+        assertEquals(10, AirportWeatherService.registry.get("BOS").getWeather().getWind().getMean(), 0);
+    }
+
+    @Test
+    public void testSnapshotKeepsRequestStatistics() throws Exception {
+        Airport bos = AirportWeatherService.findAirportData("BOS");
+        AirportWeatherService.requestFrequency.put(bos, 3);
+        AirportWeatherService.clearAirports();
+        assertEquals(0, AirportWeatherService.registry.size());
+        assertEquals(3, AirportWeatherService.requestFrequency.get(bos).intValue());
+    }
+
+    @Test
+    public void testDataPointOfDeletedAirportIsSkipped() throws Exception {
+        replica = new ReplicationReplica("localhost:" + primary.getPort(), state);
+        replica.start();
+        await(replica::isBootstrapped);
+
+        state.deleteAirport("BOS");
+        service.addDataPoint("BOS", DataPointType.WIND, wind(10));
+        service.addDataPoint("JFK", DataPointType.WIND, wind(20));
+        await(() -> state.get("JFK", DataPointType.WIND) != null);
+        assertFalse(state.airports.containsKey("BOS"));
+    }
+
+    /**
+     * Airports and their latest data points.
+     */
+    private static class ReplicaState implements ReplicationReplica.Target {
+        final Map<String, Airport> airports = new ConcurrentHashMap<>();
+
+        final Map<String, Map<DataPointType, DataPoint>> weather = new ConcurrentHashMap<>();
+
+        /**
+         * update time of the latest data point of each airport
+         */
+        final Map<String, Long> updateTimes = new ConcurrentHashMap<>();
+
+        DataPoint get(String iata, DataPointType type) {
+            Map<DataPointType, DataPoint> points = weather.get(iata);
+            return points == null ? null : points.get(type);
+        }
+
+        @Override
+        public void clear() {
+            airports.clear();
+            weather.clear();
+        }
+
+        @Override
+        public void saveAirport(Airport airport) {
+            if (airports.putIfAbsent(airport.getIata(), airport) == null) {
+                weather.put(airport.getIata(), new ConcurrentHashMap<>());
+            }
+        }
+
+        @Override
+        public void deleteAirport(String iata) {
+            airports.remove(iata);
+            weather.remove(iata);
+        }
+
+        @Override
+        public void addDataPoint(String iata, DataPointType type, DataPoint dp, long updateTime)
+                throws WeatherException {
+            Map<DataPointType, DataPoint> points = weather.get(iata);
+            if (points == null) {
+                throw new WeatherException("unknown airport " + iata);
+            }
+            points.put(type, dp);
+            updateTimes.put(iata, updateTime);
+        }
+
+        @Override
+        public int size() {
+            return airports.size();
+        }
+    }
+}
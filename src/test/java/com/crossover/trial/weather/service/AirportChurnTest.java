@@ -0,0 +1,160 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Adds and deletes airports while radius queries run, checking every query result against the airports which were
+ * present, or absent, for the whole query.
+ */
+public class AirportChurnTest {
+
+    private static final int STABLE = 200;
+
+    private static final int CHURNED = 200;
+
+    /**
+     * the 1000 km around the center cover all airports of the test, which are 2 degrees apart at most
+     */
+    private static final double LATITUDE = 11;
+    private static final double LONGITUDE = 11;
+    private static final double RADIUS = 1000;
+
+    private final AirportWeatherService service = AirportWeatherService.getInstance();
+
+    /**
+     * the phase of each churned airport: 4n absent, 4n + 1 being added, 4n + 2 present, 4n + 3 being deleted
+     */
+    private final AtomicIntegerArray phases = new AtomicIntegerArray(CHURNED);
+
+    private final Queue<String> violations = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    @Test
+    public void testQueriesSeeConsistentResultsUnderChurn() throws Exception {
+        AirportWeatherService.init();
+        Random random = new Random(1);
+        for (int i = 0; i < STABLE; i++) {
+            save("S" + i, random);
+        }
+        AtomicLong changes = new AtomicLong();
+        AtomicLong queries = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> churn(new Random(seed), changes), "churn-" + t));
+            threads.add(new Thread(() -> query(queries), "query-" + t));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(1500);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+
+        assertTrue(violations.toString(), violations.isEmpty());
+        assertTrue(changes.get() > 100);
+        assertTrue(queries.get() > 10);
+        // the registry and the index agree once the churn stopped
+        Set<String> indexed = query();
+        for (int i = 0; i < CHURNED; i++) {
+            boolean present = phases.get(i) % 4 == 2;
+            assertEquals(present, indexed.contains("C" + i));
+            if (present) {
+                assertNotNull(AirportWeatherService.findAirportData("C" + i));
+            } else {
+                assertNull(AirportWeatherService.findAirportData("C" + i));
+            }
+        }
+        assertEquals(AirportWeatherService.registry.size(), AirportWeatherService.airportIndex.size());
+        AirportWeatherService.init();
+    }
+
+    private void save(String iata, Random random) {
+        AirportWeatherService.saveAirport(iata, LATITUDE - 1 + 2 * random.nextDouble(),
+                LONGITUDE - 1 + 2 * random.nextDouble());
+        try {
+            // only airports with data are found by the queries
+            service.addDataPoint(iata, DataPointType.WIND, new DataPoint.Builder().withMean(10).withCount(1).build());
+        } catch (Exception e) {
+            violations.add(iata + " not found after its add: " + e);
+        }
+    }
+
+    private void churn(Random random, AtomicLong changes) {
+        while (running.get()) {
+            int i = random.nextInt(CHURNED);
+            int phase = phases.get(i);
+            if (phase % 2 == 1 || !phases.compareAndSet(i, phase, phase + 1)) {
+                continue;
+            }
+            if (phase % 4 == 0) {
+                save("C" + i, random);
+            } else if (!AirportWeatherService.deleteAirport("C" + i)) {
+                violations.add("C" + i + " was not found for its delete");
+            }
+            phases.set(i, phase + 2);
+            changes.incrementAndGet();
+        }
+    }
+
+    private void query(AtomicLong queries) {
+        int[] before = new int[CHURNED];
+        while (running.get()) {
+            for (int i = 0; i < CHURNED; i++) {
+                before[i] = phases.get(i);
+            }
+            Set<String> found = query();
+            for (int i = 0; i < STABLE; i++) {
+                if (!found.contains("S" + i)) {
+                    violations.add("S" + i + " missing");
+                }
+            }
+            for (int i = 0; i < CHURNED; i++) {
+                int phase = phases.get(i);
+                if (phase != before[i]) {
+                    // changed during the query, either result is right
+                    continue;
+                }
+                if (phase % 4 == 2 && !found.contains("C" + i)) {
+                    violations.add("C" + i + " missing in phase " + phase);
+                } else if (phase % 4 == 0 && found.contains("C" + i)) {
+                    violations.add("C" + i + " found in phase " + phase);
+                }
+            }
+            queries.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the codes found around the center
+     */
+    private Set<String> query() {
+        Set<String> found = new HashSet<>();
+        service.forEachNear(LATITUDE, LONGITUDE, RADIUS, entry -> {
+            if (!found.add(entry.getAirport().getIata())) {
+                violations.add(entry.getAirport().getIata() + " found twice");
+            }
+        });
+        return found;
+    }
+}
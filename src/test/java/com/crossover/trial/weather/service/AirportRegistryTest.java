@@ -0,0 +1,228 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AirportRegistryTest {
+
+    private AirportRegistry.Record add(AirportRegistry registry, String iata) {
+        return registry.add(new Airport(iata, 40, -73), new AtmosphericInformation());
+    }
+
+    private List<String> codes(Iterable<AirportRegistry.Record> records) {
+        List<String> codes = new ArrayList<>();
+        for (AirportRegistry.Record record : records) {
+            codes.add(record.getAirport().getIata());
+        }
+        return codes;
+    }
+
+    @Test
+    public void testSlotsStayStableAcrossDeletes() throws Exception {
+        assertSlotsStayStable(new AirportRegistry());
+        assertSlotsStayStable(new OffHeapAirportRegistry(null));
+    }
+
+    private void assertSlotsStayStable(AirportRegistry registry) {
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i, add(registry, String.format("A%02d", i)).getSlot());
+        }
+        AirportRegistry.Record duplicate = add(registry, "A05");
+        assertEquals(5, duplicate.getSlot());
+        assertEquals(40, registry.size());
+
+        AirportRegistry.Record removed = registry.remove("A05");
+        assertNull(registry.remove("A05"));
+        assertNull(registry.get("A05"));
+        assertNull(registry.get(5));
+        assertTrue(removed.isDeleted());
+        assertEquals(6, registry.get("A06").getSlot());
+
+        // the tombstone is not reused within the grace period
+        assertEquals(0, registry.compact(60000));
+        assertEquals(40, add(registry, "B00").getSlot());
+        assertEquals(1, registry.compact(0));
+        assertEquals(5, add(registry, "B01").getSlot());
+        assertEquals(41, registry.size());
+    }
+
+    @Test
+    public void testIterationSurvivesConcurrentDeletesAndCompaction() throws Exception {
+        AirportRegistry registry = new AirportRegistry();
+        for (int i = 0; i < 100; i++) {
+            add(registry, String.format("A%02d", i));
+        }
+        Iterator<AirportRegistry.Record> inFlight = registry.iterator();
+        assertEquals("A00", inFlight.next().getAirport().getIata());
+        for (int i = 1; i < 100; i++) {
+            registry.remove(String.format("A%02d", i));
+        }
+        assertEquals(99, registry.compact(0));
+        // at most the airport it already looked ahead to, never another airport in a reused slot
+        List<String> rest = new ArrayList<>();
+        inFlight.forEachRemaining(record -> rest.add(record.getAirport().getIata()));
+        assertTrue(rest.toString(), rest.isEmpty() || rest.equals(Arrays.asList("A01")));
+        assertEquals(1, (int) registry.status().get("slots"));
+        assertEquals(16, (int) registry.status().get("capacity"));
+
+        AirportRegistry.Record record = add(registry, "B00");
+        assertEquals(1, record.getSlot());
+        assertSame(record, registry.get(1));
+        assertEquals(Arrays.asList("A00", "B00"), codes(registry));
+    }
+
+    @Test
+    public void testIcaoCountryAndCityIndexes() throws Exception {
+        assertAttributeIndexes(new AirportRegistry());
+        assertAttributeIndexes(new OffHeapAirportRegistry(null));
+    }
+
+    private void assertAttributeIndexes(AirportRegistry registry) {
+        registry.add(new Airport("LHR", "EGLL", "London", "United Kingdom", 51.4775, -0.461389, 83, 0),
+                new AtmosphericInformation());
+        registry.add(new Airport("JFK", "KJFK", "New York", "United States", 40.639751, -73.778925, 13, -5),
+                new AtmosphericInformation());
+        registry.add(new Airport("LCY", "EGLC", new String("London"), "United Kingdom", 51.505278, 0.055278, 19,
+                0), new AtmosphericInformation());
+        add(registry, "XXX");
+
+        Airport heathrow = registry.getByIcao("EGLL").getAirport();
+        assertEquals("LHR", heathrow.getIata());
+        assertEquals("EGLL", heathrow.getIcao());
+        assertEquals("London", heathrow.getCity());
+        assertEquals("United Kingdom", heathrow.getCountry());
+        assertEquals(83, heathrow.getAltitude());
+        assertEquals(0, heathrow.getTimezone(), 0);
+        assertEquals(-5, registry.get("JFK").getAirport().getTimezone(), 0);
+        assertNull(registry.get("XXX").getAirport().getIcao());
+        assertNull(registry.getByIcao("KBOS"));
+        // equal names share one instance
+        assertSame(heathrow.getCity(), registry.get("LCY").getAirport().getCity());
+
+        assertEquals(Arrays.asList("LHR", "LCY"), codes(registry.findByCountry("United Kingdom")));
+        assertEquals(Arrays.asList("LHR", "LCY"), codes(registry.findByCity("London")));
+        assertEquals(1, registry.countByCountry("United States"));
+        assertEquals(0, registry.countByCountry("France"));
+
+        registry.remove("LHR");
+        assertNull(registry.getByIcao("EGLL"));
+        assertEquals(Arrays.asList("LCY"), codes(registry.findByCountry("United Kingdom")));
+        assertEquals(Arrays.asList("LCY"), codes(registry.findByCity("London")));
+        registry.compact(0);
+        registry.add(new Airport("LGW", "EGKK", "London", "United Kingdom", 51.148056, -0.190278, 202, 0),
+                new AtmosphericInformation());
+        assertEquals("LGW", registry.getByIcao("EGKK").getAirport().getIata());
+        assertEquals(Arrays.asList("LGW", "LCY"), codes(registry.findByCity("London")));
+    }
+
+    @Test
+    public void testOffHeapRecords() throws Exception {
+        File file = File.createTempFile("airports", ".dat");
+        file.deleteOnExit();
+        for (OffHeapAirportRegistry registry : Arrays.asList(new OffHeapAirportRegistry(null),
+                new OffHeapAirportRegistry(file.getPath()))) {
+            // grows past the initial capacity
+            for (int i = 0; i < 5000; i++) {
+                registry.add(new Airport(String.format("%04d", i), i / 100.0, -i / 100.0),
+                        new AtmosphericInformation());
+            }
+            assertEquals(5000, registry.size());
+            AirportRegistry.Record record = registry.get("4321");
+            assertEquals(4321, record.getSlot());
+            assertEquals("4321", record.getAirport().getIata());
+            assertEquals(43.21, record.getAirport().getLatitude(), 0);
+            assertEquals(-43.21, record.getAirport().getLongitude(), 0);
+            assertEquals(new Airport("4321", 0, 0), record.getAirport());
+            assertEquals(new Airport("4321", 0, 0).hashCode(), record.getAirport().hashCode());
+            assertSame(record.getWeather(), registry.get(4321).getWeather());
+            assertEquals(5000, codes(registry).size());
+
+            // the hash table still finds the codes probed past a removed one
+            for (int i = 0; i < 5000; i += 2) {
+                String code = String.format("%04d", i);
+                assertEquals(code, registry.remove(code).getAirport().getIata());
+            }
+            for (int i = 0; i < 5000; i++) {
+                assertEquals(i % 2 == 1, registry.get(String.format("%04d", i)) != null);
+            }
+            assertEquals(2500, registry.compact(0));
+            assertEquals(0, add(registry, "BOS").getSlot());
+        }
+        try {
+            new OffHeapAirportRegistry(null).add(new Airport("bos", 0, 0), new AtmosphericInformation());
+            fail("expected lower case codes to be refused");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testOffHeapAirportsKeepTheirCodeAcrossSlotReuse() throws Exception {
+        OffHeapAirportRegistry registry = new OffHeapAirportRegistry(null);
+        add(registry, "BOS");
+        add(registry, "JFK");
+        // the query statistics count by airport, like this map
+        Map<Airport, Integer> frequency = new HashMap<>();
+        Airport bos = registry.get("BOS").getAirport();
+        frequency.put(bos, 1);
+
+        registry.remove("BOS");
+        registry.compact(0);
+        assertEquals("BOS", bos.getIata());
+        assertEquals(0, add(registry, "EWR").getSlot());
+        assertEquals("BOS", bos.getIata());
+        assertFalse(frequency.containsKey(registry.get("EWR").getAirport()));
+
+        AirportRegistry.Record readded = add(registry, "BOS");
+        assertEquals(2, readded.getSlot());
+        assertEquals(bos, readded.getAirport());
+        frequency.merge(registry.get("BOS").getAirport(), 1, Integer::sum);
+        assertEquals(Integer.valueOf(2), frequency.get(new Airport("BOS", 0, 0)));
+        assertEquals(1, frequency.size());
+    }
+
+    @Test
+    public void testAttributePostingsAreSnapshots() throws Exception {
+        AirportAttributeIndex index = new AirportAttributeIndex();
+        int france = index.countries.intern("France");
+        int paris = index.cities.intern("Paris");
+        for (int slot = 0; slot < 100000; slot += 2) {
+            index.add(slot, france, paris);
+        }
+        AirportAttributeIndex.Postings loaded = index.country("France");
+        assertEquals(50000, loaded.size);
+
+        // appends share the array, but past the size of the older snapshot
+        index.add(100001, france, paris);
+        index.remove(100001, france, paris);
+        index.add(100003, france, paris);
+        index.add(7, france, paris);
+        index.remove(0, france, paris);
+        assertEquals(50000, loaded.size);
+        assertEquals(0, loaded.slots[0]);
+        assertEquals(99998, loaded.slots[loaded.size - 1]);
+
+        AirportAttributeIndex.Postings current = index.city("Paris");
+        assertEquals(50001, current.size);
+        assertEquals(2, current.slots[0]);
+        assertEquals(6, current.slots[2]);
+        assertEquals(7, current.slots[3]);
+        assertEquals(100003, current.slots[current.size - 1]);
+        assertEquals(0, index.country("Spain").size);
+    }
+}
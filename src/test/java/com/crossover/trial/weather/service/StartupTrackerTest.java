@@ -0,0 +1,30 @@
+package com.crossover.trial.weather.service;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StartupTrackerTest {
+
+    @Test
+    public void testStartupStatus() throws Exception {
+        StartupTracker startup = new StartupTracker(true);
+        assertEquals(false, startup.status().get("ready"));
+        assertEquals(-1L, startup.status().get("first_request_ms"));
+        startup.listening();
+        startup.phase("dataset", () -> {
+        });
+        startup.ready();
+        startup.requestReceived();
+        Map<String, Object> status = startup.status();
+        assertEquals(true, status.get("ready"));
+        assertEquals("lazy", status.get("mode"));
+        assertTrue((Long) status.get("first_request_ms") >= (Long) status.get("listening_ms"));
+        assertTrue(((Map<?, ?>) status.get("phases_ms")).containsKey("dataset"));
+        assertTrue(startup.awaitReady(0, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,142 @@
+package com.crossover.trial.weather.service;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.stats.QueryKey;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherQueryCacheTest {
+
+    private static final QueryKey BOS = new QueryKey("BOS", 0);
+
+    private static final QueryKey JFK = new QueryKey("JFK", 100);
+
+    private final WeatherQueryCache cache = new WeatherQueryCache();
+
+    private static List<AtmosphericInformation> result() {
+        return Collections.singletonList(new AtmosphericInformation());
+    }
+
+    @Test
+    public void testOnlyHotQueriesAreCached() throws Exception {
+        cache.prewarm(Collections.singleton(BOS), key -> result());
+        assertTrue(cache.contains(BOS));
+
+        cache.put(JFK, cache.generation(), result());
+        assertNull(cache.get(JFK));
+        assertFalse(cache.contains(JFK));
+    }
+
+    @Test
+    public void testMutationsMakeEntriesStale() throws Exception {
+        cache.prewarm(Collections.singleton(BOS), key -> result());
+        Airport airport = new Airport("BOS", 42.364347, -71.005181);
+
+        List<AtmosphericInformation> cached = cache.get(BOS);
+        assertEquals(1, cached.size());
+        assertSame(cached, cache.get(BOS));
+
+        cache.dataPointAdded(airport, DataPointType.WIND, new DataPoint());
+        assertNull(cache.get(BOS));
+        cache.put(BOS, cache.generation(), result());
+        assertTrue(cache.contains(BOS));
+
+        cache.airportSaved(airport);
+        assertFalse(cache.contains(BOS));
+        cache.put(BOS, cache.generation(), result());
+        cache.airportDeleted(airport);
+        assertFalse(cache.contains(BOS));
+        cache.put(BOS, cache.generation(), result());
+        cache.invalidate();
+        assertFalse(cache.contains(BOS));
+
+        assertEquals(2L, cache.status().get("hits"));
+        assertEquals(1L, cache.status().get("misses"));
+    }
+
+    @Test
+    public void testResultComputedAcrossMutationIsNotServed() throws Exception {
+        cache.prewarm(Collections.singleton(BOS), key -> result());
+        // a result computed while a data point arrived
+        long generation = cache.generation();
+        cache.invalidate();
+        List<AtmosphericInformation> stale = cache.put(BOS, generation, result());
+        assertEquals(1, stale.size());
+        assertNull(cache.get(BOS));
+
+        // a result computed after it
+        cache.put(BOS, cache.generation(), result());
+        assertTrue(cache.contains(BOS));
+    }
+
+    @Test
+    public void testDataPointsOnlyMakeQueriesAroundThemStale() throws Exception {
+        Airport bos = new Airport("BOS", 42.364347, -71.005181);
+        Airport jfk = new Airport("JFK", 40.639751, -73.778925);
+        Airport lax = new Airport("LAX", 33.942536, -118.408075);
+        WeatherQueryCache located = new WeatherQueryCache(iata -> iata.equals("BOS") ? bos : jfk);
+        located.prewarm(Arrays.asList(BOS, JFK), key -> result());
+
+        located.dataPointAdded(lax, DataPointType.WIND, new DataPoint());
+        assertTrue(located.contains(BOS));
+        assertTrue(located.contains(JFK));
+
+        // BOS is 300 km from JFK, outside of its circle
+        located.dataPointAdded(bos, DataPointType.WIND, new DataPoint());
+        assertFalse(located.contains(BOS));
+        assertTrue(located.contains(JFK));
+
+        long generation = located.generation();
+        located.invalidate(jfk.getLatitude() + 0.5, jfk.getLongitude());
+        located.put(JFK, generation, result());
+        assertFalse(located.contains(JFK));
+        located.put(JFK, located.generation(), result());
+        assertTrue(located.contains(JFK));
+
+        located.invalidate(Double.NaN, Double.NaN);
+        assertFalse(located.contains(JFK));
+    }
+
+    @Test
+    public void testPrewarmRefreshesHotSet() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        cache.prewarm(Arrays.asList(BOS, JFK), key -> {
+            loads.incrementAndGet();
+            return result();
+        });
+        assertEquals(2, loads.get());
+
+        // current entries are kept, stale ones recomputed, cold ones evicted
+        cache.prewarm(Arrays.asList(BOS, JFK), key -> {
+            loads.incrementAndGet();
+            return result();
+        });
+        assertEquals(2, loads.get());
+        cache.invalidate();
+        cache.prewarm(Collections.singleton(JFK), key -> {
+            loads.incrementAndGet();
+            return result();
+        });
+        assertEquals(3, loads.get());
+        assertTrue(cache.contains(JFK));
+        assertFalse(cache.contains(BOS));
+        assertEquals(1, cache.status().get("entries"));
+
+        cache.clear();
+        assertFalse(cache.contains(JFK));
+        assertEquals(0, cache.status().get("hot"));
+    }
+}
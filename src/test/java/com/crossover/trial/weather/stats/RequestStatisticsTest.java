@@ -0,0 +1,97 @@
+package com.crossover.trial.weather.stats;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestStatisticsTest {
+
+    @Test
+    public void testMergedSnapshotsMatchSingleNode() throws Exception {
+        RequestStatistics single = new RequestStatistics();
+        RequestStatistics[] nodes = {new RequestStatistics(), new RequestStatistics(), new RequestStatistics()};
+        String[] codes = {"BOS", "JFK", "EWR", "LGA", "MMU"};
+        for (int i = 0; i < 300; i++) {
+            String code = codes[i % (i % 2 == 0 ? 1 : codes.length)];
+            double radius = i % 7 * 150.5;
+            single.record(code, radius);
+            nodes[i % nodes.length].record(code, radius);
+        }
+
+        StatsSnapshot merged = nodes[0].snapshot(1);
+        merged.merge(nodes[1].snapshot(2));
+        merged.merge(nodes[2].snapshot(3));
+        StatsSnapshot expected = single.snapshot(6);
+
+        assertEquals(3, merged.nodes);
+        assertEquals(6, merged.datasize);
+        assertEquals(300, merged.total);
+        for (String code : codes) {
+            assertEquals(expected.airportSketch().estimate(code), merged.airportSketch().estimate(code));
+        }
+        assertEquals(expected.radiusFrequency(), merged.radiusFrequency());
+    }
+
+    @Test
+    public void testSketchNeverUndercounts() throws Exception {
+        CountMinSketch sketch = new CountMinSketch(RequestStatistics.DEPTH, 16);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add("A" + i, i % 3 + 1);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.estimate("A" + i) >= i % 3 + 1);
+        }
+    }
+
+    @Test
+    public void testRadiusBuckets() throws Exception {
+        assertEquals(0, RadiusHistogram.bucketOf(0));
+        assertEquals(99, RadiusHistogram.bucketOf(99.9));
+        assertEquals(100, RadiusHistogram.lowerBound(RadiusHistogram.bucketOf(105)));
+        assertEquals(1500, RadiusHistogram.lowerBound(RadiusHistogram.bucketOf(1550)));
+        assertEquals(RadiusHistogram.BUCKETS - 1, RadiusHistogram.bucketOf(1e6));
+    }
+
+    @Test
+    public void testHeavyHittersWithinErrorBounds() throws Exception {
+        SpaceSaving<String> summary = new SpaceSaving<>(16);
+        // three heavy airports among a long tail of rare ones
+        for (int i = 0; i < 10000; i++) {
+            summary.offer(i % 10 < 3 ? "HOT" + i % 10 : "COLD" + i);
+        }
+        List<SpaceSaving.HeavyHitter<String>> top = summary.top(3);
+        assertEquals(3, top.size());
+        for (SpaceSaving.HeavyHitter<String> hitter : top) {
+            assertTrue(hitter.getKey().startsWith("HOT"));
+            assertTrue(hitter.getCount() >= 1000);
+            assertTrue(hitter.getCount() - hitter.getError() <= 1000);
+        }
+        assertEquals(10000, summary.getTotal());
+    }
+
+    @Test
+    public void testConcurrentOffersAreAllCounted() throws Exception {
+        SpaceSaving<String> summary = new SpaceSaving<>(16);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    summary.offer(i % 2 == 0 ? "HOT" : "COLD" + thread + "-" + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, summary.getTotal());
+        SpaceSaving.HeavyHitter<String> top = summary.top(1).get(0);
+        assertEquals("HOT", top.getKey());
+        assertTrue(top.getCount() >= 20000);
+        assertTrue(top.getCount() - top.getError() <= 20000);
+    }
+}
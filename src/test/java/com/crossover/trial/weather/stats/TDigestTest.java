@@ -0,0 +1,62 @@
+package com.crossover.trial.weather.stats;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TDigestTest {
+
+    @Test
+    public void testSummariesKeepTheirQuartiles() throws Exception {
+        TDigest digest = new TDigest(32);
+        digest.addSummary(22, 10, 20, 30, 10);
+        assertEquals(10, digest.quantile(0.25), 1e-9);
+        assertEquals(20, digest.quantile(0.5), 1e-9);
+        assertEquals(30, digest.quantile(0.75), 1e-9);
+        assertEquals(22, digest.mean(), 1e-9);
+
+        // a second station reporting higher values
+        digest.addSummary(42, 30, 40, 50, 10);
+        assertEquals(20, digest.quantile(0.25), 1e-9);
+        assertEquals(30, digest.quantile(0.5), 1e-9);
+        assertEquals(40, digest.quantile(0.75), 1e-9);
+        assertEquals(32, digest.mean(), 1e-9);
+        assertEquals(20, digest.totalWeight(), 0);
+
+        digest.reset();
+        assertTrue(Double.isNaN(digest.quantile(0.5)));
+    }
+
+    @Test
+    public void testMergedSummariesMatchPooledSamples() throws Exception {
+        Random random = new Random(5);
+        TDigest digest = new TDigest(32);
+        double[] pooled = new double[2000 * 50];
+        double sum = 0;
+        for (int station = 0; station < 2000; station++) {
+            // stations at different places of a skewed distribution
+            double offset = Math.abs(random.nextGaussian()) * 20;
+            int[] samples = new int[50];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = (int) Math.round(offset + random.nextGaussian() * 5);
+                pooled[station * 50 + i] = samples[i];
+                sum += samples[i];
+            }
+            Arrays.sort(samples);
+            digest.addSummary(Arrays.stream(samples).average().getAsDouble(), samples[12], samples[25], samples[37],
+                    samples.length);
+            assertTrue(digest.size() <= digest.getCapacity());
+        }
+        Arrays.sort(pooled);
+        assertEquals(sum / pooled.length, digest.mean(), 1e-9);
+        assertEquals(pooled.length, digest.totalWeight(), 0);
+        for (double q : new double[]{0.25, 0.5, 0.75}) {
+            double exact = pooled[(int) (q * pooled.length)];
+            assertEquals("quantile " + q, exact, digest.quantile(q), 1);
+        }
+    }
+}
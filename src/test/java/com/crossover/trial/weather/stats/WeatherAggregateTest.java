@@ -0,0 +1,83 @@
+package com.crossover.trial.weather.stats;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import com.crossover.trial.weather.geo.GeoMath;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherAggregateTest {
+
+    private DataPoint dataPoint(double mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        dp.setCount(1);
+        return dp;
+    }
+
+    @Test
+    public void testSummary() throws Exception {
+        AtmosphericInformation near = new AtmosphericInformation();
+        near.updateInfo(DataPointType.TEMPERATURE, dataPoint(10));
+        near.updateInfo(DataPointType.WIND, dataPoint(5));
+        AtmosphericInformation far = new AtmosphericInformation();
+        far.updateInfo(DataPointType.TEMPERATURE, dataPoint(20));
+
+        WeatherAggregate aggregate = new WeatherAggregate();
+        aggregate.add(near, 10);
+        aggregate.add(far, 100);
+        aggregate.add(new AtmosphericInformation(), 0);
+
+        assertEquals(2, aggregate.getAirports());
+        assertEquals(2, aggregate.getCount(DataPointType.TEMPERATURE));
+        assertEquals(15, aggregate.getMean(DataPointType.TEMPERATURE), 1e-9);
+        assertEquals(10, aggregate.getMin(DataPointType.TEMPERATURE), 0);
+        assertEquals(20, aggregate.getMax(DataPointType.TEMPERATURE), 0);
+        // weights 1/100 and 1/10000
+        assertEquals((10 / 100.0 + 20 / 10000.0) / (1 / 100.0 + 1 / 10000.0),
+                aggregate.getWeightedMean(DataPointType.TEMPERATURE), 1e-9);
+        assertEquals(5, aggregate.getMax(DataPointType.WIND), 0);
+        assertTrue(Double.isNaN(aggregate.getMean(DataPointType.PRESSURE)));
+    }
+
+    @Test
+    public void testParallelReductionMatchesSinglePass() throws Exception {
+        Random random = new Random(3);
+        AirportGridIndex index = new AirportGridIndex(1);
+        WeatherAggregate expected = new WeatherAggregate();
+        for (int i = 0; i < 20000; i++) {
+            Airport airport = new Airport("A" + i, random.nextDouble() * 40 + 20, random.nextDouble() * 60 - 120);
+            AtmosphericInformation ai = new AtmosphericInformation();
+            ai.updateInfo(DataPointType.TEMPERATURE, dataPoint(random.nextInt(60) - 20));
+            index.add(airport, ai);
+            double distance = GeoMath.distance(40, -90, airport.getLatitude(), airport.getLongitude());
+            if (distance <= 2500) {
+                expected.add(ai, distance);
+            }
+        }
+        WeatherAggregate actual;
+        int threshold = AirportGridIndex.getParallelThreshold();
+        AirportGridIndex.setParallelThreshold(0);
+        try {
+            actual = index.reduceInRadius(40, -90, 2500, WeatherAggregate::new,
+                    (aggregate, entry, distance) -> aggregate.add(entry.getWeather(), distance),
+                    WeatherAggregate::merge);
+        } finally {
+            AirportGridIndex.setParallelThreshold(threshold);
+        }
+
+        assertEquals(expected.getAirports(), actual.getAirports());
+        assertEquals(expected.getMean(DataPointType.TEMPERATURE), actual.getMean(DataPointType.TEMPERATURE), 1e-9);
+        assertEquals(expected.getMin(DataPointType.TEMPERATURE), actual.getMin(DataPointType.TEMPERATURE), 0);
+        assertEquals(expected.getMax(DataPointType.TEMPERATURE), actual.getMax(DataPointType.TEMPERATURE), 0);
+        assertEquals(expected.getWeightedMean(DataPointType.TEMPERATURE),
+                actual.getWeightedMean(DataPointType.TEMPERATURE), 1e-6);
+    }
+}
@@ -0,0 +1,39 @@
+package com.crossover.trial.weather.subscription;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionIndexTest {
+
+    private static Subscription subscription(long id, double latitude, double longitude, double radius) {
+        return new Subscription(id, latitude, longitude, radius, -1, null, null);
+    }
+
+    @Test
+    public void testCandidatesOfTouchedCells() throws Exception {
+        SubscriptionIndex index = new SubscriptionIndex(5);
+        Subscription wide = subscription(1, 0, 0, 1000);
+        Subscription narrow = subscription(2, 2.5, 2.5, 10);
+        Subscription antimeridian = subscription(3, 0, 179.9, 100);
+        index.add(wide);
+        index.add(narrow);
+        index.add(antimeridian);
+
+        assertEquals(Arrays.asList(wide, narrow), Arrays.asList(index.candidates(2.5, 2.5)));
+        // the circle of 1000 km reaches into the neighbouring cells, but not 40 degrees away
+        assertEquals(Arrays.asList(wide), Arrays.asList(index.candidates(-7, 7)));
+        assertEquals(0, index.candidates(40, 40).length);
+        assertTrue(Arrays.asList(index.candidates(0, -179.9)).contains(antimeridian));
+
+        index.remove(wide);
+        assertEquals(Arrays.asList(narrow), Arrays.asList(index.candidates(2.5, 2.5)));
+        assertEquals(0, index.candidates(-7, 7).length);
+        index.remove(narrow);
+        index.remove(narrow);
+        assertEquals(0, index.candidates(2.5, 2.5).length);
+    }
+}
@@ -0,0 +1,195 @@
+package com.crossover.trial.weather.subscription;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.DataPoint;
+import com.crossover.trial.weather.entity.DataPointType;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SubscriptionManagerTest {
+
+    private static final Airport BOS = new Airport("BOS", 42.364347, -71.005181);
+
+    private static final Airport JFK = new Airport("JFK", 40.639751, -73.778925);
+
+    private static final Airport LHR = new Airport("LHR", 51.4775, -0.461389);
+
+    private final SubscriptionManager manager = new SubscriptionManager(1, 0);
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static DataPoint dp(int mean) {
+        DataPoint dp = new DataPoint();
+        dp.setMean(mean);
+        return dp;
+    }
+
+    @Test
+    public void testMatchesRadiusAndTypes() throws Exception {
+        RecordingOutput near = new RecordingOutput();
+        RecordingOutput temperature = new RecordingOutput();
+        manager.subscribe(BOS, 400, null, near);
+        manager.subscribe(BOS, 400, Collections.singleton(DataPointType.TEMPERATURE), temperature);
+
+        manager.dataPointAdded(JFK, DataPointType.WIND, dp(1));
+        manager.dataPointAdded(LHR, DataPointType.WIND, dp(2));
+        manager.dataPointAdded(BOS, DataPointType.TEMPERATURE, dp(3));
+        await(() -> near.writes.get() == 2 && temperature.writes.get() == 1);
+        assertEquals(3L, manager.status().get("delivered"));
+
+        // a radius of 0 only matches the center
+        RecordingOutput center = new RecordingOutput();
+        manager.subscribe(JFK, 0, null, center);
+        manager.dataPointAdded(JFK, DataPointType.WIND, dp(4));
+        manager.dataPointAdded(new Airport("LGA", 40.777245, -73.872608), DataPointType.WIND, dp(5));
+        await(() -> near.writes.get() == 4);
+        assertEquals(1, center.writes.get());
+        assertEquals(1, temperature.writes.get());
+    }
+
+    @Test
+    public void testCoalescesWhileClientIsSlow() throws Exception {
+        RecordingOutput slow = new RecordingOutput();
+        slow.blocked = new CountDownLatch(1);
+        manager.subscribe(BOS, 100, null, slow);
+
+        manager.dataPointAdded(BOS, DataPointType.WIND, dp(1));
+        await(() -> slow.writing.get() == 1);
+        for (int i = 2; i <= 4; i++) {
+            manager.dataPointAdded(BOS, DataPointType.WIND, dp(i));
+        }
+        manager.dataPointAdded(BOS, DataPointType.HUMIDITY, dp(5));
+        slow.blocked.countDown();
+
+        // the first delta, then only the latest wind and the humidity
+        await(() -> slow.writes.get() == 3);
+        assertEquals(2L, manager.status().get("coalesced"));
+        assertEquals(3L, manager.status().get("delivered"));
+    }
+
+    @Test
+    public void testFailedWriteUnsubscribes() throws Exception {
+        RecordingOutput gone = new RecordingOutput();
+        gone.failing = true;
+        manager.subscribe(BOS, 100, null, gone);
+        manager.dataPointAdded(BOS, DataPointType.WIND, dp(1));
+        await(() -> manager.size() == 0);
+        assertTrue(gone.closed);
+        assertEquals(0L, manager.status().get("delivered"));
+    }
+
+    @Test
+    public void testHeartbeatDropsClientsOfQuietRegions() throws Exception {
+        RecordingOutput live = new RecordingOutput();
+        RecordingOutput gone = new RecordingOutput();
+        RecordingOutput closed = new RecordingOutput();
+        manager.subscribe(LHR, 100, null, live);
+        manager.subscribe(LHR, 100, null, gone);
+        manager.subscribe(BOS, 100, null, closed);
+        gone.failing = true;
+        closed.close();
+        assertEquals(3, manager.size());
+
+        manager.heartbeat();
+        await(() -> manager.size() == 1 && live.writes.get() == 1);
+        assertEquals(0L, manager.status().get("delivered"));
+
+        // the index no longer holds the dropped subscriptions
+        manager.dataPointAdded(LHR, DataPointType.WIND, dp(1));
+        await(() -> live.writes.get() == 2);
+        assertEquals(1L, manager.status().get("delivered"));
+    }
+
+    @Test
+    public void testStalledClientIsDropped() throws Exception {
+        SubscriptionManager manager = new SubscriptionManager(1, 0, 100);
+        RecordingOutput stuck = new RecordingOutput();
+        // like a container's stream, closing it fails the blocked write
+        stuck.blocked = new CountDownLatch(1);
+        stuck.onClose = () -> {
+            stuck.failing = true;
+            stuck.blocked.countDown();
+        };
+        RecordingOutput live = new RecordingOutput();
+        manager.subscribe(BOS, 100, null, stuck);
+        manager.subscribe(BOS, 100, null, live);
+
+        manager.dataPointAdded(BOS, DataPointType.WIND, dp(1));
+        await(() -> manager.size() == 1 && stuck.closed);
+        assertEquals(1L, manager.status().get("stalled"));
+
+        // the only writer thread is free again for the other client
+        await(() -> live.writes.get() == 1);
+        manager.dataPointAdded(BOS, DataPointType.WIND, dp(2));
+        await(() -> live.writes.get() == 2);
+        assertEquals(0, stuck.writes.get());
+    }
+
+    /**
+     * An event stream counting the events written to it.
+     */
+    private static class RecordingOutput extends EventOutput {
+        final AtomicInteger writing = new AtomicInteger();
+
+        final AtomicInteger writes = new AtomicInteger();
+
+        volatile CountDownLatch blocked;
+
+        volatile boolean failing;
+
+        volatile boolean closed;
+
+        volatile Runnable onClose;
+
+        @Override
+        public void write(OutboundEvent event) throws IOException {
+            writing.incrementAndGet();
+            if (failing) {
+                throw new IOException("client went away");
+            }
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failing) {
+                throw new IOException("stream closed");
+            }
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            Runnable action = onClose;
+            if (action != null) {
+                action.run();
+            }
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
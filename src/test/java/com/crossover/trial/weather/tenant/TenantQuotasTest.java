@@ -0,0 +1,110 @@
+package com.crossover.trial.weather.tenant;
+
+import com.crossover.trial.weather.entity.Airport;
+import com.crossover.trial.weather.entity.AtmosphericInformation;
+import com.crossover.trial.weather.geo.AirportGridIndex;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TenantQuotasTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstAndRefill() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = 1000 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(1, now));
+        }
+        assertFalse(bucket.tryAcquire(1, now));
+        assertFalse(bucket.hasCapacity(now));
+        assertEquals(SECOND / 10, bucket.nanosUntilAvailable(now));
+
+        // one token per 100ms
+        assertTrue(bucket.tryAcquire(1, now + SECOND / 10));
+        assertFalse(bucket.tryAcquire(1, now + SECOND / 10));
+        // a refused request takes nothing, and the bucket never holds more than the burst
+        assertTrue(bucket.tryAcquire(5, now + 100 * SECOND));
+        assertFalse(bucket.tryAcquire(6, now + 200 * SECOND));
+        assertEquals(5, bucket.available(now + 200 * SECOND));
+    }
+
+    @Test
+    public void testChargeLeavesDebt() throws Exception {
+        TokenBucket bucket = new TokenBucket(1000, 100);
+        long now = 1000 * SECOND;
+        assertTrue(bucket.hasCapacity(now));
+        bucket.charge(1100, now);
+        assertEquals(-1000, bucket.available(now));
+        assertFalse(bucket.hasCapacity(now));
+        // the debt of 1000 tokens is paid off after a second, then the first token needs another millisecond
+        assertFalse(bucket.hasCapacity(now + SECOND));
+        assertTrue(bucket.hasCapacity(now + SECOND + SECOND / 1000));
+        assertEquals(SECOND + SECOND / 1000, bucket.nanosUntilAvailable(now));
+    }
+
+    @Test
+    public void testTenantsAreIsolated() throws Exception {
+        TenantQuotas quotas = new TenantQuotas(new TenantQuotas.Limits(1000, 1000),
+                new TenantQuotas.Limits(10, 10), TenantQuotas.parseTokens("s3cr3t==dashboard"), 3);
+        long now = 1000 * SECOND;
+        TenantQuotas.Tenant dashboard = quotas.get("s3cr3t=");
+        assertEquals("dashboard", dashboard.getName());
+        assertSame(dashboard, quotas.get("s3cr3t="));
+        assertTrue(dashboard.admitQuery(now));
+        dashboard.chargeQuery(50000, now);
+        assertFalse(dashboard.admitQuery(now + SECOND));
+
+        TenantQuotas.Tenant anonymous = quotas.get(null);
+        assertEquals(TenantQuotas.ANONYMOUS, anonymous.getName());
+        assertTrue(anonymous.admitQuery(now + SECOND));
+        assertTrue(anonymous.admitIngest(10, now));
+        assertFalse(anonymous.admitIngest(1, now));
+
+        // unknown tokens share the overflow tenant, however many are made up
+        assertEquals(TenantQuotas.OVERFLOW, quotas.get("dashboard").getName());
+        assertSame(quotas.get("third"), quotas.get("fourth"));
+
+        // addresses beyond the maximum share it too
+        quotas = new TenantQuotas(new TenantQuotas.Limits(1000, 1000), new TenantQuotas.Limits(10, 10),
+                Collections.emptyMap(), 2);
+        TenantQuotas.Tenant collector = quotas.forAddress(InetAddress.getByName("10.0.0.1"));
+        assertEquals(TenantQuotas.ADDRESS_PREFIX + "10.0.0.1", collector.getName());
+        assertSame(collector, quotas.forAddress(InetAddress.getByName("10.0.0.1")));
+        assertTrue(collector.admitIngest(10, now));
+        assertFalse(collector.admitIngest(1, now));
+        assertTrue(quotas.forAddress(InetAddress.getByName("10.0.0.2")).admitIngest(10, now));
+        assertEquals(TenantQuotas.OVERFLOW, quotas.forAddress(InetAddress.getByName("10.0.0.3")).getName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTokenWithoutTenant() throws Exception {
+        TenantQuotas.parseTokens("abc=dashboard, def");
+    }
+
+    @Test
+    public void testCandidatesExamined() throws Exception {
+        AirportGridIndex index = new AirportGridIndex(1);
+        for (int i = 0; i < 100; i++) {
+            index.add(new Airport(String.format("A%02d", i), 40 + i * 0.01, -90), new AtmosphericInformation());
+        }
+        AirportGridIndex.resetCandidatesExamined();
+        index.forEachInRadius(40, -90, 1, entry -> {
+        });
+        // the radius only holds the first airport, but the whole cell was looked at
+        assertEquals(100, AirportGridIndex.candidatesExamined());
+        index.nearest(40, -90, 1, Double.MAX_VALUE, null);
+        assertEquals(200, AirportGridIndex.candidatesExamined());
+        AirportGridIndex.resetCandidatesExamined();
+        assertEquals(0, AirportGridIndex.candidatesExamined());
+    }
+}
@@ -0,0 +1,79 @@
+package com.crossover.trial.weather.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() throws Exception {
+        int previous = -1;
+        for (long value = 0; value < 1L << 32; value = value < 1024 ? value + 1 : value + value / 97) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue("bucket of " + value, bucket >= previous && bucket < LatencyHistogram.BUCKETS - 1);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue("upper bound of " + value, upper >= value && upper - value <= value / 100);
+            previous = bucket;
+        }
+        // the top value of the last regular bucket and the first value beyond it
+        long largest = (1L << 32) - 1;
+        assertEquals(LatencyHistogram.BUCKETS - 2, LatencyHistogram.bucketOf(largest));
+        assertEquals(largest, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 2));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(largest + 1));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBound(LatencyHistogram.BUCKETS - 1));
+        assertEquals(255, LatencyHistogram.upperBound(LatencyHistogram.bucketOf(255)));
+        assertEquals(257, LatencyHistogram.upperBound(LatencyHistogram.bucketOf(256)));
+    }
+
+    @Test
+    public void testPercentile() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        for (int micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros);
+        }
+        histogram.record(-5);
+        assertEquals(10001, histogram.getCount());
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(5000, histogram.percentile(50), 50);
+        assertEquals(9900, histogram.percentile(99), 99);
+        assertEquals(10000, histogram.percentile(100));
+
+        // a value in the overflow bucket is reported as the maximum
+        histogram.record(1L << 40);
+        assertEquals(1L << 40, histogram.percentile(100));
+        assertEquals(1L << 40, histogram.getMax());
+    }
+
+    @Test
+    public void testDrainLosesNoValue() throws Exception {
+        LatencyHistogram interval = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    interval.record(i % 5000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                total.add(interval.drain());
+            }
+        }
+        total.add(interval.drain());
+        assertEquals(400000, total.getCount());
+        assertEquals(0, interval.getCount());
+        assertEquals(4999, total.getMax());
+        assertEquals(2500, total.percentile(50), 25);
+    }
+}
@@ -0,0 +1,32 @@
+package com.crossover.trial.weather.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testFitZipfExponent() throws Exception {
+        double[] shares = new double[100];
+        for (int rank = 0; rank < shares.length; rank++) {
+            shares[rank] = 0.3 / Math.pow(rank + 1, 1.2);
+        }
+        assertEquals(1.2, LoadGenerator.fitZipfExponent(shares, 1.0), 1e-9);
+
+        // the airports never queried are left out of the fit
+        double[] queried = new double[]{0.5, 0.25, 0.5 / 3, 0, 0};
+        assertEquals(1.0, LoadGenerator.fitZipfExponent(queried, 2.0), 1e-9);
+
+        // uniform shares
+        assertEquals(0.0, LoadGenerator.fitZipfExponent(new double[]{0.25, 0.25, 0.25, 0.25}, 1.0), 1e-9);
+    }
+
+    @Test
+    public void testFitZipfExponentFallback() throws Exception {
+        assertEquals(1.5, LoadGenerator.fitZipfExponent(new double[0], 1.5), 0);
+        assertEquals(1.5, LoadGenerator.fitZipfExponent(new double[]{1.0, 0, 0}, 1.5), 0);
+        // shares rising with the rank would give a negative exponent
+        assertEquals(0.0, LoadGenerator.fitZipfExponent(new double[]{0.1, 0.2, 0.3}, 1.5), 0);
+    }
+}